@@ -43,12 +43,15 @@ class JavaGeneratorCli(GeneratorCli):
     def build_parser(self, parser):
         self._add_module_args(parser)
         self._add_prefix_args(parser)
+        parser.add_argument('--json-codecs', action='store_true', default=False,
+                            help='generate static JSON codecs in messages')
 
     def create_generator(self, out, args):
         module_names = self._parse_module_args(args)
         prefixes = self._parse_prefix_args(args)
 
-        return JavaGenerator(out, module_names=module_names, prefixes=prefixes)
+        return JavaGenerator(out, module_names=module_names, prefixes=prefixes,
+                             json_codecs=args.json_codecs)
 
 
 class JavaGenerator(Generator):
@@ -58,8 +61,9 @@ class JavaGenerator(Generator):
     def create_cli(cls):
         return JavaGeneratorCli()
 
-    def __init__(self, out, module_names=None, prefixes=None):
+    def __init__(self, out, module_names=None, prefixes=None, json_codecs=False):
         super(JavaGenerator, self).__init__(out)
+        self.json_codecs = json_codecs
 
         self.module_mapper = ModuleMapper(module_names)
         self.prefix_mapper = PrefixMapper(prefixes)
@@ -91,7 +95,8 @@ class JavaGenerator(Generator):
         if def0.is_enum:
             return self.templates.render(ENUM_TEMPLATE, enum=def0, generated_by=GENERATED_BY)
         elif def0.is_message:
-            return self.templates.render(MESSAGE_TEMPLATE, message=def0, generated_by=GENERATED_BY)
+            return self.templates.render(MESSAGE_TEMPLATE, message=def0, generated_by=GENERATED_BY,
+                                         json_codecs=self.json_codecs)
         elif def0.is_interface:
             return self.templates.render(INTERFACE_TEMPLATE, interface=def0,
                                          generated_by=GENERATED_BY)
@@ -148,6 +153,15 @@ class _JavaFilters(object):
     def jfield_clear(self, field):
         return 'clear%s' % upper_first(field.name)
 
+    def jjson_write(self, type0):
+        '''Returns a JsonGenerator method which writes a native type value or None.'''
+        return JAVA_JSON_WRITERS.get(type0.type)
+
+    def jjson_read(self, type0):
+        '''Returns a (JsonToken, JsonParser expression) pair which reads a native type value
+        on its most common token or None.'''
+        return JAVA_JSON_READERS.get(type0.type)
+
     def jref(self, type0):
         if type0.is_native:
             ref = JAVA_NATIVE_REFS[type0.type]
@@ -175,7 +189,8 @@ class _JavaFilters(object):
         element = self.jref(type0.element)
 
         name = 'java.util.List<%s>' % element
-        default = 'new java.util.ArrayList<%s>()' % element
+        default = JAVA_PRIMITIVE_LISTS.get(type0.element.type)
+        default = default or 'new java.util.ArrayList<%s>()' % element
         descriptor = 'io.pdef.descriptors.Descriptors.list(%s)' % element.descriptor
 
         return _JavaRef(name, descriptor, default=default)
@@ -184,7 +199,12 @@ class _JavaFilters(object):
         element = self.jref(type0.element)
 
         name = 'java.util.Set<%s>' % element
-        default = 'new java.util.HashSet<%s>()' % element
+        if type0.element.type == TypeEnum.INT32:
+            default = 'new io.pdef.collections.IntHashSet()'
+        elif type0.element.type == TypeEnum.ENUM:
+            default = 'java.util.EnumSet.noneOf(%s.class)' % element
+        else:
+            default = 'new java.util.HashSet<%s>()' % element
         descriptor = 'io.pdef.descriptors.Descriptors.set(%s)' % element.descriptor
 
         return _JavaRef(name, descriptor, default=default)
@@ -194,7 +214,10 @@ class _JavaFilters(object):
         value = self.jref(type0.value)
 
         name = 'java.util.Map<%s, %s>' % (key, value)
-        default = 'new java.util.HashMap<%s, %s>()' % (key, value)
+        if type0.key.type == TypeEnum.INT32:
+            default = 'new io.pdef.collections.IntHashMap<%s>()' % value
+        else:
+            default = 'new java.util.HashMap<%s, %s>()' % (key, value)
         descr = 'io.pdef.descriptors.Descriptors.map(%s, %s)' % (key.descriptor, value.descriptor)
 
         return _JavaRef(name, descr, default=default)
@@ -238,3 +261,26 @@ JAVA_NATIVE_REFS = {
     TypeEnum.VOID: _JavaRef('Void',      'io.pdef.descriptors.Descriptors.void0', 'null', 'void'),
     TypeEnum.DATETIME: _JavaRef('java.util.Date','io.pdef.descriptors.Descriptors.datetime','null')
 }
+
+JAVA_PRIMITIVE_LISTS = {
+    TypeEnum.INT32: 'new io.pdef.collections.IntArrayList()',
+    TypeEnum.INT64: 'new io.pdef.collections.LongArrayList()',
+    TypeEnum.DOUBLE: 'new io.pdef.collections.DoubleArrayList()'
+}
+
+JAVA_JSON_WRITERS = {
+    TypeEnum.BOOL: 'writeBoolean',
+    TypeEnum.INT16: 'writeNumber',
+    TypeEnum.INT32: 'writeNumber',
+    TypeEnum.INT64: 'writeNumber',
+    TypeEnum.FLOAT: 'writeNumber',
+    TypeEnum.DOUBLE: 'writeNumber',
+    TypeEnum.STRING: 'writeString'
+}
+
+JAVA_JSON_READERS = {
+    TypeEnum.INT32: ('VALUE_NUMBER_INT', 'Integer.valueOf(parser.getIntValue())'),
+    TypeEnum.INT64: ('VALUE_NUMBER_INT', 'Long.valueOf(parser.getLongValue())'),
+    TypeEnum.DOUBLE: ('VALUE_NUMBER_FLOAT', 'Double.valueOf(parser.getDoubleValue())'),
+    TypeEnum.STRING: ('VALUE_STRING', 'parser.getText()')
+}
@@ -38,6 +38,28 @@ class TestJavaGenerator(unittest.TestCase):
         code = generator._render(msg)
         assert code
 
+    def test_render_message__json_codecs(self):
+        base = Message('Base')
+        base.create_field('field', NativeType.INT32)
+
+        msg = Message('Message', base=base)
+        msg.create_field('list0', List(NativeType.STRING))
+
+        module = Module('test.module')
+        module.add_definition(base)
+        module.add_definition(msg)
+        module.link()
+
+        code = JavaGenerator('/dev/null')._render(msg)
+        assert 'class JsonCodec' not in code
+
+        code = JavaGenerator('/dev/null', json_codecs=True)._render(msg)
+        assert 'io.pdef.json.JsonCodecs.install(DESCRIPTOR, new JsonCodec<Message>());' in code
+        assert 'extends test.module.Base.JsonCodec<M>' in code
+        assert 'writeValue(m.list0, Types.list0, generator);' in code
+        assert 'case 1:' in code
+        assert 'return super.readField(message, index, parser);' in code
+
     def test_render_interface(self):
         exc = Message('Exception', is_exception=True)
 
@@ -97,7 +119,7 @@ class TestJavaFilters(unittest.TestCase):
         ref = self.filters.jref(list0)
 
         assert ref.name == 'java.util.List<Integer>'
-        assert ref.default == 'new java.util.ArrayList<Integer>()'
+        assert ref.default == 'new io.pdef.collections.IntArrayList()'
         assert ref.descriptor == 'io.pdef.descriptors.Descriptors.list(' \
                                  'io.pdef.descriptors.Descriptors.int32)'
 
@@ -120,6 +142,23 @@ class TestJavaFilters(unittest.TestCase):
                                  'io.pdef.descriptors.Descriptors.string, ' \
                                  'io.pdef.descriptors.Descriptors.float0)'
 
+    def test_jmap_int32_keys(self):
+        map0 = Map(NativeType.INT32, NativeType.STRING)
+        ref = self.filters.jref(map0)
+
+        assert ref.name == 'java.util.Map<Integer, String>'
+        assert ref.default == 'new io.pdef.collections.IntHashMap<String>()'
+
+    def test_jjson_write(self):
+        assert self.filters.jjson_write(NativeType.INT32) == 'writeNumber'
+        assert self.filters.jjson_write(NativeType.STRING) == 'writeString'
+        assert self.filters.jjson_write(NativeType.DATETIME) is None
+        assert self.filters.jjson_write(List(NativeType.INT32)) is None
+
+    def test_jjson_read(self):
+        assert self.filters.jjson_read(NativeType.STRING) == ('VALUE_STRING', 'parser.getText()')
+        assert self.filters.jjson_read(NativeType.BOOL) is None
+
     def test_jenum(self):
         enum = Enum('Number')
 
@@ -21,20 +21,39 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.util.HashMap;
-import java.util.Map;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.zip.GZIPOutputStream;
 
 public final class RpcServlet<T> extends HttpServlet {
 	public static final String CLIENT_ERROR_MESSAGE = "Client error";
 	public static final String JSON_CONTENT_TYPE = "application/json; charset=utf-8";
 	public static final String TEXT_CONTENT_TYPE = "text/plain; charset=utf-8";
 	public static final int APPLICATION_EXC_STATUS = 422;
+	public static final String ACCEPT_HEADER = "Accept";
+	public static final String ACCEPT_ENCODING_HEADER = "Accept-Encoding";
+	public static final String CONTENT_ENCODING_HEADER = "Content-Encoding";
+	public static final String VARY_HEADER = "Vary";
+	public static final String GZIP = "gzip";
 	private final transient RpcHandler<T> handler;
+	private final transient List<WireFormat> formats;
 
+	/** Creates a servlet which writes JSON or binary results, JSON by default. */
 	public RpcServlet(final RpcHandler<T> handler) {
+		this(handler, Arrays.asList(WireFormat.json(), WireFormat.binary()));
+	}
+
+	/**
+	 * Creates a servlet which selects result formats by the accept header,
+	 * the first format is the default one.
+	 */
+	public RpcServlet(final RpcHandler<T> handler, final List<WireFormat> formats) {
 		if (handler == null) throw new NullPointerException("handler");
+		if (formats == null) throw new NullPointerException("formats");
+		if (formats.isEmpty()) throw new IllegalArgumentException("No formats");
+
 		this.handler = handler;
+		this.formats = Collections.unmodifiableList(new ArrayList<WireFormat>(formats));
 	}
 
 	@Override
@@ -46,7 +65,8 @@ public final class RpcServlet<T> extends HttpServlet {
 		RpcRequest request = getRpcRequest(req);
 		try {
 			RpcResult<?, ?> result = handler.handle(request);
-			writeResult(result, resp);
+			WireFormat format = WireFormat.select(formats, req.getHeader(ACCEPT_HEADER));
+			writeResult(result, format, acceptsGzip(req), resp);
 		} catch (RpcException e) {
 			writeRpcException(e, resp);
 		} catch (RuntimeException e) {
@@ -76,17 +96,53 @@ public final class RpcServlet<T> extends HttpServlet {
 	// VisibleForTesting
 	void writeResult(final RpcResult<?, ?> result, final HttpServletResponse resp)
 			throws IOException {
+		writeResult(result, formats.get(0), false, resp);
+	}
+
+	// VisibleForTesting
+	void writeResult(final RpcResult<?, ?> result, final WireFormat format, final boolean gzip,
+			final HttpServletResponse resp) throws IOException {
 		if (result.isSuccess()) {
 			resp.setStatus(HttpServletResponse.SC_OK);
-			resp.setContentType(JSON_CONTENT_TYPE);
 		} else {
 			resp.setStatus(APPLICATION_EXC_STATUS);
-			resp.setContentType(JSON_CONTENT_TYPE);
 		}
+		resp.setContentType(format.getContentType());
+		resp.setHeader(VARY_HEADER, ACCEPT_HEADER + ", " + ACCEPT_ENCODING_HEADER);
+
+		OutputStream out = resp.getOutputStream();
+		if (gzip) {
+			resp.setHeader(CONTENT_ENCODING_HEADER, GZIP);
+			GZIPOutputStream gzipped = new GZIPOutputStream(out);
+			write(format, gzipped, result);
+			gzipped.finish();
+		} else {
+			write(format, out, result);
+		}
+		out.flush();
+	}
 
-		PrintWriter writer = resp.getWriter();
-		result.toJson(writer, true);
-		writer.flush();
+	private static <D, E> void write(final WireFormat format, final OutputStream out,
+			final RpcResult<D, E> result) throws IOException {
+		format.write(out, result, result.descriptor());
+	}
+
+	// VisibleForTesting
+	/** Returns whether a client accepts gzip-compressed results. */
+	boolean acceptsGzip(final HttpServletRequest request) {
+		String header = request.getHeader(ACCEPT_ENCODING_HEADER);
+		if (header == null) {
+			return false;
+		}
+
+		for (String coding : header.split(",")) {
+			String[] params = coding.replace(" ", "").split(";");
+			if (!params[0].equalsIgnoreCase(GZIP)) {
+				continue;
+			}
+			return params.length == 1 || !params[1].matches("q=0(\\.0*)?");
+		}
+		return false;
 	}
 
 	// VisibleForTesting
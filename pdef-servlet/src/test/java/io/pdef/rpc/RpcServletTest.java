@@ -21,6 +21,8 @@ import io.pdef.descriptors.Descriptors;
 import io.pdef.test.interfaces.PdefTestException;
 import io.pdef.test.interfaces.PdefTestInterface;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
@@ -86,6 +88,49 @@ public class RpcServletTest {
 		verify(response).setContentType(RpcServlet.JSON_CONTENT_TYPE);
 	}
 
+	@Test
+	public void testWriteResult_binary() throws Exception {
+		RpcResult<String, Void> result = new RpcResult<String, Void>(Descriptors.string)
+				.setSuccess(true)
+				.setData("Привет");
+		HttpServletResponse response = mockResponse();
+		servlet.writeResult(result, WireFormat.binary(), false, response);
+
+		verify(response).setStatus(HttpURLConnection.HTTP_OK);
+		verify(response).setContentType(WireFormat.BINARY_MEDIA_TYPE);
+		verify(response, never()).setHeader(eq(RpcServlet.CONTENT_ENCODING_HEADER), anyString());
+	}
+
+	@Test
+	public void testWriteResult_gzip() throws Exception {
+		RpcResult<String, Void> result = new RpcResult<String, Void>(Descriptors.string)
+				.setSuccess(true)
+				.setData("Привет");
+		HttpServletResponse response = mockResponse();
+		servlet.writeResult(result, WireFormat.json(), true, response);
+
+		verify(response).setContentType(RpcServlet.JSON_CONTENT_TYPE);
+		verify(response).setHeader(RpcServlet.CONTENT_ENCODING_HEADER, RpcServlet.GZIP);
+	}
+
+	@Test
+	public void testAcceptsGzip() throws Exception {
+		HttpServletRequest request = mock(HttpServletRequest.class);
+		assertFalse(servlet.acceptsGzip(request));
+
+		when(request.getHeader(RpcServlet.ACCEPT_ENCODING_HEADER)).thenReturn("gzip, deflate");
+		assertTrue(servlet.acceptsGzip(request));
+
+		when(request.getHeader(RpcServlet.ACCEPT_ENCODING_HEADER)).thenReturn("deflate;q=1, GZIP");
+		assertTrue(servlet.acceptsGzip(request));
+
+		when(request.getHeader(RpcServlet.ACCEPT_ENCODING_HEADER)).thenReturn("gzip;q=0");
+		assertFalse(servlet.acceptsGzip(request));
+
+		when(request.getHeader(RpcServlet.ACCEPT_ENCODING_HEADER)).thenReturn("deflate");
+		assertFalse(servlet.acceptsGzip(request));
+	}
+
 	@Test
 	public void testWriteRpcException() throws Exception {
 		RpcException exception = RpcException.badRequest("Method not found");
@@ -85,6 +85,25 @@ public class RpcTest {
 
 	@Test
 	public void test() throws Exception {
+		assertClient(new RpcClient<PdefTestSubInterface>(
+				PdefTestSubInterface.DESCRIPTOR, address).proxy());
+	}
+
+	@Test
+	public void testBinary() throws Exception {
+		RpcSession session = new HttpUrlConnectionRpcSession(address, WireFormat.binary());
+		assertClient(new RpcClient<PdefTestSubInterface>(
+				PdefTestSubInterface.DESCRIPTOR, session).proxy());
+	}
+
+	@Test
+	public void testGzip() throws Exception {
+		RpcSession session = new HttpUrlConnectionRpcSession(address, WireFormat.json(), true);
+		assertClient(new RpcClient<PdefTestSubInterface>(
+				PdefTestSubInterface.DESCRIPTOR, session).proxy());
+	}
+
+	private void assertClient(final PdefTestSubInterface client) throws Exception {
 		PdefTestMessage message = new PdefTestMessage()
 				.setString0("Привет, как дела?")
 				.setBool0(false)
@@ -107,8 +126,6 @@ public class RpcTest {
 		doThrow(new PdefTestSubException().setText("Application exception")).when(service).exc0();
 		doThrow(new RuntimeException("Test server exception")).when(service).serverError();
 
-		PdefTestSubInterface client = new RpcClient<PdefTestSubInterface>(
-				PdefTestSubInterface.DESCRIPTOR, address).proxy();
 		assertEquals(3, client.method(1, 2));
 		assertEquals(7, client.query(3, 4));
 		assertEquals(11, client.post(5, 6));
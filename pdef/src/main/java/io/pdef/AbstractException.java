@@ -19,6 +19,9 @@ package io.pdef;
 import io.pdef.descriptors.FieldDescriptor;
 import io.pdef.descriptors.MessageDescriptor;
 import io.pdef.json.JsonFormat;
+import io.pdef.json.JsonLazyFields;
+import io.pdef.json.JsonLazyMessage;
+import io.pdef.json.JsonUnknownFields;
 
 import java.io.*;
 import java.util.Map;
@@ -26,10 +29,21 @@ import java.util.Map;
 /**
  * Abstract class for a generated Pdef exception.
  * */
-public abstract class AbstractException extends RuntimeException implements Message, Serializable {
+public abstract class AbstractException extends RuntimeException
+		implements JsonLazyMessage, Serializable {
+	private transient JsonLazyFields lazyFields;
+	private transient JsonUnknownFields unknownFields;
+
 	protected AbstractException() {}
 
-	protected AbstractException(final AbstractException another) {}
+	protected AbstractException(final AbstractException another) {
+		if (another.lazyFields != null) {
+			lazyFields = another.lazyFields.copy();
+		}
+		if (another.unknownFields != null) {
+			unknownFields = another.unknownFields.copy();
+		}
+	}
 
 	// Copy all methods from the AbstractMessage.
 
@@ -38,6 +52,11 @@ public abstract class AbstractException extends RuntimeException implements Mess
 		return JsonFormat.instance().writeMessage(this, uncheckedDescriptor());
 	}
 
+	/** Returns a read-only live map view of this message, values are converted on access. */
+	public Map<String, Object> toMapView() {
+		return JsonFormat.instance().viewMessage(this);
+	}
+
 	@Override
 	public String toJson() {
 		return toJson(true);
@@ -66,7 +85,11 @@ public abstract class AbstractException extends RuntimeException implements Mess
 	}
 
 	@Override
-	public void merge(final Message message) {}
+	public void merge(final Message message) {
+		// Generated subclasses merge fields directly, decode raw fields first.
+		JsonLazyFields.decode(this);
+		JsonLazyFields.decode(message);
+	}
 
 	@Override
 	public void merge(final Map<String, Object> map) {
@@ -145,6 +168,54 @@ public abstract class AbstractException extends RuntimeException implements Mess
 		return result;
 	}
 
+	@Override
+	public JsonLazyFields lazyFields() {
+		return lazyFields;
+	}
+
+	@Override
+	public void attachLazyFields(final JsonLazyFields fields) {
+		this.lazyFields = fields;
+	}
+
+	@Override
+	public JsonUnknownFields unknownFields() {
+		return unknownFields;
+	}
+
+	@Override
+	public void attachUnknownFields(final JsonUnknownFields fields) {
+		this.unknownFields = fields;
+	}
+
+	/** Removes and decodes a raw JSON field, returns {@literal null} if absent. */
+	protected final <V> V decodeLazyField(final String name) {
+		if (lazyFields == null || !lazyFields.contains(name)) {
+			return null;
+		}
+
+		@SuppressWarnings("unchecked")
+		FieldDescriptor<?, V> field = (FieldDescriptor<?, V>) uncheckedDescriptor().getField(name);
+		return lazyFields.remove(name, field.getType());
+	}
+
+	/** Returns whether a field is present as raw JSON. */
+	protected final boolean isLazyField(final String name) {
+		return lazyFields != null && lazyFields.contains(name);
+	}
+
+	/** Discards a raw JSON field when the field is set or cleared. */
+	protected final void discardLazyField(final String name) {
+		if (lazyFields != null) {
+			lazyFields.discard(name);
+		}
+	}
+
+	private void writeObject(final ObjectOutputStream out) throws IOException {
+		JsonLazyFields.decode(this);
+		out.defaultWriteObject();
+	}
+
 	@SuppressWarnings("unchecked")
 	MessageDescriptor<Message> uncheckedDescriptor() {
 		return (MessageDescriptor<Message>) descriptor();
@@ -16,6 +16,7 @@
 
 package io.pdef;
 
+import io.pdef.collections.*;
 import io.pdef.descriptors.DataTypeDescriptor;
 
 import java.util.*;
@@ -46,9 +47,16 @@ public class DataTypes {
 	/**
 	 * Returns a deep copy of a pdef list.
 	 */
+	@SuppressWarnings("unchecked")
 	public static <T> List<T> copy(final List<T> list) {
 		if (list == null) {
 			return null;
+		} else if (list instanceof IntArrayList) {
+			return (List<T>) new IntArrayList((IntArrayList) list);
+		} else if (list instanceof LongArrayList) {
+			return (List<T>) new LongArrayList((LongArrayList) list);
+		} else if (list instanceof DoubleArrayList) {
+			return (List<T>) new DoubleArrayList((DoubleArrayList) list);
 		}
 
 		TypeEnum elementType = null;
@@ -71,9 +79,14 @@ public class DataTypes {
 	/**
 	 * Returns a deep copy of a pdef set.
 	 */
+	@SuppressWarnings("unchecked")
 	public static <T> Set<T> copy(final Set<T> set) {
 		if (set == null) {
 			return null;
+		} else if (set instanceof IntHashSet) {
+			return (Set<T>) new IntHashSet((IntHashSet) set);
+		} else if (set instanceof EnumSet) {
+			return (Set<T>) ((EnumSet) set).clone();
 		}
 
 		TypeEnum elementType = null;
@@ -96,6 +109,7 @@ public class DataTypes {
 	/**
 	 * Returns a deep copy of a pdef map.
 	 */
+	@SuppressWarnings("unchecked")
 	public static <K, V> Map<K, V> copy(final Map<K, V> map) {
 		if (map == null) {
 			return null;
@@ -104,7 +118,9 @@ public class DataTypes {
 		TypeEnum keyType = null;
 		TypeEnum valueType = null;
 
-		Map<K, V> copy = new HashMap<K, V>();
+		Map<K, V> copy = map instanceof IntHashMap
+				? (Map<K, V>) new IntHashMap<V>(map.size())
+				: new HashMap<K, V>();
 		for (Map.Entry<K, V> entry : map.entrySet()) {
 			K key = entry.getKey();
 			V value = entry.getValue();
@@ -0,0 +1,215 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef;
+
+import io.pdef.descriptors.*;
+
+import javax.annotation.Nullable;
+import java.util.*;
+
+/**
+ * FieldMask is an immutable tree of message field paths, i.e. {@code "name"} or
+ * {@code "message.field"}, used to partially read and write messages.
+ *
+ * Paths descend into message fields and into lists, sets and map values of messages.
+ * Discriminator fields are always included to keep polymorphic messages readable.
+ */
+public final class FieldMask {
+	/** Includes all fields at any depth. */
+	public static final FieldMask ALL = new FieldMask(null);
+
+	private final Map<String, FieldMask> fields;
+
+	private FieldMask(@Nullable final Map<String, FieldMask> fields) {
+		this.fields = fields;
+	}
+
+	/** Returns a field mask from paths resolved against a message descriptor. */
+	public static FieldMask of(final MessageDescriptor<?> descriptor, final String... paths) {
+		return of(descriptor, Arrays.asList(paths));
+	}
+
+	/** Returns a field mask from paths resolved against a message descriptor. */
+	public static FieldMask of(final MessageDescriptor<?> descriptor,
+			final Iterable<String> paths) {
+		if (descriptor == null) throw new NullPointerException("descriptor");
+		if (paths == null) throw new NullPointerException("paths");
+
+		Node root = new Node();
+		for (String path : paths) {
+			if (path == null) throw new NullPointerException("path");
+			root.add(descriptor, path, path.split("\\."), 0);
+		}
+		return root.build();
+	}
+
+	/** Returns whether this mask includes all fields. */
+	public boolean isAll() {
+		return fields == null;
+	}
+
+	/** Returns whether this mask includes a field. */
+	public boolean includes(final String name) {
+		return fields == null || fields.containsKey(name);
+	}
+
+	/** Returns a field submask, {@link #ALL} for a whole field, or {@literal null} if excluded. */
+	@Nullable
+	public FieldMask get(final String name) {
+		return fields == null ? ALL : fields.get(name);
+	}
+
+	/** Clears message fields which are not included in this mask, returns the message. */
+	public <M extends Message> M retain(final M message) {
+		if (message == null || fields == null) {
+			return message;
+		}
+
+		for (FieldDescriptor<?, ?> field : message.descriptor().getFields()) {
+			if (field.isDiscriminator()) {
+				continue;
+			}
+
+			@SuppressWarnings("unchecked")
+			FieldDescriptor<Message, Object> unchecked = (FieldDescriptor<Message, Object>) field;
+			FieldMask submask = fields.get(field.getName());
+			if (submask == null) {
+				unchecked.set(message, null);
+			} else if (!submask.isAll()) {
+				submask.retainValue(unchecked.get(message), unchecked.getType());
+			}
+		}
+
+		return message;
+	}
+
+	@Override
+	public String toString() {
+		return fields == null ? "FieldMask{*}" : "FieldMask" + fields;
+	}
+
+	private void retainValue(@Nullable final Object value, final DataTypeDescriptor<?> descriptor) {
+		if (value == null) {
+			return;
+		}
+
+		switch (descriptor.getType()) {
+			case MESSAGE:
+				retain((Message) value);
+				break;
+			case LIST:
+				DataTypeDescriptor<?> elementd = ((ListDescriptor<?>) descriptor).getElement();
+				for (Object element : (List<?>) value) {
+					retainValue(element, elementd);
+				}
+				break;
+			case SET:
+				DataTypeDescriptor<?> selementd = ((SetDescriptor<?>) descriptor).getElement();
+				for (Object element : (Set<?>) value) {
+					retainValue(element, selementd);
+				}
+				break;
+			case MAP:
+				DataTypeDescriptor<?> valued = ((MapDescriptor<?, ?>) descriptor).getValue();
+				for (Object element : ((Map<?, ?>) value).values()) {
+					retainValue(element, valued);
+				}
+				break;
+			default:
+				break;
+		}
+	}
+
+	/** Mutable mask node used to resolve paths. */
+	private static class Node {
+		private Map<String, Node> children = new LinkedHashMap<String, Node>();
+
+		void add(final MessageDescriptor<?> descriptor, final String path, final String[] names,
+				final int index) {
+			if (children == null) {
+				// The whole field is already included.
+				return;
+			}
+
+			String name = names[index];
+			FieldDescriptor<?, ?> field = findField(descriptor, name);
+			if (field == null) {
+				throw new IllegalArgumentException("Unknown field \"" + name + "\" in " + path);
+			}
+
+			Node child = children.get(name);
+			if (child == null) {
+				child = new Node();
+				children.put(name, child);
+			}
+
+			if (index == names.length - 1) {
+				child.children = null;
+				return;
+			}
+
+			MessageDescriptor<?> message = messageOf(field.getType());
+			if (message == null) {
+				throw new IllegalArgumentException("Field \"" + name + "\" is not a message in "
+						+ path);
+			}
+			child.add(message, path, names, index + 1);
+		}
+
+		FieldMask build() {
+			if (children == null) {
+				return ALL;
+			}
+
+			Map<String, FieldMask> fields = new HashMap<String, FieldMask>();
+			for (Map.Entry<String, Node> entry : children.entrySet()) {
+				fields.put(entry.getKey(), entry.getValue().build());
+			}
+			return new FieldMask(Collections.unmodifiableMap(fields));
+		}
+
+		/** Finds a field in a message or in its subtypes. */
+		@Nullable
+		private static FieldDescriptor<?, ?> findField(final MessageDescriptor<?> descriptor,
+				final String name) {
+			FieldDescriptor<?, ?> field = descriptor.getField(name);
+			if (field != null) {
+				return field;
+			}
+
+			for (MessageDescriptor<?> subtype : descriptor.getSubtypes()) {
+				field = subtype.getField(name);
+				if (field != null) {
+					return field;
+				}
+			}
+			return null;
+		}
+
+		/** Returns a message descriptor of a type, its collection elements or map values. */
+		@Nullable
+		private static MessageDescriptor<?> messageOf(final DataTypeDescriptor<?> descriptor) {
+			switch (descriptor.getType()) {
+				case MESSAGE: return (MessageDescriptor<?>) descriptor;
+				case LIST: return messageOf(((ListDescriptor<?>) descriptor).getElement());
+				case SET: return messageOf(((SetDescriptor<?>) descriptor).getElement());
+				case MAP: return messageOf(((MapDescriptor<?, ?>) descriptor).getValue());
+				default: return null;
+			}
+		}
+	}
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef.binary;
+
+import io.pdef.Message;
+import io.pdef.TypeEnum;
+import io.pdef.descriptors.DataTypeDescriptor;
+import io.pdef.descriptors.FieldDescriptor;
+import io.pdef.descriptors.MessageDescriptor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * BinaryFields maps message fields to their tags and wire types.
+ *
+ * A field tag is its ordinal among the fields declared in its message and the inheritance
+ * level of the message, so appending a field to a base message does not shift the ordinals
+ * of its subtypes. Fields are indexed by their positions in {@link MessageDescriptor#getFields()}.
+ * Tables are created on the first read or write of a message and cached in its descriptor.
+ * Field types are resolved when a table is created, nested messages get their own tables,
+ * so self-referencing messages do not recurse.
+ */
+final class BinaryFields {
+	/** Zigzag varints, enum ordinals and bools. */
+	static final int VARINT = 0;
+	/** Little-endian floats. */
+	static final int FIXED32 = 1;
+	/** Little-endian doubles. */
+	static final int FIXED64 = 2;
+	/** Length-prefixed strings, collections and messages. */
+	static final int LENGTH = 3;
+	/** Void values, they are not written. */
+	static final int NONE = -1;
+
+	static final int WIRE_BITS = 2;
+	static final int WIRE_MASK = (1 << WIRE_BITS) - 1;
+	static final int LEVEL_BITS = 3;
+	static final int LEVEL_MASK = (1 << LEVEL_BITS) - 1;
+
+	private final FieldDescriptor<Message, Object>[] fields;
+	private final DataTypeDescriptor<Object>[] types;
+	private final int[] wireTypes;
+	private final int[] tags;
+	private final int[][] positions;
+	private final int discriminator;
+
+	/** Returns fields cached in a descriptor. */
+	static BinaryFields of(final MessageDescriptor<?> descriptor) {
+		BinaryFields fields = descriptor.getCodec(BinaryFields.class);
+		if (fields != null) {
+			return fields;
+		}
+
+		return descriptor.putCodec(BinaryFields.class, new BinaryFields(descriptor));
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private BinaryFields(final MessageDescriptor<?> descriptor) {
+		List<MessageDescriptor<?>> levels = new ArrayList<MessageDescriptor<?>>();
+		for (MessageDescriptor<?> d = descriptor; d != null; d = d.getBase()) {
+			levels.add(d);
+		}
+		if (levels.size() > LEVEL_MASK + 1) {
+			throw new BinaryFormatException("Too many inheritance levels in " + descriptor);
+		}
+		Collections.reverse(levels);
+
+		int size = descriptor.getFields().size();
+		fields = new FieldDescriptor[size];
+		types = new DataTypeDescriptor[size];
+		wireTypes = new int[size];
+		tags = new int[size];
+		positions = new int[levels.size()][];
+
+		int discriminator = -1;
+		int i = 0;
+		for (int level = 0; level < levels.size(); level++) {
+			List<? extends FieldDescriptor<?, ?>> declared = levels.get(level)
+					.getDeclaredFields();
+			positions[level] = new int[declared.size()];
+
+			for (int ordinal = 0; ordinal < declared.size(); ordinal++, i++) {
+				FieldDescriptor<Message, Object> field = (FieldDescriptor<Message, Object>)
+						declared.get(ordinal);
+				fields[i] = field;
+				types[i] = field.getType();
+				wireTypes[i] = wireType(types[i].getType());
+				tags[i] = (((ordinal << LEVEL_BITS) | level) << WIRE_BITS) | wireTypes[i];
+				positions[level][ordinal] = i;
+
+				if (field.isDiscriminator()) {
+					discriminator = i;
+				}
+			}
+		}
+		this.discriminator = discriminator;
+	}
+
+	/** Returns a wire type of a pdef type. */
+	static int wireType(final TypeEnum type) {
+		switch (type) {
+			case BOOL:
+			case INT16:
+			case INT32:
+			case INT64:
+			case DATETIME:
+			case ENUM: return VARINT;
+			case FLOAT: return FIXED32;
+			case DOUBLE: return FIXED64;
+			case STRING:
+			case LIST:
+			case SET:
+			case MAP:
+			case MESSAGE: return LENGTH;
+			case VOID: return NONE;
+			default: throw new BinaryFormatException("Unsupported type " + type);
+		}
+	}
+
+	/** Returns the number of fields. */
+	int size() {
+		return fields.length;
+	}
+
+	/** Returns the discriminator position or -1. */
+	int discriminator() {
+		return discriminator;
+	}
+
+	/** Returns a field position by its tag or -1 when the field is unknown to this schema. */
+	int position(final int tag) {
+		int key = tag >>> WIRE_BITS;
+		int level = key & LEVEL_MASK;
+		int ordinal = key >>> LEVEL_BITS;
+		if (level >= positions.length || ordinal >= positions[level].length) {
+			return -1;
+		}
+		return positions[level][ordinal];
+	}
+
+	FieldDescriptor<Message, Object> field(final int position) {
+		return fields[position];
+	}
+
+	DataTypeDescriptor<Object> type(final int position) {
+		return types[position];
+	}
+
+	int wireType(final int position) {
+		return wireTypes[position];
+	}
+
+	int tag(final int position) {
+		return tags[position];
+	}
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef.binary;
+
+import io.pdef.descriptors.DataTypeDescriptor;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * BinaryFormat parses and serializes Pdef value types from/to a compact binary encoding.
+ *
+ * Integers and datetimes are zigzag varints, floats and doubles are little-endian,
+ * enums are varint ordinals, strings are length-prefixed UTF-8. Collections and messages are
+ * length-prefixed, collections start with their element counts. Message fields are tagged
+ * with their ordinals, inheritance levels and wire types, null fields are skipped,
+ * the discriminator goes first.
+ *
+ * Ordinals are positions of fields among the fields declared in their messages, so both sides
+ * must use the same schema, except for fields and enum values appended to it. Older readers
+ * skip unknown fields, read unknown enum values as nulls and drop them from collections.
+ * Nulls are written as empty values and are not supported in collections.
+ */
+public class BinaryFormat {
+	private static final BinaryFormat INSTANCE = new BinaryFormat();
+
+	protected BinaryFormat() {}
+
+	public static BinaryFormat instance() {
+		return INSTANCE;
+	}
+
+	// Serialization.
+
+	/** Serializes an object into a byte array. */
+	public <T> byte[] write(final T object, final DataTypeDescriptor<T> descriptor) {
+		try {
+			BinaryWriter writer = new BinaryWriter();
+			writer.write(object, descriptor);
+			return writer.toByteArray();
+		} catch (Exception e) {
+			throw propagate(e);
+		}
+	}
+
+	/** Writes an object to an output stream, does not close the stream. */
+	public <T> void write(final OutputStream stream, final T object,
+			final DataTypeDescriptor<T> descriptor) {
+		try {
+			BinaryWriter writer = new BinaryWriter();
+			writer.write(object, descriptor);
+			writer.writeTo(stream);
+			stream.flush();
+		} catch (Exception e) {
+			throw propagate(e);
+		}
+	}
+
+	/**
+	 * Writes an object into a byte buffer at its position, advances the position.
+	 * Throws an exception and keeps the position if the object does not fit.
+	 */
+	public <T> void write(final ByteBuffer buffer, final T object,
+			final DataTypeDescriptor<T> descriptor) {
+		try {
+			BinaryWriter writer = new BinaryWriter();
+			writer.write(object, descriptor);
+			if (writer.size() > buffer.remaining()) {
+				throw new BinaryFormatException("Object does not fit into the buffer, "
+						+ writer.size() + " bytes");
+			}
+			buffer.put(writer.toByteArray());
+		} catch (Exception e) {
+			throw propagate(e);
+		}
+	}
+
+	// Parsing.
+
+	/** Parses an object from a byte array. */
+	public <T> T read(final byte[] bytes, final DataTypeDescriptor<T> descriptor) {
+		if (bytes == null) throw new NullPointerException("bytes");
+		return read(bytes, 0, bytes.length, descriptor);
+	}
+
+	/** Parses an object from a byte array range, the range must hold exactly one object. */
+	public <T> T read(final byte[] bytes, final int offset, final int length,
+			final DataTypeDescriptor<T> descriptor) {
+		try {
+			BinaryReader reader = new BinaryReader(bytes, offset, length);
+			T result = reader.read(descriptor);
+			if (!reader.isDone()) {
+				throw new BinaryFormatException("Trailing data after an object");
+			}
+			return result;
+		} catch (Exception e) {
+			throw propagate(e);
+		}
+	}
+
+	/**
+	 * Parses one object from an input stream, does not read past it and does not close
+	 * the stream, so objects written one after another can be read back in order.
+	 * Returns {@literal null} at the end of the stream.
+	 */
+	public <T> T read(final InputStream stream, final DataTypeDescriptor<T> descriptor) {
+		try {
+			byte[] frame = BinaryReader.readFrame(stream, descriptor);
+			if (frame == null) {
+				return null;
+			}
+			return new BinaryReader(frame, 0, frame.length).read(descriptor);
+		} catch (Exception e) {
+			throw propagate(e);
+		}
+	}
+
+	/**
+	 * Parses one object from the remaining bytes of a buffer, advances the position
+	 * past it. Heap buffers are parsed in place, direct and mapped buffers are copied.
+	 */
+	public <T> T read(final ByteBuffer buffer, final DataTypeDescriptor<T> descriptor) {
+		try {
+			if (buffer.hasArray()) {
+				int offset = buffer.arrayOffset() + buffer.position();
+				BinaryReader reader = new BinaryReader(buffer.array(), offset, buffer.remaining());
+				T result = reader.read(descriptor);
+				buffer.position(buffer.position() + reader.position() - offset);
+				return result;
+			}
+
+			ByteBuffer duplicate = buffer.duplicate();
+			byte[] bytes = new byte[duplicate.remaining()];
+			duplicate.get(bytes);
+
+			BinaryReader reader = new BinaryReader(bytes, 0, bytes.length);
+			T result = reader.read(descriptor);
+			buffer.position(buffer.position() + reader.position());
+			return result;
+		} catch (Exception e) {
+			throw propagate(e);
+		}
+	}
+
+	protected BinaryFormatException propagate(final Exception e) {
+		if (e instanceof BinaryFormatException) {
+			return (BinaryFormatException) e;
+		}
+		return new BinaryFormatException(e);
+	}
+}
@@ -0,0 +1,442 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef.binary;
+
+import io.pdef.Message;
+import io.pdef.collections.DoubleArrayList;
+import io.pdef.collections.IntArrayList;
+import io.pdef.collections.LongArrayList;
+import io.pdef.descriptors.*;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.*;
+
+/**
+ * BinaryReader decodes pdef values from a byte array range.
+ *
+ * Message fields with unknown tags are skipped by their wire types, so readers
+ * with older schemas can read messages with appended fields. Enum values unknown
+ * to this schema are read as nulls and are skipped in collections and maps.
+ */
+final class BinaryReader {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final byte[] buffer;
+	private final int limit;
+	private int pos;
+
+	BinaryReader(final byte[] buffer, final int offset, final int length) {
+		if (offset < 0 || length < 0 || offset + length > buffer.length) {
+			throw new IndexOutOfBoundsException();
+		}
+
+		this.buffer = buffer;
+		this.pos = offset;
+		this.limit = offset + length;
+	}
+
+	/** Returns the current position. */
+	int position() {
+		return pos;
+	}
+
+	/** Returns whether all bytes have been read. */
+	boolean isDone() {
+		return pos == limit;
+	}
+
+	/** Reads a top-level value, returns {@literal null} when there are no bytes. */
+	@Nullable
+	<T> T read(final DataTypeDescriptor<T> descriptor) {
+		if (pos == limit) {
+			return null;
+		}
+
+		@SuppressWarnings("unchecked")
+		T result = (T) readValue(descriptor);
+		return result;
+	}
+
+	/**
+	 * Reads the bytes of one top-level value from a stream without reading past it,
+	 * returns {@literal null} at the end of the stream.
+	 */
+	@Nullable
+	static byte[] readFrame(final InputStream stream, final DataTypeDescriptor<?> descriptor)
+			throws IOException {
+		int wireType = BinaryFields.wireType(descriptor.getType());
+		if (wireType == BinaryFields.NONE) {
+			return new byte[0];
+		}
+
+		int first = stream.read();
+		if (first == -1) {
+			return null;
+		}
+
+		byte[] frame;
+		switch (wireType) {
+			case BinaryFields.FIXED32:
+				frame = new byte[4];
+				frame[0] = (byte) first;
+				readFully(stream, frame, 1, 3);
+				return frame;
+
+			case BinaryFields.FIXED64:
+				frame = new byte[8];
+				frame[0] = (byte) first;
+				readFully(stream, frame, 1, 7);
+				return frame;
+
+			case BinaryFields.VARINT:
+				frame = new byte[10];
+				int size = 0;
+				int b = first;
+				while (true) {
+					frame[size++] = (byte) b;
+					if ((b & 0x80) == 0) {
+						return Arrays.copyOf(frame, size);
+					} else if (size == frame.length) {
+						throw new BinaryFormatException("Malformed varint");
+					}
+					b = readByte(stream);
+				}
+
+			default:
+				// Length-prefixed values.
+				int length = 0;
+				int shift = 0;
+				int prefix = 0;
+				b = first;
+				while (true) {
+					length |= (b & 0x7f) << shift;
+					prefix++;
+					if ((b & 0x80) == 0) {
+						break;
+					} else if (prefix == 5) {
+						throw new BinaryFormatException("Malformed length");
+					}
+					shift += 7;
+					b = readByte(stream);
+				}
+				if (length < 0) {
+					throw new BinaryFormatException("Malformed length");
+				}
+
+				frame = new byte[prefix + length];
+				int value = length;
+				for (int i = 0; i < prefix; i++) {
+					frame[i] = (byte) (i == prefix - 1 ? value : (value & 0x7f) | 0x80);
+					value >>>= 7;
+				}
+				readFully(stream, frame, prefix, length);
+				return frame;
+		}
+	}
+
+	private static int readByte(final InputStream stream) throws IOException {
+		int b = stream.read();
+		if (b == -1) {
+			throw new BinaryFormatException("Unexpected end of input");
+		}
+		return b;
+	}
+
+	private static void readFully(final InputStream stream, final byte[] bytes, int offset,
+			int length) throws IOException {
+		while (length > 0) {
+			int n = stream.read(bytes, offset, length);
+			if (n == -1) {
+				throw new BinaryFormatException("Unexpected end of input");
+			}
+			offset += n;
+			length -= n;
+		}
+	}
+
+	private Object readValue(final DataTypeDescriptor<?> descriptor) {
+		switch (descriptor.getType()) {
+			case BOOL: return readRawByte() != 0;
+			case INT16: return (short) unzigzag(readVarint());
+			case INT32: return unzigzag(readVarint());
+			case INT64: return unzigzag64(readVarint64());
+			case FLOAT: return Float.intBitsToFloat(readFixed32());
+			case DOUBLE: return Double.longBitsToDouble(readFixed64());
+			case STRING: return readString();
+			case DATETIME: return new Date(unzigzag64(readVarint64()));
+			case ENUM: return readEnum((EnumDescriptor<?>) descriptor);
+			case LIST: return readList((ListDescriptor<?>) descriptor);
+			case SET: return readSet((SetDescriptor<?>) descriptor);
+			case MAP: return readMap((MapDescriptor<?, ?>) descriptor);
+			case MESSAGE: return readMessage((MessageDescriptor<?>) descriptor);
+			case VOID: return null;
+			default: throw new BinaryFormatException("Unsupported descriptor " + descriptor);
+		}
+	}
+
+	private String readString() {
+		int length = readVarint();
+		checkLength(length);
+
+		String result = new String(buffer, pos, length, UTF8);
+		pos += length;
+		return result;
+	}
+
+	@Nullable
+	private Enum<?> readEnum(final EnumDescriptor<?> descriptor) {
+		int ordinal = readVarint();
+		List<? extends Enum<?>> values = descriptor.getValues();
+
+		// Values unknown to this schema are read as nulls.
+		return ordinal >= 0 && ordinal < values.size() ? values.get(ordinal) : null;
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<?> readList(final ListDescriptor<?> descriptor) {
+		int end = readEnd();
+		int count = readCount();
+
+		List<?> result = descriptor.getDefault();
+		if (result instanceof IntArrayList) {
+			IntArrayList ints = (IntArrayList) result;
+			for (int i = 0; i < count; i++) {
+				ints.addInt(unzigzag(readVarint()));
+			}
+		} else if (result instanceof LongArrayList) {
+			LongArrayList longs = (LongArrayList) result;
+			for (int i = 0; i < count; i++) {
+				longs.addLong(unzigzag64(readVarint64()));
+			}
+		} else if (result instanceof DoubleArrayList) {
+			DoubleArrayList doubles = (DoubleArrayList) result;
+			for (int i = 0; i < count; i++) {
+				doubles.addDouble(Double.longBitsToDouble(readFixed64()));
+			}
+		} else {
+			DataTypeDescriptor<?> element = descriptor.getElement();
+			List<Object> list = (List<Object>) result;
+			for (int i = 0; i < count; i++) {
+				Object value = readValue(element);
+				if (value != null) {
+					list.add(value);
+				}
+			}
+		}
+
+		checkEnd(end);
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Set<?> readSet(final SetDescriptor<?> descriptor) {
+		int end = readEnd();
+		int count = readCount();
+
+		DataTypeDescriptor<?> element = descriptor.getElement();
+		Set<Object> result = (Set<Object>) descriptor.getDefault();
+		for (int i = 0; i < count; i++) {
+			Object value = readValue(element);
+			if (value != null) {
+				result.add(value);
+			}
+		}
+
+		checkEnd(end);
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<?, ?> readMap(final MapDescriptor<?, ?> descriptor) {
+		int end = readEnd();
+		int count = readCount();
+
+		DataTypeDescriptor<?> key = descriptor.getKey();
+		DataTypeDescriptor<?> value = descriptor.getValue();
+		Map<Object, Object> result = (Map<Object, Object>) descriptor.getDefault();
+		for (int i = 0; i < count; i++) {
+			Object k = readValue(key);
+			Object v = readValue(value);
+			if (k != null && v != null) {
+				result.put(k, v);
+			}
+		}
+
+		checkEnd(end);
+		return result;
+	}
+
+	private Message readMessage(MessageDescriptor<?> descriptor) {
+		int end = readEnd();
+		BinaryFields fields = BinaryFields.of(descriptor);
+		Message message;
+
+		// Mind polymorphic messages, the discriminator is written first.
+		int discriminator = fields.discriminator();
+		if (discriminator != -1 && pos < end && fields.position(peekTag()) == discriminator) {
+			readTag(fields, discriminator);
+			Enum<?> value = (Enum<?>) readValue(fields.type(discriminator));
+
+			MessageDescriptor<?> subtype = descriptor.getSubtype(value);
+			if (subtype != null) {
+				descriptor = subtype;
+				fields = BinaryFields.of(subtype);
+			}
+
+			message = descriptor.newInstance();
+			fields.field(discriminator).set(message, value);
+		} else {
+			message = descriptor.newInstance();
+		}
+
+		while (pos < end) {
+			int tag = readVarint();
+			int position = fields.position(tag);
+			int wireType = tag & BinaryFields.WIRE_MASK;
+
+			if (position == -1) {
+				// Skip fields unknown to this schema.
+				skip(wireType);
+				continue;
+			} else if (fields.wireType(position) != wireType) {
+				throw new BinaryFormatException("Wrong wire type " + wireType + " of field "
+						+ fields.field(position).getName() + " in " + descriptor);
+			}
+
+			fields.field(position).set(message, readValue(fields.type(position)));
+		}
+
+		checkEnd(end);
+		return message;
+	}
+
+	private void readTag(final BinaryFields fields, final int position) {
+		int wireType = readVarint() & BinaryFields.WIRE_MASK;
+		if (wireType != fields.wireType(position)) {
+			throw new BinaryFormatException("Wrong wire type " + wireType + " of field "
+					+ fields.field(position).getName());
+		}
+	}
+
+	private int peekTag() {
+		int start = pos;
+		int tag = readVarint();
+		pos = start;
+		return tag;
+	}
+
+	private void skip(final int wireType) {
+		switch (wireType) {
+			case BinaryFields.VARINT: readVarint64(); break;
+			case BinaryFields.FIXED32: readFixed32(); break;
+			case BinaryFields.FIXED64: readFixed64(); break;
+			default:
+				int length = readVarint();
+				checkLength(length);
+				pos += length;
+		}
+	}
+
+	/** Reads a value length, returns the value end position. */
+	private int readEnd() {
+		int length = readVarint();
+		checkLength(length);
+		return pos + length;
+	}
+
+	private int readCount() {
+		int count = readVarint();
+		if (count < 0 || count > limit - pos) {
+			// Every element takes at least one byte.
+			throw new BinaryFormatException("Bad collection size " + count);
+		}
+		return count;
+	}
+
+	private void checkLength(final int length) {
+		if (length < 0 || length > limit - pos) {
+			throw new BinaryFormatException("Unexpected end of input");
+		}
+	}
+
+	private void checkEnd(final int end) {
+		if (pos != end) {
+			throw new BinaryFormatException("Value length mismatch");
+		}
+	}
+
+	private int readRawByte() {
+		if (pos == limit) {
+			throw new BinaryFormatException("Unexpected end of input");
+		}
+		return buffer[pos++];
+	}
+
+	private int readVarint() {
+		int result = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = readRawByte();
+			result |= (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				return result;
+			}
+		}
+		throw new BinaryFormatException("Malformed varint");
+	}
+
+	private long readVarint64() {
+		long result = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = readRawByte();
+			result |= (long) (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				return result;
+			}
+		}
+		throw new BinaryFormatException("Malformed varint");
+	}
+
+	private int readFixed32() {
+		if (limit - pos < 4) {
+			throw new BinaryFormatException("Unexpected end of input");
+		}
+
+		byte[] buffer = this.buffer;
+		int pos = this.pos;
+		this.pos = pos + 4;
+		return (buffer[pos] & 0xff)
+				| (buffer[pos + 1] & 0xff) << 8
+				| (buffer[pos + 2] & 0xff) << 16
+				| (buffer[pos + 3] & 0xff) << 24;
+	}
+
+	private long readFixed64() {
+		long low = readFixed32() & 0xffffffffL;
+		return low | (long) readFixed32() << 32;
+	}
+
+	private static int unzigzag(final int value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	private static long unzigzag64(final long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef.binary;
+
+import io.pdef.Message;
+import io.pdef.collections.DoubleArrayList;
+import io.pdef.collections.IntArrayList;
+import io.pdef.collections.LongArrayList;
+import io.pdef.descriptors.*;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.*;
+
+/**
+ * BinaryWriter encodes pdef values into a growable byte array.
+ *
+ * Length-prefixed values reserve one byte for their length and are shifted
+ * when the length does not fit into it, so small nested values are written in one pass.
+ */
+final class BinaryWriter {
+	private static final int INITIAL_SIZE = 256;
+
+	private byte[] buffer;
+	private int size;
+
+	BinaryWriter() {
+		buffer = new byte[INITIAL_SIZE];
+	}
+
+	/** Returns the number of written bytes. */
+	int size() {
+		return size;
+	}
+
+	/** Returns a copy of the written bytes. */
+	byte[] toByteArray() {
+		return Arrays.copyOf(buffer, size);
+	}
+
+	/** Writes the written bytes to a stream. */
+	void writeTo(final OutputStream stream) throws IOException {
+		stream.write(buffer, 0, size);
+	}
+
+	/** Writes a top-level value, nothing is written for null and void values. */
+	void write(@Nullable final Object value, final DataTypeDescriptor<?> descriptor) {
+		if (value == null) {
+			return;
+		}
+		writeValue(value, descriptor);
+	}
+
+	private void writeValue(final Object value, final DataTypeDescriptor<?> descriptor) {
+		switch (descriptor.getType()) {
+			case BOOL: writeByte((Boolean) value ? 1 : 0); break;
+			case INT16: writeVarint(zigzag((Short) value)); break;
+			case INT32: writeVarint(zigzag((Integer) value)); break;
+			case INT64: writeVarint64(zigzag64((Long) value)); break;
+			case FLOAT: writeFixed32(Float.floatToIntBits((Float) value)); break;
+			case DOUBLE: writeFixed64(Double.doubleToLongBits((Double) value)); break;
+			case STRING: writeString((String) value); break;
+			case DATETIME: writeVarint64(zigzag64(((Date) value).getTime())); break;
+			case ENUM: writeVarint(((Enum<?>) value).ordinal()); break;
+			case LIST: writeList((List<?>) value, ((ListDescriptor<?>) descriptor).getElement());
+				break;
+			case SET: writeSet((Set<?>) value, ((SetDescriptor<?>) descriptor).getElement());
+				break;
+			case MAP: writeMap((Map<?, ?>) value, (MapDescriptor<?, ?>) descriptor); break;
+			case MESSAGE: writeMessage((Message) value); break;
+			case VOID: break;
+			default: throw new BinaryFormatException("Unsupported descriptor " + descriptor);
+		}
+	}
+
+	private void writeList(final List<?> list, final DataTypeDescriptor<?> element) {
+		int start = beginLength();
+		int count = list.size();
+		writeVarint(count);
+
+		if (list instanceof IntArrayList) {
+			IntArrayList ints = (IntArrayList) list;
+			for (int i = 0; i < count; i++) {
+				writeVarint(zigzag(ints.getInt(i)));
+			}
+		} else if (list instanceof LongArrayList) {
+			LongArrayList longs = (LongArrayList) list;
+			for (int i = 0; i < count; i++) {
+				writeVarint64(zigzag64(longs.getLong(i)));
+			}
+		} else if (list instanceof DoubleArrayList) {
+			DoubleArrayList doubles = (DoubleArrayList) list;
+			for (int i = 0; i < count; i++) {
+				writeFixed64(Double.doubleToLongBits(doubles.getDouble(i)));
+			}
+		} else {
+			for (Object e : list) {
+				writeElement(e, element);
+			}
+		}
+		endLength(start);
+	}
+
+	private void writeSet(final Set<?> set, final DataTypeDescriptor<?> element) {
+		int start = beginLength();
+		writeVarint(set.size());
+		for (Object e : set) {
+			writeElement(e, element);
+		}
+		endLength(start);
+	}
+
+	private void writeMap(final Map<?, ?> map, final MapDescriptor<?, ?> descriptor) {
+		DataTypeDescriptor<?> key = descriptor.getKey();
+		DataTypeDescriptor<?> value = descriptor.getValue();
+
+		int start = beginLength();
+		writeVarint(map.size());
+		for (Map.Entry<?, ?> e : map.entrySet()) {
+			writeElement(e.getKey(), key);
+			writeElement(e.getValue(), value);
+		}
+		endLength(start);
+	}
+
+	private void writeElement(@Nullable final Object element,
+			final DataTypeDescriptor<?> descriptor) {
+		if (element == null) {
+			throw new BinaryFormatException("Null collection elements are not supported");
+		}
+		writeValue(element, descriptor);
+	}
+
+	private void writeMessage(final Message message) {
+		// Mind polymorphic messages.
+		BinaryFields fields = BinaryFields.of(message.descriptor());
+		int start = beginLength();
+
+		// The discriminator goes first to read the subtype before its fields.
+		int discriminator = fields.discriminator();
+		if (discriminator != -1) {
+			writeField(fields, discriminator, message);
+		}
+
+		for (int i = 0; i < fields.size(); i++) {
+			if (i != discriminator) {
+				writeField(fields, i, message);
+			}
+		}
+		endLength(start);
+	}
+
+	private void writeField(final BinaryFields fields, final int position,
+			final Message message) {
+		Object value = fields.field(position).get(message);
+		if (value == null) {
+			// Skip null fields.
+			return;
+		}
+
+		writeVarint(fields.tag(position));
+		writeValue(value, fields.type(position));
+	}
+
+	private void writeString(final String s) {
+		int length = s.length();
+		int utf8 = utf8Length(s, length);
+		writeVarint(utf8);
+		ensure(utf8);
+
+		byte[] buffer = this.buffer;
+		int pos = size;
+		int i = 0;
+		while (i < length && s.charAt(i) < 0x80) {
+			buffer[pos++] = (byte) s.charAt(i++);
+		}
+
+		for (; i < length; i++) {
+			char c = s.charAt(i);
+			if (c < 0x80) {
+				buffer[pos++] = (byte) c;
+			} else if (c < 0x800) {
+				buffer[pos++] = (byte) (0xc0 | (c >> 6));
+				buffer[pos++] = (byte) (0x80 | (c & 0x3f));
+			} else if (isSurrogatePair(s, i, length)) {
+				int cp = Character.toCodePoint(c, s.charAt(++i));
+				buffer[pos++] = (byte) (0xf0 | (cp >> 18));
+				buffer[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+				buffer[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+				buffer[pos++] = (byte) (0x80 | (cp & 0x3f));
+			} else if (isSurrogate(c)) {
+				// Replace unpaired surrogates as String.getBytes does.
+				buffer[pos++] = '?';
+			} else {
+				buffer[pos++] = (byte) (0xe0 | (c >> 12));
+				buffer[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+				buffer[pos++] = (byte) (0x80 | (c & 0x3f));
+			}
+		}
+		size = pos;
+	}
+
+	private static int utf8Length(final String s, final int length) {
+		int result = length;
+		for (int i = 0; i < length; i++) {
+			char c = s.charAt(i);
+			if (c < 0x80) {
+				continue;
+			} else if (c < 0x800) {
+				result += 1;
+			} else if (isSurrogatePair(s, i, length)) {
+				result += 2;
+				i++;
+			} else if (!isSurrogate(c)) {
+				result += 2;
+			}
+		}
+		return result;
+	}
+
+	private static boolean isSurrogatePair(final String s, final int i, final int length) {
+		return Character.isHighSurrogate(s.charAt(i)) && i + 1 < length
+				&& Character.isLowSurrogate(s.charAt(i + 1));
+	}
+
+	private static boolean isSurrogate(final char c) {
+		return c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE;
+	}
+
+	/** Reserves a byte for a length, returns its position. */
+	private int beginLength() {
+		ensure(1);
+		return size++;
+	}
+
+	/** Writes the length of the value after a reserved byte, shifts the value if needed. */
+	private void endLength(final int start) {
+		int length = size - start - 1;
+		if (length < 0x80) {
+			buffer[start] = (byte) length;
+			return;
+		}
+
+		int extra = varintSize(length) - 1;
+		ensure(extra);
+		System.arraycopy(buffer, start + 1, buffer, start + 1 + extra, length);
+
+		int end = size + extra;
+		size = start;
+		writeVarint(length);
+		size = end;
+	}
+
+	private void writeByte(final int b) {
+		ensure(1);
+		buffer[size++] = (byte) b;
+	}
+
+	private void writeVarint(int value) {
+		ensure(5);
+		byte[] buffer = this.buffer;
+		int pos = size;
+		while ((value & ~0x7f) != 0) {
+			buffer[pos++] = (byte) ((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		buffer[pos++] = (byte) value;
+		size = pos;
+	}
+
+	private void writeVarint64(long value) {
+		ensure(10);
+		byte[] buffer = this.buffer;
+		int pos = size;
+		while ((value & ~0x7fL) != 0) {
+			buffer[pos++] = (byte) ((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		buffer[pos++] = (byte) value;
+		size = pos;
+	}
+
+	private void writeFixed32(final int value) {
+		ensure(4);
+		byte[] buffer = this.buffer;
+		int pos = size;
+		buffer[pos] = (byte) value;
+		buffer[pos + 1] = (byte) (value >> 8);
+		buffer[pos + 2] = (byte) (value >> 16);
+		buffer[pos + 3] = (byte) (value >> 24);
+		size = pos + 4;
+	}
+
+	private void writeFixed64(final long value) {
+		writeFixed32((int) value);
+		writeFixed32((int) (value >> 32));
+	}
+
+	private void ensure(final int n) {
+		if (size + n <= buffer.length) {
+			return;
+		}
+		buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + n));
+	}
+
+	static int varintSize(final int value) {
+		if ((value & (~0 << 7)) == 0) return 1;
+		if ((value & (~0 << 14)) == 0) return 2;
+		if ((value & (~0 << 21)) == 0) return 3;
+		if ((value & (~0 << 28)) == 0) return 4;
+		return 5;
+	}
+
+	static int zigzag(final int value) {
+		return (value << 1) ^ (value >> 31);
+	}
+
+	static long zigzag64(final long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef.collections;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * DoubleArrayList is a list of Doubles backed by a double array, it does not allow nulls.
+ * The primitive methods, i.e. {@link #getDouble(int)}, do not box elements.
+ */
+public class DoubleArrayList extends PrimitiveArrayList<Double> {
+	private static final long serialVersionUID = 1L;
+	private static final double[] EMPTY = new double[0];
+
+	private double[] elements;
+
+	/** Creates an empty list. */
+	public DoubleArrayList() {
+		elements = EMPTY;
+	}
+
+	/** Creates an empty list with an initial capacity. */
+	public DoubleArrayList(final int capacity) {
+		if (capacity < 0) throw new IllegalArgumentException("Negative capacity " + capacity);
+		elements = capacity == 0 ? EMPTY : new double[capacity];
+	}
+
+	/** Creates a list which contains elements of a collection. */
+	public DoubleArrayList(final Collection<? extends Double> collection) {
+		if (collection instanceof DoubleArrayList) {
+			DoubleArrayList another = (DoubleArrayList) collection;
+			elements = Arrays.copyOf(another.elements, another.size);
+			size = another.size;
+		} else {
+			elements = new double[collection.size()];
+			for (Double element : collection) {
+				addDouble(checkElement(element));
+			}
+		}
+	}
+
+	/** Returns an element without boxing it. */
+	public double getDouble(final int index) {
+		checkIndex(index);
+		return elements[index];
+	}
+
+	/** Replaces an element, returns the previous one. */
+	public double setDouble(final int index, final double element) {
+		checkIndex(index);
+		double previous = elements[index];
+		elements[index] = element;
+		return previous;
+	}
+
+	/** Appends an element without boxing it. */
+	public void addDouble(final double element) {
+		if (size == elements.length) {
+			ensureCapacity(size + 1);
+		}
+		elements[size++] = element;
+		modCount++;
+	}
+
+	/** Returns a copy of the elements as an array. */
+	public double[] toDoubleArray() {
+		return Arrays.copyOf(elements, size);
+	}
+
+	@Override
+	public Double get(final int index) {
+		return getDouble(index);
+	}
+
+	@Override
+	public Double set(final int index, final Double element) {
+		return setDouble(index, checkElement(element));
+	}
+
+	@Override
+	public int indexOf(final Object o) {
+		if (!(o instanceof Double)) {
+			return -1;
+		}
+
+		double value = (Double) o;
+		for (int i = 0; i < size; i++) {
+			if (Double.doubleToLongBits(elements[i]) == Double.doubleToLongBits(value)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public boolean equals(final Object o) {
+		if (this == o) return true;
+		if (!(o instanceof DoubleArrayList)) return super.equals(o);
+
+		DoubleArrayList another = (DoubleArrayList) o;
+		if (size != another.size) {
+			return false;
+		}
+
+		for (int i = 0; i < size; i++) {
+			long bits = Double.doubleToLongBits(elements[i]);
+			if (bits != Double.doubleToLongBits(another.elements[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = 1;
+		for (int i = 0; i < size; i++) {
+			double value = elements[i];
+			hash = 31 * hash + hash(value);
+		}
+		return hash;
+	}
+
+	@Override
+	Object elements() {
+		return elements;
+	}
+
+	@Override
+	int capacity() {
+		return elements.length;
+	}
+
+	@Override
+	void resize(final int capacity) {
+		elements = Arrays.copyOf(elements, capacity);
+	}
+
+	@Override
+	void store(final int index, final Double element) {
+		elements[index] = element;
+	}
+
+	private static int hash(final double value) {
+		long bits = Double.doubleToLongBits(value);
+		return (int) (bits ^ (bits >>> 32));
+	}
+}
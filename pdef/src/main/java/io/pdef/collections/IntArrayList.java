@@ -0,0 +1,157 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef.collections;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * IntArrayList is a list of Integers backed by a int array, it does not allow nulls.
+ * The primitive methods, i.e. {@link #getInt(int)}, do not box elements.
+ */
+public class IntArrayList extends PrimitiveArrayList<Integer> {
+	private static final long serialVersionUID = 1L;
+	private static final int[] EMPTY = new int[0];
+
+	private int[] elements;
+
+	/** Creates an empty list. */
+	public IntArrayList() {
+		elements = EMPTY;
+	}
+
+	/** Creates an empty list with an initial capacity. */
+	public IntArrayList(final int capacity) {
+		if (capacity < 0) throw new IllegalArgumentException("Negative capacity " + capacity);
+		elements = capacity == 0 ? EMPTY : new int[capacity];
+	}
+
+	/** Creates a list which contains elements of a collection. */
+	public IntArrayList(final Collection<? extends Integer> collection) {
+		if (collection instanceof IntArrayList) {
+			IntArrayList another = (IntArrayList) collection;
+			elements = Arrays.copyOf(another.elements, another.size);
+			size = another.size;
+		} else {
+			elements = new int[collection.size()];
+			for (Integer element : collection) {
+				addInt(checkElement(element));
+			}
+		}
+	}
+
+	/** Returns an element without boxing it. */
+	public int getInt(final int index) {
+		checkIndex(index);
+		return elements[index];
+	}
+
+	/** Replaces an element, returns the previous one. */
+	public int setInt(final int index, final int element) {
+		checkIndex(index);
+		int previous = elements[index];
+		elements[index] = element;
+		return previous;
+	}
+
+	/** Appends an element without boxing it. */
+	public void addInt(final int element) {
+		if (size == elements.length) {
+			ensureCapacity(size + 1);
+		}
+		elements[size++] = element;
+		modCount++;
+	}
+
+	/** Returns a copy of the elements as an array. */
+	public int[] toIntArray() {
+		return Arrays.copyOf(elements, size);
+	}
+
+	@Override
+	public Integer get(final int index) {
+		return getInt(index);
+	}
+
+	@Override
+	public Integer set(final int index, final Integer element) {
+		return setInt(index, checkElement(element));
+	}
+
+	@Override
+	public int indexOf(final Object o) {
+		if (!(o instanceof Integer)) {
+			return -1;
+		}
+
+		int value = (Integer) o;
+		for (int i = 0; i < size; i++) {
+			if (elements[i] == value) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public boolean equals(final Object o) {
+		if (this == o) return true;
+		if (!(o instanceof IntArrayList)) return super.equals(o);
+
+		IntArrayList another = (IntArrayList) o;
+		if (size != another.size) {
+			return false;
+		}
+
+		for (int i = 0; i < size; i++) {
+			if (elements[i] != another.elements[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = 1;
+		for (int i = 0; i < size; i++) {
+			int value = elements[i];
+			hash = 31 * hash + value;
+		}
+		return hash;
+	}
+
+	@Override
+	Object elements() {
+		return elements;
+	}
+
+	@Override
+	int capacity() {
+		return elements.length;
+	}
+
+	@Override
+	void resize(final int capacity) {
+		elements = Arrays.copyOf(elements, capacity);
+	}
+
+	@Override
+	void store(final int index, final Integer element) {
+		elements[index] = element;
+	}
+}
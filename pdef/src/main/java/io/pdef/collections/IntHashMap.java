@@ -0,0 +1,317 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef.collections;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * IntHashMap is a map with integer keys in an open-addressing table of ints,
+ * it does not allow null keys. The primitive methods, i.e. {@link #get(int)}, do not box keys.
+ */
+public class IntHashMap<V> extends AbstractMap<Integer, V> implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private int[] keys;
+	private Object[] values;
+	private byte[] states;
+	private int size;
+	private int used;
+	private transient int modCount;
+	private transient Set<Map.Entry<Integer, V>> entrySet;
+
+	/** Creates an empty map. */
+	public IntHashMap() {
+		this(8);
+	}
+
+	/** Creates an empty map which holds an expected number of entries without resizing. */
+	public IntHashMap(final int expectedSize) {
+		if (expectedSize < 0) throw new IllegalArgumentException("Negative size " + expectedSize);
+		int capacity = capacity(expectedSize);
+		keys = new int[capacity];
+		values = new Object[capacity];
+		states = new byte[capacity];
+	}
+
+	/** Creates a map which contains entries of another map. */
+	public IntHashMap(final Map<? extends Integer, ? extends V> map) {
+		this(map.size());
+		putAll(map);
+	}
+
+	/** Returns whether this map contains a key. */
+	public boolean containsKey(final int key) {
+		return indexOf(key) != -1;
+	}
+
+	/** Returns a value by a key or {@literal null}. */
+	@SuppressWarnings("unchecked")
+	public V get(final int key) {
+		int i = indexOf(key);
+		return i == -1 ? null : (V) values[i];
+	}
+
+	/** Puts a value without boxing its key, returns the previous value. */
+	@SuppressWarnings("unchecked")
+	public V put(final int key, final V value) {
+		int i = indexOf(key);
+		if (i != -1) {
+			V previous = (V) values[i];
+			values[i] = value;
+			return previous;
+		}
+
+		if ((used + 1) * 4 > keys.length * 3) {
+			rehash(size + 1);
+		}
+
+		int mask = keys.length - 1;
+		i = mix(key) & mask;
+		while (states[i] == IntHashSet.FULL) {
+			i = (i + 1) & mask;
+		}
+
+		if (states[i] == IntHashSet.FREE) {
+			used++;
+		}
+		keys[i] = key;
+		values[i] = value;
+		states[i] = IntHashSet.FULL;
+		size++;
+		modCount++;
+		return null;
+	}
+
+	/** Removes a key, returns its value or {@literal null}. */
+	@SuppressWarnings("unchecked")
+	public V remove(final int key) {
+		int i = indexOf(key);
+		if (i == -1) {
+			return null;
+		}
+
+		V previous = (V) values[i];
+		removeAt(i);
+		return previous;
+	}
+
+	@Override
+	public boolean containsKey(final Object key) {
+		return key instanceof Integer && containsKey(((Integer) key).intValue());
+	}
+
+	@Override
+	public V get(final Object key) {
+		return key instanceof Integer ? get(((Integer) key).intValue()) : null;
+	}
+
+	@Override
+	public V put(final Integer key, final V value) {
+		if (key == null) throw new NullPointerException("Null key");
+		return put(key.intValue(), value);
+	}
+
+	@Override
+	public V remove(final Object key) {
+		return key instanceof Integer ? remove(((Integer) key).intValue()) : null;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(states, IntHashSet.FREE);
+		Arrays.fill(values, null);
+		size = 0;
+		used = 0;
+		modCount++;
+	}
+
+	@Override
+	public Set<Map.Entry<Integer, V>> entrySet() {
+		Set<Map.Entry<Integer, V>> result = entrySet;
+		if (result == null) {
+			entrySet = result = new AbstractSet<Map.Entry<Integer, V>>() {
+				@Override
+				public Iterator<Map.Entry<Integer, V>> iterator() {
+					return new EntryIterator();
+				}
+
+				@Override
+				public int size() {
+					return size;
+				}
+
+				@Override
+				public void clear() {
+					IntHashMap.this.clear();
+				}
+			};
+		}
+		return result;
+	}
+
+	/** Returns a table capacity, a power of two, for an expected size at 3/4 load. */
+	static int capacity(final int expectedSize) {
+		int capacity = 8;
+		while (capacity * 3 < expectedSize * 4 + 4) {
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+
+	/** Spreads key bits, sequential keys otherwise cluster in linear probing. */
+	static int mix(final int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private int indexOf(final int key) {
+		int mask = keys.length - 1;
+		int i = mix(key) & mask;
+		while (states[i] != IntHashSet.FREE) {
+			if (states[i] == IntHashSet.FULL && keys[i] == key) {
+				return i;
+			}
+			i = (i + 1) & mask;
+		}
+		return -1;
+	}
+
+	private void removeAt(final int i) {
+		states[i] = IntHashSet.REMOVED;
+		values[i] = null;
+		size--;
+		modCount++;
+	}
+
+	private void rehash(final int expectedSize) {
+		int[] oldKeys = keys;
+		Object[] oldValues = values;
+		byte[] oldStates = states;
+
+		int capacity = capacity(expectedSize);
+		keys = new int[capacity];
+		values = new Object[capacity];
+		states = new byte[capacity];
+		used = size;
+
+		int mask = capacity - 1;
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (oldStates[j] != IntHashSet.FULL) {
+				continue;
+			}
+
+			int i = mix(oldKeys[j]) & mask;
+			while (states[i] == IntHashSet.FULL) {
+				i = (i + 1) & mask;
+			}
+			keys[i] = oldKeys[j];
+			values[i] = oldValues[j];
+			states[i] = IntHashSet.FULL;
+		}
+	}
+
+	private class EntryIterator implements Iterator<Map.Entry<Integer, V>> {
+		private int next = advance(0);
+		private int last = -1;
+		private int expectedModCount = modCount;
+
+		@Override
+		public boolean hasNext() {
+			return next < keys.length;
+		}
+
+		@Override
+		public Map.Entry<Integer, V> next() {
+			if (modCount != expectedModCount) throw new ConcurrentModificationException();
+			if (next >= keys.length) throw new NoSuchElementException();
+
+			last = next;
+			next = advance(next + 1);
+			return new Entry(last);
+		}
+
+		@Override
+		public void remove() {
+			if (last == -1) throw new IllegalStateException();
+			if (modCount != expectedModCount) throw new ConcurrentModificationException();
+
+			removeAt(last);
+			last = -1;
+			expectedModCount = modCount;
+		}
+
+		private int advance(int i) {
+			while (i < keys.length && states[i] != IntHashSet.FULL) {
+				i++;
+			}
+			return i;
+		}
+	}
+
+	private class Entry implements Map.Entry<Integer, V> {
+		private final int index;
+
+		private Entry(final int index) {
+			this.index = index;
+		}
+
+		@Override
+		public Integer getKey() {
+			return keys[index];
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public V getValue() {
+			return (V) values[index];
+		}
+
+		@Override
+		public V setValue(final V value) {
+			V previous = getValue();
+			values[index] = value;
+			return previous;
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			if (!(o instanceof Map.Entry)) return false;
+
+			Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+			Object value = getValue();
+			return getKey().equals(entry.getKey())
+					&& (value == null ? entry.getValue() == null : value.equals(entry.getValue()));
+		}
+
+		@Override
+		public int hashCode() {
+			Object value = getValue();
+			return keys[index] ^ (value == null ? 0 : value.hashCode());
+		}
+
+		@Override
+		public String toString() {
+			return keys[index] + "=" + getValue();
+		}
+	}
+}
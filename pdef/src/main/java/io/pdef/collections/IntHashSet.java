@@ -0,0 +1,236 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef.collections;
+
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * IntHashSet is a set of integers in an open-addressing table of ints, it does not allow nulls.
+ * The primitive methods, i.e. {@link #containsInt(int)}, do not box elements.
+ */
+public class IntHashSet extends AbstractSet<Integer> implements Serializable {
+	private static final long serialVersionUID = 1L;
+	static final byte FREE = 0;
+	static final byte FULL = 1;
+	static final byte REMOVED = 2;
+
+	private int[] keys;
+	private byte[] states;
+	private int size;
+	private int used;
+	private transient int modCount;
+
+	/** Creates an empty set. */
+	public IntHashSet() {
+		this(8);
+	}
+
+	/** Creates an empty set which holds an expected number of elements without resizing. */
+	public IntHashSet(final int expectedSize) {
+		if (expectedSize < 0) throw new IllegalArgumentException("Negative size " + expectedSize);
+		int capacity = IntHashMap.capacity(expectedSize);
+		keys = new int[capacity];
+		states = new byte[capacity];
+	}
+
+	/** Creates a set which contains elements of a collection. */
+	public IntHashSet(final Collection<? extends Integer> collection) {
+		this(collection.size());
+		addAll(collection);
+	}
+
+	/** Returns whether this set contains an element. */
+	public boolean containsInt(final int element) {
+		return indexOf(element) != -1;
+	}
+
+	/** Adds an element without boxing it, returns false if it is already present. */
+	public boolean addInt(final int element) {
+		if (indexOf(element) != -1) {
+			return false;
+		}
+
+		if ((used + 1) * 4 > keys.length * 3) {
+			rehash(size + 1);
+		}
+
+		int mask = keys.length - 1;
+		int i = IntHashMap.mix(element) & mask;
+		while (states[i] == FULL) {
+			i = (i + 1) & mask;
+		}
+
+		if (states[i] == FREE) {
+			used++;
+		}
+		keys[i] = element;
+		states[i] = FULL;
+		size++;
+		modCount++;
+		return true;
+	}
+
+	/** Removes an element, returns false if it is absent. */
+	public boolean removeInt(final int element) {
+		int i = indexOf(element);
+		if (i == -1) {
+			return false;
+		}
+
+		states[i] = REMOVED;
+		size--;
+		modCount++;
+		return true;
+	}
+
+	/** Returns a copy of the elements as an array. */
+	public int[] toIntArray() {
+		int[] result = new int[size];
+		int n = 0;
+		for (int i = 0; i < keys.length; i++) {
+			if (states[i] == FULL) {
+				result[n++] = keys[i];
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public boolean contains(final Object o) {
+		return o instanceof Integer && containsInt((Integer) o);
+	}
+
+	@Override
+	public boolean add(final Integer element) {
+		if (element == null) throw new NullPointerException("Null element");
+		return addInt(element);
+	}
+
+	@Override
+	public boolean remove(final Object o) {
+		return o instanceof Integer && removeInt((Integer) o);
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void clear() {
+		for (int i = 0; i < states.length; i++) {
+			states[i] = FREE;
+		}
+		size = 0;
+		used = 0;
+		modCount++;
+	}
+
+	@Override
+	public Iterator<Integer> iterator() {
+		return new Iterator<Integer>() {
+			private int next = advance(0);
+			private int last = -1;
+			private int expectedModCount = modCount;
+
+			@Override
+			public boolean hasNext() {
+				return next < keys.length;
+			}
+
+			@Override
+			public Integer next() {
+				if (modCount != expectedModCount) throw new ConcurrentModificationException();
+				if (next >= keys.length) throw new NoSuchElementException();
+
+				last = next;
+				next = advance(next + 1);
+				return keys[last];
+			}
+
+			@Override
+			public void remove() {
+				if (last == -1) throw new IllegalStateException();
+				if (modCount != expectedModCount) throw new ConcurrentModificationException();
+
+				states[last] = REMOVED;
+				size--;
+				last = -1;
+				expectedModCount = ++modCount;
+			}
+		};
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = 0;
+		for (int i = 0; i < keys.length; i++) {
+			if (states[i] == FULL) {
+				hash += keys[i];
+			}
+		}
+		return hash;
+	}
+
+	private int advance(int i) {
+		while (i < keys.length && states[i] != FULL) {
+			i++;
+		}
+		return i;
+	}
+
+	private int indexOf(final int element) {
+		int mask = keys.length - 1;
+		int i = IntHashMap.mix(element) & mask;
+		while (states[i] != FREE) {
+			if (states[i] == FULL && keys[i] == element) {
+				return i;
+			}
+			i = (i + 1) & mask;
+		}
+		return -1;
+	}
+
+	private void rehash(final int expectedSize) {
+		int[] oldKeys = keys;
+		byte[] oldStates = states;
+
+		int capacity = IntHashMap.capacity(expectedSize);
+		keys = new int[capacity];
+		states = new byte[capacity];
+		used = size;
+
+		int mask = capacity - 1;
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (oldStates[j] != FULL) {
+				continue;
+			}
+
+			int i = IntHashMap.mix(oldKeys[j]) & mask;
+			while (states[i] == FULL) {
+				i = (i + 1) & mask;
+			}
+			keys[i] = oldKeys[j];
+			states[i] = FULL;
+		}
+	}
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef.collections;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * LongArrayList is a list of Longs backed by a long array, it does not allow nulls.
+ * The primitive methods, i.e. {@link #getLong(int)}, do not box elements.
+ */
+public class LongArrayList extends PrimitiveArrayList<Long> {
+	private static final long serialVersionUID = 1L;
+	private static final long[] EMPTY = new long[0];
+
+	private long[] elements;
+
+	/** Creates an empty list. */
+	public LongArrayList() {
+		elements = EMPTY;
+	}
+
+	/** Creates an empty list with an initial capacity. */
+	public LongArrayList(final int capacity) {
+		if (capacity < 0) throw new IllegalArgumentException("Negative capacity " + capacity);
+		elements = capacity == 0 ? EMPTY : new long[capacity];
+	}
+
+	/** Creates a list which contains elements of a collection. */
+	public LongArrayList(final Collection<? extends Long> collection) {
+		if (collection instanceof LongArrayList) {
+			LongArrayList another = (LongArrayList) collection;
+			elements = Arrays.copyOf(another.elements, another.size);
+			size = another.size;
+		} else {
+			elements = new long[collection.size()];
+			for (Long element : collection) {
+				addLong(checkElement(element));
+			}
+		}
+	}
+
+	/** Returns an element without boxing it. */
+	public long getLong(final int index) {
+		checkIndex(index);
+		return elements[index];
+	}
+
+	/** Replaces an element, returns the previous one. */
+	public long setLong(final int index, final long element) {
+		checkIndex(index);
+		long previous = elements[index];
+		elements[index] = element;
+		return previous;
+	}
+
+	/** Appends an element without boxing it. */
+	public void addLong(final long element) {
+		if (size == elements.length) {
+			ensureCapacity(size + 1);
+		}
+		elements[size++] = element;
+		modCount++;
+	}
+
+	/** Returns a copy of the elements as an array. */
+	public long[] toLongArray() {
+		return Arrays.copyOf(elements, size);
+	}
+
+	@Override
+	public Long get(final int index) {
+		return getLong(index);
+	}
+
+	@Override
+	public Long set(final int index, final Long element) {
+		return setLong(index, checkElement(element));
+	}
+
+	@Override
+	public int indexOf(final Object o) {
+		if (!(o instanceof Long)) {
+			return -1;
+		}
+
+		long value = (Long) o;
+		for (int i = 0; i < size; i++) {
+			if (elements[i] == value) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public boolean equals(final Object o) {
+		if (this == o) return true;
+		if (!(o instanceof LongArrayList)) return super.equals(o);
+
+		LongArrayList another = (LongArrayList) o;
+		if (size != another.size) {
+			return false;
+		}
+
+		for (int i = 0; i < size; i++) {
+			if (elements[i] != another.elements[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = 1;
+		for (int i = 0; i < size; i++) {
+			long value = elements[i];
+			hash = 31 * hash + (int) (value ^ (value >>> 32));
+		}
+		return hash;
+	}
+
+	@Override
+	Object elements() {
+		return elements;
+	}
+
+	@Override
+	int capacity() {
+		return elements.length;
+	}
+
+	@Override
+	void resize(final int capacity) {
+		elements = Arrays.copyOf(elements, capacity);
+	}
+
+	@Override
+	void store(final int index, final Long element) {
+		elements[index] = element;
+	}
+}
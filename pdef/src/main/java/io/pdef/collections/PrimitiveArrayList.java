@@ -0,0 +1,112 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef.collections;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * PrimitiveArrayList is a base for lists backed by primitive arrays, it does not allow nulls.
+ * Subclasses store and load elements, the base shifts and grows their arrays.
+ */
+abstract class PrimitiveArrayList<T> extends AbstractList<T>
+		implements RandomAccess, Serializable {
+	private static final long serialVersionUID = 1L;
+
+	int size;
+
+	/** Returns the backing array. */
+	abstract Object elements();
+
+	/** Returns the length of the backing array. */
+	abstract int capacity();
+
+	/** Replaces the backing array with its copy of a new length. */
+	abstract void resize(int capacity);
+
+	/** Stores an unboxed element at an index within the capacity. */
+	abstract void store(int index, T element);
+
+	@Override
+	public boolean add(final T element) {
+		checkElement(element);
+		ensureCapacity(size + 1);
+		store(size++, element);
+		modCount++;
+		return true;
+	}
+
+	@Override
+	public void add(final int index, final T element) {
+		if (index < 0 || index > size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+		}
+
+		checkElement(element);
+		ensureCapacity(size + 1);
+		Object elements = elements();
+		System.arraycopy(elements, index, elements, index + 1, size - index);
+		store(index, element);
+		size++;
+		modCount++;
+	}
+
+	@Override
+	public T remove(final int index) {
+		T previous = get(index);
+		Object elements = elements();
+		System.arraycopy(elements, index + 1, elements, index, size - index - 1);
+		size--;
+		modCount++;
+		return previous;
+	}
+
+	@Override
+	public boolean contains(final Object o) {
+		return indexOf(o) != -1;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void clear() {
+		size = 0;
+		modCount++;
+	}
+
+	final void checkIndex(final int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+		}
+	}
+
+	final void ensureCapacity(final int required) {
+		int capacity = capacity();
+		if (required > capacity) {
+			resize(Math.max(required, capacity + (capacity >> 1) + 4));
+		}
+	}
+
+	static <T> T checkElement(final T element) {
+		if (element == null) throw new NullPointerException("Null element");
+		return element;
+	}
+}
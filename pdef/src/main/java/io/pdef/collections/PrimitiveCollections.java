@@ -0,0 +1,50 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef.collections;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * PrimitiveCollections replaces collections which do not allow nulls with boxed ones.
+ *
+ * Primitive lists, int sets and enum sets do not allow nulls, but JSON collections may
+ * contain nulls, and unknown enum values are read as nulls. Readers replace such collections
+ * with array lists and hash sets when they read a null element, so nulls are kept.
+ */
+public final class PrimitiveCollections {
+	private PrimitiveCollections() {}
+
+	/** Returns a list which allows nulls, copies a primitive list into an array list. */
+	public static <T> List<T> nullable(final List<T> list) {
+		if (list instanceof PrimitiveArrayList) {
+			return new ArrayList<T>(list);
+		}
+		return list;
+	}
+
+	/** Returns a set which allows nulls, copies an int or enum set into a hash set. */
+	public static <T> Set<T> nullable(final Set<T> set) {
+		if (set instanceof IntHashSet || set instanceof EnumSet) {
+			return new HashSet<T>(set);
+		}
+		return set;
+	}
+}
@@ -18,15 +18,37 @@ package io.pdef.descriptors;
 
 import io.pdef.TypeEnum;
 
+import javax.annotation.Nullable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 public abstract class DataTypeDescriptor<T> extends Descriptor<T> {
+	private final ConcurrentMap<Class<?>, Object> codecs;
+
 	protected DataTypeDescriptor(final TypeEnum type, final Class<T> javaClass) {
 		super(type, javaClass);
 
 		if (!type.isDataType()) {
 			throw new IllegalArgumentException("Type must be a data type, not " + type);
 		}
+
+		codecs = new ConcurrentHashMap<Class<?>, Object>(4, 0.75f, 1);
 	}
 
 	/** Returns the default value. */
 	public abstract T getDefault();
+
+	/** Returns a format codec cached in this descriptor by its class or {@literal null}. */
+	@Nullable
+	public <C> C getCodec(final Class<C> cls) {
+		return cls.cast(codecs.get(cls));
+	}
+
+	/** Caches a format codec in this descriptor unless present, returns the cached codec. */
+	public <C> C putCodec(final Class<C> cls, final C codec) {
+		if (codec == null) throw new NullPointerException("codec");
+
+		Object existing = codecs.putIfAbsent(cls, codec);
+		return existing != null ? cls.cast(existing) : codec;
+	}
 }
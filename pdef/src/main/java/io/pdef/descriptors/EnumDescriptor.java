@@ -18,14 +18,16 @@ package io.pdef.descriptors;
 
 import io.pdef.TypeEnum;
 
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
 
 /** EnumDescriptor holds enum values and parsing/serialization methods. */
 public class EnumDescriptor<T extends Enum<T>> extends DataTypeDescriptor<T> {
 	private final List<T> values;
-	private final Map<String, T> namesToValues;
+	private final String[] names;
+
+	/** Open addressing hash table of values by their case-insensitive names. */
+	private final Object[] table;
+	private final int mask;
 
 	public static <T extends Enum<T>> EnumDescriptor<T> of(final Class<T> javaClass) {
 		return new EnumDescriptor<T>(javaClass);
@@ -35,7 +37,25 @@ public class EnumDescriptor<T extends Enum<T>> extends DataTypeDescriptor<T> {
 		super(TypeEnum.ENUM, javaClass);
 
 		values = ImmutableCollections.list(javaClass.getEnumConstants());
-		namesToValues = ImmutableCollections.map(valuesToMap(values));
+		names = new String[values.size()];
+		for (T value : values) {
+			names[value.ordinal()] = toLowerCase(value.name());
+		}
+
+		int size = 2;
+		while (size < values.size() * 2) {
+			size <<= 1;
+		}
+
+		table = new Object[size];
+		mask = size - 1;
+		for (T value : values) {
+			int i = hash(value.name()) & mask;
+			while (table[i] != null) {
+				i = (i + 1) & mask;
+			}
+			table[i] = value;
+		}
 	}
 
 	@Override
@@ -48,13 +68,42 @@ public class EnumDescriptor<T extends Enum<T>> extends DataTypeDescriptor<T> {
 		return values;
 	}
 
-	/** Returns an enum value by its name or {@literal null}. */
+	/** Returns a lowercase enum value name. */
+	public String getName(final T value) {
+		return names[value.ordinal()];
+	}
+
+	/** Returns an enum value by its case-insensitive name or {@literal null}. */
+	@SuppressWarnings("unchecked")
 	public T getValue(final String name) {
 		if (name == null) {
 			return null;
 		}
-		String uppercased = name.toUpperCase();
-		return namesToValues.get(uppercased);
+
+		for (int i = hash(name) & mask; table[i] != null; i = (i + 1) & mask) {
+			T value = (T) table[i];
+			if (matches(names[value.ordinal()], name)) {
+				return value;
+			}
+		}
+		return null;
+	}
+
+	/** Returns an enum value by its case-insensitive name in a char buffer or {@literal null}. */
+	@SuppressWarnings("unchecked")
+	public T getValue(final char[] buffer, final int offset, final int length) {
+		int h = 0;
+		for (int i = offset; i < offset + length; i++) {
+			h = 31 * h + toLowerCase(buffer[i]);
+		}
+
+		for (int i = h & mask; table[i] != null; i = (i + 1) & mask) {
+			T value = (T) table[i];
+			if (matches(names[value.ordinal()], buffer, offset, length)) {
+				return value;
+			}
+		}
+		return null;
 	}
 
 	@Override
@@ -62,11 +111,51 @@ public class EnumDescriptor<T extends Enum<T>> extends DataTypeDescriptor<T> {
 		return null;
 	}
 
-	private static <T extends Enum<T>> Map<String, T> valuesToMap(final List<T> values) {
-		Map<String, T> temp = new LinkedHashMap<String, T>();
-		for (T value : values) {
-			temp.put(value.name().toUpperCase(), value);
+	private static boolean matches(final String name, final String s) {
+		if (name.length() != s.length()) {
+			return false;
+		}
+
+		for (int i = 0; i < s.length(); i++) {
+			if (name.charAt(i) != toLowerCase(s.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean matches(final String name, final char[] buffer, final int offset,
+			final int length) {
+		if (name.length() != length) {
+			return false;
+		}
+
+		for (int i = 0; i < length; i++) {
+			if (name.charAt(i) != toLowerCase(buffer[offset + i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** Returns an ASCII case-insensitive hash code. */
+	private static int hash(final String s) {
+		int h = 0;
+		for (int i = 0; i < s.length(); i++) {
+			h = 31 * h + toLowerCase(s.charAt(i));
+		}
+		return h;
+	}
+
+	private static char toLowerCase(final char c) {
+		return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+	}
+
+	private static String toLowerCase(final String s) {
+		char[] chars = new char[s.length()];
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = toLowerCase(s.charAt(i));
 		}
-		return temp;
+		return new String(chars);
 	}
 }
@@ -17,6 +17,9 @@
 package io.pdef.descriptors;
 
 import io.pdef.TypeEnum;
+import io.pdef.collections.DoubleArrayList;
+import io.pdef.collections.IntArrayList;
+import io.pdef.collections.LongArrayList;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -37,8 +40,19 @@ public class ListDescriptor<T> extends DataTypeDescriptor<List<T>> {
 		return element;
 	}
 
+	/**
+	 * Returns a new list, int32, int64 and double elements are stored in primitive arrays.
+	 * They do not allow nulls, readers replace them with array lists to keep null elements,
+	 * see {@link io.pdef.collections.PrimitiveCollections}.
+	 */
 	@Override
+	@SuppressWarnings("unchecked")
 	public List<T> getDefault() {
-		return new ArrayList<T>();
+		switch (element.getType()) {
+			case INT32: return (List<T>) new IntArrayList();
+			case INT64: return (List<T>) new LongArrayList();
+			case DOUBLE: return (List<T>) new DoubleArrayList();
+			default: return new ArrayList<T>();
+		}
 	}
 }
@@ -17,6 +17,7 @@
 package io.pdef.descriptors;
 
 import io.pdef.TypeEnum;
+import io.pdef.collections.IntHashMap;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -45,8 +46,13 @@ public class MapDescriptor<K, V> extends DataTypeDescriptor<Map<K, V>> {
 		return value;
 	}
 
+	/** Returns a new map, int32 keys are stored in an int table. */
 	@Override
+	@SuppressWarnings("unchecked")
 	public Map<K, V> getDefault() {
+		if (key.getType() == TypeEnum.INT32) {
+			return (Map<K, V>) new IntHashMap<V>();
+		}
 		return new HashMap<K, V>();
 	}
 }
@@ -17,7 +17,9 @@
 package io.pdef.descriptors;
 
 import io.pdef.TypeEnum;
+import io.pdef.collections.IntHashSet;
 
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -37,8 +39,18 @@ public class SetDescriptor<T> extends DataTypeDescriptor<Set<T>> {
 		return element;
 	}
 
+	/**
+	 * Returns a new set, int32 elements are stored in an int table, enums in an EnumSet.
+	 * They do not allow nulls, readers replace them with hash sets to keep null elements,
+	 * see {@link io.pdef.collections.PrimitiveCollections}.
+	 */
 	@Override
+	@SuppressWarnings("unchecked")
 	public Set<T> getDefault() {
-		return new HashSet<T>();
+		switch (element.getType()) {
+			case INT32: return (Set<T>) new IntHashSet();
+			case ENUM: return (Set<T>) EnumSet.noneOf((Class) element.getJavaClass());
+			default: return new HashSet<T>();
+		}
 	}
 }
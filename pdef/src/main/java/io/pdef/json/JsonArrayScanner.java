@@ -0,0 +1,184 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef.json;
+
+import java.util.Arrays;
+
+/**
+ * JsonArrayScanner finds element boundaries of a top-level JSON array in UTF-8 bytes.
+ *
+ * It only tracks nesting, strings, escapes and comments, elements themselves are validated
+ * when parsed, so the parser must reject data after an element, i.e. {@code [1 2]}.
+ * Multibyte UTF-8 sequences never contain ASCII bytes, so they are skipped as string content.
+ *
+ * When comments are allowed, line and block comments are skipped as whitespace,
+ * otherwise a slash is left in an element for the parser to reject.
+ */
+final class JsonArrayScanner {
+	private JsonArrayScanner() {}
+
+	/**
+	 * Returns element bounds as pairs of start and end offsets, the ends are exclusive and
+	 * surrounding whitespace and comments are trimmed.
+	 */
+	static int[] scan(final byte[] bytes, final int offset, final int length,
+			final boolean comments) {
+		int end = offset + length;
+		int i = skipWhitespace(bytes, offset, end, comments);
+		if (i == end || bytes[i] != '[') {
+			throw new JsonFormatException("Bad JSON string, failed to read an array");
+		}
+
+		int[] bounds = new int[32];
+		int size = 0;
+
+		i = skipWhitespace(bytes, i + 1, end, comments);
+		if (i < end && bytes[i] == ']') {
+			checkEnd(bytes, i + 1, end, comments);
+			return new int[0];
+		}
+
+		int depth = 0;
+		int start = i;
+		int last = -1;
+		for (; i < end; i++) {
+			byte b = bytes[i];
+			switch (b) {
+				case '"':
+					i = skipString(bytes, i + 1, end);
+					last = i;
+					break;
+				case '[':
+				case '{':
+					depth++;
+					last = i;
+					break;
+				case '}':
+				case ']':
+					if (depth == 0 && b == ']') {
+						if (last == -1) {
+							throw new JsonFormatException("Bad JSON string, empty array element");
+						}
+						if (size + 2 > bounds.length) {
+							bounds = Arrays.copyOf(bounds, bounds.length * 2);
+						}
+						bounds[size++] = start;
+						bounds[size++] = last + 1;
+						checkEnd(bytes, i + 1, end, comments);
+						return Arrays.copyOf(bounds, size);
+					}
+					if (--depth < 0) {
+						throw new JsonFormatException("Bad JSON string, unbalanced brackets");
+					}
+					last = i;
+					break;
+				case ',':
+					if (depth > 0) {
+						break;
+					}
+					if (last == -1) {
+						throw new JsonFormatException("Bad JSON string, empty array element");
+					}
+					if (size + 2 > bounds.length) {
+						bounds = Arrays.copyOf(bounds, bounds.length * 2);
+					}
+					bounds[size++] = start;
+					bounds[size++] = last + 1;
+					start = skipWhitespace(bytes, i + 1, end, comments);
+					i = start - 1;
+					last = -1;
+					break;
+				case ' ':
+				case '\t':
+				case '\r':
+				case '\n':
+					break;
+				case '/':
+					if (comments) {
+						i = skipComment(bytes, i, end) - 1;
+					} else {
+						last = i;
+					}
+					break;
+				default:
+					last = i;
+					break;
+			}
+		}
+
+		throw new JsonFormatException("Bad JSON string, unexpected end of an array");
+	}
+
+	/** Returns the offset of a closing quote. */
+	private static int skipString(final byte[] bytes, int i, final int end) {
+		for (; i < end; i++) {
+			byte b = bytes[i];
+			if (b == '\\') {
+				i++;
+			} else if (b == '"') {
+				return i;
+			}
+		}
+		throw new JsonFormatException("Bad JSON string, unexpected end of a string");
+	}
+
+	/** Returns the offset after a comment which starts with a slash at {@code i}. */
+	private static int skipComment(final byte[] bytes, int i, final int end) {
+		if (i + 1 < end && bytes[i + 1] == '/') {
+			for (i += 2; i < end; i++) {
+				if (bytes[i] == '\n' || bytes[i] == '\r') {
+					return i + 1;
+				}
+			}
+			return end;
+		}
+
+		if (i + 1 < end && bytes[i + 1] == '*') {
+			for (i += 2; i + 1 < end; i++) {
+				if (bytes[i] == '*' && bytes[i + 1] == '/') {
+					return i + 2;
+				}
+			}
+			throw new JsonFormatException("Bad JSON string, unexpected end of a comment");
+		}
+
+		throw new JsonFormatException("Bad JSON string, malformed comment");
+	}
+
+	private static int skipWhitespace(final byte[] bytes, int i, final int end,
+			final boolean comments) {
+		while (i < end) {
+			byte b = bytes[i];
+			if (b == '/' && comments) {
+				i = skipComment(bytes, i, end);
+				continue;
+			}
+			if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+				break;
+			}
+			i++;
+		}
+		return i;
+	}
+
+	private static void checkEnd(final byte[] bytes, final int i, final int end,
+			final boolean comments) {
+		if (skipWhitespace(bytes, i, end, comments) != end) {
+			throw new JsonFormatException("Bad JSON string, unexpected data after an array");
+		}
+	}
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef.json;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/** Input stream which reads the remaining bytes of a direct or mapped byte buffer. */
+class JsonByteBufferInputStream extends InputStream {
+	private final ByteBuffer buffer;
+
+	JsonByteBufferInputStream(final ByteBuffer buffer) {
+		if (buffer == null) throw new NullPointerException("buffer");
+		this.buffer = buffer;
+	}
+
+	@Override
+	public int read() {
+		return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+	}
+
+	@Override
+	public int read(final byte[] b, final int off, final int len) {
+		if (len == 0) {
+			return 0;
+		}
+
+		int remaining = buffer.remaining();
+		if (remaining == 0) {
+			return -1;
+		}
+
+		int n = Math.min(len, remaining);
+		buffer.get(b, off, n);
+		return n;
+	}
+
+	@Override
+	public long skip(final long n) {
+		int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+		buffer.position(buffer.position() + skipped);
+		return skipped;
+	}
+
+	@Override
+	public int available() {
+		return buffer.remaining();
+	}
+}
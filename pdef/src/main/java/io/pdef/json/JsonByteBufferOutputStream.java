@@ -0,0 +1,81 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef.json;
+
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Output stream which writes into a byte buffer, optionally replacing it with a larger one.
+ * A grown buffer has the same directness and contains all the bytes of the original one.
+ */
+class JsonByteBufferOutputStream extends OutputStream {
+	private final boolean growable;
+	private ByteBuffer buffer;
+
+	JsonByteBufferOutputStream(final ByteBuffer buffer, final boolean growable) {
+		if (buffer == null) throw new NullPointerException("buffer");
+		this.buffer = buffer;
+		this.growable = growable;
+	}
+
+	/** Returns the current buffer, it is replaced when the original one is grown. */
+	public ByteBuffer getBuffer() {
+		return buffer;
+	}
+
+	@Override
+	public void write(final int b) {
+		ensureRemaining(1);
+		buffer.put((byte) b);
+	}
+
+	@Override
+	public void write(final byte[] b, final int off, final int len) {
+		ensureRemaining(len);
+		buffer.put(b, off, len);
+	}
+
+	private void ensureRemaining(final int len) {
+		if (buffer.remaining() >= len) {
+			return;
+		}
+		if (!growable) {
+			throw new BufferOverflowException();
+		}
+
+		int required = buffer.position() + len;
+		if (required < 0) {
+			throw new OutOfMemoryError("Buffer size exceeds the maximum integer value");
+		}
+
+		int capacity = Math.max(buffer.capacity() * 2, required);
+		if (capacity < 0) {
+			capacity = Integer.MAX_VALUE;
+		}
+
+		ByteBuffer grown = buffer.isDirect()
+				? ByteBuffer.allocateDirect(capacity)
+				: ByteBuffer.allocate(capacity);
+		grown.order(buffer.order());
+
+		buffer.flip();
+		grown.put(buffer);
+		buffer = grown;
+	}
+}
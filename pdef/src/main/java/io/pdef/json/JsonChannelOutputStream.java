@@ -0,0 +1,48 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef.json;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Output stream which writes directly into a blocking channel without copying.
+ * It does not close the channel.
+ */
+class JsonChannelOutputStream extends OutputStream {
+	private final WritableByteChannel channel;
+
+	JsonChannelOutputStream(final WritableByteChannel channel) {
+		if (channel == null) throw new NullPointerException("channel");
+		this.channel = channel;
+	}
+
+	@Override
+	public void write(final int b) throws IOException {
+		write(new byte[]{(byte) b}, 0, 1);
+	}
+
+	@Override
+	public void write(final byte[] b, final int off, final int len) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef.json;
+
+import io.pdef.Message;
+import io.pdef.descriptors.MessageDescriptor;
+
+import javax.annotation.Nullable;
+
+/**
+ * JsonCodecCompiler turns message descriptors into specialized {@link JsonMessageCodec}s,
+ * i.e. for schemas loaded at runtime.
+ *
+ * Compilers are registered with {@link JsonCodecs#register(JsonCodecCompiler)} or loaded with
+ * {@link java.util.ServiceLoader} from {@code META-INF/services/io.pdef.json.JsonCodecCompiler},
+ * they are tried before the built-in {@link JsonSourceCodecCompiler}.
+ * Compilers must be thread-safe.
+ */
+public interface JsonCodecCompiler {
+	/** Returns a codec for a message descriptor or {@literal null} when it cannot compile it. */
+	@Nullable
+	<M extends Message> JsonMessageCodec<M> compile(MessageDescriptor<M> descriptor);
+}
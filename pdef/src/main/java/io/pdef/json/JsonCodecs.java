@@ -0,0 +1,288 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef.json;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.pdef.Message;
+import io.pdef.descriptors.*;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * JsonCodecs resolves specialized {@link JsonMessageCodec}s and caches them in descriptors.
+ *
+ * A descriptor is compiled on first use by the registered compilers in order and then by
+ * the built-in {@link JsonSourceCodecCompiler}, a compiled codec is verified against the generic
+ * code on a new message and on a sample message with every field set. When no compiler
+ * succeeds, i.e. on a JRE without a Java compiler, the message is written and read by
+ * the generic code. Messages generated with {@code --json-codecs} install their own codecs
+ * when their classes are loaded.
+ *
+ * Set the {@code io.pdef.json.codecs} system property to {@code false} to disable all codecs,
+ * for example, to run the same tests against the generic code.
+ */
+public final class JsonCodecs {
+	private static final JsonFactory FACTORY = new JsonFactory();
+	private static final List<JsonCodecCompiler> COMPILERS = loadCompilers();
+	private static final List<JsonCodecCompiler> DEFAULT_COMPILERS =
+			Collections.<JsonCodecCompiler>singletonList(new JsonSourceCodecCompiler());
+	private static final boolean ENABLED = loadEnabled();
+	/** Nested sample messages are empty past this depth, so recursive messages terminate. */
+	private static final int SAMPLE_DEPTH = 2;
+
+	private JsonCodecs() {}
+
+	/** Registers a compiler, it applies to descriptors which have not been used yet. */
+	public static void register(final JsonCodecCompiler compiler) {
+		if (compiler == null) throw new NullPointerException("compiler");
+		COMPILERS.add(compiler);
+	}
+
+	/** Installs a codec for a descriptor or reverts it to the generic code when null. */
+	public static <M extends Message> void install(final MessageDescriptor<M> descriptor,
+			@Nullable final JsonMessageCodec<M> codec) {
+		if (descriptor == null) throw new NullPointerException("descriptor");
+
+		Holder holder = holder(descriptor);
+		synchronized (holder) {
+			holder.codec = codec;
+			holder.compiled = true;
+		}
+	}
+
+	/** Returns a codec for a descriptor, compiles it on first use, or {@literal null}. */
+	@Nullable
+	@SuppressWarnings("unchecked")
+	public static <M extends Message> JsonMessageCodec<M> get(
+			final MessageDescriptor<M> descriptor) {
+		if (!ENABLED) {
+			return null;
+		}
+		return (JsonMessageCodec<M>) holder(descriptor).get(descriptor);
+	}
+
+	/**
+	 * Checks that a codec writes a message byte for byte as the generic writer and reads it back,
+	 * throws a {@link JsonFormatException} otherwise.
+	 */
+	public static <M extends Message> void verify(final MessageDescriptor<M> descriptor,
+			final JsonMessageCodec<M> codec, final M message) {
+		if (descriptor == null) throw new NullPointerException("descriptor");
+		if (codec == null) throw new NullPointerException("codec");
+		if (message == null) throw new NullPointerException("message");
+
+		try {
+			StringWriter expected = new StringWriter();
+			JsonGenerator generator = FACTORY.createGenerator(expected);
+			JsonWriter.message(descriptor).writeGeneric(message, generator);
+			generator.flush();
+
+			StringWriter actual = new StringWriter();
+			generator = FACTORY.createGenerator(actual);
+			generator.writeStartObject();
+			codec.writeFields(message, generator);
+			generator.writeEndObject();
+			generator.flush();
+
+			if (!expected.toString().equals(actual.toString())) {
+				throw new JsonFormatException("Codec " + codec + " writes " + actual
+						+ " instead of " + expected);
+			}
+
+			M copy = descriptor.newInstance();
+			JsonFieldTable<M> table = JsonFieldTable.of(descriptor);
+			JsonParser parser = FACTORY.createParser(expected.toString());
+			parser.nextToken();
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String name = parser.getCurrentName();
+				int index = table.index(name);
+				parser.nextToken();
+				if (index == -1 || !codec.readField(copy, index, parser)) {
+					throw new JsonFormatException("Codec " + codec + " does not read " + name);
+				}
+			}
+
+			if (!message.equals(copy)) {
+				throw new JsonFormatException("Codec " + codec + " reads " + expected
+						+ " as " + copy);
+			}
+		} catch (IOException e) {
+			throw new JsonFormatException(e);
+		}
+	}
+
+	// VisibleForTesting
+	/** Returns the first codec which passes verification or {@literal null}. */
+	@Nullable
+	static <M extends Message> JsonMessageCodec<M> compile(final MessageDescriptor<M> descriptor,
+			final Iterable<JsonCodecCompiler> compilers) {
+		for (JsonCodecCompiler compiler : compilers) {
+			try {
+				JsonMessageCodec<M> codec = compiler.compile(descriptor);
+				if (codec != null) {
+					verify(descriptor, codec, descriptor.newInstance());
+					verify(descriptor, codec, sample(descriptor, 0));
+					return codec;
+				}
+			} catch (RuntimeException e) {
+				// Fall back to the next compiler or to the generic code.
+			} catch (LinkageError e) {
+				// Generated code cannot be loaded.
+			}
+		}
+		return null;
+	}
+
+	// VisibleForTesting
+	/** Returns a message with every field but the discriminator set to a non-default value. */
+	@SuppressWarnings("unchecked")
+	static <M extends Message> M sample(final MessageDescriptor<M> descriptor, final int depth) {
+		M message = descriptor.newInstance();
+		if (depth >= SAMPLE_DEPTH) {
+			return message;
+		}
+
+		for (FieldDescriptor<? super M, ?> field : descriptor.getFields()) {
+			Object value = field.isDiscriminator() ? null : sample(field.getType(), depth);
+			if (value != null) {
+				((FieldDescriptor<M, Object>) field).set(message, value);
+			}
+		}
+		return message;
+	}
+
+	@Nullable
+	@SuppressWarnings("unchecked")
+	private static Object sample(final DataTypeDescriptor<?> descriptor, final int depth) {
+		switch (descriptor.getType()) {
+			case BOOL: return true;
+			case INT16: return (short) -16;
+			case INT32: return -32;
+			case INT64: return -64L;
+			case FLOAT: return -1.5f;
+			case DOUBLE: return -2.5d;
+			case STRING: return "sample";
+			case DATETIME: return new Date(0);
+			case ENUM:
+				List<?> values = ((EnumDescriptor<?>) descriptor).getValues();
+				return values.isEmpty() ? null : values.get(values.size() - 1);
+			case LIST:
+				ListDescriptor<?> listd = (ListDescriptor<?>) descriptor;
+				List<Object> list = (List<Object>) listd.getDefault();
+				Object element = sample(listd.getElement(), depth);
+				if (element != null) {
+					list.add(element);
+				}
+				return list;
+			case SET:
+				SetDescriptor<?> setd = (SetDescriptor<?>) descriptor;
+				Set<Object> set = (Set<Object>) setd.getDefault();
+				element = sample(setd.getElement(), depth);
+				if (element != null) {
+					set.add(element);
+				}
+				return set;
+			case MAP:
+				MapDescriptor<?, ?> mapd = (MapDescriptor<?, ?>) descriptor;
+				Map<Object, Object> map = (Map<Object, Object>) mapd.getDefault();
+				Object key = sample(mapd.getKey(), depth);
+				Object value = sample(mapd.getValue(), depth);
+				if (key != null && value != null) {
+					map.put(key, value);
+				}
+				return map;
+			case MESSAGE: return sample((MessageDescriptor<?>) descriptor, depth + 1);
+			default: return null;
+		}
+	}
+
+	/** Returns a codec cache entry of a descriptor. */
+	static Holder holder(final MessageDescriptor<?> descriptor) {
+		Holder holder = descriptor.getCodec(Holder.class);
+		if (holder != null) {
+			return holder;
+		}
+		return descriptor.putCodec(Holder.class, new Holder());
+	}
+
+	private static boolean loadEnabled() {
+		try {
+			return !"false".equals(System.getProperty("io.pdef.json.codecs"));
+		} catch (SecurityException e) {
+			return true;
+		}
+	}
+
+	private static List<JsonCodecCompiler> loadCompilers() {
+		List<JsonCodecCompiler> compilers = new CopyOnWriteArrayList<JsonCodecCompiler>();
+		try {
+			Iterator<JsonCodecCompiler> iterator = ServiceLoader.load(JsonCodecCompiler.class,
+					JsonCodecs.class.getClassLoader()).iterator();
+			while (iterator.hasNext()) {
+				compilers.add(iterator.next());
+			}
+		} catch (ServiceConfigurationError e) {
+			// Broken providers are ignored, messages use the generic code.
+		}
+		return compilers;
+	}
+
+	/** Mutable codec cache entry, descriptors cache codecs only once. */
+	static class Holder {
+		private volatile JsonMessageCodec<?> codec;
+		private volatile boolean compiled;
+		private boolean compiling;
+
+		/**
+		 * Returns a codec or {@literal null}, compiles it on first use. Recursive messages
+		 * get {@literal null} while their codec is being verified.
+		 */
+		@Nullable
+		<M extends Message> JsonMessageCodec<?> get(final MessageDescriptor<M> descriptor) {
+			if (!compiled) {
+				synchronized (this) {
+					if (!compiled && !compiling) {
+						compiling = true;
+						try {
+							JsonMessageCodec<M> result = compile(descriptor, COMPILERS);
+							codec = result != null ? result
+									: compile(descriptor, DEFAULT_COMPILERS);
+							compiled = true;
+						} finally {
+							compiling = false;
+						}
+					}
+				}
+			}
+			return codec;
+		}
+	}
+}
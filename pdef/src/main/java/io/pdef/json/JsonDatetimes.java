@@ -0,0 +1,206 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef.json;
+
+import java.util.Date;
+
+/**
+ * JsonDatetimes formats and parses pdef datetimes in the fixed UTC layout
+ * {@code yyyy-MM-ddTHH:mm:ssZ}, for example {@code 2013-12-19T10:30:00Z}.
+ *
+ * The codec uses the proleptic Gregorian calendar, supports years from 0000 to 9999
+ * and truncates milliseconds. Dates before the Gregorian cutover on 1582-10-15 differ from
+ * the previous {@code SimpleDateFormat} codec, which used the Julian calendar for them,
+ * i.e. such dates are written and read with a shift of up to ten days.
+ *
+ * Each thread reuses one char buffer, so only the resulting strings and dates are allocated.
+ */
+public final class JsonDatetimes {
+	/** The length of a formatted datetime. */
+	public static final int LENGTH = 20;
+
+	private static final long MILLIS_PER_SECOND = 1000L;
+	private static final long MILLIS_PER_DAY = 86400000L;
+	private static final int SECONDS_PER_DAY = 86400;
+
+	/** Days from 0000-03-01 to 1970-01-01. */
+	private static final long DAYS_0000_TO_1970 = 719468L;
+	private static final long DAYS_PER_ERA = 146097L;
+
+	private static final ThreadLocal<char[]> BUFFER = new ThreadLocal<char[]>() {
+		@Override
+		protected char[] initialValue() {
+			return new char[LENGTH];
+		}
+	};
+
+	private JsonDatetimes() {}
+
+	/** Formats a date into a string. */
+	public static String format(final Date date) {
+		if (date == null) throw new NullPointerException("date");
+
+		char[] buffer = buffer();
+		format(date.getTime(), buffer, 0);
+		return new String(buffer);
+	}
+
+	/** Returns a per-thread buffer of {@link #LENGTH} chars. */
+	static char[] buffer() {
+		return BUFFER.get();
+	}
+
+	/** Formats UTC milliseconds into a buffer at an offset, writes {@link #LENGTH} chars. */
+	public static void format(final long millis, final char[] buffer, final int offset) {
+		long days = floorDiv(millis, MILLIS_PER_DAY);
+		int secondOfDay = (int) ((millis - days * MILLIS_PER_DAY) / MILLIS_PER_SECOND);
+
+		// Civil from days, see http://howardhinnant.github.io/date_algorithms.html
+		long z = days + DAYS_0000_TO_1970;
+		long era = floorDiv(z, DAYS_PER_ERA);
+		int doe = (int) (z - era * DAYS_PER_ERA);
+		int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+		int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+		int mp = (5 * doy + 2) / 153;
+		int day = doy - (153 * mp + 2) / 5 + 1;
+		int month = mp < 10 ? mp + 3 : mp - 9;
+		long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+
+		if (year < 0 || year > 9999) {
+			throw new JsonFormatException("Datetime year is out of range, " + year);
+		}
+
+		int i = offset;
+		i = write4(buffer, i, (int) year);
+		buffer[i++] = '-';
+		i = write2(buffer, i, month);
+		buffer[i++] = '-';
+		i = write2(buffer, i, day);
+		buffer[i++] = 'T';
+		i = write2(buffer, i, secondOfDay / 3600);
+		buffer[i++] = ':';
+		i = write2(buffer, i, secondOfDay / 60 % 60);
+		buffer[i++] = ':';
+		i = write2(buffer, i, secondOfDay % 60);
+		buffer[i] = 'Z';
+	}
+
+	/** Parses a date from a string, throws JsonFormatException on a malformed string. */
+	public static Date parse(final String s) {
+		if (s == null) throw new NullPointerException("s");
+		if (s.length() != LENGTH) {
+			throw malformed(s);
+		}
+
+		char[] buffer = buffer();
+		s.getChars(0, LENGTH, buffer, 0);
+		return new Date(parseMillis(buffer, 0, LENGTH));
+	}
+
+	/** Parses a date from a char buffer region. */
+	public static Date parse(final char[] buffer, final int offset, final int length) {
+		return new Date(parseMillis(buffer, offset, length));
+	}
+
+	/** Parses UTC milliseconds from a char buffer region. */
+	public static long parseMillis(final char[] buffer, final int offset, final int length) {
+		if (length != LENGTH
+				|| buffer[offset + 4] != '-'
+				|| buffer[offset + 7] != '-'
+				|| buffer[offset + 10] != 'T'
+				|| buffer[offset + 13] != ':'
+				|| buffer[offset + 16] != ':'
+				|| buffer[offset + 19] != 'Z') {
+			throw malformed(buffer, offset, length);
+		}
+
+		int year = read(buffer, offset, 4);
+		int month = read(buffer, offset + 5, 2);
+		int day = read(buffer, offset + 8, 2);
+		int hour = read(buffer, offset + 11, 2);
+		int minute = read(buffer, offset + 14, 2);
+		int second = read(buffer, offset + 17, 2);
+
+		if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+				|| hour > 23 || minute > 59 || second > 59) {
+			throw malformed(buffer, offset, length);
+		}
+
+		// Days from civil, see http://howardhinnant.github.io/date_algorithms.html
+		int y = month <= 2 ? year - 1 : year;
+		long era = floorDiv(y, 400);
+		int yoe = (int) (y - era * 400);
+		int doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+		int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+		long days = era * DAYS_PER_ERA + doe - DAYS_0000_TO_1970;
+
+		long seconds = days * SECONDS_PER_DAY + hour * 3600 + minute * 60 + second;
+		return seconds * MILLIS_PER_SECOND;
+	}
+
+	private static int read(final char[] buffer, final int offset, final int length) {
+		int result = 0;
+		for (int i = offset; i < offset + length; i++) {
+			int digit = buffer[i] - '0';
+			if (digit < 0 || digit > 9) {
+				return -1;
+			}
+			result = result * 10 + digit;
+		}
+		return result;
+	}
+
+	private static int write2(final char[] buffer, final int offset, final int value) {
+		buffer[offset] = (char) ('0' + value / 10);
+		buffer[offset + 1] = (char) ('0' + value % 10);
+		return offset + 2;
+	}
+
+	private static int write4(final char[] buffer, final int offset, final int value) {
+		write2(buffer, offset, value / 100);
+		return write2(buffer, offset + 2, value % 100);
+	}
+
+	private static int daysInMonth(final int year, final int month) {
+		switch (month) {
+			case 2: return isLeapYear(year) ? 29 : 28;
+			case 4:
+			case 6:
+			case 9:
+			case 11: return 30;
+			default: return 31;
+		}
+	}
+
+	private static boolean isLeapYear(final int year) {
+		return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+	}
+
+	private static long floorDiv(final long x, final long y) {
+		long q = x / y;
+		return (x % y != 0 && ((x ^ y) < 0)) ? q - 1 : q;
+	}
+
+	private static JsonFormatException malformed(final char[] buffer, final int offset,
+			final int length) {
+		return malformed(new String(buffer, offset, length));
+	}
+
+	private static JsonFormatException malformed(final String s) {
+		return new JsonFormatException("Failed to parse a datetime, " + s);
+	}
+}
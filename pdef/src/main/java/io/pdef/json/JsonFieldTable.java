@@ -0,0 +1,133 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef.json;
+
+import io.pdef.Message;
+import io.pdef.descriptors.FieldDescriptor;
+import io.pdef.descriptors.MessageDescriptor;
+
+import java.util.List;
+
+/**
+ * JsonFieldTable is an open addressing symbol table which resolves field names
+ * into message field descriptors and their indexes in {@link MessageDescriptor#getFields()}.
+ *
+ * Field names are compared by identity first, so Jackson canonicalized names
+ * usually resolve without a string comparison. Tables are cached in message descriptors.
+ */
+final class JsonFieldTable<M extends Message> {
+	private final String[] names;
+	private final FieldDescriptor<? super M, ?>[] fields;
+	private final int[] indexes;
+	private final int mask;
+
+	/** Returns a field table cached in a descriptor. */
+	@SuppressWarnings("unchecked")
+	static <M extends Message> JsonFieldTable<M> of(final MessageDescriptor<M> descriptor) {
+		JsonFieldTable<M> table = descriptor.getCodec(JsonFieldTable.class);
+		if (table != null) {
+			return table;
+		}
+
+		return descriptor.putCodec(JsonFieldTable.class, new JsonFieldTable<M>(descriptor));
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private JsonFieldTable(final MessageDescriptor<M> descriptor) {
+		List<FieldDescriptor<? super M, ?>> declared = descriptor.getFields();
+
+		int size = 2;
+		while (size < declared.size() * 2) {
+			size <<= 1;
+		}
+
+		names = new String[size];
+		fields = new FieldDescriptor[size];
+		indexes = new int[size];
+		mask = size - 1;
+
+		for (int index = 0; index < declared.size(); index++) {
+			FieldDescriptor<? super M, ?> field = declared.get(index);
+			String name = field.getName().intern();
+			int i = hash(name) & mask;
+			while (names[i] != null) {
+				i = (i + 1) & mask;
+			}
+
+			names[i] = name;
+			fields[i] = field;
+			indexes[i] = index;
+		}
+	}
+
+	/** Returns a field by its name or {@literal null}. */
+	FieldDescriptor<? super M, ?> get(final String name) {
+		int i = slot(name);
+		return i == -1 ? null : fields[i];
+	}
+
+	/** Returns a field index by its name or -1. */
+	int index(final String name) {
+		int i = slot(name);
+		return i == -1 ? -1 : indexes[i];
+	}
+
+	/** Returns a field by its ASCII name in a byte buffer or {@literal null}. */
+	FieldDescriptor<? super M, ?> get(final byte[] buffer, final int offset, final int length) {
+		int h = 0;
+		for (int i = offset; i < offset + length; i++) {
+			h = 31 * h + buffer[i];
+		}
+		h ^= h >>> 16;
+
+		for (int i = h & mask; names[i] != null; i = (i + 1) & mask) {
+			if (matches(names[i], buffer, offset, length)) {
+				return fields[i];
+			}
+		}
+		return null;
+	}
+
+	private int slot(final String name) {
+		for (int i = hash(name) & mask; names[i] != null; i = (i + 1) & mask) {
+			String other = names[i];
+			if (other == name || other.equals(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean matches(final String name, final byte[] buffer, final int offset,
+			final int length) {
+		if (name.length() != length) {
+			return false;
+		}
+
+		for (int i = 0; i < length; i++) {
+			if (name.charAt(i) != buffer[offset + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int hash(final String name) {
+		int h = name.hashCode();
+		return h ^ (h >>> 16);
+	}
+}
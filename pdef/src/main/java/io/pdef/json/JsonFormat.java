@@ -16,37 +16,77 @@
 
 package io.pdef.json;
 
+import io.pdef.FieldMask;
 import io.pdef.Message;
 import io.pdef.descriptors.DataTypeDescriptor;
 import io.pdef.descriptors.MessageDescriptor;
 
+import javax.annotation.Nullable;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 /** JsonFormat parses and serializes Pdef value types from/to JSON. */
 public class JsonFormat {
 	private static final JsonFormat INSTANCE = new JsonFormat();
+	private static final JsonFormat UTF8 = new JsonFormat(JsonJacksonFormat.getInstance(),
+			JsonUtf8Format.getInstance());
 	private final JsonJacksonFormat jsonFormat;
 	private final JsonObjectFormat objectFormat;
+	@Nullable private final JsonUtf8Format utf8Format;
 
 	protected JsonFormat() {
-		jsonFormat = JsonJacksonFormat.getInstance();
-		objectFormat = JsonObjectFormat.getInstance();
+		this(JsonJacksonFormat.getInstance(), null);
+	}
+
+	private JsonFormat(final JsonJacksonFormat jsonFormat,
+			@Nullable final JsonUtf8Format utf8Format) {
+		this.jsonFormat = jsonFormat;
+		this.objectFormat = JsonObjectFormat.getInstance();
+		this.utf8Format = utf8Format;
 	}
 
 	public static JsonFormat instance() {
 		return INSTANCE;
 	}
 
+	/**
+	 * Returns a format which reads and writes compact JSON strings and streams with
+	 * a Jackson-free UTF-8 codec specialized for pdef types. Indented output and the other
+	 * methods use Jackson, the output is the same as of {@link #instance()}.
+	 */
+	public static JsonFormat utf8() {
+		return UTF8;
+	}
+
+	/**
+	 * Returns a copy of this format which deduplicates decoded string values and map keys
+	 * in a pool, so messages held in caches share repeated strings. Pass the format to
+	 * an {@link io.pdef.rpc.RpcProtocol} to pool rpc arguments.
+	 */
+	public JsonFormat withStringPool(final JsonStringPool pool) {
+		if (pool == null) throw new NullPointerException("pool");
+		return new JsonFormat(jsonFormat.withStringPool(pool),
+				utf8Format == null ? null : utf8Format.withStringPool(pool));
+	}
+
 	// Serialization.
 
 	/** Serializes an object into a string. */
 	public <T> String write(final T object, final DataTypeDescriptor<T> descriptor,
 			final boolean indent) {
 		try {
+			if (utf8Format != null && !indent) {
+				return utf8Format.write(object, descriptor);
+			}
 			return jsonFormat.write(object, descriptor, indent);
 		} catch (Exception e) {
 			throw propagate(e);
@@ -57,12 +97,87 @@ public class JsonFormat {
 	public <T> void write(final OutputStream stream, final T object,
 			final DataTypeDescriptor<T> descriptor, final boolean indent) {
 		try {
+			if (utf8Format != null && !indent) {
+				utf8Format.write(stream, object, descriptor);
+				return;
+			}
 			jsonFormat.write(stream, object, descriptor, indent);
 		} catch (Exception e) {
 			throw propagate(e);
 		}
 	}
 
+	/**
+	 * Writes an object into a byte buffer at its position, advances the position.
+	 * Throws an exception and keeps the position if the object does not fit.
+	 */
+	public <T> void write(final ByteBuffer buffer, final T object,
+			final DataTypeDescriptor<T> descriptor, final boolean indent) {
+		try {
+			jsonFormat.write(buffer, object, descriptor, indent);
+		} catch (Exception e) {
+			throw propagate(e);
+		}
+	}
+
+	/**
+	 * Appends an object to a byte buffer, returns the buffer or its larger copy with
+	 * the same directness when the object does not fit, the original buffer must not be reused.
+	 */
+	public <T> ByteBuffer append(final ByteBuffer buffer, final T object,
+			final DataTypeDescriptor<T> descriptor, final boolean indent) {
+		try {
+			return jsonFormat.append(buffer, object, descriptor, indent);
+		} catch (Exception e) {
+			throw propagate(e);
+		}
+	}
+
+	/** Writes an object to a blocking channel, does not close the channel. */
+	public <T> void write(final WritableByteChannel channel, final T object,
+			final DataTypeDescriptor<T> descriptor, final boolean indent) {
+		try {
+			jsonFormat.write(channel, object, descriptor, indent);
+		} catch (Exception e) {
+			throw propagate(e);
+		}
+	}
+
+	/**
+	 * Writes an object to an output stream, splits lists, sets and maps larger than a chunk size
+	 * into chunks which are written concurrently in an executor, does not close the stream.
+	 * The object must not be modified and must not be lazily read while it is written.
+	 */
+	public <T> void write(final OutputStream stream, final T object,
+			final DataTypeDescriptor<T> descriptor, final ExecutorService executor,
+			final int chunkSize) {
+		try {
+			jsonFormat.write(stream, object, descriptor, executor, chunkSize);
+		} catch (Exception e) {
+			throw propagate(e);
+		}
+	}
+
+	/** Serializes an object into a string, writes only message fields included in a mask. */
+	public <T> String write(final T object, final DataTypeDescriptor<T> descriptor,
+			final FieldMask mask, final boolean indent) {
+		try {
+			return jsonFormat.write(object, descriptor, mask, indent);
+		} catch (Exception e) {
+			throw propagate(e);
+		}
+	}
+
+	/** Writes an object to an output stream, writes only message fields included in a mask. */
+	public <T> void write(final OutputStream stream, final T object,
+			final DataTypeDescriptor<T> descriptor, final FieldMask mask, final boolean indent) {
+		try {
+			jsonFormat.write(stream, object, descriptor, mask, indent);
+		} catch (Exception e) {
+			throw propagate(e);
+		}
+	}
+
 	/** Writes an object to a writer as a JSON string, does not close the writer. */
 	public <T> void write(final PrintWriter writer, final T object,
 			final DataTypeDescriptor<T> descriptor, final boolean indent) {
@@ -73,24 +188,145 @@ public class JsonFormat {
 		}
 	}
 
+	/**
+	 * Returns a writer which incrementally writes elements into a JSON array
+	 * in an output stream, closing the writer does not close the stream.
+	 */
+	public <T> JsonSequenceWriter<T> writeSequence(final OutputStream stream,
+			final DataTypeDescriptor<T> element, final boolean indent) {
+		try {
+			return jsonFormat.writeSequence(stream, element, indent);
+		} catch (Exception e) {
+			throw propagate(e);
+		}
+	}
+
+	/** Returns a writer which writes JSON lines, closing the writer does not close the stream. */
+	public <T> JsonSequenceWriter<T> writeLines(final OutputStream stream,
+			final DataTypeDescriptor<T> descriptor) {
+		try {
+			return jsonFormat.writeLines(stream, descriptor);
+		} catch (Exception e) {
+			throw propagate(e);
+		}
+	}
+
 	/** Parses an object from a string. */
 	public <T> T read(final String s, final DataTypeDescriptor<T> descriptor) {
 		try {
+			if (utf8Format != null) {
+				return utf8Format.read(s, descriptor);
+			}
 			return jsonFormat.read(s, descriptor);
 		} catch (Exception e) {
 			throw propagate(e);
 		}
 	}
 
+	/**
+	 * Parses an object from a string, keeps message fields unknown to the descriptors
+	 * as raw JSON in {@link JsonUnknownFields}. They are written back after the declared fields,
+	 * so services with older schemas can pass newer messages through. Unknown enum values
+	 * and discriminators are read as nulls, kept and written back in place of their fields.
+	 */
+	public <T> T readPreserving(final String s, final DataTypeDescriptor<T> descriptor) {
+		try {
+			return jsonFormat.readPreserving(s, descriptor);
+		} catch (Exception e) {
+			throw propagate(e);
+		}
+	}
+
+	/** Parses an object from an input stream, keeps unknown message fields as raw JSON. */
+	public <T> T readPreserving(final InputStream stream, final DataTypeDescriptor<T> descriptor) {
+		try {
+			return jsonFormat.readPreserving(stream, descriptor);
+		} catch (Exception e) {
+			throw propagate(e);
+		}
+	}
+
+	/**
+	 * Parses an object from UTF-8 bytes in the lazy mode. Nested message and collection fields
+	 * are kept as raw JSON, decoded on first access and written verbatim when untouched.
+	 * The bytes must not be modified while the result is used. Lazy messages are not
+	 * thread-safe until all their fields have been accessed.
+	 */
+	public <T> T readLazy(final byte[] bytes, final DataTypeDescriptor<T> descriptor) {
+		if (bytes == null) throw new NullPointerException("bytes");
+		try {
+			return jsonFormat.readLazy(bytes, 0, bytes.length, descriptor);
+		} catch (Exception e) {
+			throw propagate(e);
+		}
+	}
+
 	/** Parses an object from an input stream, does not close the input stream. */
 	public <T> T read(final InputStream stream, final DataTypeDescriptor<T> descriptor) {
 		try {
+			if (utf8Format != null) {
+				return utf8Format.read(stream, descriptor);
+			}
 			return jsonFormat.read(stream, descriptor);
 		} catch (Exception e) {
 			throw propagate(e);
 		}
 	}
 
+	/** Parses an object from a string, skips message fields which are not included in a mask. */
+	public <T> T read(final String s, final DataTypeDescriptor<T> descriptor,
+			final FieldMask mask) {
+		try {
+			return jsonFormat.read(s, descriptor, mask);
+		} catch (Exception e) {
+			throw propagate(e);
+		}
+	}
+
+	/** Parses an object from an input stream, skips message fields not included in a mask. */
+	public <T> T read(final InputStream stream, final DataTypeDescriptor<T> descriptor,
+			final FieldMask mask) {
+		try {
+			return jsonFormat.read(stream, descriptor, mask);
+		} catch (Exception e) {
+			throw propagate(e);
+		}
+	}
+
+	/**
+	 * Parses an object from the remaining UTF-8 bytes of a buffer, consumes them.
+	 * Heap buffers are parsed in place, direct and mapped buffers are read in chunks.
+	 */
+	public <T> T read(final ByteBuffer buffer, final DataTypeDescriptor<T> descriptor) {
+		try {
+			return jsonFormat.read(buffer, descriptor);
+		} catch (Exception e) {
+			throw propagate(e);
+		}
+	}
+
+	/** Parses an object from UTF-8 bytes. */
+	<T> T read(final byte[] bytes, final int offset, final int length,
+			final DataTypeDescriptor<T> descriptor) {
+		try {
+			if (utf8Format != null) {
+				return utf8Format.read(bytes, offset, length, descriptor);
+			}
+			return jsonFormat.read(bytes, offset, length, descriptor);
+		} catch (Exception e) {
+			throw propagate(e);
+		}
+	}
+
+	/**
+	 * Returns a non-blocking reader which accepts chunks of UTF-8 bytes as they arrive
+	 * and decodes a value when it is complete, i.e. to read slow request bodies without
+	 * blocking a thread.
+	 */
+	public <T> JsonPushReader<T> readIncremental(final DataTypeDescriptor<T> descriptor) {
+		return new JsonPushReader<T>(this, descriptor);
+	}
+
 	/** Parses an object from a reader, does not close the reader. */
 	public <T> T read(final Reader reader, final DataTypeDescriptor<T> descriptor) {
 		try {
@@ -100,6 +336,98 @@ public class JsonFormat {
 		}
 	}
 
+	/**
+	 * Returns an iterator which parses elements of a top-level JSON array one at a time.
+	 * The iterator closes the input stream when the array ends or when it is closed.
+	 */
+	public <T> JsonIterator<T> readIterator(final InputStream stream,
+			final DataTypeDescriptor<T> element) {
+		try {
+			return jsonFormat.readIterator(stream, element);
+		} catch (Exception e) {
+			throw propagate(e);
+		}
+	}
+
+	/**
+	 * Returns an iterator which parses elements of a top-level JSON array one at a time.
+	 * The iterator closes the reader when the array ends or when it is closed.
+	 */
+	public <T> JsonIterator<T> readIterator(final Reader reader,
+			final DataTypeDescriptor<T> element) {
+		try {
+			return jsonFormat.readIterator(reader, element);
+		} catch (Exception e) {
+			throw propagate(e);
+		}
+	}
+
+	/**
+	 * Returns an iterator which parses elements of a top-level JSON array one at a time
+	 * from the remaining UTF-8 bytes of a buffer, e.g. a file mapped with FileChannel.map.
+	 */
+	public <T> JsonIterator<T> readIterator(final ByteBuffer buffer,
+			final DataTypeDescriptor<T> element) {
+		try {
+			return jsonFormat.readIterator(buffer, element);
+		} catch (Exception e) {
+			throw propagate(e);
+		}
+	}
+
+	/**
+	 * Returns an iterator which parses JSON lines one at a time reusing one parser.
+	 * The iterator closes the input stream when it ends or when it is closed.
+	 */
+	public <T> JsonIterator<T> readLines(final InputStream stream,
+			final DataTypeDescriptor<T> descriptor) {
+		try {
+			return jsonFormat.readLines(stream, descriptor);
+		} catch (Exception e) {
+			throw propagate(e);
+		}
+	}
+
+	/**
+	 * Returns an iterator which parses JSON lines from a channel one at a time.
+	 * The iterator closes the channel when it ends or when it is closed.
+	 */
+	public <T> JsonIterator<T> readLines(final ReadableByteChannel channel,
+			final DataTypeDescriptor<T> descriptor) {
+		if (channel == null) throw new NullPointerException("channel");
+		return readLines(Channels.newInputStream(channel), descriptor);
+	}
+
+	/**
+	 * Returns an iterator which decodes JSON lines in parallel in an executor
+	 * and returns them in the input order. At most {@code window} lines are decoded ahead.
+	 * The iterator closes the input stream when it ends or when it is closed.
+	 */
+	public <T> JsonIterator<T> readLines(final InputStream stream,
+			final DataTypeDescriptor<T> descriptor, final ExecutorService executor,
+			final int window) {
+		try {
+			return jsonFormat.readLines(stream, descriptor, executor, window);
+		} catch (Exception e) {
+			throw propagate(e);
+		}
+	}
+
+	/**
+	 * Parses a top-level array from UTF-8 bytes, scans the element bounds first and then
+	 * decodes chunks of elements in parallel in an executor. Arrays which are not larger than
+	 * a chunk size are decoded in the calling thread. Line and block comments are allowed
+	 * between and inside elements, as in the other read methods.
+	 */
+	public <T> List<T> readArray(final byte[] bytes, final DataTypeDescriptor<T> element,
+			final ExecutorService executor, final int chunkSize) {
+		try {
+			return jsonFormat.readArray(bytes, 0, bytes.length, element, executor, chunkSize);
+		} catch (Exception e) {
+			throw propagate(e);
+		}
+	}
+
 	/** Converts a message into a JSON-compatible map. */
 	@SuppressWarnings("unchecked")
 	public <T extends Message> Map<String, Object> writeMessage(final T message,
@@ -111,6 +439,14 @@ public class JsonFormat {
 		}
 	}
 
+	/**
+	 * Returns a read-only live view of a message as a JSON-compatible map,
+	 * field values are converted on access. Use it to read a few keys of a large message.
+	 */
+	public Map<String, Object> viewMessage(final Message message) {
+		return new JsonMessageMap(message);
+	}
+
 	/** Converts an object into a JSON-compatible object. */
 	public <T> Object writeObject(final T object, final DataTypeDescriptor<T> descriptor) {
 		try {
@@ -0,0 +1,28 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef.json;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * JsonIterator lazily parses a sequence of JSON values, i.e. elements of a top-level array
+ * or JSON lines. Parsing errors are thrown as {@link JsonFormatException}s.
+ *
+ * Iterators close their input when it ends, when parsing fails or when they are closed.
+ */
+public interface JsonIterator<T> extends Iterator<T>, Closeable {}
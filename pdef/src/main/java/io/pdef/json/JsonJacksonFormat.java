@@ -20,25 +20,60 @@ import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.json.UTF8StreamJsonParser;
+import io.pdef.FieldMask;
 import io.pdef.Message;
+import io.pdef.TypeEnum;
+import io.pdef.collections.*;
 import io.pdef.descriptors.*;
 
-import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.io.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 class JsonJacksonFormat {
 	private static final JsonJacksonFormat INSTANCE = new JsonJacksonFormat();
 	private final JsonFactory factory;
 	private final JsonObjectFormat objectFormat;
 
+	/** UTF-8 input of a lazy read, nested messages and collections are captured as raw JSON. */
+	@Nullable private final byte[] lazySource;
+
+	/** Whether unknown message fields are kept as raw JSON instead of being skipped. */
+	private final boolean preserveUnknown;
+
+	/** Deduplicates string values, field names and map keys are canonicalized by Jackson. */
+	@Nullable private final JsonStringPool stringPool;
+
 	public static JsonJacksonFormat getInstance() {
 		return INSTANCE;
 	}
 
 	private JsonJacksonFormat() {
-		factory = new JsonFactory().enable(JsonParser.Feature.ALLOW_COMMENTS);
-		objectFormat = JsonObjectFormat.getInstance();
+		this(new JsonFactory().enable(JsonParser.Feature.ALLOW_COMMENTS), null, false, null);
+	}
+
+	private JsonJacksonFormat(final JsonFactory factory, @Nullable final byte[] lazySource,
+			final boolean preserveUnknown, @Nullable final JsonStringPool stringPool) {
+		this.factory = factory;
+		this.objectFormat = JsonObjectFormat.getInstance();
+		this.lazySource = lazySource;
+		this.preserveUnknown = preserveUnknown;
+		this.stringPool = stringPool;
+	}
+
+	/** Returns a format which deduplicates string values in a pool. */
+	public JsonJacksonFormat withStringPool(@Nullable final JsonStringPool stringPool) {
+		return new JsonJacksonFormat(factory, lazySource, preserveUnknown, stringPool);
 	}
 
 	// Serialization.
@@ -74,126 +109,143 @@ class JsonJacksonFormat {
 		generator.flush();
 	}
 
-	/** Writes an object to a writer as a JSON string, does not close the writer. */
-	public <T> void write(final PrintWriter writer, final T object,
+	/**
+	 * Writes an object into a byte buffer at its position, advances the position.
+	 * Throws {@link BufferOverflowException} and keeps the position if the object does not fit.
+	 */
+	public <T> void write(final ByteBuffer buffer, final T object,
 			final DataTypeDescriptor<T> descriptor, final boolean indent) throws IOException {
-		if (writer == null) throw new NullPointerException("writer");
+		if (buffer == null) throw new NullPointerException("buffer");
 		if (descriptor == null) throw new NullPointerException("descriptor");
 
-		JsonGenerator generator = factory.createGenerator(writer);
-		if (indent) {
-			generator.useDefaultPrettyPrinter();
+		int position = buffer.position();
+		try {
+			write(new JsonByteBufferOutputStream(buffer, false), object, descriptor, indent);
+		} catch (BufferOverflowException e) {
+			buffer.position(position);
+			throw e;
 		}
+	}
+
+	/**
+	 * Appends an object to a byte buffer, returns the buffer or its larger copy with
+	 * the same directness when the object does not fit, the original buffer must not be reused.
+	 */
+	public <T> ByteBuffer append(final ByteBuffer buffer, final T object,
+			final DataTypeDescriptor<T> descriptor, final boolean indent) throws IOException {
+		if (buffer == null) throw new NullPointerException("buffer");
+		if (descriptor == null) throw new NullPointerException("descriptor");
 
+		JsonByteBufferOutputStream out = new JsonByteBufferOutputStream(buffer, true);
+		write(out, object, descriptor, indent);
+		return out.getBuffer();
+	}
+
+	/** Writes an object to a blocking channel, does not close the channel. */
+	public <T> void write(final WritableByteChannel channel, final T object,
+			final DataTypeDescriptor<T> descriptor, final boolean indent) throws IOException {
+		if (channel == null) throw new NullPointerException("channel");
+		if (descriptor == null) throw new NullPointerException("descriptor");
+
+		write(new JsonChannelOutputStream(channel), object, descriptor, indent);
+	}
+
+	/**
+	 * Writes an object to an output stream, splits lists, sets and maps larger than a chunk size
+	 * into chunks which are written concurrently in an executor, does not close the stream.
+	 */
+	public <T> void write(final OutputStream stream, final T object,
+			final DataTypeDescriptor<T> descriptor, final ExecutorService executor,
+			final int chunkSize) throws IOException {
+		if (stream == null) throw new NullPointerException("out");
+		if (descriptor == null) throw new NullPointerException("descriptor");
+
+		// Chunks are written directly to the stream, so flush the delegate without the stream.
+		JsonGenerator delegate = factory.createGenerator(stream)
+				.disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+		JsonGenerator generator = new JsonParallelGenerator(delegate, stream, factory, executor,
+				chunkSize);
 		write(object, descriptor, generator);
 		generator.flush();
+		stream.flush();
 	}
 
-	private <T> void write(final T object, final DataTypeDescriptor<T> descriptor,
-			final JsonGenerator generator) throws IOException {
-		if (object == null) {
-			generator.writeNull();
-			return;
-		}
+	/** Serializes an object into a string, writes only fields included in a mask. */
+	public <T> String write(final T object, final DataTypeDescriptor<T> descriptor,
+			final FieldMask mask, final boolean indent) throws IOException {
+		if (descriptor == null) throw new NullPointerException("descriptor");
+		if (mask == null) throw new NullPointerException("mask");
 
-		switch (descriptor.getType()) {
-			case BOOL: generator.writeBoolean((Boolean) object); break;
-			case INT16: generator.writeNumber((Short) object); break;
-			case INT32: generator.writeNumber((Integer) object); break;
-			case INT64: generator.writeNumber((Long) object); break;
-			case FLOAT: generator.writeNumber((Float) object); break;
-			case DOUBLE: generator.writeNumber((Double) object); break;
-			case STRING: generator.writeString((String) object); break;
-			case DATETIME: writeDatetime((Date) object, generator); break;
-			case LIST: writeList((List) object, (ListDescriptor) descriptor, generator); break;
-			case SET: writeSet((Set) object, (SetDescriptor) descriptor, generator); break;
-			case MAP: writeMap((Map) object, (MapDescriptor) descriptor, generator); break;
-			case VOID: generator.writeNull(); break;
-			case ENUM: writeEnum((Enum) object, generator); break;
-			case MESSAGE: writeMessage((Message) object, generator); break;
-			default: throw new JsonFormatException("Unsupported descriptor " + descriptor);
+		StringWriter out = new StringWriter();
+		JsonGenerator generator = factory.createGenerator(out);
+		if (indent) {
+			generator.useDefaultPrettyPrinter();
 		}
-	}
 
-	private void writeDatetime(final Date date, final JsonGenerator generator) throws IOException {
-		String s = objectFormat.writeDate(date);
-		generator.writeString(s);
+		JsonWriter.of(descriptor).writeNullable(object, generator, mask);
+		generator.flush();
+		return out.toString();
 	}
 
-	private <T> void writeList(@Nonnull final List<T> object, final ListDescriptor<T> descriptor,
-			final JsonGenerator generator) throws IOException {
-		DataTypeDescriptor<T> elementd = descriptor.getElement();
+	/** Writes an object to an output stream, writes only fields included in a mask. */
+	public <T> void write(final OutputStream stream, final T object,
+			final DataTypeDescriptor<T> descriptor, final FieldMask mask, final boolean indent)
+			throws IOException {
+		if (stream == null) throw new NullPointerException("out");
+		if (descriptor == null) throw new NullPointerException("descriptor");
+		if (mask == null) throw new NullPointerException("mask");
 
-		generator.writeStartArray();
-		for (T element : object) {
-			write(element, elementd, generator);
+		JsonGenerator generator = factory.createGenerator(stream);
+		if (indent) {
+			generator.useDefaultPrettyPrinter();
 		}
-		generator.writeEndArray();
+
+		JsonWriter.of(descriptor).writeNullable(object, generator, mask);
+		generator.flush();
 	}
 
-	private <T> void writeSet(@Nonnull final Set<T> object, final SetDescriptor<T> descriptor,
-			final JsonGenerator generator) throws IOException {
-		DataTypeDescriptor<T> elementd = descriptor.getElement();
+	/** Writes an object to a writer as a JSON string, does not close the writer. */
+	public <T> void write(final PrintWriter writer, final T object,
+			final DataTypeDescriptor<T> descriptor, final boolean indent) throws IOException {
+		if (writer == null) throw new NullPointerException("writer");
+		if (descriptor == null) throw new NullPointerException("descriptor");
 
-		generator.writeStartArray();
-		for (T element : object) {
-			write(element, elementd, generator);
+		JsonGenerator generator = factory.createGenerator(writer);
+		if (indent) {
+			generator.useDefaultPrettyPrinter();
 		}
-		generator.writeEndArray();
-	}
 
-	private <K, V> void writeMap(@Nonnull final Map<K, V> object,
-			final MapDescriptor<K, V> descriptor, final JsonGenerator generator)
-			throws IOException {
-		DataTypeDescriptor<K> keyd = descriptor.getKey();
-		DataTypeDescriptor<V> valued = descriptor.getValue();
+		write(object, descriptor, generator);
+		generator.flush();
+	}
 
-		generator.writeStartObject();
-		for (Map.Entry<K, V> entry : object.entrySet()) {
-			K key = entry.getKey();
-			V value = entry.getValue();
-			if (key == null) {
-				throw new JsonFormatException("Null map key");
-			}
+	/** Returns a writer which incrementally writes an array to an output stream. */
+	public <T> JsonSequenceWriter<T> writeSequence(final OutputStream stream,
+			final DataTypeDescriptor<T> descriptor, final boolean indent) throws IOException {
+		if (stream == null) throw new NullPointerException("out");
+		if (descriptor == null) throw new NullPointerException("descriptor");
 
-			String k = objectFormat.writeMapKey(key, keyd);
-			generator.writeFieldName(k);
-			write(value, valued, generator);
+		JsonGenerator generator = factory.createGenerator(stream);
+		if (indent) {
+			generator.useDefaultPrettyPrinter();
 		}
-		generator.writeEndObject();
-	}
 
-	private <T extends Enum<T>> void writeEnum(@Nonnull final T object,
-			final JsonGenerator generator) throws IOException {
-		String value = objectFormat.writeEnum(object);
-		generator.writeString(value);
+		return new JsonSequenceWriter<T>(generator, descriptor, false);
 	}
 
-	private <T extends Message> void writeMessage(@Nonnull final T object,
-			final JsonGenerator generator) throws IOException {
-		// Mind polymorphic messages.
-		@SuppressWarnings("unchecked")
-		MessageDescriptor<T> polymorphic = (MessageDescriptor<T>) object.descriptor();
+	/** Returns a writer which writes JSON lines to an output stream. */
+	public <T> JsonSequenceWriter<T> writeLines(final OutputStream stream,
+			final DataTypeDescriptor<T> descriptor) throws IOException {
+		if (stream == null) throw new NullPointerException("out");
+		if (descriptor == null) throw new NullPointerException("descriptor");
 
-		generator.writeStartObject();
-		for (FieldDescriptor<? super T, ?> field : polymorphic.getFields()) {
-			writeMessageField(field, object, generator);
-		}
-		generator.writeEndObject();
+		JsonGenerator generator = factory.createGenerator(stream);
+		return new JsonSequenceWriter<T>(generator, descriptor, true);
 	}
 
-	private <T extends Message, V> void writeMessageField(
-			final FieldDescriptor<? super T, V> field, final T message,
+	private <T> void write(final T object, final DataTypeDescriptor<T> descriptor,
 			final JsonGenerator generator) throws IOException {
-		V value = field.get(message);
-		if (value == null) {
-			// Skip null fields.
-			return;
-		}
-
-		DataTypeDescriptor<V> type = field.getType();
-		generator.writeFieldName(field.getName());
-		write(value, type, generator);
+		JsonWriter.of(descriptor).writeNullable(object, generator);
 	}
 
 	// Parsing.
@@ -208,6 +260,15 @@ class JsonJacksonFormat {
 		return read(parser, descriptor);
 	}
 
+	/** Parses an object from UTF-8 bytes. */
+	public <T> T read(final byte[] bytes, final int offset, final int length,
+			final DataTypeDescriptor<T> descriptor) throws Exception {
+		if (bytes == null) throw new NullPointerException("bytes");
+		if (descriptor == null) throw new NullPointerException("descriptor");
+
+		return read(factory.createParser(bytes, offset, length), descriptor);
+	}
+
 	/** Parses an object from an input stream, does not close the input stream. */
 	public <T> T read(final InputStream stream, final DataTypeDescriptor<T> descriptor)
 			throws Exception {
@@ -228,20 +289,806 @@ class JsonJacksonFormat {
 		return read(parser, descriptor);
 	}
 
+	/**
+	 * Parses an object from the remaining UTF-8 bytes of a buffer, consumes them.
+	 * Heap buffers are parsed in place, direct and mapped buffers are read in chunks.
+	 */
+	public <T> T read(final ByteBuffer buffer, final DataTypeDescriptor<T> descriptor)
+			throws Exception {
+		if (buffer == null) throw new NullPointerException("buffer");
+		if (descriptor == null) throw new NullPointerException("descriptor");
+
+		return read(createParser(buffer), descriptor);
+	}
+
+	/**
+	 * Parses an object from UTF-8 bytes, captures nested message and collection fields
+	 * as raw JSON which is decoded on first access.
+	 */
+	public <T> T readLazy(final byte[] bytes, final int offset, final int length,
+			final DataTypeDescriptor<T> descriptor) throws Exception {
+		if (bytes == null) throw new NullPointerException("bytes");
+		if (descriptor == null) throw new NullPointerException("descriptor");
+
+		JsonParser parser = factory.createParser(bytes, offset, length);
+		if (!(parser instanceof UTF8StreamJsonParser)) {
+			// Byte offsets are only available for UTF-8 input.
+			return read(parser, descriptor);
+		}
+
+		JsonJacksonFormat lazy = lazySource == bytes ? this
+				: new JsonJacksonFormat(factory, bytes, preserveUnknown, stringPool);
+		return lazy.read(parser, descriptor);
+	}
+
+	/** Parses an object from a string, keeps unknown message fields as raw JSON. */
+	public <T> T readPreserving(final String s, final DataTypeDescriptor<T> descriptor)
+			throws Exception {
+		if (descriptor == null) throw new NullPointerException("descriptor");
+		if (s == null) return null;
+
+		return preserving().read(factory.createParser(s), descriptor);
+	}
+
+	/** Parses an object from an input stream, keeps unknown message fields as raw JSON. */
+	public <T> T readPreserving(final InputStream stream, final DataTypeDescriptor<T> descriptor)
+			throws Exception {
+		if (stream == null) throw new NullPointerException("input");
+		if (descriptor == null) throw new NullPointerException("descriptor");
+
+		return preserving().read(factory.createParser(stream), descriptor);
+	}
+
+	private JsonJacksonFormat preserving() {
+		return preserveUnknown ? this
+				: new JsonJacksonFormat(factory, lazySource, true, stringPool);
+	}
+
+	/** Returns an iterator over elements of a top-level array in an input stream. */
+	public <T> JsonIterator<T> readIterator(final InputStream stream,
+			final DataTypeDescriptor<T> descriptor) throws IOException {
+		if (stream == null) throw new NullPointerException("input");
+		if (descriptor == null) throw new NullPointerException("descriptor");
+
+		return new JsonParserIterator<T>(this, factory.createParser(stream), descriptor, true);
+	}
+
+	/** Returns an iterator over elements of a top-level array in a reader. */
+	public <T> JsonIterator<T> readIterator(final Reader reader,
+			final DataTypeDescriptor<T> descriptor) throws IOException {
+		if (reader == null) throw new NullPointerException("reader");
+		if (descriptor == null) throw new NullPointerException("descriptor");
+
+		return new JsonParserIterator<T>(this, factory.createParser(reader), descriptor, true);
+	}
+
+	/** Returns an iterator over elements of a top-level array in the remaining buffer bytes. */
+	public <T> JsonIterator<T> readIterator(final ByteBuffer buffer,
+			final DataTypeDescriptor<T> descriptor) throws IOException {
+		if (buffer == null) throw new NullPointerException("buffer");
+		if (descriptor == null) throw new NullPointerException("descriptor");
+
+		return new JsonParserIterator<T>(this, createParser(buffer), descriptor, true);
+	}
+
+	/** Returns an iterator over JSON lines in an input stream, reuses one parser. */
+	public <T> JsonIterator<T> readLines(final InputStream stream,
+			final DataTypeDescriptor<T> descriptor) throws IOException {
+		if (stream == null) throw new NullPointerException("input");
+		if (descriptor == null) throw new NullPointerException("descriptor");
+
+		return new JsonParserIterator<T>(this, factory.createParser(stream), descriptor, false);
+	}
+
+	/** Returns an iterator over JSON lines which are decoded in parallel in an executor. */
+	public <T> JsonIterator<T> readLines(final InputStream stream,
+			final DataTypeDescriptor<T> descriptor, final ExecutorService executor,
+			final int window) throws IOException {
+		if (stream == null) throw new NullPointerException("input");
+		if (descriptor == null) throw new NullPointerException("descriptor");
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(stream, "UTF-8"));
+		return new JsonParallelLinesIterator<T>(this, reader, descriptor, executor, window);
+	}
+
+	/** Parses a top-level array from UTF-8 bytes, decodes chunks of elements in an executor. */
+	public <T> List<T> readArray(final byte[] bytes, final int offset, final int length,
+			final DataTypeDescriptor<T> element, final ExecutorService executor,
+			final int chunkSize) throws Exception {
+		if (bytes == null) throw new NullPointerException("bytes");
+		if (element == null) throw new NullPointerException("element");
+		if (executor == null) throw new NullPointerException("executor");
+		if (chunkSize < 1) throw new IllegalArgumentException("chunkSize must be positive");
+
+		boolean comments = factory.isEnabled(JsonParser.Feature.ALLOW_COMMENTS);
+		int[] bounds = JsonArrayScanner.scan(bytes, offset, length, comments);
+		int size = bounds.length / 2;
+		Object[] result = new Object[size];
+
+		if (size <= chunkSize) {
+			readElements(bytes, bounds, 0, size, element, result);
+		} else {
+			readChunks(bytes, bounds, element, result, executor, chunkSize);
+		}
+
+		@SuppressWarnings("unchecked")
+		List<T> list = (List<T>) new ArrayList<Object>(Arrays.asList(result));
+		return list;
+	}
+
+	private <T> void readChunks(final byte[] bytes, final int[] bounds,
+			final DataTypeDescriptor<T> element, final Object[] result,
+			final ExecutorService executor, final int chunkSize) throws Exception {
+		List<Future<?>> chunks = new ArrayList<Future<?>>();
+		try {
+			for (int from = 0; from < result.length; from += chunkSize) {
+				final int start = from;
+				final int end = Math.min(result.length, from + chunkSize);
+				chunks.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						readElements(bytes, bounds, start, end, element, result);
+						return null;
+					}
+				}));
+			}
+
+			for (Future<?> chunk : chunks) {
+				chunk.get();
+			}
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			throw cause instanceof Exception ? (Exception) cause : e;
+		} finally {
+			for (Future<?> chunk : chunks) {
+				chunk.cancel(false);
+			}
+		}
+	}
+
+	private <T> void readElements(final byte[] bytes, final int[] bounds, final int from,
+			final int to, final DataTypeDescriptor<T> element, final Object[] result)
+			throws Exception {
+		for (int i = from; i < to; i++) {
+			int start = bounds[i * 2];
+			int end = bounds[i * 2 + 1];
+			result[i] = readElement(factory.createParser(bytes, start, end - start), element);
+		}
+	}
+
+	/** Reads an array element, the scanner does not validate elements, so it must be one value. */
+	private <T> T readElement(final JsonParser parser, final DataTypeDescriptor<T> descriptor)
+			throws Exception {
+		try {
+			parser.nextToken();
+			T result = doRead(parser, descriptor, null);
+			if (parser.nextToken() != null) {
+				throw new JsonFormatException(
+						"Bad JSON string, unexpected data after an array element");
+			}
+			return result;
+		} finally {
+			parser.close();
+		}
+	}
+
+	/** Parses an object from a string, skips fields which are not included in a mask. */
+	public <T> T read(final String s, final DataTypeDescriptor<T> descriptor,
+			final FieldMask mask) throws Exception {
+		if (descriptor == null) throw new NullPointerException("descriptor");
+		if (mask == null) throw new NullPointerException("mask");
+		if (s == null) return null;
+
+		return read(factory.createParser(s), descriptor, mask);
+	}
+
+	/** Parses an object from an input stream, skips fields which are not included in a mask. */
+	public <T> T read(final InputStream stream, final DataTypeDescriptor<T> descriptor,
+			final FieldMask mask) throws Exception {
+		if (stream == null) throw new NullPointerException("input");
+		if (descriptor == null) throw new NullPointerException("descriptor");
+		if (mask == null) throw new NullPointerException("mask");
+
+		return read(factory.createParser(stream), descriptor, mask);
+	}
+
+	private JsonParser createParser(final ByteBuffer buffer) throws IOException {
+		if (!buffer.hasArray()) {
+			return factory.createParser(new JsonByteBufferInputStream(buffer));
+		}
+
+		int offset = buffer.arrayOffset() + buffer.position();
+		int length = buffer.remaining();
+		buffer.position(buffer.limit());
+		return factory.createParser(buffer.array(), offset, length);
+	}
+
 	private <T> T read(final JsonParser parser, final DataTypeDescriptor<T> descriptor)
 			throws Exception {
-		Object jsonObject;
+		return read(parser, descriptor, FieldMask.ALL);
+	}
 
+	private <T> T read(final JsonParser parser, final DataTypeDescriptor<T> descriptor,
+			final FieldMask mask) throws Exception {
 		try {
 			parser.nextToken();
-			jsonObject = read(parser);
+			return doRead(parser, descriptor, mask.isAll() ? null : mask);
 		} finally {
 			parser.close();
 		}
+	}
+
+	/** Reads a typed value starting at the current token, leaves the parser at its last token. */
+	<T> T doRead(final JsonParser parser, final DataTypeDescriptor<T> descriptor)
+			throws Exception {
+		return doRead(parser, descriptor, null);
+	}
+
+	/** Reads a typed value, applies a message field mask when it is not null. */
+	@SuppressWarnings("unchecked")
+	private <T> T doRead(final JsonParser parser, final DataTypeDescriptor<T> descriptor,
+			@Nullable final FieldMask mask) throws Exception {
+		JsonToken current = parser.getCurrentToken();
+		if (current == null || current == JsonToken.VALUE_NULL) {
+			return null;
+		}
+
+		TypeEnum typeEnum = descriptor.getType();
+		switch (typeEnum) {
+			case BOOL: return (T) readBoolean(parser);
+			case INT16: return (T) readShort(parser);
+			case INT32: return (T) readInt(parser);
+			case INT64: return (T) readLong(parser);
+			case FLOAT: return (T) readFloat(parser);
+			case DOUBLE: return (T) readDouble(parser);
+			case STRING: return (T) readString(parser);
+			case DATETIME: return (T) readDatetime(parser);
+			case LIST: return (T) readList(parser, (ListDescriptor<?>) descriptor, mask);
+			case SET: return (T) readSet(parser, (SetDescriptor<?>) descriptor, mask);
+			case MAP: return (T) readMap(parser, (MapDescriptor<?, ?>) descriptor, mask);
+			case ENUM: return (T) readEnum(parser, (EnumDescriptor<? extends Enum<?>>) descriptor);
+			case MESSAGE: return (T) readMessage(parser,
+					(MessageDescriptor<? extends Message>) descriptor, mask);
+			case VOID: parser.skipChildren(); return null;
+			default: throw new IllegalArgumentException("Unsupported descriptor " + descriptor);
+		}
+	}
+
+	private Boolean readBoolean(final JsonParser parser) throws IOException {
+		JsonToken current = parser.getCurrentToken();
+		switch (current) {
+			case VALUE_TRUE: return true;
+			case VALUE_FALSE: return false;
+			case VALUE_STRING: return Boolean.parseBoolean(parser.getText());
+			default:
+				checkNumber(parser);
+				return parser.getIntValue() == 1;
+		}
+	}
+
+	private Short readShort(final JsonParser parser) throws IOException {
+		if (parser.getCurrentToken() == JsonToken.VALUE_STRING) {
+			return Short.parseShort(parser.getText());
+		}
+		checkNumber(parser);
+		return parser.getShortValue();
+	}
+
+	private Integer readInt(final JsonParser parser) throws IOException {
+		if (parser.getCurrentToken() == JsonToken.VALUE_STRING) {
+			return Integer.parseInt(parser.getText());
+		}
+		checkNumber(parser);
+		return parser.getIntValue();
+	}
+
+	private Long readLong(final JsonParser parser) throws IOException {
+		if (parser.getCurrentToken() == JsonToken.VALUE_STRING) {
+			return Long.parseLong(parser.getText());
+		}
+		checkNumber(parser);
+		return parser.getLongValue();
+	}
+
+	private Float readFloat(final JsonParser parser) throws IOException {
+		if (parser.getCurrentToken() == JsonToken.VALUE_STRING) {
+			return Float.parseFloat(parser.getText());
+		}
+		checkNumber(parser);
+		return parser.getFloatValue();
+	}
+
+	private Double readDouble(final JsonParser parser) throws IOException {
+		if (parser.getCurrentToken() == JsonToken.VALUE_STRING) {
+			return Double.parseDouble(parser.getText());
+		}
+		checkNumber(parser);
+		return parser.getDoubleValue();
+	}
+
+	/** Checks a number token, its value is then read unboxed, i.e. with getIntValue. */
+	private void checkNumber(final JsonParser parser) {
+		JsonToken current = parser.getCurrentToken();
+		if (current != JsonToken.VALUE_NUMBER_INT && current != JsonToken.VALUE_NUMBER_FLOAT) {
+			throw new JsonFormatException("Failed to read a number from " + current);
+		}
+	}
+
+	private String readString(final JsonParser parser) throws IOException {
+		JsonToken current = parser.getCurrentToken();
+		if (current != JsonToken.VALUE_STRING) {
+			throw new JsonFormatException("Failed to read a string from " + current);
+		} else if (stringPool != null) {
+			return stringPool.get(parser.getTextCharacters(), parser.getTextOffset(),
+					parser.getTextLength());
+		}
+		return parser.getText();
+	}
+
+	private Date readDatetime(final JsonParser parser) throws IOException {
+		JsonToken current = parser.getCurrentToken();
+		if (current != JsonToken.VALUE_STRING) {
+			throw new JsonFormatException("Failed to read a datetime from " + current);
+		}
+
+		// Parse directly from the parser buffer.
+		return JsonDatetimes.parse(parser.getTextCharacters(), parser.getTextOffset(),
+				parser.getTextLength());
+	}
+
+	private <T extends Enum<T>> T readEnum(final JsonParser parser,
+			final EnumDescriptor<T> descriptor) throws IOException {
+		JsonToken current = parser.getCurrentToken();
+		if (current != JsonToken.VALUE_STRING) {
+			throw new JsonFormatException("Failed to read an enum from " + current);
+		}
+
+		// Look up directly in the parser buffer.
+		return descriptor.getValue(parser.getTextCharacters(), parser.getTextOffset(),
+				parser.getTextLength());
+	}
+
+	private <E> List<E> readList(final JsonParser parser, final ListDescriptor<E> descriptor,
+			@Nullable final FieldMask mask) throws Exception {
+		JsonToken current = parser.getCurrentToken();
+		if (current != JsonToken.START_ARRAY) {
+			throw new JsonFormatException("Bad JSON string, failed to read an array");
+		}
+
+		List<E> result = descriptor.getDefault();
+		DataTypeDescriptor<E> elementd = descriptor.getElement();
+		if (result instanceof IntArrayList) {
+			if (readInts(parser, (IntArrayList) result)) {
+				return result;
+			}
+			result = PrimitiveCollections.nullable(result);
+			result.add(null);
+		} else if (result instanceof LongArrayList) {
+			if (readLongs(parser, (LongArrayList) result)) {
+				return result;
+			}
+			result = PrimitiveCollections.nullable(result);
+			result.add(null);
+		} else if (result instanceof DoubleArrayList) {
+			if (readDoubles(parser, (DoubleArrayList) result)) {
+				return result;
+			}
+			result = PrimitiveCollections.nullable(result);
+			result.add(null);
+		}
+
+		while (nextElement(parser)) {
+			E element = doRead(parser, elementd, mask);
+			result.add(element);
+		}
+
+		return result;
+	}
+
+	private <E> Set<E> readSet(final JsonParser parser, final SetDescriptor<E> descriptor,
+			@Nullable final FieldMask mask) throws Exception {
+		JsonToken current = parser.getCurrentToken();
+		if (current != JsonToken.START_ARRAY) {
+			throw new JsonFormatException("Bad JSON string, failed to read an array");
+		}
+
+		Set<E> result = descriptor.getDefault();
+		DataTypeDescriptor<E> elementd = descriptor.getElement();
+		while (nextElement(parser)) {
+			if (result instanceof IntHashSet
+					&& parser.getCurrentToken() == JsonToken.VALUE_NUMBER_INT) {
+				((IntHashSet) result).addInt(parser.getIntValue());
+				continue;
+			}
+
+			E element = doRead(parser, elementd, mask);
+			if (element == null) {
+				// Int and enum sets do not allow nulls, i.e. unknown enum values.
+				result = PrimitiveCollections.nullable(result);
+			}
+			result.add(element);
+		}
+
+		return result;
+	}
+
+	private <K, V> Map<K, V> readMap(final JsonParser parser, final MapDescriptor<K, V> descriptor,
+			@Nullable final FieldMask mask) throws Exception {
+		JsonToken current = parser.getCurrentToken();
+		if (current != JsonToken.START_OBJECT) {
+			throw new JsonFormatException("Bad JSON string, failed to read an object");
+		}
+
+		DataTypeDescriptor<K> keyd = descriptor.getKey();
+		DataTypeDescriptor<V> valued = descriptor.getValue();
+		Map<K, V> result = descriptor.getDefault();
+
+		if (result instanceof IntHashMap) {
+			@SuppressWarnings("unchecked")
+			IntHashMap<V> ints = (IntHashMap<V>) result;
+			while (nextField(parser)) {
+				int key = Integer.parseInt(parser.getCurrentName());
+				parser.nextToken();
+				ints.put(key, doRead(parser, valued, mask));
+			}
+			return result;
+		}
+
+		while (nextField(parser)) {
+			K key = objectFormat.readMapKey(parser.getCurrentName(), keyd);
+			parser.nextToken();
+			V value = doRead(parser, valued, mask);
+			result.put(key, value);
+		}
+
+		return result;
+	}
+
+	/** Reads ints, returns false at a null element, primitive lists do not allow nulls. */
+	private boolean readInts(final JsonParser parser, final IntArrayList list)
+			throws IOException {
+		while (nextElement(parser)) {
+			JsonToken current = parser.getCurrentToken();
+			if (current == JsonToken.VALUE_NUMBER_INT) {
+				list.addInt(parser.getIntValue());
+			} else if (current == JsonToken.VALUE_NULL) {
+				return false;
+			} else {
+				list.add(readInt(parser));
+			}
+		}
+		return true;
+	}
+
+	/** Reads longs, returns false at a null element, primitive lists do not allow nulls. */
+	private boolean readLongs(final JsonParser parser, final LongArrayList list)
+			throws IOException {
+		while (nextElement(parser)) {
+			JsonToken current = parser.getCurrentToken();
+			if (current == JsonToken.VALUE_NUMBER_INT) {
+				list.addLong(parser.getLongValue());
+			} else if (current == JsonToken.VALUE_NULL) {
+				return false;
+			} else {
+				list.add(readLong(parser));
+			}
+		}
+		return true;
+	}
+
+	/** Reads doubles, returns false at a null element, primitive lists do not allow nulls. */
+	private boolean readDoubles(final JsonParser parser, final DoubleArrayList list)
+			throws IOException {
+		while (nextElement(parser)) {
+			JsonToken current = parser.getCurrentToken();
+			if (current == JsonToken.VALUE_NUMBER_FLOAT || current == JsonToken.VALUE_NUMBER_INT) {
+				list.addDouble(parser.getDoubleValue());
+			} else if (current == JsonToken.VALUE_NULL) {
+				return false;
+			} else {
+				list.add(readDouble(parser));
+			}
+		}
+		return true;
+	}
+
+	private <M extends Message> M readMessage(final JsonParser parser,
+			MessageDescriptor<M> descriptor, @Nullable final FieldMask mask) throws Exception {
+		JsonToken current = parser.getCurrentToken();
+		if (current != JsonToken.START_OBJECT) {
+			throw new JsonFormatException("Bad JSON string, failed to read an object");
+		}
+
+		FieldDescriptor<? super M, ?> discriminator = descriptor.getDiscriminator();
+		boolean hasFields = nextField(parser);
+
+		// Mind polymorphic messages.
+		if (discriminator != null) {
+			if (!hasFields || !discriminator.getName().equals(parser.getCurrentName())) {
+				// The subtype is unknown until the discriminator is read,
+				// fall back to a generic object when it is not the first field.
+				Map<String, Object> map = readMapFields(parser);
+				M message = objectFormat.read(map, descriptor);
+				if (preserveUnknown && mask == null) {
+					preserveUnknownFields(map, message);
+				}
+				return mask == null ? message : mask.retain(message);
+			}
+
+			parser.nextToken();
+			Enum<?> discriminatorValue = (Enum<?>) doRead(parser, discriminator.getType());
+			@SuppressWarnings("unchecked")
+			MessageDescriptor<M> subtype = (MessageDescriptor<M>) descriptor
+					.getSubtype(discriminatorValue);
+
+			descriptor = subtype != null ? subtype : descriptor;
+			M message = descriptor.newInstance();
+			setField(discriminator, message, discriminatorValue);
+			if (discriminatorValue == null && preserveUnknown && mask == null) {
+				captureUnrecognizedValue(parser, discriminator.getName(), message);
+			}
+
+			JsonMessageCodec<M> codec = codec(descriptor, mask);
+			if (codec != null) {
+				if (nextField(parser)) {
+					readFields(parser, codec, JsonFieldTable.of(descriptor), message);
+				}
+				return message;
+			}
+
+			readFields(parser, JsonFieldTable.of(descriptor), message, mask);
+			return message;
+		}
+
+		M message = descriptor.newInstance();
+		if (hasFields) {
+			JsonMessageCodec<M> codec = codec(descriptor, mask);
+			if (codec != null) {
+				readFields(parser, codec, JsonFieldTable.of(descriptor), message);
+				return message;
+			}
+
+			JsonFieldTable<M> table = JsonFieldTable.of(descriptor);
+			readField(parser, table, message, mask);
+			readFields(parser, table, message, mask);
+		}
+		return message;
+	}
+
+	/** Returns a message codec or {@literal null}, only plain reads use codecs. */
+	@Nullable
+	private <M extends Message> JsonMessageCodec<M> codec(final MessageDescriptor<M> descriptor,
+			@Nullable final FieldMask mask) {
+		if (mask != null || lazySource != null || preserveUnknown || stringPool != null) {
+			return null;
+		}
+		return JsonCodecs.get(descriptor);
+	}
 
-		return objectFormat.read(jsonObject, descriptor);
+	/** Reads fields with a codec starting from the current field name, skips unknown fields. */
+	private <M extends Message> void readFields(final JsonParser parser,
+			final JsonMessageCodec<M> codec, final JsonFieldTable<M> table, final M message)
+			throws IOException {
+		do {
+			int index = table.index(parser.getCurrentName());
+			parser.nextToken();
+			if (index == -1 || !codec.readField(message, index, parser)) {
+				parser.skipChildren();
+			}
+		} while (nextField(parser));
 	}
 
+	private <M extends Message> void readFields(final JsonParser parser,
+			final JsonFieldTable<M> table, final M message, @Nullable final FieldMask mask)
+			throws Exception {
+		while (nextField(parser)) {
+			readField(parser, table, message, mask);
+		}
+	}
+
+	/** Reads a field value when the parser is at its name, skips unknown and masked fields. */
+	private <M extends Message> void readField(final JsonParser parser,
+			final JsonFieldTable<M> table, final M message, @Nullable final FieldMask mask)
+			throws Exception {
+		String name = parser.getCurrentName();
+		FieldDescriptor<? super M, ?> field = table.get(name);
+		parser.nextToken();
+
+		if (field == null) {
+			if (preserveUnknown && mask == null) {
+				captureUnknownField(parser, name, message);
+			} else {
+				parser.skipChildren();
+			}
+			return;
+		}
+
+		FieldMask submask = null;
+		if (mask != null && !field.isDiscriminator()) {
+			submask = mask.get(field.getName());
+			if (submask == null) {
+				parser.skipChildren();
+				return;
+			} else if (submask.isAll()) {
+				submask = null;
+			}
+		}
+
+		if (lazySource != null && submask == null && captureLazyField(parser, field, message)) {
+			return;
+		}
+
+		@SuppressWarnings("unchecked")
+		FieldDescriptor<M, ?> uncheckedField = (FieldDescriptor<M, ?>) field;
+		parseField(parser, uncheckedField, message, submask);
+
+		if (preserveUnknown && mask == null && field.getType().getType() == TypeEnum.ENUM
+				&& uncheckedField.get(message) == null) {
+			captureUnrecognizedValue(parser, name, message);
+		}
+	}
+
+	/** Captures a message or collection field as a raw JSON byte range, skips its value. */
+	private boolean captureLazyField(final JsonParser parser, final FieldDescriptor<?, ?> field,
+			final Message message) throws IOException {
+		if (!(message instanceof JsonLazyMessage)) {
+			return false;
+		}
+
+		// Mismatched brackets are left to the eager path which reports them.
+		JsonToken current = parser.getCurrentToken();
+		switch (field.getType().getType()) {
+			case MESSAGE:
+			case MAP:
+				if (current != JsonToken.START_OBJECT) {
+					return false;
+				}
+				break;
+			case LIST:
+			case SET:
+				if (current != JsonToken.START_ARRAY) {
+					return false;
+				}
+				break;
+			default:
+				return false;
+		}
+
+		// UTF-8 parsers report byte offsets as char offsets, the current location
+		// is the last consumed byte, i.e. the start or the end bracket.
+		int start = (int) parser.getCurrentLocation().getCharOffset();
+		if (start < 0 || start >= lazySource.length || lazySource[start] != (current
+				== JsonToken.START_OBJECT ? '{' : '[')) {
+			return false;
+		}
+
+		parser.skipChildren();
+		int end = (int) parser.getCurrentLocation().getCharOffset();
+		if (end < start || end >= lazySource.length || lazySource[end] != (current
+				== JsonToken.START_OBJECT ? '}' : ']')) {
+			throw new JsonFormatException("Failed to capture a raw field " + field.getName());
+		}
+
+		JsonLazyMessage lazy = (JsonLazyMessage) message;
+		JsonLazyFields fields = lazy.lazyFields();
+		if (fields == null) {
+			fields = new JsonLazyFields(this, lazySource);
+			lazy.attachLazyFields(fields);
+		}
+
+		fields.put(field.getName(), start, end - start + 1);
+		return true;
+	}
+
+	/** Copies an unknown field value as compact raw JSON, skips it if it cannot be kept. */
+	private void captureUnknownField(final JsonParser parser, final String name,
+			final Message message) throws IOException {
+		if (!(message instanceof JsonLazyMessage)) {
+			parser.skipChildren();
+			return;
+		}
+
+		unknownFields((JsonLazyMessage) message).put(name, copyRaw(parser));
+	}
+
+	/** Keeps an unknown enum string of a declared field which has been read as null. */
+	private void captureUnrecognizedValue(final JsonParser parser, final String name,
+			final Message message) throws IOException {
+		if (parser.getCurrentToken() != JsonToken.VALUE_STRING
+				|| !(message instanceof JsonLazyMessage)) {
+			return;
+		}
+
+		unknownFields((JsonLazyMessage) message).putValue(name, copyRaw(parser));
+	}
+
+	/** Copies the current value as compact raw JSON. */
+	private byte[] copyRaw(final JsonParser parser) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		JsonGenerator generator = factory.createGenerator(out);
+		generator.copyCurrentStructure(parser);
+		generator.close();
+		return out.toByteArray();
+	}
+
+	/** Keeps unknown fields of a message read from a generic map. */
+	private void preserveUnknownFields(final Map<String, Object> map, final Message message)
+			throws IOException {
+		if (!(message instanceof JsonLazyMessage)) {
+			return;
+		}
+
+		@SuppressWarnings("unchecked")
+		JsonFieldTable<Message> table = (JsonFieldTable<Message>) JsonFieldTable.of(
+				message.descriptor());
+		for (Map.Entry<String, Object> entry : map.entrySet()) {
+			FieldDescriptor<? super Message, ?> field = table.get(entry.getKey());
+			if (field == null) {
+				unknownFields((JsonLazyMessage) message).put(entry.getKey(),
+						writeRaw(entry.getValue()));
+			} else if (field.getType().getType() == TypeEnum.ENUM
+					&& entry.getValue() instanceof String && field.get(message) == null) {
+				// Keep an unknown enum value, i.e. a discriminator of a newer subtype.
+				unknownFields((JsonLazyMessage) message).putValue(entry.getKey(),
+						writeRaw(entry.getValue()));
+			}
+		}
+	}
+
+	private byte[] writeRaw(final Object value) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		JsonGenerator generator = factory.createGenerator(out);
+		write(value, generator);
+		generator.close();
+		return out.toByteArray();
+	}
+
+	private static JsonUnknownFields unknownFields(final JsonLazyMessage message) {
+		JsonUnknownFields fields = message.unknownFields();
+		if (fields == null) {
+			fields = new JsonUnknownFields();
+			message.attachUnknownFields(fields);
+		}
+		return fields;
+	}
+
+	private <M extends Message, V> void parseField(final JsonParser parser,
+			final FieldDescriptor<M, V> field, final M message, @Nullable final FieldMask mask)
+			throws Exception {
+		V value = doRead(parser, field.getType(), mask);
+		field.set(message, value);
+	}
+
+	@SuppressWarnings("unchecked")
+	private <M extends Message, V> void setField(final FieldDescriptor<? super M, V> field,
+			final M message, final Object value) {
+		((FieldDescriptor<M, V>) field).set(message, (V) value);
+	}
+
+	/** Advances to the next array element, returns false at the end of the array. */
+	private boolean nextElement(final JsonParser parser) throws IOException {
+		JsonToken next = parser.nextToken();
+		if (next == null) {
+			throw new JsonFormatException("End of file");
+		}
+		return next != JsonToken.END_ARRAY;
+	}
+
+	/** Advances to the next object field name, returns false at the end of the object. */
+	private boolean nextField(final JsonParser parser) throws IOException {
+		JsonToken next = parser.nextToken();
+		if (next == null) {
+			throw new JsonFormatException("End of file");
+		} else if (next == JsonToken.END_OBJECT) {
+			return false;
+		} else if (next != JsonToken.FIELD_NAME) {
+			throw new JsonFormatException("Failed to read a field name from " + next);
+		}
+		return true;
+	}
+
+	// Generic JSON objects, used when a typed value cannot be read in one pass.
+
 	private Object read(final JsonParser parser) throws IOException {
 		JsonToken current = parser.getCurrentToken();
 		if (current == null || current == JsonToken.VALUE_NULL) {
@@ -252,7 +1099,7 @@ class JsonJacksonFormat {
 			case VALUE_NULL: return null;
 			case VALUE_TRUE: return true;
 			case VALUE_FALSE: return false;
-			case VALUE_STRING: return parser.getValueAsString();
+			case VALUE_STRING: return readString(parser);
 			case VALUE_NUMBER_INT:
 			case VALUE_NUMBER_FLOAT: return parser.getNumberValue();
 			case START_ARRAY: return readArray(parser);
@@ -268,14 +1115,7 @@ class JsonJacksonFormat {
 		}
 
 		List<Object> list = new ArrayList<Object>();
-		while (true) {
-			JsonToken next = parser.nextToken();
-			if (next == null) {
-				throw new JsonFormatException("End of file");
-			} else if (next == JsonToken.END_ARRAY) {
-				break;
-			}
-
+		while (nextElement(parser)) {
 			Object element = read(parser);
 			list.add(element);
 		}
@@ -289,22 +1129,62 @@ class JsonJacksonFormat {
 			throw new JsonFormatException("Bad JSON string, failed to read an object");
 		}
 
-		Map<String, Object> map = new LinkedHashMap<String, Object>();
-		while (true) {
-			JsonToken next = parser.nextToken();
-			if (next == null) {
-				throw new JsonFormatException("End of file");
-			} else if (next == JsonToken.END_OBJECT) {
-				break;
-			} else if (next != JsonToken.FIELD_NAME) {
-				throw new JsonFormatException("Failed to read a field name from " + next);
+		if (!nextField(parser)) {
+			return new LinkedHashMap<String, Object>();
+		}
+		return readMapFields(parser);
+	}
+
+	/** Writes a generic JSON object read by {@link #read(JsonParser)}. */
+	private void write(@Nullable final Object value, final JsonGenerator generator)
+			throws IOException {
+		if (value == null) {
+			generator.writeNull();
+		} else if (value instanceof String) {
+			generator.writeString((String) value);
+		} else if (value instanceof Boolean) {
+			generator.writeBoolean((Boolean) value);
+		} else if (value instanceof Integer) {
+			generator.writeNumber((Integer) value);
+		} else if (value instanceof Long) {
+			generator.writeNumber((Long) value);
+		} else if (value instanceof Double) {
+			generator.writeNumber((Double) value);
+		} else if (value instanceof BigInteger) {
+			generator.writeNumber((BigInteger) value);
+		} else if (value instanceof BigDecimal) {
+			generator.writeNumber((BigDecimal) value);
+		} else if (value instanceof List) {
+			generator.writeStartArray();
+			for (Object element : (List<?>) value) {
+				write(element, generator);
+			}
+			generator.writeEndArray();
+		} else if (value instanceof Map) {
+			generator.writeStartObject();
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				generator.writeFieldName((String) entry.getKey());
+				write(entry.getValue(), generator);
 			}
+			generator.writeEndObject();
+		} else {
+			throw new JsonFormatException("Unsupported JSON value " + value);
+		}
+	}
+
+	/** Reads the remaining object fields starting from the current field name or the end. */
+	private Map<String, Object> readMapFields(final JsonParser parser) throws IOException {
+		Map<String, Object> map = new LinkedHashMap<String, Object>();
+		if (parser.getCurrentToken() == JsonToken.END_OBJECT) {
+			return map;
+		}
 
+		do {
 			String field = parser.getCurrentName();
 			parser.nextToken();
 			Object value = read(parser);
 			map.put(field, value);
-		}
+		} while (nextField(parser));
 
 		return map;
 	}
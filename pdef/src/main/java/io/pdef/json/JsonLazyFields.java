@@ -0,0 +1,192 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef.json;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.pdef.Message;
+import io.pdef.descriptors.DataTypeDescriptor;
+import io.pdef.descriptors.FieldDescriptor;
+
+import java.io.IOException;
+
+/**
+ * JsonLazyFields holds raw JSON values of message fields as byte ranges of a shared input.
+ *
+ * Values are decoded on first access and re-emitted verbatim when untouched.
+ * JsonLazyFields are not thread-safe.
+ */
+public final class JsonLazyFields {
+	private final JsonJacksonFormat format;
+	private final byte[] source;
+
+	private String[] names;
+	private int[] offsets;
+	private int[] lengths;
+	private int size;
+
+	JsonLazyFields(final JsonJacksonFormat format, final byte[] source) {
+		this.format = format;
+		this.source = source;
+		this.names = new String[4];
+		this.offsets = new int[4];
+		this.lengths = new int[4];
+	}
+
+	private JsonLazyFields(final JsonLazyFields another) {
+		format = another.format;
+		source = another.source;
+		names = another.names.clone();
+		offsets = another.offsets.clone();
+		lengths = another.lengths.clone();
+		size = another.size;
+	}
+
+	/** Decodes all raw fields of a message if it is lazy, does nothing otherwise. */
+	public static void decode(final Message message) {
+		if (!(message instanceof JsonLazyMessage)) {
+			return;
+		}
+
+		JsonLazyMessage lazy = (JsonLazyMessage) message;
+		JsonLazyFields fields = lazy.lazyFields();
+		if (fields == null) {
+			return;
+		}
+
+		lazy.attachLazyFields(null);
+		for (int i = 0; i < fields.size; i++) {
+			@SuppressWarnings("unchecked")
+			FieldDescriptor<Message, Object> field = (FieldDescriptor<Message, Object>)
+					message.descriptor().getField(fields.names[i]);
+			if (field == null) {
+				continue;
+			}
+
+			field.set(message, fields.read(i, field.getType()));
+		}
+	}
+
+	/** Returns whether a field is present. */
+	public boolean contains(final String name) {
+		return indexOf(name) != -1;
+	}
+
+	/** Removes and decodes a field, returns {@literal null} if absent. */
+	public <V> V remove(final String name, final DataTypeDescriptor<V> descriptor) {
+		int i = indexOf(name);
+		if (i == -1) {
+			return null;
+		}
+
+		V value = read(i, descriptor);
+		removeAt(i);
+		return value;
+	}
+
+	/** Removes a field without decoding it. */
+	public void discard(final String name) {
+		int i = indexOf(name);
+		if (i != -1) {
+			removeAt(i);
+		}
+	}
+
+	/** Returns a copy of these fields, the input is shared. */
+	public JsonLazyFields copy() {
+		return new JsonLazyFields(this);
+	}
+
+	void put(final String name, final int offset, final int length) {
+		int i = indexOf(name);
+		if (i == -1) {
+			if (size == names.length) {
+				grow();
+			}
+			i = size++;
+		}
+
+		names[i] = name;
+		offsets[i] = offset;
+		lengths[i] = length;
+	}
+
+	/** Writes a raw field value verbatim, returns false if absent. */
+	boolean write(final String name, final JsonGenerator generator) throws IOException {
+		int i = indexOf(name);
+		if (i == -1) {
+			return false;
+		}
+
+		generator.writeRawValue(new String(source, offsets[i], lengths[i], "UTF-8"));
+		return true;
+	}
+
+	/** Copies a raw field value verbatim, returns false if absent. */
+	boolean write(final String name, final JsonUtf8Writer writer) {
+		int i = indexOf(name);
+		if (i == -1) {
+			return false;
+		}
+
+		writer.writeRaw(source, offsets[i], lengths[i]);
+		return true;
+	}
+
+	private <V> V read(final int i, final DataTypeDescriptor<V> descriptor) {
+		try {
+			return format.readLazy(source, offsets[i], lengths[i], descriptor);
+		} catch (Exception e) {
+			if (e instanceof JsonFormatException) {
+				throw (JsonFormatException) e;
+			}
+			throw new JsonFormatException(e);
+		}
+	}
+
+	private int indexOf(final String name) {
+		for (int i = 0; i < size; i++) {
+			String other = names[i];
+			if (other == name || other.equals(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private void removeAt(final int i) {
+		int last = --size;
+		names[i] = names[last];
+		offsets[i] = offsets[last];
+		lengths[i] = lengths[last];
+		names[last] = null;
+	}
+
+	private void grow() {
+		int length = names.length * 2;
+
+		String[] names = new String[length];
+		int[] offsets = new int[length];
+		int[] lengths = new int[length];
+		System.arraycopy(this.names, 0, names, 0, size);
+		System.arraycopy(this.offsets, 0, offsets, 0, size);
+		System.arraycopy(this.lengths, 0, lengths, 0, size);
+
+		this.names = names;
+		this.offsets = offsets;
+		this.lengths = lengths;
+	}
+}
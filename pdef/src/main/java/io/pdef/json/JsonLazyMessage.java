@@ -0,0 +1,42 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef.json;
+
+import io.pdef.Message;
+
+import javax.annotation.Nullable;
+
+/**
+ * JsonLazyMessage is a message which can hold raw JSON fields decoded on first access
+ * and raw JSON fields unknown to its descriptor. It is implemented by the generated
+ * message base classes and used by the JSON format.
+ */
+public interface JsonLazyMessage extends Message {
+	/** Returns raw JSON fields or {@literal null}. */
+	@Nullable
+	JsonLazyFields lazyFields();
+
+	/** Sets raw JSON fields, they must belong to fields which are not set in this message. */
+	void attachLazyFields(@Nullable JsonLazyFields fields);
+
+	/** Returns undeclared fields kept by a preserving read or {@literal null}. */
+	@Nullable
+	JsonUnknownFields unknownFields();
+
+	/** Sets undeclared fields which are written after the declared ones. */
+	void attachUnknownFields(@Nullable JsonUnknownFields fields);
+}
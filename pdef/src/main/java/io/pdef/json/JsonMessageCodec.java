@@ -0,0 +1,68 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef.json;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import io.pdef.Message;
+import io.pdef.descriptors.DataTypeDescriptor;
+import io.pdef.descriptors.MessageDescriptor;
+
+import java.io.IOException;
+
+/**
+ * JsonMessageCodec writes and reads fields of one message type with straight-line code
+ * instead of going through field descriptors one by one.
+ *
+ * Codecs are produced by {@link JsonCodecCompiler}s or installed with {@link JsonCodecs},
+ * cached in message descriptors and used by the default JSON format for whole messages.
+ * Masked, lazy, preserving and pooled reads and writes always use the generic code.
+ * Codecs must be thread-safe and must produce exactly the same JSON as the generic writer.
+ */
+public abstract class JsonMessageCodec<M extends Message> {
+	/** Writes all non-null fields of a message in the descriptor order, without braces. */
+	public abstract void writeFields(M message, JsonGenerator generator) throws IOException;
+
+	/**
+	 * Reads a field value at the current parser token into a message, leaves the parser
+	 * at the last value token, returns false if the field is unknown and has not been read.
+	 * The field is given by its index in {@link MessageDescriptor#getFields()}, base fields
+	 * go first, so subtype codecs can pass lower indexes to their base codecs.
+	 */
+	public abstract boolean readField(M message, int index, JsonParser parser)
+			throws IOException;
+
+	/** Writes a value of any type with the generic writer. */
+	protected static <T> void writeValue(final T value, final DataTypeDescriptor<T> descriptor,
+			final JsonGenerator generator) throws IOException {
+		JsonWriter.of(descriptor).writeNullable(value, generator);
+	}
+
+	/** Reads a value of any type at the current parser token with the generic reader. */
+	protected static <T> T readValue(final JsonParser parser,
+			final DataTypeDescriptor<T> descriptor) throws IOException {
+		try {
+			return JsonJacksonFormat.getInstance().doRead(parser, descriptor);
+		} catch (IOException e) {
+			throw e;
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new JsonFormatException(e);
+		}
+	}
+}
@@ -0,0 +1,330 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef.json;
+
+import io.pdef.Message;
+import io.pdef.descriptors.*;
+
+import java.util.*;
+
+/**
+ * JsonMessageMap is a read-only live map view of a message. It contains the fields which are
+ * set at the moment of access, their values are converted on access. Nested messages and
+ * collections are live read-only views too, other values are converted as in
+ * {@link JsonFormat#writeObject}. Views are cached until their field values are replaced.
+ * JsonMessageMap is not thread-safe.
+ */
+final class JsonMessageMap extends AbstractMap<String, Object> {
+	private final Message message;
+	private final List<? extends FieldDescriptor<?, ?>> fields;
+	private Map<String, Object[]> cache;
+	private Set<Map.Entry<String, Object>> entrySet;
+
+	JsonMessageMap(final Message message) {
+		if (message == null) throw new NullPointerException("message");
+		this.message = message;
+		this.fields = message.descriptor().getFields();
+	}
+
+	@Override
+	public Object get(final Object key) {
+		FieldDescriptor<?, ?> field = field(key);
+		return field == null ? null : convert(field);
+	}
+
+	@Override
+	public boolean containsKey(final Object key) {
+		FieldDescriptor<?, ?> field = field(key);
+		return field != null && value(field) != null;
+	}
+
+	@Override
+	public int size() {
+		int size = 0;
+		for (FieldDescriptor<?, ?> field : fields) {
+			if (value(field) != null) {
+				size++;
+			}
+		}
+		return size;
+	}
+
+	@Override
+	public Set<Map.Entry<String, Object>> entrySet() {
+		Set<Map.Entry<String, Object>> result = entrySet;
+		if (result == null) {
+			entrySet = result = new AbstractSet<Map.Entry<String, Object>>() {
+				@Override
+				public Iterator<Map.Entry<String, Object>> iterator() {
+					return new EntryIterator();
+				}
+
+				@Override
+				public int size() {
+					return JsonMessageMap.this.size();
+				}
+			};
+		}
+		return result;
+	}
+
+	private FieldDescriptor<?, ?> field(final Object key) {
+		if (!(key instanceof String)) {
+			return null;
+		}
+
+		return message.descriptor().getField((String) key);
+	}
+
+	@SuppressWarnings("unchecked")
+	private Object value(final FieldDescriptor<?, ?> field) {
+		return ((FieldDescriptor<Message, ?>) field).get(message);
+	}
+
+	private Object convert(final FieldDescriptor<?, ?> field) {
+		Object value = value(field);
+		if (value == null) {
+			return null;
+		}
+
+		DataTypeDescriptor<?> descriptor = field.getType();
+		if (!isView(descriptor)) {
+			// Scalars are cheap to convert, and dates are mutable.
+			return convert(value, descriptor);
+		}
+
+		// Views are live, so they are valid until their fields are replaced.
+		if (cache == null) {
+			cache = new HashMap<String, Object[]>();
+		}
+
+		Object[] cached = cache.get(field.getName());
+		if (cached != null && cached[0] == value) {
+			return cached[1];
+		}
+
+		Object converted = convert(value, descriptor);
+		cache.put(field.getName(), new Object[]{value, converted});
+		return converted;
+	}
+
+	private static boolean isView(final DataTypeDescriptor<?> descriptor) {
+		switch (descriptor.getType()) {
+			case LIST:
+			case SET:
+			case MAP:
+			case MESSAGE: return true;
+			default: return false;
+		}
+	}
+
+	/** Returns whether values of a type are the same in JSON-compatible objects. */
+	private static boolean isPlain(final DataTypeDescriptor<?> descriptor) {
+		switch (descriptor.getType()) {
+			case BOOL:
+			case INT16:
+			case INT32:
+			case INT64:
+			case FLOAT:
+			case DOUBLE:
+			case STRING: return true;
+			default: return false;
+		}
+	}
+
+	/** Converts a value into a JSON-compatible object, collections and messages into views. */
+	@SuppressWarnings("unchecked")
+	static Object convert(final Object value, final DataTypeDescriptor<?> descriptor) {
+		if (value == null) {
+			return null;
+		}
+
+		switch (descriptor.getType()) {
+			case LIST:
+				List<?> list = (List<?>) value;
+				DataTypeDescriptor<?> element = ((ListDescriptor<?>) descriptor).getElement();
+				return isPlain(element) ? Collections.unmodifiableList(list)
+						: new ListView(list, element);
+			case SET:
+				Set<?> set = (Set<?>) value;
+				element = ((SetDescriptor<?>) descriptor).getElement();
+				return isPlain(element) ? Collections.unmodifiableSet(set)
+						: new SetView(set, element);
+			case MAP: return new MapView((Map<?, ?>) value, (MapDescriptor<?, ?>) descriptor);
+			case MESSAGE: return new JsonMessageMap((Message) value);
+			default:
+				try {
+					return JsonObjectFormat.getInstance().write(value,
+							(DataTypeDescriptor<Object>) descriptor);
+				} catch (Exception e) {
+					throw e instanceof JsonFormatException ? (JsonFormatException) e
+							: new JsonFormatException(e);
+				}
+		}
+	}
+
+	private class EntryIterator implements Iterator<Map.Entry<String, Object>> {
+		private int next = advance(0);
+
+		@Override
+		public boolean hasNext() {
+			return next < fields.size();
+		}
+
+		@Override
+		public Map.Entry<String, Object> next() {
+			if (next >= fields.size()) throw new NoSuchElementException();
+
+			FieldDescriptor<?, ?> field = fields.get(next);
+			next = advance(next + 1);
+			return new SimpleImmutableEntry<String, Object>(field.getName(), convert(field));
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		private int advance(int i) {
+			while (i < fields.size() && value(fields.get(i)) == null) {
+				i++;
+			}
+			return i;
+		}
+	}
+
+	/** Read-only live view of a list, elements are converted on access. */
+	private static class ListView extends AbstractList<Object> implements RandomAccess {
+		private final List<?> list;
+		private final DataTypeDescriptor<?> element;
+
+		private ListView(final List<?> list, final DataTypeDescriptor<?> element) {
+			this.list = list;
+			this.element = element;
+		}
+
+		@Override
+		public Object get(final int index) {
+			return convert(list.get(index), element);
+		}
+
+		@Override
+		public int size() {
+			return list.size();
+		}
+	}
+
+	/** Read-only live view of a set, elements are converted on access. */
+	private static class SetView extends AbstractSet<Object> {
+		private final Set<?> set;
+		private final DataTypeDescriptor<?> element;
+
+		private SetView(final Set<?> set, final DataTypeDescriptor<?> element) {
+			this.set = set;
+			this.element = element;
+		}
+
+		@Override
+		public Iterator<Object> iterator() {
+			final Iterator<?> iterator = set.iterator();
+			return new Iterator<Object>() {
+				@Override
+				public boolean hasNext() {
+					return iterator.hasNext();
+				}
+
+				@Override
+				public Object next() {
+					return convert(iterator.next(), element);
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return set.size();
+		}
+	}
+
+	/** Read-only live view of a map with string keys, entries are converted on access. */
+	private static class MapView extends AbstractMap<String, Object> {
+		private final Map<?, ?> map;
+		private final MapDescriptor<?, ?> descriptor;
+		private Set<Map.Entry<String, Object>> entrySet;
+
+		private MapView(final Map<?, ?> map, final MapDescriptor<?, ?> descriptor) {
+			this.map = map;
+			this.descriptor = descriptor;
+		}
+
+		@Override
+		public Set<Map.Entry<String, Object>> entrySet() {
+			Set<Map.Entry<String, Object>> result = entrySet;
+			if (result == null) {
+				entrySet = result = new AbstractSet<Map.Entry<String, Object>>() {
+					@Override
+					public Iterator<Map.Entry<String, Object>> iterator() {
+						return entryIterator();
+					}
+
+					@Override
+					public int size() {
+						return map.size();
+					}
+				};
+			}
+			return result;
+		}
+
+		@Override
+		public int size() {
+			return map.size();
+		}
+
+		@SuppressWarnings("unchecked")
+		private Iterator<Map.Entry<String, Object>> entryIterator() {
+			final Iterator<? extends Map.Entry<?, ?>> iterator = map.entrySet().iterator();
+			final DataTypeDescriptor<Object> key = (DataTypeDescriptor<Object>)
+					descriptor.getKey();
+			final DataTypeDescriptor<?> value = descriptor.getValue();
+			return new Iterator<Map.Entry<String, Object>>() {
+				@Override
+				public boolean hasNext() {
+					return iterator.hasNext();
+				}
+
+				@Override
+				public Map.Entry<String, Object> next() {
+					Map.Entry<?, ?> e = iterator.next();
+					String k = JsonObjectFormat.getInstance().writeMapKey(e.getKey(), key);
+					return new SimpleImmutableEntry<String, Object>(k,
+							convert(e.getValue(), value));
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+	}
+}
@@ -18,24 +18,13 @@ package io.pdef.json;
 
 import io.pdef.Message;
 import io.pdef.TypeEnum;
+import io.pdef.collections.PrimitiveCollections;
 import io.pdef.descriptors.*;
 
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.*;
 
 class JsonObjectFormat {
 	private static final JsonObjectFormat INSTANCE = new JsonObjectFormat();
-	private final ThreadLocal<DateFormat> dateFormat = new ThreadLocal<DateFormat>() {
-		@Override
-		protected DateFormat initialValue() {
-			TimeZone tz = TimeZone.getTimeZone("UTC");
-			DateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
-			format.setTimeZone(tz);
-			return format;
-		}
-	};
 
 	public static JsonObjectFormat getInstance() {
 		return INSTANCE;
@@ -61,7 +50,7 @@ class JsonObjectFormat {
 			case DOUBLE:
 			case STRING: return object;
 			case DATETIME: return writeDate((Date) object);
-			case ENUM: return writeEnum((Enum) object);
+			case ENUM: return ((EnumDescriptor) descriptor).getName((Enum) object);
 			case LIST: return writeList((List) object, (ListDescriptor) descriptor);
 			case SET: return writeSet((Set) object, (SetDescriptor) descriptor);
 			case MAP: return writeMap((Map) object, (MapDescriptor) descriptor);
@@ -72,11 +61,11 @@ class JsonObjectFormat {
 	}
 
 	String writeDate(final Date date) {
-		return date == null ? "null" : dateFormat.get().format(date);
+		return date == null ? "null" : JsonDatetimes.format(date);
 	}
 
-	<E extends Enum<E>> String writeEnum(final E value) {
-		return value == null ? "null" : value.toString().toLowerCase();
+	Date readDate(final String s) {
+		return JsonDatetimes.parse(s);
 	}
 
 	private <E> List<Object> writeList(final List<E> list, final ListDescriptor<E> descriptor)
@@ -150,7 +139,7 @@ class JsonObjectFormat {
 			case FLOAT:
 			case DOUBLE:
 			case STRING: return key.toString();
-			case DATETIME: return dateFormat.get().format((Date) key);
+			case DATETIME: return JsonDatetimes.format((Date) key);
 			default: throw new JsonFormatException("Unsupported map key descriptor " + descriptor);
 		}
 	}
@@ -232,35 +221,45 @@ class JsonObjectFormat {
 	}
 
 	private Short readShort(final Object input) {
-		if (input instanceof Number) {
+		if (input instanceof Short) {
+			return (Short) input;
+		} else if (input instanceof Number) {
 			return ((Number) input).shortValue();
 		}
 		return Short.parseShort((String) input);
 	}
 
 	private Integer readInt(final Object input) {
-		if (input instanceof Number) {
+		if (input instanceof Integer) {
+			return (Integer) input;
+		} else if (input instanceof Number) {
 			return ((Number) input).intValue();
 		}
 		return Integer.parseInt((String) input);
 	}
 
 	private Long readLong(final Object input) {
-		if (input instanceof Number) {
+		if (input instanceof Long) {
+			return (Long) input;
+		} else if (input instanceof Number) {
 			return ((Number) input).longValue();
 		}
 		return Long.parseLong((String) input);
 	}
 
 	private Float readFloat(final Object input) {
-		if (input instanceof Number) {
+		if (input instanceof Float) {
+			return (Float) input;
+		} else if (input instanceof Number) {
 			return ((Number) input).floatValue();
 		}
 		return Float.parseFloat((String) input);
 	}
 
 	private Double readDouble(final Object input) {
-		if (input instanceof Number) {
+		if (input instanceof Double) {
+			return (Double) input;
+		} else if (input instanceof Number) {
 			return ((Number) input).doubleValue();
 		}
 		return Double.parseDouble((String) input);
@@ -273,11 +272,11 @@ class JsonObjectFormat {
 		return (String) input;
 	}
 
-	private Date readDatetime(final Object input) throws ParseException {
+	private Date readDatetime(final Object input) {
 		if (input instanceof Date) {
 			return new Date(((Date) input).getTime());
 		}
-		return dateFormat.get().parse((String) input);
+		return readDate((String) input);
 	}
 
 	private <T extends Enum<T>> T readEnum(final Object input,
@@ -292,10 +291,14 @@ class JsonObjectFormat {
 			throws Exception {
 		Collection<?> collection = (Collection<?>) input;
 		DataTypeDescriptor<E> elementd = descriptor.getElement();
-		List<E> result = new ArrayList<E>();
+		List<E> result = descriptor.getDefault();
 
 		for (Object element : collection) {
 			E parsed = doRead(element, elementd);
+			if (parsed == null) {
+				// Primitive lists do not allow nulls.
+				result = PrimitiveCollections.nullable(result);
+			}
 			result.add(parsed);
 		}
 
@@ -305,11 +308,15 @@ class JsonObjectFormat {
 	private <E> Set<E> readSet(final Object input, final SetDescriptor<E> descriptor)
 			throws Exception {
 		Collection<?> collection = (Collection<?>) input;
-		Set<E> result = new HashSet<E>();
+		Set<E> result = descriptor.getDefault();
 		DataTypeDescriptor<E> elementd = descriptor.getElement();
 
 		for (Object element : collection) {
 			E parsed = doRead(element, elementd);
+			if (parsed == null) {
+				// Int and enum sets do not allow nulls, i.e. unknown enum values.
+				result = PrimitiveCollections.nullable(result);
+			}
 			result.add(parsed);
 		}
 
@@ -319,7 +326,7 @@ class JsonObjectFormat {
 	private <K, V> Map<K, V> readMap(final Object input, final MapDescriptor<K, V> descriptor)
 			throws Exception {
 		Map<?, ?> map = (Map<?, ?>) input;
-		Map<K, V> result = new HashMap<K, V>();
+		Map<K, V> result = descriptor.getDefault();
 		DataTypeDescriptor<K> keyd = descriptor.getKey();
 		DataTypeDescriptor<V> valued = descriptor.getValue();
 
@@ -359,18 +366,33 @@ class JsonObjectFormat {
 		}
 
 		M message = descriptor.newInstance();
-		for (FieldDescriptor<? super M, ?> field : descriptor.getFields()) {
+		if (discriminator != null && map.get(discriminator.getName()) == null) {
+			// Clear the default discriminator value when it is absent.
+			@SuppressWarnings("unchecked")
+			FieldDescriptor<M, ?> uncheckedField = (FieldDescriptor<M, ?>) discriminator;
+			uncheckedField.set(message, null);
+		}
+
+		// Resolve only the present fields.
+		JsonFieldTable<M> table = JsonFieldTable.of(descriptor);
+		for (Map.Entry<?, ?> e : map.entrySet()) {
+			Object key = e.getKey();
+			FieldDescriptor<? super M, ?> field = key instanceof String
+					? table.get((String) key) : null;
+			if (field == null) {
+				continue;
+			}
+
 			@SuppressWarnings("unchecked")
 			FieldDescriptor<M, ?> uncheckedField = (FieldDescriptor<M, ?>) field;
-			parseField(uncheckedField, message, map);
+			parseField(uncheckedField, message, e.getValue());
 		}
 
 		return message;
 	}
 
 	private <M extends Message, V> void parseField(final FieldDescriptor<M, V> field,
-			final M message, final Map<?, ?> map) throws Exception {
-		Object fieldInput = map.get(field.getName());
+			final M message, final Object fieldInput) throws Exception {
 		V value = doRead(fieldInput, field.getType());
 		field.set(message, value);
 	}
@@ -0,0 +1,172 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef.json;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.JsonGeneratorDelegate;
+import io.pdef.FieldMask;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * JsonParallelGenerator is a UTF-8 generator which splits large lists, sets and maps into chunks.
+ *
+ * Chunks are written concurrently in an executor by plain generators, so nested collections
+ * are written sequentially, and then their UTF-8 bytes are copied into the output stream
+ * in order. At most a window of chunks is pending at a time, their buffers are reused.
+ * The delegate generator must write to the same stream and must not pass flushes to it.
+ */
+final class JsonParallelGenerator extends JsonGeneratorDelegate {
+	private static final int WINDOW = Math.max(2, Runtime.getRuntime().availableProcessors() * 2);
+
+	private final OutputStream stream;
+	private final JsonFactory factory;
+	private final ExecutorService executor;
+	private final int chunkSize;
+	private final Queue<ChunkBuffer> buffers;
+
+	JsonParallelGenerator(final JsonGenerator delegate, final OutputStream stream,
+			final JsonFactory factory, final ExecutorService executor, final int chunkSize) {
+		super(delegate);
+		if (stream == null) throw new NullPointerException("stream");
+		if (executor == null) throw new NullPointerException("executor");
+		if (chunkSize < 1) throw new IllegalArgumentException("chunkSize must be positive");
+
+		this.stream = stream;
+		this.factory = factory;
+		this.executor = executor;
+		this.chunkSize = chunkSize;
+		this.buffers = new ConcurrentLinkedQueue<ChunkBuffer>();
+	}
+
+	/** Writes items of a collection or map in chunks of a chunk size. */
+	interface ChunkWriter {
+		/**
+		 * Writes items [from, to) enclosed in brackets or braces, the items are an object array
+		 * or a primitive list.
+		 */
+		void writeChunk(Object items, int from, int to, JsonGenerator generator, FieldMask mask)
+				throws IOException;
+	}
+
+	/** Returns whether a collection or a map of a size is split into chunks. */
+	boolean splits(final int size) {
+		return size > chunkSize;
+	}
+
+	/** Writes items as one array or object, the chunks are written concurrently. */
+	void writeChunks(final Object items, final int size, final boolean object,
+			final ChunkWriter writer, final FieldMask mask) throws IOException {
+		Queue<Future<ChunkBuffer>> pending = new ArrayDeque<Future<ChunkBuffer>>();
+		try {
+			if (object) {
+				delegate.writeStartObject();
+			} else {
+				delegate.writeStartArray();
+			}
+			delegate.flush();
+
+			int next = 0;
+			for (int from = 0; from < size; from += chunkSize) {
+				for (; next < size && pending.size() < WINDOW; next += chunkSize) {
+					int to = Math.min(size, next + chunkSize);
+					pending.add(executor.submit(new ChunkTask(items, next, to, writer, mask)));
+				}
+
+				ChunkBuffer chunk = pending.remove().get();
+				if (from > 0) {
+					stream.write(',');
+				}
+				chunk.writeContentTo(stream);
+				buffers.offer(chunk);
+			}
+
+			if (object) {
+				delegate.writeEndObject();
+			} else {
+				delegate.writeEndArray();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while writing JSON chunks");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) throw (IOException) cause;
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw new JsonFormatException(cause);
+		} finally {
+			for (Future<ChunkBuffer> chunk : pending) {
+				chunk.cancel(false);
+			}
+		}
+	}
+
+	private class ChunkTask implements Callable<ChunkBuffer> {
+		private final Object items;
+		private final int from;
+		private final int to;
+		private final ChunkWriter writer;
+		private final FieldMask mask;
+
+		private ChunkTask(final Object items, final int from, final int to,
+				final ChunkWriter writer, final FieldMask mask) {
+			this.items = items;
+			this.from = from;
+			this.to = to;
+			this.writer = writer;
+			this.mask = mask;
+		}
+
+		@Override
+		public ChunkBuffer call() throws Exception {
+			ChunkBuffer out = buffers.poll();
+			if (out == null) {
+				out = new ChunkBuffer();
+			} else {
+				out.reset();
+			}
+
+			JsonGenerator generator = factory.createGenerator(out);
+			writer.writeChunk(items, from, to, generator, mask);
+			generator.close();
+			return out;
+		}
+	}
+
+	private static class ChunkBuffer extends ByteArrayOutputStream {
+		ChunkBuffer() {
+			super(1024);
+		}
+
+		/** Writes the bytes without the enclosing brackets or braces. */
+		void writeContentTo(final OutputStream out) throws IOException {
+			out.write(buf, 1, count - 2);
+		}
+	}
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef.json;
+
+import io.pdef.descriptors.DataTypeDescriptor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * JsonParallelLinesIterator reads JSON lines in the calling thread and decodes them
+ * in an executor, returning values in the input order.
+ *
+ * At most {@code window} lines are decoded ahead of the consumer. Blank lines are skipped.
+ */
+final class JsonParallelLinesIterator<T> implements JsonIterator<T> {
+	private final JsonJacksonFormat format;
+	private final BufferedReader reader;
+	private final DataTypeDescriptor<T> descriptor;
+	private final ExecutorService executor;
+	private final int window;
+
+	private final LinkedList<Future<T>> pending;
+	private boolean eof;
+	private boolean closed;
+
+	JsonParallelLinesIterator(final JsonJacksonFormat format, final BufferedReader reader,
+			final DataTypeDescriptor<T> descriptor, final ExecutorService executor,
+			final int window) {
+		if (format == null) throw new NullPointerException("format");
+		if (reader == null) throw new NullPointerException("reader");
+		if (descriptor == null) throw new NullPointerException("descriptor");
+		if (executor == null) throw new NullPointerException("executor");
+		if (window < 1) throw new IllegalArgumentException("Window must be positive");
+
+		this.format = format;
+		this.reader = reader;
+		this.descriptor = descriptor;
+		this.executor = executor;
+		this.window = window;
+		this.pending = new LinkedList<Future<T>>();
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (closed) {
+			return false;
+		}
+
+		try {
+			fill();
+		} catch (IOException e) {
+			throw fail(e);
+		}
+
+		if (pending.isEmpty()) {
+			close0();
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+
+		Future<T> future = pending.removeFirst();
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw fail(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			throw fail(cause instanceof Exception ? (Exception) cause : e);
+		}
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/** Cancels pending lines and closes the reader, does nothing if already closed. */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+
+		closed = true;
+		for (Future<T> future : pending) {
+			future.cancel(false);
+		}
+		pending.clear();
+		reader.close();
+	}
+
+	private void fill() throws IOException {
+		while (!eof && pending.size() < window) {
+			final String line = reader.readLine();
+			if (line == null) {
+				eof = true;
+				break;
+			}
+			if (line.trim().length() == 0) {
+				continue;
+			}
+
+			pending.add(executor.submit(new Callable<T>() {
+				@Override
+				public T call() throws Exception {
+					return format.read(line, descriptor);
+				}
+			}));
+		}
+	}
+
+	private void close0() {
+		try {
+			close();
+		} catch (IOException ignored) {
+			// Nothing to report.
+		}
+	}
+
+	private JsonFormatException fail(final Exception e) {
+		close0();
+
+		if (e instanceof JsonFormatException) {
+			return (JsonFormatException) e;
+		}
+		return new JsonFormatException(e);
+	}
+}
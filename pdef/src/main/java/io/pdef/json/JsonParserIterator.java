@@ -0,0 +1,129 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef.json;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.pdef.descriptors.DataTypeDescriptor;
+
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+/**
+ * JsonParserIterator lazily parses elements of a top-level JSON array or values
+ * of a whitespace-separated sequence (i.e. JSON lines) one at a time.
+ *
+ * The iterator closes its parser when the input ends, when parsing fails or when
+ * it is closed explicitly. It is not thread-safe.
+ */
+final class JsonParserIterator<T> implements JsonIterator<T> {
+	private final JsonJacksonFormat format;
+	private final JsonParser parser;
+	private final DataTypeDescriptor<T> descriptor;
+	private final boolean array;
+
+	private boolean started;
+	private boolean advanced;
+	private boolean closed;
+
+	JsonParserIterator(final JsonJacksonFormat format, final JsonParser parser,
+			final DataTypeDescriptor<T> descriptor, final boolean array) {
+		if (format == null) throw new NullPointerException("format");
+		if (parser == null) throw new NullPointerException("parser");
+		if (descriptor == null) throw new NullPointerException("descriptor");
+
+		this.format = format;
+		this.parser = parser;
+		this.descriptor = descriptor;
+		this.array = array;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (closed) {
+			return false;
+		}
+		if (advanced) {
+			return true;
+		}
+
+		try {
+			if (array && !started) {
+				started = true;
+				if (parser.nextToken() != JsonToken.START_ARRAY) {
+					throw new JsonFormatException("Bad JSON string, failed to read an array");
+				}
+			}
+
+			JsonToken next = parser.nextToken();
+			if (next == null && array) {
+				throw new JsonFormatException("End of file");
+			} else if (next == null || (array && next == JsonToken.END_ARRAY)) {
+				close();
+				return false;
+			}
+
+			advanced = true;
+			return true;
+		} catch (Exception e) {
+			throw fail(e);
+		}
+	}
+
+	@Override
+	public T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+
+		advanced = false;
+		try {
+			return format.doRead(parser, descriptor);
+		} catch (Exception e) {
+			throw fail(e);
+		}
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/** Closes the underlying parser, does nothing if already closed. */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+
+		closed = true;
+		parser.close();
+	}
+
+	private JsonFormatException fail(final Exception e) {
+		try {
+			close();
+		} catch (IOException ignored) {
+			// Report the original exception.
+		}
+
+		if (e instanceof JsonFormatException) {
+			return (JsonFormatException) e;
+		}
+		return new JsonFormatException(e);
+	}
+}
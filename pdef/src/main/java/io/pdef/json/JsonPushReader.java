@@ -0,0 +1,202 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef.json;
+
+import io.pdef.descriptors.DataTypeDescriptor;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * JsonPushReader decodes a single JSON value from UTF-8 byte chunks pushed as they arrive,
+ * i.e. from NIO channels or asynchronous request bodies, without blocking a thread.
+ *
+ * Chunks are buffered and scanned incrementally, the scanner carries nesting, string and
+ * escape state across chunks. The value is decoded once it is complete. A top-level number
+ * or literal completes at whitespace or at {@link #finish()}. Comments are not supported.
+ * JsonPushReaders are not thread-safe.
+ */
+public final class JsonPushReader<T> {
+	private final JsonFormat format;
+	private final DataTypeDescriptor<T> descriptor;
+
+	private byte[] buffer = new byte[256];
+	private int length;
+
+	// Scanner state.
+	private int depth;
+	private boolean started;
+	private boolean scalar;
+	private boolean string;
+	private boolean escape;
+	private int end = -1;
+
+	private boolean decoded;
+	private T value;
+
+	JsonPushReader(final JsonFormat format, final DataTypeDescriptor<T> descriptor) {
+		if (format == null) throw new NullPointerException("format");
+		if (descriptor == null) throw new NullPointerException("descriptor");
+		this.format = format;
+		this.descriptor = descriptor;
+	}
+
+	/** Pushes a chunk of bytes, returns whether the value is complete. */
+	public boolean feed(final byte[] bytes) {
+		return feed(bytes, 0, bytes.length);
+	}
+
+	/** Pushes a chunk of bytes, returns whether the value is complete. */
+	public boolean feed(final byte[] bytes, final int offset, final int length) {
+		if (bytes == null) throw new NullPointerException("bytes");
+		if (offset < 0 || length < 0 || offset + length > bytes.length) {
+			throw new IndexOutOfBoundsException();
+		}
+
+		int start = ensure(length);
+		System.arraycopy(bytes, offset, buffer, start, length);
+		this.length += length;
+		return scan(start);
+	}
+
+	/** Pushes the remaining bytes of a buffer and consumes them, returns whether it is complete. */
+	public boolean feed(final ByteBuffer bytes) {
+		if (bytes == null) throw new NullPointerException("bytes");
+
+		int remaining = bytes.remaining();
+		int start = ensure(remaining);
+		bytes.get(buffer, start, remaining);
+		this.length += remaining;
+		return scan(start);
+	}
+
+	/** Returns whether the value is complete. */
+	public boolean isDone() {
+		return end != -1;
+	}
+
+	/** Returns the decoded value, throws an exception if it is not complete. */
+	public T getValue() {
+		if (end == -1) {
+			throw new IllegalStateException("The value is not complete");
+		}
+		return decode();
+	}
+
+	/**
+	 * Marks the end of input and returns the decoded value, {@literal null} for an empty input.
+	 * Throws an exception when the input ends in the middle of the value.
+	 */
+	public T finish() {
+		if (end == -1) {
+			if (depth > 0 || string) {
+				throw new JsonFormatException("Bad JSON string, unexpected end of input");
+			}
+			end = length;
+		}
+		return decode();
+	}
+
+	private T decode() {
+		if (!decoded) {
+			value = started ? format.read(buffer, 0, end, descriptor) : null;
+			decoded = true;
+			buffer = null;
+		}
+		return value;
+	}
+
+	/** Scans new bytes from a start offset, returns whether the value is complete. */
+	private boolean scan(final int start) {
+		byte[] buffer = this.buffer;
+		for (int i = start; i < length; i++) {
+			byte b = buffer[i];
+			if (end != -1) {
+				if (!isWhitespace(b)) {
+					throw new JsonFormatException("Bad JSON string, unexpected data after a value");
+				}
+				continue;
+			}
+
+			if (string) {
+				if (escape) {
+					escape = false;
+				} else if (b == '\\') {
+					escape = true;
+				} else if (b == '"') {
+					string = false;
+					if (depth == 0) {
+						end = i + 1;
+					}
+				}
+				continue;
+			}
+
+			switch (b) {
+				case '"':
+					string = true;
+					started = true;
+					break;
+				case '{':
+				case '[':
+					if (scalar) {
+						throw new JsonFormatException("Bad JSON string, unexpected " + (char) b);
+					}
+					depth++;
+					started = true;
+					break;
+				case '}':
+				case ']':
+					if (--depth < 0) {
+						throw new JsonFormatException("Bad JSON string, unbalanced brackets");
+					} else if (depth == 0) {
+						end = i + 1;
+					}
+					break;
+				case ' ':
+				case '\t':
+				case '\r':
+				case '\n':
+					if (scalar) {
+						end = i;
+					}
+					break;
+				default:
+					if (depth == 0) {
+						scalar = true;
+					}
+					started = true;
+					break;
+			}
+		}
+		return end != -1;
+	}
+
+	/** Grows the buffer for more bytes, returns the current length. */
+	private int ensure(final int more) {
+		if (decoded) {
+			throw new IllegalStateException("The value has already been decoded");
+		} else if (length + more > buffer.length) {
+			buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + more));
+		}
+		return length;
+	}
+
+	private static boolean isWhitespace(final byte b) {
+		return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef.json;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.pdef.descriptors.DataTypeDescriptor;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * JsonSequenceWriter incrementally writes elements into a JSON array or as JSON lines.
+ *
+ * The generator writes its output to the underlying stream in fixed-size chunks,
+ * so memory stays bounded regardless of the number of elements. Closing the writer
+ * ends the sequence and flushes it, but does not close the stream. It is not thread-safe.
+ */
+public final class JsonSequenceWriter<T> implements Closeable {
+	private final JsonGenerator generator;
+	private final JsonWriter<T> writer;
+	private final boolean lines;
+	private boolean closed;
+
+	JsonSequenceWriter(final JsonGenerator generator, final DataTypeDescriptor<T> descriptor,
+			final boolean lines) throws IOException {
+		if (generator == null) throw new NullPointerException("generator");
+		if (descriptor == null) throw new NullPointerException("descriptor");
+
+		this.generator = generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+		this.writer = JsonWriter.of(descriptor);
+		this.lines = lines;
+
+		if (lines) {
+			// Terminate each line explicitly instead of separating root values by spaces.
+			generator.setRootValueSeparator(null);
+		} else {
+			generator.writeStartArray();
+		}
+	}
+
+	/** Writes an element to the sequence. */
+	public JsonSequenceWriter<T> write(final T element) {
+		if (closed) throw new IllegalStateException("Writer is closed");
+
+		try {
+			writer.writeNullable(element, generator);
+			if (lines) {
+				generator.writeRaw('\n');
+			}
+		} catch (IOException e) {
+			throw new JsonFormatException(e);
+		}
+		return this;
+	}
+
+	/** Flushes the written elements to the stream. */
+	public void flush() throws IOException {
+		if (closed) {
+			return;
+		}
+
+		generator.flush();
+	}
+
+	/** Ends the sequence and flushes it, does not close the stream. */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+
+		closed = true;
+		if (!lines) {
+			generator.writeEndArray();
+		}
+		generator.close();
+	}
+}
@@ -0,0 +1,356 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef.json;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import io.pdef.Message;
+import io.pdef.descriptors.DataTypeDescriptor;
+import io.pdef.descriptors.FieldDescriptor;
+import io.pdef.descriptors.MessageDescriptor;
+
+import javax.annotation.Nullable;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.security.CodeSource;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * JsonSourceCodecCompiler generates Java source of a {@link JsonMessageCodec} for a message
+ * descriptor, compiles it in memory with the system Java compiler and loads it in a child
+ * class loader. {@link JsonCodecs} uses it by default after the registered compilers.
+ *
+ * Generated codecs get and set fields through their descriptors, but write and read native
+ * values directly, so they work with any descriptor, i.e. with schemas loaded at runtime.
+ * There is no system compiler on a JRE, the compiler returns {@literal null} there
+ * and messages use the generic code.
+ */
+public final class JsonSourceCodecCompiler implements JsonCodecCompiler {
+	private static final String PACKAGE = "io.pdef.json.compiled";
+	private static final AtomicInteger COUNTER = new AtomicInteger();
+
+	@Nullable
+	@Override
+	public <M extends Message> JsonMessageCodec<M> compile(
+			final MessageDescriptor<M> descriptor) {
+		if (descriptor == null) throw new NullPointerException("descriptor");
+
+		JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+		if (javac == null) {
+			return null;
+		}
+
+		List<FieldDescriptor<? super M, ?>> fields = descriptor.getFields();
+		int size = fields.size();
+		DataTypeDescriptor<?>[] types = new DataTypeDescriptor<?>[size];
+		SerializedString[] names = new SerializedString[size];
+		for (int i = 0; i < size; i++) {
+			types[i] = fields.get(i).getType();
+			names[i] = new SerializedString(fields.get(i).getName());
+		}
+
+		String name = PACKAGE + "." + simpleName(descriptor) + "JsonCodec"
+				+ COUNTER.incrementAndGet();
+		Class<?> cls = compile(javac, name, source(name, types));
+		try {
+			Object codec = cls
+					.getConstructor(FieldDescriptor[].class, DataTypeDescriptor[].class,
+							SerializedString[].class)
+					.newInstance(fields.toArray(new FieldDescriptor<?, ?>[size]), types, names);
+
+			@SuppressWarnings("unchecked")
+			JsonMessageCodec<M> result = (JsonMessageCodec<M>) codec;
+			return result;
+		} catch (Exception e) {
+			throw new JsonFormatException("Failed to create a compiled codec " + name, e);
+		}
+	}
+
+	/** Returns codec source, fields are passed to its constructor in the descriptor order. */
+	private static String source(final String name, final DataTypeDescriptor<?>[] types) {
+		int dot = name.lastIndexOf('.');
+		String simpleName = name.substring(dot + 1);
+
+		StringBuilder sb = new StringBuilder();
+		sb.append("package ").append(name.substring(0, dot)).append(";\n\n")
+				.append("@SuppressWarnings({\"unchecked\", \"rawtypes\"})\n")
+				.append("public final class ").append(simpleName)
+				.append(" extends io.pdef.json.JsonMessageCodec<io.pdef.Message> {\n")
+				.append("private final io.pdef.descriptors.FieldDescriptor[] fields;\n")
+				.append("private final io.pdef.descriptors.DataTypeDescriptor[] types;\n")
+				.append("private final com.fasterxml.jackson.core.io.SerializedString[] names;\n\n")
+				.append("public ").append(simpleName)
+				.append("(final io.pdef.descriptors.FieldDescriptor[] fields,\n")
+				.append("final io.pdef.descriptors.DataTypeDescriptor[] types,\n")
+				.append("final com.fasterxml.jackson.core.io.SerializedString[] names) {\n")
+				.append("this.fields = fields;\n")
+				.append("this.types = types;\n")
+				.append("this.names = names;\n")
+				.append("}\n\n");
+
+		sb.append("@Override\n")
+				.append("public void writeFields(final io.pdef.Message m,\n")
+				.append("final com.fasterxml.jackson.core.JsonGenerator generator)\n")
+				.append("throws java.io.IOException {\n")
+				.append("Object v;\n");
+		for (int i = 0; i < types.length; i++) {
+			sb.append("v = fields[").append(i).append("].get(m);\n")
+					.append("if (v != null) {\n")
+					.append("generator.writeFieldName(names[").append(i).append("]);\n");
+			switch (types[i].getType()) {
+				case BOOL: sb.append("generator.writeBoolean((Boolean) v);\n"); break;
+				case INT16: sb.append("generator.writeNumber((Short) v);\n"); break;
+				case INT32: sb.append("generator.writeNumber((Integer) v);\n"); break;
+				case INT64: sb.append("generator.writeNumber((Long) v);\n"); break;
+				case FLOAT: sb.append("generator.writeNumber((Float) v);\n"); break;
+				case DOUBLE: sb.append("generator.writeNumber((Double) v);\n"); break;
+				case STRING: sb.append("generator.writeString((String) v);\n"); break;
+				default:
+					sb.append("writeValue(v, types[").append(i).append("], generator);\n");
+					break;
+			}
+			sb.append("}\n");
+		}
+		sb.append("}\n\n");
+
+		sb.append("@Override\n")
+				.append("public boolean readField(final io.pdef.Message m, final int index,\n")
+				.append("final com.fasterxml.jackson.core.JsonParser parser)\n")
+				.append("throws java.io.IOException {\n")
+				.append("switch (index) {\n");
+		for (int i = 0; i < types.length; i++) {
+			String token;
+			String value;
+			switch (types[i].getType()) {
+				case INT32:
+					token = "VALUE_NUMBER_INT";
+					value = "Integer.valueOf(parser.getIntValue())";
+					break;
+				case INT64:
+					token = "VALUE_NUMBER_INT";
+					value = "Long.valueOf(parser.getLongValue())";
+					break;
+				case DOUBLE:
+					token = "VALUE_NUMBER_FLOAT";
+					value = "Double.valueOf(parser.getDoubleValue())";
+					break;
+				case STRING:
+					token = "VALUE_STRING";
+					value = "parser.getText()";
+					break;
+				default:
+					token = null;
+					value = null;
+					break;
+			}
+
+			String read = "readValue(parser, types[" + i + "])";
+			sb.append("case ").append(i).append(":\n")
+					.append("fields[").append(i).append("].set(m, ");
+			if (token == null) {
+				sb.append(read);
+			} else {
+				sb.append("parser.getCurrentToken() == com.fasterxml.jackson.core.JsonToken.")
+						.append(token).append("\n? (Object) ").append(value)
+						.append(" : ").append(read);
+			}
+			sb.append(");\n")
+					.append("return true;\n");
+		}
+		sb.append("default:\n")
+				.append("return false;\n")
+				.append("}\n")
+				.append("}\n")
+				.append("}\n");
+		return sb.toString();
+	}
+
+	/** Compiles a source in memory and loads the class in a child class loader. */
+	private static Class<?> compile(final JavaCompiler javac, final String name,
+			final String source) {
+		DiagnosticCollector<JavaFileObject> diagnostics =
+				new DiagnosticCollector<JavaFileObject>();
+		MemoryFileManager manager = new MemoryFileManager(
+				javac.getStandardFileManager(diagnostics, null, null));
+		try {
+			List<String> options = Arrays.asList("-classpath", classpath(), "-proc:none",
+					"-g:none", "-nowarn");
+			List<JavaFileObject> units = Collections.<JavaFileObject>singletonList(
+					new SourceFile(name, source));
+			Boolean success = javac.getTask(new StringWriter(), manager, diagnostics, options,
+					null, units).call();
+			if (!Boolean.TRUE.equals(success)) {
+				throw new JsonFormatException("Failed to compile a codec " + name + ", "
+						+ diagnostics.getDiagnostics());
+			}
+
+			ClassLoader parent = JsonSourceCodecCompiler.class.getClassLoader();
+			return new MemoryClassLoader(parent, manager.classes).loadClass(name);
+		} catch (ClassNotFoundException e) {
+			throw new JsonFormatException(e);
+		} finally {
+			try {
+				manager.close();
+			} catch (IOException e) {
+				// Compiled classes are kept in memory, there is nothing to release.
+			}
+		}
+	}
+
+	/** Returns the locations of pdef and jackson classes and the system classpath. */
+	private static String classpath() {
+		Set<String> paths = new LinkedHashSet<String>();
+		addLocation(paths, JsonMessageCodec.class);
+		addLocation(paths, JsonGenerator.class);
+		try {
+			String system = System.getProperty("java.class.path");
+			if (system != null && system.length() > 0) {
+				paths.add(system);
+			}
+		} catch (SecurityException e) {
+			// Use only the library locations.
+		}
+
+		StringBuilder sb = new StringBuilder();
+		for (String path : paths) {
+			if (sb.length() > 0) {
+				sb.append(File.pathSeparator);
+			}
+			sb.append(path);
+		}
+		return sb.toString();
+	}
+
+	private static void addLocation(final Set<String> paths, final Class<?> cls) {
+		try {
+			CodeSource source = cls.getProtectionDomain().getCodeSource();
+			URL url = source == null ? null : source.getLocation();
+			if (url != null && "file".equals(url.getProtocol())) {
+				paths.add(new File(url.toURI()).getPath());
+			}
+		} catch (SecurityException e) {
+			// Fall back to the system classpath.
+		} catch (URISyntaxException e) {
+			// Fall back to the system classpath.
+		}
+	}
+
+	private static String simpleName(final MessageDescriptor<?> descriptor) {
+		Class<?> cls = descriptor.getJavaClass();
+		String name = cls == null ? "Message" : cls.getSimpleName();
+
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (Character.isJavaIdentifierPart(c)) {
+				sb.append(c);
+			}
+		}
+		return sb.length() == 0 || !Character.isJavaIdentifierStart(sb.charAt(0))
+				? "Message" + sb : sb.toString();
+	}
+
+	private static URI uri(final String name, final JavaFileObject.Kind kind) {
+		return URI.create("memory:///" + name.replace('.', '/') + kind.extension);
+	}
+
+	private static class SourceFile extends SimpleJavaFileObject {
+		private final String source;
+
+		private SourceFile(final String name, final String source) {
+			super(uri(name, Kind.SOURCE), Kind.SOURCE);
+			this.source = source;
+		}
+
+		@Override
+		public CharSequence getCharContent(final boolean ignoreEncodingErrors) {
+			return source;
+		}
+	}
+
+	private static class ClassFile extends SimpleJavaFileObject {
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		private ClassFile(final String name) {
+			super(uri(name, Kind.CLASS), Kind.CLASS);
+		}
+
+		@Override
+		public OutputStream openOutputStream() {
+			return bytes;
+		}
+	}
+
+	/** Keeps compiled classes in memory, reads everything else from the standard manager. */
+	private static class MemoryFileManager
+			extends ForwardingJavaFileManager<StandardJavaFileManager> {
+		private final Map<String, ClassFile> classes = new HashMap<String, ClassFile>();
+
+		private MemoryFileManager(final StandardJavaFileManager manager) {
+			super(manager);
+		}
+
+		@Override
+		public JavaFileObject getJavaFileForOutput(final Location location, final String name,
+				final JavaFileObject.Kind kind, final FileObject sibling) {
+			ClassFile file = new ClassFile(name);
+			classes.put(name, file);
+			return file;
+		}
+	}
+
+	private static class MemoryClassLoader extends ClassLoader {
+		private final Map<String, ClassFile> classes;
+
+		private MemoryClassLoader(final ClassLoader parent, final Map<String, ClassFile> classes) {
+			super(parent);
+			this.classes = classes;
+		}
+
+		@Override
+		protected Class<?> findClass(final String name) throws ClassNotFoundException {
+			ClassFile file = classes.get(name);
+			if (file == null) {
+				throw new ClassNotFoundException(name);
+			}
+
+			byte[] bytes = file.bytes.toByteArray();
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+	}
+}
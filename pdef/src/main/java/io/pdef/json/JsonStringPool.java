@@ -0,0 +1,100 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef.json;
+
+/**
+ * JsonStringPool deduplicates decoded JSON strings, i.e. repeated codes, statuses or ids,
+ * so messages read by a pooled {@link JsonFormat} share equal string instances.
+ *
+ * Implementations must be thread-safe, they are shared by concurrent reads.
+ */
+public abstract class JsonStringPool {
+	/** Default maximum length of pooled strings, longer strings are rarely repeated. */
+	public static final int DEFAULT_MAX_LENGTH = 64;
+
+	/** Returns a pooled string equal to chars in a buffer or a new string. */
+	public abstract String get(char[] buffer, int offset, int length);
+
+	/** Returns a bounded pool with at least a number of slots, see {@link #create(int, int)}. */
+	public static JsonStringPool create(final int capacity) {
+		return create(capacity, DEFAULT_MAX_LENGTH);
+	}
+
+	/**
+	 * Returns a bounded lossy pool, a string replaces another one in its slot on collision.
+	 * Strings longer than a max length are not pooled. The pool is lock-free.
+	 */
+	public static JsonStringPool create(final int capacity, final int maxLength) {
+		if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive");
+		if (maxLength < 0) throw new IllegalArgumentException("maxLength must be non-negative");
+		return new BoundedPool(capacity, maxLength);
+	}
+
+	private static class BoundedPool extends JsonStringPool {
+		private final String[] slots;
+		private final int mask;
+		private final int maxLength;
+
+		private BoundedPool(final int capacity, final int maxLength) {
+			int size = 1;
+			while (size < capacity) {
+				size <<= 1;
+			}
+
+			this.slots = new String[size];
+			this.mask = size - 1;
+			this.maxLength = maxLength;
+		}
+
+		@Override
+		public String get(final char[] buffer, final int offset, final int length) {
+			if (length > maxLength) {
+				return new String(buffer, offset, length);
+			}
+
+			int h = 0;
+			for (int i = offset; i < offset + length; i++) {
+				h = 31 * h + buffer[i];
+			}
+
+			// Races are benign, strings are immutable and safely published.
+			int slot = (h ^ (h >>> 16)) & mask;
+			String s = slots[slot];
+			if (s != null && s.hashCode() == h && matches(s, buffer, offset, length)) {
+				return s;
+			}
+
+			s = new String(buffer, offset, length);
+			slots[slot] = s;
+			return s;
+		}
+
+		private static boolean matches(final String s, final char[] buffer, final int offset,
+				final int length) {
+			if (s.length() != length) {
+				return false;
+			}
+
+			for (int i = 0; i < length; i++) {
+				if (s.charAt(i) != buffer[offset + i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef.json;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * JsonUnknownFields holds message fields which are not declared in a message descriptor
+ * as raw UTF-8 JSON values. They are kept by preserving reads and written back
+ * after the declared fields, so older schemas can pass newer messages through.
+ *
+ * They also hold unrecognized values of declared fields, i.e. unknown enum values
+ * and discriminators, which are read as nulls. Such values are written back in place
+ * of their fields while the fields are still null.
+ * JsonUnknownFields are not thread-safe.
+ */
+public final class JsonUnknownFields {
+	private final Map<String, byte[]> fields;
+	private final Map<String, byte[]> values;
+
+	JsonUnknownFields() {
+		fields = new LinkedHashMap<String, byte[]>();
+		values = new LinkedHashMap<String, byte[]>();
+	}
+
+	private JsonUnknownFields(final JsonUnknownFields another) {
+		fields = new LinkedHashMap<String, byte[]>(another.fields);
+		values = new LinkedHashMap<String, byte[]>(another.values);
+	}
+
+	/** Returns unknown field names in the input order. */
+	public Set<String> names() {
+		return Collections.unmodifiableSet(fields.keySet());
+	}
+
+	/** Returns whether there are no unknown fields and unrecognized values. */
+	public boolean isEmpty() {
+		return fields.isEmpty() && values.isEmpty();
+	}
+
+	/** Returns whether an unknown field is present. */
+	public boolean contains(final String name) {
+		return fields.containsKey(name);
+	}
+
+	/** Returns a raw JSON value of an unknown field or {@literal null} if absent. */
+	@Nullable
+	public String get(final String name) {
+		byte[] raw = fields.get(name);
+		return raw == null ? null : utf8(raw);
+	}
+
+	/**
+	 * Returns a raw JSON value of a declared field which has not been recognized,
+	 * i.e. an unknown enum value, or {@literal null} if absent.
+	 */
+	@Nullable
+	public String getValue(final String name) {
+		byte[] raw = values.get(name);
+		return raw == null ? null : utf8(raw);
+	}
+
+	/** Removes an unknown field or an unrecognized value. */
+	public void remove(final String name) {
+		fields.remove(name);
+		values.remove(name);
+	}
+
+	/** Returns a copy of these fields, raw values are shared. */
+	public JsonUnknownFields copy() {
+		return new JsonUnknownFields(this);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("JsonUnknownFields{");
+		String separator = "";
+		for (Map.Entry<String, byte[]> entry : fields.entrySet()) {
+			sb.append(separator).append(entry.getKey()).append('=').append(utf8(entry.getValue()));
+			separator = ", ";
+		}
+		for (Map.Entry<String, byte[]> entry : values.entrySet()) {
+			sb.append(separator).append(entry.getKey()).append('=').append(utf8(entry.getValue()));
+			separator = ", ";
+		}
+		return sb.append('}').toString();
+	}
+
+	void put(final String name, final byte[] raw) {
+		fields.put(name, raw);
+	}
+
+	void putValue(final String name, final byte[] raw) {
+		values.put(name, raw);
+	}
+
+	boolean hasValue(final String name) {
+		return values.containsKey(name);
+	}
+
+	/** Writes an unrecognized value verbatim after its field name. */
+	void writeValue(final String name, final JsonGenerator generator) throws IOException {
+		generator.writeRawValue(utf8(values.get(name)));
+	}
+
+	/** Writes an unrecognized value verbatim after its field name. */
+	void writeValue(final String name, final JsonUtf8Writer writer) {
+		writer.writeRaw(values.get(name));
+	}
+
+	/** Writes unknown fields verbatim into the current object. */
+	void write(final JsonGenerator generator) throws IOException {
+		for (Map.Entry<String, byte[]> entry : fields.entrySet()) {
+			generator.writeFieldName(entry.getKey());
+			generator.writeRawValue(utf8(entry.getValue()));
+		}
+	}
+
+	/** Writes unknown fields verbatim, returns whether any field has been written. */
+	boolean write(final JsonUtf8Writer writer, final boolean first) throws IOException {
+		boolean separator = !first;
+		for (Map.Entry<String, byte[]> entry : fields.entrySet()) {
+			if (separator) {
+				writer.writeByte(',');
+			}
+			writer.writeString(entry.getKey());
+			writer.writeByte(':');
+			writer.writeRaw(entry.getValue());
+			separator = true;
+		}
+		return !fields.isEmpty();
+	}
+
+	private static String utf8(final byte[] raw) {
+		try {
+			return new String(raw, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new JsonFormatException(e);
+		}
+	}
+}
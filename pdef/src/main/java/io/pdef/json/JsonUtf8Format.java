@@ -0,0 +1,110 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef.json;
+
+import io.pdef.descriptors.DataTypeDescriptor;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * JsonUtf8Format reads and writes compact JSON with a hand-written UTF-8 codec
+ * specialized for pdef types, it does not use Jackson.
+ */
+final class JsonUtf8Format {
+	private static final JsonUtf8Format INSTANCE = new JsonUtf8Format(null);
+	private static final int BUFFER_SIZE = 8192;
+	@Nullable private final JsonStringPool stringPool;
+
+	static JsonUtf8Format getInstance() {
+		return INSTANCE;
+	}
+
+	private JsonUtf8Format(@Nullable final JsonStringPool stringPool) {
+		this.stringPool = stringPool;
+	}
+
+	/** Returns a format which deduplicates string values and map keys in a pool. */
+	public JsonUtf8Format withStringPool(@Nullable final JsonStringPool stringPool) {
+		return new JsonUtf8Format(stringPool);
+	}
+
+	// Serialization.
+
+	/** Serializes an object into a string. */
+	public <T> String write(final T object, final DataTypeDescriptor<T> descriptor)
+			throws IOException {
+		if (descriptor == null) throw new NullPointerException("descriptor");
+
+		JsonUtf8Writer writer = new JsonUtf8Writer(256);
+		writer.write(object, descriptor);
+		return writer.toUtf8String();
+	}
+
+	/** Writes an object to an output stream, does not close the stream. */
+	public <T> void write(final OutputStream stream, final T object,
+			final DataTypeDescriptor<T> descriptor) throws IOException {
+		if (stream == null) throw new NullPointerException("out");
+		if (descriptor == null) throw new NullPointerException("descriptor");
+
+		JsonUtf8Writer writer = new JsonUtf8Writer(stream, BUFFER_SIZE);
+		writer.write(object, descriptor);
+		writer.flush();
+		stream.flush();
+	}
+
+	// Parsing.
+
+	/** Parses an object from a string. */
+	public <T> T read(final String s, final DataTypeDescriptor<T> descriptor) throws IOException {
+		if (descriptor == null) throw new NullPointerException("descriptor");
+		if (s == null) return null;
+
+		byte[] bytes = s.getBytes("UTF-8");
+		return read(bytes, 0, bytes.length, descriptor);
+	}
+
+	/** Parses an object from UTF-8 bytes. */
+	public <T> T read(final byte[] bytes, final int offset, final int length,
+			final DataTypeDescriptor<T> descriptor) {
+		if (bytes == null) throw new NullPointerException("bytes");
+		if (descriptor == null) throw new NullPointerException("descriptor");
+
+		return new JsonUtf8Reader(bytes, offset, length, stringPool).read(descriptor);
+	}
+
+	/** Parses an object from an input stream, reads the stream fully, does not close it. */
+	public <T> T read(final InputStream stream, final DataTypeDescriptor<T> descriptor)
+			throws IOException {
+		if (stream == null) throw new NullPointerException("input");
+		if (descriptor == null) throw new NullPointerException("descriptor");
+
+		byte[] bytes = new byte[BUFFER_SIZE];
+		int length = 0;
+		int n;
+		while ((n = stream.read(bytes, length, bytes.length - length)) != -1) {
+			length += n;
+			if (length == bytes.length) {
+				bytes = Arrays.copyOf(bytes, bytes.length * 2);
+			}
+		}
+		return read(bytes, 0, length, descriptor);
+	}
+}
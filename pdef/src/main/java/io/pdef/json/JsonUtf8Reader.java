@@ -0,0 +1,729 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef.json;
+
+import io.pdef.Message;
+import io.pdef.collections.DoubleArrayList;
+import io.pdef.collections.IntArrayList;
+import io.pdef.collections.IntHashMap;
+import io.pdef.collections.IntHashSet;
+import io.pdef.collections.LongArrayList;
+import io.pdef.collections.PrimitiveCollections;
+import io.pdef.descriptors.*;
+
+import javax.annotation.Nullable;
+import java.util.*;
+
+/**
+ * JsonUtf8Reader parses typed values directly from UTF-8 bytes without Jackson.
+ *
+ * Field names are resolved in the input bytes, strings are decoded into a reused char buffer,
+ * numbers are parsed without intermediate strings when they are integral.
+ * Values are read as leniently as by the Jackson reader, unknown fields are skipped.
+ * JsonUtf8Reader is not thread-safe.
+ */
+final class JsonUtf8Reader {
+	private final byte[] bytes;
+	private final int end;
+	@Nullable private final JsonStringPool stringPool;
+	private int position;
+	private boolean opened;
+	private char[] chars;
+
+	JsonUtf8Reader(final byte[] bytes, final int offset, final int length,
+			@Nullable final JsonStringPool stringPool) {
+		this.bytes = bytes;
+		this.stringPool = stringPool;
+		this.position = offset;
+		this.end = offset + length;
+		this.chars = new char[64];
+	}
+
+	/** Reads a top-level value, returns {@literal null} for an empty input. */
+	<T> T read(final DataTypeDescriptor<T> descriptor) {
+		skipWhitespace();
+		if (position == end) {
+			return null;
+		}
+		return readValue(descriptor);
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> T readValue(final DataTypeDescriptor<T> descriptor) {
+		skipWhitespace();
+		if (peek() == 'n') {
+			readLiteral("null");
+			return null;
+		}
+
+		switch (descriptor.getType()) {
+			case BOOL: return (T) readBoolean();
+			case INT16: return (T) Short.valueOf((short) readInteger(Short.MIN_VALUE,
+					Short.MAX_VALUE, "short"));
+			case INT32: return (T) Integer.valueOf(readInt());
+			case INT64: return (T) Long.valueOf(readLong());
+			case FLOAT: return (T) Float.valueOf(readFloat());
+			case DOUBLE: return (T) Double.valueOf(readDouble());
+			case STRING: return (T) readPooledString();
+			case DATETIME: return (T) readDatetime();
+			case LIST: return (T) readList((ListDescriptor<?>) descriptor);
+			case SET: return (T) readSet((SetDescriptor<?>) descriptor);
+			case MAP: return (T) readMap((MapDescriptor<?, ?>) descriptor);
+			case ENUM: return (T) readEnum((EnumDescriptor<? extends Enum<?>>) descriptor);
+			case MESSAGE: return (T) readMessage((MessageDescriptor<? extends Message>) descriptor);
+			case VOID: skipValue(); return null;
+			default: throw new IllegalArgumentException("Unsupported descriptor " + descriptor);
+		}
+	}
+
+	// Primitives.
+
+	private Boolean readBoolean() {
+		switch (peek()) {
+			case 't': readLiteral("true"); return true;
+			case 'f': readLiteral("false"); return false;
+			case '"': return Boolean.parseBoolean(readString());
+			default: return readInt() == 1;
+		}
+	}
+
+	private int readInt() {
+		return (int) readInteger(Integer.MIN_VALUE, Integer.MAX_VALUE, "int");
+	}
+
+	private long readLong() {
+		return readInteger(Long.MIN_VALUE, Long.MAX_VALUE, "long");
+	}
+
+	/** Reads an integer, a quoted integer or a truncated fractional number in a range. */
+	private long readInteger(final long min, final long max, final String type) {
+		if (peek() == '"') {
+			String s = readString();
+			long value = Long.parseLong(s);
+			if (value < min || value > max) {
+				throw new NumberFormatException("Value out of range. Value:\"" + s + "\"");
+			}
+			return value;
+		}
+
+		int start = position;
+		boolean negative = false;
+		if (peek() == '-') {
+			negative = true;
+			position++;
+		}
+
+		long value = 0;
+		int digits = 0;
+		while (position < end) {
+			int c = bytes[position] - '0';
+			if (c < 0 || c > 9) {
+				break;
+			}
+			value = value * 10 - c;
+			position++;
+			digits++;
+		}
+
+		if (digits == 0) {
+			throw unexpected("a number");
+		} else if (position < end && isFraction(bytes[position])) {
+			position = start;
+			double d = readDouble();
+			if (d < min || d > max) {
+				throw outOfRange(start, type);
+			}
+			return (long) d;
+		} else if (digits > 18) {
+			// May overflow, parsed in a slow path.
+			try {
+				value = Long.parseLong(ascii(start, position));
+			} catch (NumberFormatException e) {
+				throw outOfRange(start, type);
+			}
+		} else {
+			// Accumulated as negative to fit the minimum value.
+			value = negative ? value : -value;
+		}
+
+		if (value < min || value > max) {
+			throw outOfRange(start, type);
+		}
+		return value;
+	}
+
+	private float readFloat() {
+		return peek() == '"' ? Float.parseFloat(readString()) : (float) readDouble();
+	}
+
+	private double readDouble() {
+		if (peek() == '"') {
+			return Double.parseDouble(readString());
+		}
+
+		int start = position;
+		boolean integral = true;
+		while (position < end) {
+			byte c = bytes[position];
+			if (c >= '0' && c <= '9') {
+				position++;
+			} else if (c == '-') {
+				integral &= position == start;
+				position++;
+			} else if (isFraction(c) || c == '+') {
+				integral = false;
+				position++;
+			} else {
+				break;
+			}
+		}
+
+		int length = position - start;
+		if (length == 0) {
+			throw unexpected("a number");
+		} else if (integral && length <= 18) {
+			// Exactly representable as long, and long to double conversion is correctly rounded.
+			long value = 0;
+			boolean negative = bytes[start] == '-';
+			for (int i = negative ? start + 1 : start; i < position; i++) {
+				value = value * 10 + (bytes[i] - '0');
+			}
+			return negative ? -value : value;
+		}
+		return Double.parseDouble(ascii(start, position));
+	}
+
+	private String readString() {
+		int length = readChars();
+		return new String(chars, 0, length);
+	}
+
+	/** Reads a string value or a map key, deduplicates it when there is a pool. */
+	private String readPooledString() {
+		if (stringPool == null) {
+			return readString();
+		}
+
+		int length = readChars();
+		return stringPool.get(chars, 0, length);
+	}
+
+	private Date readDatetime() {
+		if (peek() != '"') {
+			throw unexpected("a datetime");
+		}
+		int length = readChars();
+		return JsonDatetimes.parse(chars, 0, length);
+	}
+
+	private <T extends Enum<T>> T readEnum(final EnumDescriptor<T> descriptor) {
+		if (peek() != '"') {
+			throw unexpected("an enum");
+		}
+		int length = readChars();
+		return descriptor.getValue(chars, 0, length);
+	}
+
+	// Collections.
+
+	private <E> List<E> readList(final ListDescriptor<E> descriptor) {
+		expect('[', "an array");
+
+		List<E> result = descriptor.getDefault();
+		if (result instanceof IntArrayList) {
+			IntArrayList ints = (IntArrayList) result;
+			while (nextElement()) {
+				if (isNumberStart(peek())) {
+					ints.addInt(readInt());
+					continue;
+				}
+
+				Integer element = readValue(Descriptors.int32);
+				if (element == null) {
+					return readNullable(result, descriptor.getElement());
+				}
+				ints.addInt(element);
+			}
+			return result;
+		} else if (result instanceof LongArrayList) {
+			LongArrayList longs = (LongArrayList) result;
+			while (nextElement()) {
+				if (isNumberStart(peek())) {
+					longs.addLong(readLong());
+					continue;
+				}
+
+				Long element = readValue(Descriptors.int64);
+				if (element == null) {
+					return readNullable(result, descriptor.getElement());
+				}
+				longs.addLong(element);
+			}
+			return result;
+		} else if (result instanceof DoubleArrayList) {
+			DoubleArrayList doubles = (DoubleArrayList) result;
+			while (nextElement()) {
+				if (isNumberStart(peek())) {
+					doubles.addDouble(readDouble());
+					continue;
+				}
+
+				Double element = readValue(Descriptors.double0);
+				if (element == null) {
+					return readNullable(result, descriptor.getElement());
+				}
+				doubles.addDouble(element);
+			}
+			return result;
+		}
+
+		DataTypeDescriptor<E> elementd = descriptor.getElement();
+		while (nextElement()) {
+			result.add(readValue(elementd));
+		}
+		return result;
+	}
+
+	/** Boxes a primitive list at a null element, reads the remaining elements into it. */
+	private <E> List<E> readNullable(final List<E> list, final DataTypeDescriptor<E> elementd) {
+		List<E> result = PrimitiveCollections.nullable(list);
+		result.add(null);
+		while (nextElement()) {
+			result.add(readValue(elementd));
+		}
+		return result;
+	}
+
+	private <E> Set<E> readSet(final SetDescriptor<E> descriptor) {
+		expect('[', "an array");
+
+		Set<E> result = descriptor.getDefault();
+		DataTypeDescriptor<E> elementd = descriptor.getElement();
+		while (nextElement()) {
+			if (result instanceof IntHashSet && isNumberStart(peek())) {
+				((IntHashSet) result).addInt(readInt());
+				continue;
+			}
+
+			E element = readValue(elementd);
+			if (element == null) {
+				// Int and enum sets do not allow nulls, i.e. unknown enum values.
+				result = PrimitiveCollections.nullable(result);
+			}
+			result.add(element);
+		}
+		return result;
+	}
+
+	private <K, V> Map<K, V> readMap(final MapDescriptor<K, V> descriptor) {
+		expect('{', "an object");
+
+		DataTypeDescriptor<K> keyd = descriptor.getKey();
+		DataTypeDescriptor<V> valued = descriptor.getValue();
+		Map<K, V> result = descriptor.getDefault();
+
+		if (result instanceof IntHashMap) {
+			@SuppressWarnings("unchecked")
+			IntHashMap<V> ints = (IntHashMap<V>) result;
+			while (nextField()) {
+				int key = Integer.parseInt(readName());
+				ints.put(key, readValue(valued));
+			}
+			return result;
+		}
+
+		JsonObjectFormat objectFormat = JsonObjectFormat.getInstance();
+		while (nextField()) {
+			String name = readName();
+			K key;
+			try {
+				key = objectFormat.readMapKey(name, keyd);
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new JsonFormatException(e);
+			}
+			result.put(key, readValue(valued));
+		}
+		return result;
+	}
+
+	// Messages.
+
+	private <M extends Message> M readMessage(MessageDescriptor<M> descriptor) {
+		expect('{', "an object");
+
+		// Mind polymorphic messages, find the discriminator and rewind.
+		FieldDescriptor<? super M, ?> discriminator = descriptor.getDiscriminator();
+		Enum<?> discriminatorValue = null;
+		if (discriminator != null) {
+			int mark = position;
+			discriminatorValue = findDiscriminator(JsonFieldTable.of(descriptor), discriminator);
+			position = mark;
+			opened = true;
+
+			if (discriminatorValue != null) {
+				@SuppressWarnings("unchecked")
+				MessageDescriptor<M> subtype = (MessageDescriptor<M>) descriptor
+						.getSubtype(discriminatorValue);
+				descriptor = subtype != null ? subtype : descriptor;
+			}
+		}
+
+		M message = descriptor.newInstance();
+		if (discriminator != null) {
+			// Clears the default discriminator value when it is absent.
+			setField(discriminator, message, discriminatorValue);
+		}
+
+		JsonFieldTable<M> table = JsonFieldTable.of(descriptor);
+		while (nextField()) {
+			FieldDescriptor<? super M, ?> field = readField(table);
+			if (field == null) {
+				skipValue();
+				continue;
+			}
+
+			setField(field, message, readValue(field.getType()));
+		}
+		return message;
+	}
+
+	private <M extends Message> Enum<?> findDiscriminator(final JsonFieldTable<M> table,
+			final FieldDescriptor<? super M, ?> discriminator) {
+		while (nextField()) {
+			if (readField(table) == discriminator) {
+				return (Enum<?>) readValue(discriminator.getType());
+			}
+			skipValue();
+		}
+		return null;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <M extends Message> void setField(final FieldDescriptor<? super M, ?> field,
+			final M message, final Object value) {
+		((FieldDescriptor<M, Object>) field).set(message, value);
+	}
+
+	/** Reads a field name and a colon, resolves ASCII names directly in the input. */
+	private <M extends Message> FieldDescriptor<? super M, ?> readField(
+			final JsonFieldTable<M> table) {
+		skipWhitespace();
+		if (peek() != '"') {
+			throw unexpected("a field name");
+		}
+
+		int start = position + 1;
+		int i = start;
+		while (i < end) {
+			byte c = bytes[i];
+			if (c == '"') {
+				position = i + 1;
+				expectColon();
+				return table.get(bytes, start, i - start);
+			} else if (c < 0x20 || c == '\\') {
+				// Non-ASCII, escaped or malformed, decode it.
+				break;
+			}
+			i++;
+		}
+
+		FieldDescriptor<? super M, ?> field = table.get(readString());
+		expectColon();
+		return field;
+	}
+
+	private String readName() {
+		skipWhitespace();
+		if (peek() != '"') {
+			throw unexpected("a field name");
+		}
+
+		String name = readPooledString();
+		expectColon();
+		return name;
+	}
+
+	// Tokens.
+
+	/** Advances to the next array element, returns false at the end of the array. */
+	private boolean nextElement() {
+		return next(']');
+	}
+
+	/** Advances to the next object field, returns false at the end of the object. */
+	private boolean nextField() {
+		return next('}');
+	}
+
+	private boolean next(final char close) {
+		skipWhitespace();
+		byte c = peek();
+		if (c == close) {
+			// Mind empty containers, the next value must be preceded by a comma.
+			opened = false;
+			position++;
+			return false;
+		}
+
+		if (opened) {
+			// The first element follows the opening bracket.
+			opened = false;
+			return true;
+		} else if (c == ',') {
+			position++;
+			return true;
+		}
+		throw unexpected("',' or '" + close + "'");
+	}
+
+	private void expect(final char c, final String expected) {
+		skipWhitespace();
+		if (peek() != c) {
+			throw unexpected(expected);
+		}
+		position++;
+		opened = c == '[' || c == '{';
+	}
+
+	private void expectColon() {
+		expect(':', "':'");
+		skipWhitespace();
+	}
+
+	private void readLiteral(final String literal) {
+		int length = literal.length();
+		if (position + length > end) {
+			throw unexpected(literal);
+		}
+
+		for (int i = 0; i < length; i++) {
+			if (bytes[position + i] != literal.charAt(i)) {
+				throw unexpected(literal);
+			}
+		}
+		position += length;
+	}
+
+	/** Skips a value of any type. */
+	private void skipValue() {
+		skipWhitespace();
+		byte c = peek();
+		if (c == '"') {
+			skipString();
+			return;
+		} else if (c != '{' && c != '[') {
+			// A number or a literal.
+			while (position < end && !isDelimiter(bytes[position])) {
+				position++;
+			}
+			return;
+		}
+
+		int depth = 0;
+		while (position < end) {
+			c = bytes[position];
+			if (c == '"') {
+				skipString();
+				continue;
+			}
+
+			position++;
+			if (c == '{' || c == '[') {
+				depth++;
+			} else if ((c == '}' || c == ']') && --depth == 0) {
+				return;
+			}
+		}
+		throw unexpected("the end of a value");
+	}
+
+	private void skipString() {
+		position++;
+		while (position < end) {
+			byte c = bytes[position++];
+			if (c == '"') {
+				return;
+			} else if (c == '\\') {
+				position++;
+			}
+		}
+		throw unexpected("the end of a string");
+	}
+
+	/** Skips whitespace and comments, they are allowed as by the Jackson reader. */
+	private void skipWhitespace() {
+		while (position < end) {
+			byte c = bytes[position];
+			if (c == '/') {
+				skipComment();
+				continue;
+			} else if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+				return;
+			}
+			position++;
+		}
+	}
+
+	private void skipComment() {
+		byte c = position + 1 < end ? bytes[position + 1] : 0;
+		if (c == '/') {
+			while (position < end && bytes[position] != '\n') {
+				position++;
+			}
+		} else if (c == '*') {
+			position += 2;
+			while (position + 1 < end && (bytes[position] != '*' || bytes[position + 1] != '/')) {
+				position++;
+			}
+			if (position + 1 >= end) {
+				throw unexpected("the end of a comment");
+			}
+			position += 2;
+		} else {
+			throw unexpected("a comment");
+		}
+	}
+
+	private byte peek() {
+		if (position >= end) {
+			throw new JsonFormatException("Bad JSON string, unexpected end of input");
+		}
+		return bytes[position];
+	}
+
+	// Strings.
+
+	/** Decodes a quoted string into the char buffer, returns its length. */
+	private int readChars() {
+		position++;
+
+		char[] chars = this.chars;
+		int length = 0;
+		while (true) {
+			if (position >= end) {
+				throw unexpected("the end of a string");
+			}
+			if (length + 2 > chars.length) {
+				this.chars = chars = Arrays.copyOf(chars, chars.length * 2);
+			}
+
+			int c = bytes[position++];
+			if (c == '"') {
+				return length;
+			} else if (c == '\\') {
+				chars[length++] = readEscape();
+			} else if (c >= 0x20) {
+				chars[length++] = (char) c;
+			} else if (c >= 0) {
+				position--;
+				throw unexpected("an escaped control character");
+			} else if ((c & 0xE0) == 0xC0) {
+				chars[length++] = (char) (((c & 0x1F) << 6) | continuation());
+			} else if ((c & 0xF0) == 0xE0) {
+				int c1 = continuation();
+				chars[length++] = (char) (((c & 0x0F) << 12) | (c1 << 6) | continuation());
+			} else if ((c & 0xF8) == 0xF0) {
+				int c1 = continuation();
+				int c2 = continuation();
+				int cp = ((c & 0x07) << 18) | (c1 << 12) | (c2 << 6) | continuation();
+				chars[length++] = (char) (0xD800 + ((cp - 0x10000) >>> 10));
+				chars[length++] = (char) (0xDC00 + (cp & 0x3FF));
+			} else {
+				throw new JsonFormatException("Invalid UTF-8 start byte at " + (position - 1));
+			}
+		}
+	}
+
+	private int continuation() {
+		if (position >= end || (bytes[position] & 0xC0) != 0x80) {
+			throw new JsonFormatException("Invalid UTF-8 middle byte at " + position);
+		}
+		return bytes[position++] & 0x3F;
+	}
+
+	private char readEscape() {
+		if (position >= end) {
+			throw unexpected("an escape");
+		}
+
+		byte c = bytes[position++];
+		switch (c) {
+			case '"': return '"';
+			case '\\': return '\\';
+			case '/': return '/';
+			case 'b': return '\b';
+			case 'f': return '\f';
+			case 'n': return '\n';
+			case 'r': return '\r';
+			case 't': return '\t';
+			case 'u':
+				if (position + 4 > end) {
+					throw unexpected("a unicode escape");
+				}
+
+				int value = 0;
+				for (int i = 0; i < 4; i++) {
+					int digit = Character.digit(bytes[position++], 16);
+					if (digit < 0) {
+						throw unexpected("a hex digit");
+					}
+					value = (value << 4) | digit;
+				}
+				return (char) value;
+			default:
+				position--;
+				throw unexpected("an escape");
+		}
+	}
+
+	private String ascii(final int start, final int end) {
+		char[] chars = this.chars;
+		if (chars.length < end - start) {
+			this.chars = chars = new char[end - start];
+		}
+		for (int i = start; i < end; i++) {
+			chars[i - start] = (char) bytes[i];
+		}
+		return new String(chars, 0, end - start);
+	}
+
+	private JsonFormatException unexpected(final String expected) {
+		String found = position < end ? "'" + (char) (bytes[position] & 0xFF) + "'" : "the end";
+		return new JsonFormatException("Bad JSON string, expected " + expected + " but found "
+				+ found + " at " + position);
+	}
+
+	private JsonFormatException outOfRange(final int start, final String type) {
+		return new JsonFormatException("Numeric value (" + ascii(start, position)
+				+ ") out of range of " + type);
+	}
+
+	private static boolean isFraction(final byte c) {
+		return c == '.' || c == 'e' || c == 'E';
+	}
+
+	private static boolean isNumberStart(final byte c) {
+		return c == '-' || (c >= '0' && c <= '9');
+	}
+
+	private static boolean isDelimiter(final byte c) {
+		return c == ',' || c == '}' || c == ']' || c == ' ' || c == '\n' || c == '\r'
+				|| c == '\t';
+	}
+}
@@ -0,0 +1,589 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef.json;
+
+import io.pdef.Message;
+import io.pdef.TypeEnum;
+import io.pdef.collections.DoubleArrayList;
+import io.pdef.collections.IntArrayList;
+import io.pdef.collections.LongArrayList;
+import io.pdef.descriptors.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.*;
+
+/**
+ * JsonUtf8Writer writes compact JSON directly into a UTF-8 byte array without Jackson.
+ *
+ * Field and enum names are encoded once and cached in descriptors, numbers are formatted
+ * without intermediate strings. The output matches the Jackson writer byte for byte.
+ * The buffer grows when there is no stream, otherwise it is flushed when full.
+ * JsonUtf8Writer is not thread-safe.
+ */
+final class JsonUtf8Writer {
+	private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+	private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+	private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+	private static final byte[] INT_MIN = {'-', '2', '1', '4', '7', '4', '8', '3', '6', '4', '8'};
+	private static final byte[] LONG_MIN = {'-', '9', '2', '2', '3', '3', '7', '2', '0', '3',
+			'6', '8', '5', '4', '7', '7', '5', '8', '0', '8'};
+	private static final byte[] HEX = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9',
+			'A', 'B', 'C', 'D', 'E', 'F'};
+
+	/** Two-digit pairs "00".."99" used to format numbers. */
+	private static final byte[] DIGITS = new byte[200];
+	/** Short escape chars or 0 when an ASCII char is written as is, -1 for \\u00XX. */
+	private static final byte[] ESCAPES = new byte[128];
+
+	static {
+		for (int i = 0; i < 100; i++) {
+			DIGITS[i * 2] = (byte) ('0' + i / 10);
+			DIGITS[i * 2 + 1] = (byte) ('0' + i % 10);
+		}
+
+		for (int i = 0; i < 32; i++) {
+			ESCAPES[i] = -1;
+		}
+		ESCAPES['"'] = '"';
+		ESCAPES['\\'] = '\\';
+		ESCAPES['\b'] = 'b';
+		ESCAPES['\t'] = 't';
+		ESCAPES['\f'] = 'f';
+		ESCAPES['\n'] = 'n';
+		ESCAPES['\r'] = 'r';
+	}
+
+	private final OutputStream out;
+	private byte[] buffer;
+	private int position;
+	private char[] chars;
+
+	/** Creates a growable writer. */
+	JsonUtf8Writer(final int capacity) {
+		this(null, capacity);
+	}
+
+	/** Creates a writer which flushes its buffer to a stream when full. */
+	JsonUtf8Writer(final OutputStream out, final int capacity) {
+		this.out = out;
+		this.buffer = new byte[Math.max(capacity, 32)];
+	}
+
+	/** Returns the written bytes as a copy. */
+	byte[] toByteArray() {
+		return Arrays.copyOf(buffer, position);
+	}
+
+	/** Returns the written bytes as a string. */
+	String toUtf8String() throws IOException {
+		return new String(buffer, 0, position, "UTF-8");
+	}
+
+	/** Writes the buffered bytes to the stream, does not flush the stream. */
+	void flush() throws IOException {
+		if (position > 0) {
+			out.write(buffer, 0, position);
+			position = 0;
+		}
+	}
+
+	// Values.
+
+	@SuppressWarnings("unchecked")
+	<T> void write(final T value, final DataTypeDescriptor<T> descriptor) throws IOException {
+		if (value == null) {
+			writeRaw(NULL);
+			return;
+		}
+
+		switch (descriptor.getType()) {
+			case BOOL: writeRaw((Boolean) value ? TRUE : FALSE); break;
+			case INT16: writeInt((Short) value); break;
+			case INT32: writeInt((Integer) value); break;
+			case INT64: writeLong((Long) value); break;
+			case FLOAT: writeFloat((Float) value); break;
+			case DOUBLE: writeDouble((Double) value); break;
+			case STRING: writeString((String) value); break;
+			case DATETIME: writeDatetime((Date) value); break;
+			case ENUM: writeEnum((Enum) value, (EnumDescriptor) descriptor); break;
+			case LIST: writeList((List<?>) value, ((ListDescriptor<?>) descriptor).getElement());
+				break;
+			case SET: writeCollection((Set<?>) value,
+					((SetDescriptor<?>) descriptor).getElement());
+				break;
+			case MAP: writeMap((Map) value, (MapDescriptor) descriptor); break;
+			case MESSAGE: writeMessage((Message) value); break;
+			case VOID: writeRaw(NULL); break;
+			default: throw new IllegalArgumentException("Unsupported descriptor " + descriptor);
+		}
+	}
+
+	void writeInt(final int value) {
+		if (value == Integer.MIN_VALUE) {
+			writeRaw(INT_MIN);
+			return;
+		}
+
+		ensure(11);
+		int v = value;
+		if (v < 0) {
+			buffer[position++] = '-';
+			v = -v;
+		}
+
+		int end = position + digits(v);
+		int i = end;
+		while (v >= 100) {
+			int r = (v % 100) * 2;
+			v /= 100;
+			buffer[--i] = DIGITS[r + 1];
+			buffer[--i] = DIGITS[r];
+		}
+		if (v >= 10) {
+			buffer[--i] = DIGITS[v * 2 + 1];
+			buffer[--i] = DIGITS[v * 2];
+		} else {
+			buffer[--i] = (byte) ('0' + v);
+		}
+		position = end;
+	}
+
+	void writeLong(final long value) {
+		if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+			writeInt((int) value);
+			return;
+		} else if (value == Long.MIN_VALUE) {
+			writeRaw(LONG_MIN);
+			return;
+		}
+
+		ensure(20);
+		long v = value;
+		if (v < 0) {
+			buffer[position++] = '-';
+			v = -v;
+		}
+
+		int end = position + digits(v);
+		int i = end;
+		while (v >= 100) {
+			int r = (int) (v % 100) * 2;
+			v /= 100;
+			buffer[--i] = DIGITS[r + 1];
+			buffer[--i] = DIGITS[r];
+		}
+		int last = (int) v;
+		if (last >= 10) {
+			buffer[--i] = DIGITS[last * 2 + 1];
+			buffer[--i] = DIGITS[last * 2];
+		} else {
+			buffer[--i] = (byte) ('0' + last);
+		}
+		position = end;
+	}
+
+	void writeFloat(final float value) throws IOException {
+		if (Float.isNaN(value) || Float.isInfinite(value)) {
+			// Jackson quotes non-numeric numbers by default.
+			writeString(String.valueOf(value));
+		} else {
+			writeAscii(String.valueOf(value));
+		}
+	}
+
+	void writeDouble(final double value) throws IOException {
+		if (Double.isNaN(value) || Double.isInfinite(value)) {
+			writeString(String.valueOf(value));
+		} else {
+			writeAscii(String.valueOf(value));
+		}
+	}
+
+	void writeDatetime(final Date value) {
+		char[] chars = chars(JsonDatetimes.LENGTH);
+		JsonDatetimes.format(value.getTime(), chars, 0);
+
+		ensure(JsonDatetimes.LENGTH + 2);
+		buffer[position++] = '"';
+		for (int i = 0; i < JsonDatetimes.LENGTH; i++) {
+			buffer[position++] = (byte) chars[i];
+		}
+		buffer[position++] = '"';
+	}
+
+	<E extends Enum<E>> void writeEnum(final E value, final EnumDescriptor<E> descriptor) {
+		writeRaw(EnumNames.of(descriptor).names[value.ordinal()]);
+	}
+
+	/** Writes a quoted string, escapes it as Jackson does, i.e. does not escape slashes. */
+	void writeString(final String s) throws IOException {
+		int length = s.length();
+		ensure(length + 2);
+		buffer[position++] = '"';
+
+		// Fast path for ASCII strings without escapes.
+		int i = 0;
+		byte[] buffer = this.buffer;
+		int position = this.position;
+		while (i < length) {
+			char c = s.charAt(i);
+			if (c >= 128 || ESCAPES[c] != 0) {
+				break;
+			}
+			buffer[position++] = (byte) c;
+			i++;
+		}
+		this.position = position;
+
+		if (i < length) {
+			writeEscaped(s, i, length);
+		}
+
+		ensure(1);
+		this.buffer[this.position++] = '"';
+	}
+
+	private void writeEscaped(final String s, final int offset, final int length)
+			throws IOException {
+		for (int i = offset; i < length; i++) {
+			char c = s.charAt(i);
+			if (c < 128) {
+				byte escape = ESCAPES[c];
+				if (escape == 0) {
+					ensure(1);
+					buffer[position++] = (byte) c;
+				} else if (escape > 0) {
+					ensure(2);
+					buffer[position++] = '\\';
+					buffer[position++] = escape;
+				} else {
+					ensure(6);
+					buffer[position++] = '\\';
+					buffer[position++] = 'u';
+					buffer[position++] = '0';
+					buffer[position++] = '0';
+					buffer[position++] = HEX[c >> 4];
+					buffer[position++] = HEX[c & 0xF];
+				}
+			} else if (c < 0x800) {
+				ensure(2);
+				buffer[position++] = (byte) (0xC0 | (c >> 6));
+				buffer[position++] = (byte) (0x80 | (c & 0x3F));
+			} else if (c < Character.MIN_SURROGATE || c > Character.MAX_SURROGATE) {
+				ensure(3);
+				buffer[position++] = (byte) (0xE0 | (c >> 12));
+				buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				buffer[position++] = (byte) (0x80 | (c & 0x3F));
+			} else {
+				char low = i + 1 < length ? s.charAt(i + 1) : 0;
+				if (!Character.isHighSurrogate(c) || !Character.isLowSurrogate(low)) {
+					throw new JsonFormatException("Broken surrogate pair in a string at " + i);
+				}
+
+				int cp = Character.toCodePoint(c, low);
+				i++;
+				ensure(4);
+				buffer[position++] = (byte) (0xF0 | (cp >> 18));
+				buffer[position++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+				buffer[position++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+				buffer[position++] = (byte) (0x80 | (cp & 0x3F));
+			}
+		}
+	}
+
+	// Collections.
+
+	private <E> void writeList(final List<E> list, final DataTypeDescriptor<?> element)
+			throws IOException {
+		if (list instanceof IntArrayList) {
+			IntArrayList ints = (IntArrayList) list;
+			writeByte('[');
+			for (int i = 0, size = ints.size(); i < size; i++) {
+				if (i > 0) {
+					writeByte(',');
+				}
+				writeInt(ints.getInt(i));
+			}
+			writeByte(']');
+			return;
+		} else if (list instanceof LongArrayList) {
+			LongArrayList longs = (LongArrayList) list;
+			writeByte('[');
+			for (int i = 0, size = longs.size(); i < size; i++) {
+				if (i > 0) {
+					writeByte(',');
+				}
+				writeLong(longs.getLong(i));
+			}
+			writeByte(']');
+			return;
+		} else if (list instanceof DoubleArrayList) {
+			DoubleArrayList doubles = (DoubleArrayList) list;
+			writeByte('[');
+			for (int i = 0, size = doubles.size(); i < size; i++) {
+				if (i > 0) {
+					writeByte(',');
+				}
+				writeDouble(doubles.getDouble(i));
+			}
+			writeByte(']');
+			return;
+		}
+
+		writeCollection(list, element);
+	}
+
+	private <E> void writeCollection(final Collection<E> collection,
+			final DataTypeDescriptor<?> element) throws IOException {
+		@SuppressWarnings("unchecked")
+		DataTypeDescriptor<E> elementd = (DataTypeDescriptor<E>) element;
+
+		writeByte('[');
+		boolean first = true;
+		for (E e : collection) {
+			if (first) {
+				first = false;
+			} else {
+				writeByte(',');
+			}
+			write(e, elementd);
+		}
+		writeByte(']');
+	}
+
+	private <K, V> void writeMap(final Map<K, V> map, final MapDescriptor<K, V> descriptor)
+			throws IOException {
+		DataTypeDescriptor<K> keyd = descriptor.getKey();
+		DataTypeDescriptor<V> valued = descriptor.getValue();
+		boolean ints = keyd.getType() == TypeEnum.INT32;
+
+		writeByte('{');
+		boolean first = true;
+		for (Map.Entry<K, V> entry : map.entrySet()) {
+			K key = entry.getKey();
+			if (key == null) {
+				throw new JsonFormatException("Null map key");
+			}
+
+			if (first) {
+				first = false;
+			} else {
+				writeByte(',');
+			}
+
+			if (ints) {
+				writeByte('"');
+				writeInt((Integer) key);
+				writeByte('"');
+			} else {
+				writeString(JsonObjectFormat.getInstance().writeMapKey(key, keyd));
+			}
+
+			writeByte(':');
+			write(entry.getValue(), valued);
+		}
+		writeByte('}');
+	}
+
+	// Messages.
+
+	private void writeMessage(final Message message) throws IOException {
+		// Mind polymorphic messages.
+		MessageNames names = MessageNames.of(message.descriptor());
+		JsonLazyFields lazy = message instanceof JsonLazyMessage
+				? ((JsonLazyMessage) message).lazyFields() : null;
+		JsonUnknownFields unknown = message instanceof JsonLazyMessage
+				? ((JsonLazyMessage) message).unknownFields() : null;
+
+		writeByte('{');
+		boolean first = true;
+		for (int i = 0; i < names.fields.length; i++) {
+			FieldDescriptor<Message, Object> field = names.fields[i];
+			if (lazy != null && names.lazy[i] && lazy.contains(field.getName())) {
+				// Write an untouched raw field verbatim.
+				first = writeFieldName(names.names[i], first);
+				lazy.write(field.getName(), this);
+				continue;
+			}
+
+			Object value = field.get(message);
+			if (value == null) {
+				// Skip null fields, but keep unrecognized enum values.
+				if (unknown != null && unknown.hasValue(field.getName())) {
+					first = writeFieldName(names.names[i], first);
+					unknown.writeValue(field.getName(), this);
+				}
+				continue;
+			}
+
+			first = writeFieldName(names.names[i], first);
+			write(value, field.getType());
+		}
+
+		if (unknown != null) {
+			unknown.write(this, first);
+		}
+		writeByte('}');
+	}
+
+	private boolean writeFieldName(final byte[] name, final boolean first) {
+		if (!first) {
+			writeByte(',');
+		}
+		writeRaw(name);
+		return false;
+	}
+
+	// Raw bytes.
+
+	void writeRaw(final byte[] bytes) {
+		writeRaw(bytes, 0, bytes.length);
+	}
+
+	void writeRaw(final byte[] bytes, final int offset, final int length) {
+		ensure(length);
+		System.arraycopy(bytes, offset, buffer, position, length);
+		position += length;
+	}
+
+	void writeByte(final char c) {
+		ensure(1);
+		buffer[position++] = (byte) c;
+	}
+
+	private void writeAscii(final String s) {
+		int length = s.length();
+		ensure(length);
+		for (int i = 0; i < length; i++) {
+			buffer[position++] = (byte) s.charAt(i);
+		}
+	}
+
+	/** Ensures the buffer has space for n more bytes, flushes or grows it. */
+	private void ensure(final int n) {
+		if (position + n <= buffer.length) {
+			return;
+		}
+
+		if (out != null && position > 0) {
+			try {
+				flush();
+			} catch (IOException e) {
+				throw new JsonFormatException(e);
+			}
+			if (n <= buffer.length) {
+				return;
+			}
+		}
+
+		int capacity = Math.max(buffer.length * 2, position + n);
+		buffer = Arrays.copyOf(buffer, capacity);
+	}
+
+	private char[] chars(final int length) {
+		char[] chars = this.chars;
+		if (chars == null || chars.length < length) {
+			this.chars = chars = new char[length];
+		}
+		return chars;
+	}
+
+	private static int digits(final int v) {
+		int n = 1;
+		for (int limit = 10; n < 10 && v >= limit; limit *= 10) {
+			n++;
+		}
+		return n;
+	}
+
+	private static int digits(final long v) {
+		int n = 1;
+		for (long limit = 10; n < 19 && v >= limit; limit *= 10) {
+			n++;
+		}
+		return n;
+	}
+
+	/** Encodes a quoted name with a trailing colon, i.e. {@code "name":}. */
+	private static byte[] encodeName(final String name, final boolean colon) {
+		JsonUtf8Writer writer = new JsonUtf8Writer(name.length() + 3);
+		try {
+			writer.writeString(name);
+		} catch (IOException e) {
+			throw new JsonFormatException(e);
+		}
+		if (colon) {
+			writer.writeByte(':');
+		}
+		return writer.toByteArray();
+	}
+
+	/** Encoded message field names cached in a descriptor. */
+	private static class MessageNames {
+		private final FieldDescriptor<Message, Object>[] fields;
+		private final byte[][] names;
+		private final boolean[] lazy;
+
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		private MessageNames(final MessageDescriptor<?> descriptor) {
+			List<? extends FieldDescriptor<?, ?>> declared = descriptor.getFields();
+			fields = new FieldDescriptor[declared.size()];
+			names = new byte[declared.size()][];
+			lazy = new boolean[declared.size()];
+
+			for (int i = 0; i < fields.length; i++) {
+				FieldDescriptor<?, ?> field = declared.get(i);
+				TypeEnum type = field.getType().getType();
+
+				fields[i] = (FieldDescriptor<Message, Object>) field;
+				names[i] = encodeName(field.getName(), true);
+				lazy[i] = type == TypeEnum.MESSAGE || type == TypeEnum.LIST
+						|| type == TypeEnum.SET || type == TypeEnum.MAP;
+			}
+		}
+
+		static MessageNames of(final MessageDescriptor<?> descriptor) {
+			MessageNames names = descriptor.getCodec(MessageNames.class);
+			if (names != null) {
+				return names;
+			}
+			return descriptor.putCodec(MessageNames.class, new MessageNames(descriptor));
+		}
+	}
+
+	/** Encoded quoted enum names indexed by ordinals, cached in a descriptor. */
+	private static class EnumNames {
+		private final byte[][] names;
+
+		private <E extends Enum<E>> EnumNames(final EnumDescriptor<E> descriptor) {
+			List<E> values = descriptor.getValues();
+			names = new byte[values.size()][];
+			for (E value : values) {
+				names[value.ordinal()] = encodeName(descriptor.getName(value), false);
+			}
+		}
+
+		static <E extends Enum<E>> EnumNames of(final EnumDescriptor<E> descriptor) {
+			EnumNames names = descriptor.getCodec(EnumNames.class);
+			if (names != null) {
+				return names;
+			}
+			return descriptor.putCodec(EnumNames.class, new EnumNames(descriptor));
+		}
+	}
+}
@@ -0,0 +1,563 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef.json;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import io.pdef.FieldMask;
+import io.pdef.Message;
+import io.pdef.TypeEnum;
+import io.pdef.collections.*;
+import io.pdef.descriptors.*;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * JsonWriter is a compiled plan which writes non-null values of one data type to a generator.
+ *
+ * Type dispatch is resolved once when a writer is compiled. Message writers are cached
+ * in their descriptors, and compile their fields on the first write to support recursive types.
+ */
+abstract class JsonWriter<T> {
+	private static final JsonWriter<Boolean> BOOL = new JsonWriter<Boolean>() {
+		@Override
+		void write(final Boolean value, final JsonGenerator generator) throws IOException {
+			generator.writeBoolean(value);
+		}
+	};
+
+	private static final JsonWriter<Short> INT16 = new JsonWriter<Short>() {
+		@Override
+		void write(final Short value, final JsonGenerator generator) throws IOException {
+			generator.writeNumber(value);
+		}
+	};
+
+	private static final JsonWriter<Integer> INT32 = new JsonWriter<Integer>() {
+		@Override
+		void write(final Integer value, final JsonGenerator generator) throws IOException {
+			generator.writeNumber(value);
+		}
+	};
+
+	private static final JsonWriter<Long> INT64 = new JsonWriter<Long>() {
+		@Override
+		void write(final Long value, final JsonGenerator generator) throws IOException {
+			generator.writeNumber(value);
+		}
+	};
+
+	private static final JsonWriter<Float> FLOAT = new JsonWriter<Float>() {
+		@Override
+		void write(final Float value, final JsonGenerator generator) throws IOException {
+			generator.writeNumber(value);
+		}
+	};
+
+	private static final JsonWriter<Double> DOUBLE = new JsonWriter<Double>() {
+		@Override
+		void write(final Double value, final JsonGenerator generator) throws IOException {
+			generator.writeNumber(value);
+		}
+	};
+
+	private static final JsonWriter<String> STRING = new JsonWriter<String>() {
+		@Override
+		void write(final String value, final JsonGenerator generator) throws IOException {
+			generator.writeString(value);
+		}
+	};
+
+	private static final JsonWriter<Date> DATETIME = new JsonWriter<Date>() {
+		@Override
+		void write(final Date value, final JsonGenerator generator) throws IOException {
+			char[] buffer = JsonDatetimes.buffer();
+			JsonDatetimes.format(value.getTime(), buffer, 0);
+			generator.writeString(buffer, 0, JsonDatetimes.LENGTH);
+		}
+	};
+
+	private static final JsonWriter<Object> VOID = new JsonWriter<Object>() {
+		@Override
+		void write(final Object value, final JsonGenerator generator) throws IOException {
+			generator.writeNull();
+		}
+	};
+
+	/** Writes a non-null value. */
+	abstract void write(T value, JsonGenerator generator) throws IOException;
+
+	/** Writes a non-null value, applies a field mask to messages. */
+	void write(final T value, final JsonGenerator generator, final FieldMask mask)
+			throws IOException {
+		write(value, generator);
+	}
+
+	/** Writes a value or null. */
+	final void writeNullable(final T value, final JsonGenerator generator) throws IOException {
+		if (value == null) {
+			generator.writeNull();
+		} else {
+			write(value, generator);
+		}
+	}
+
+	/** Writes a value or null, applies a field mask to messages. */
+	final void writeNullable(final T value, final JsonGenerator generator, final FieldMask mask)
+			throws IOException {
+		if (value == null) {
+			generator.writeNull();
+		} else if (mask.isAll()) {
+			write(value, generator);
+		} else {
+			write(value, generator, mask);
+		}
+	}
+
+	/** Returns a compiled writer for a data type, message writers are cached. */
+	@SuppressWarnings("unchecked")
+	static <T> JsonWriter<T> of(final DataTypeDescriptor<T> descriptor) {
+		switch (descriptor.getType()) {
+			case BOOL: return (JsonWriter<T>) BOOL;
+			case INT16: return (JsonWriter<T>) INT16;
+			case INT32: return (JsonWriter<T>) INT32;
+			case INT64: return (JsonWriter<T>) INT64;
+			case FLOAT: return (JsonWriter<T>) FLOAT;
+			case DOUBLE: return (JsonWriter<T>) DOUBLE;
+			case STRING: return (JsonWriter<T>) STRING;
+			case DATETIME: return (JsonWriter<T>) DATETIME;
+			case VOID: return (JsonWriter<T>) VOID;
+			case ENUM: return (JsonWriter<T>) enumeration((EnumDescriptor) descriptor);
+			case LIST: return (JsonWriter<T>) list((ListDescriptor<?>) descriptor);
+			case SET: return (JsonWriter<T>) set((SetDescriptor<?>) descriptor);
+			case MAP: return (JsonWriter<T>) map((MapDescriptor<?, ?>) descriptor);
+			case MESSAGE: return (JsonWriter<T>) message((MessageDescriptor<?>) descriptor);
+			default: throw new JsonFormatException("Unsupported descriptor " + descriptor);
+		}
+	}
+
+	/** Returns a message writer cached in a descriptor. */
+	@SuppressWarnings("unchecked")
+	static <M extends Message> MessageWriter<M> message(final MessageDescriptor<M> descriptor) {
+		MessageWriter<M> writer = descriptor.getCodec(MessageWriter.class);
+		if (writer != null) {
+			return writer;
+		}
+
+		return descriptor.putCodec(MessageWriter.class, new MessageWriter<M>(descriptor));
+	}
+
+	/** Returns an enum writer cached in a descriptor. */
+	@SuppressWarnings("unchecked")
+	private static <E extends Enum<E>> EnumWriter<E> enumeration(
+			final EnumDescriptor<E> descriptor) {
+		EnumWriter<E> writer = descriptor.getCodec(EnumWriter.class);
+		if (writer != null) {
+			return writer;
+		}
+
+		return descriptor.putCodec(EnumWriter.class, new EnumWriter<E>(descriptor));
+	}
+
+	private static <E> JsonWriter<Collection<E>> list(final ListDescriptor<E> descriptor) {
+		return new CollectionWriter<E>(of(descriptor.getElement()));
+	}
+
+	private static <E> JsonWriter<Collection<E>> set(final SetDescriptor<E> descriptor) {
+		return new CollectionWriter<E>(of(descriptor.getElement()));
+	}
+
+	private static <K, V> JsonWriter<Map<K, V>> map(final MapDescriptor<K, V> descriptor) {
+		return new MapWriter<K, V>(descriptor.getKey(), of(descriptor.getValue()));
+	}
+
+	private static class EnumWriter<E extends Enum<E>> extends JsonWriter<E> {
+		private final SerializedString[] names;
+
+		private EnumWriter(final EnumDescriptor<E> descriptor) {
+			List<E> values = descriptor.getValues();
+			names = new SerializedString[values.size()];
+			for (E value : values) {
+				names[value.ordinal()] = new SerializedString(descriptor.getName(value));
+			}
+		}
+
+		@Override
+		void write(final E value, final JsonGenerator generator) throws IOException {
+			generator.writeString(names[value.ordinal()]);
+		}
+	}
+
+	private static class CollectionWriter<E> extends JsonWriter<Collection<E>>
+			implements JsonParallelGenerator.ChunkWriter {
+		private final JsonWriter<E> element;
+
+		private CollectionWriter(final JsonWriter<E> element) {
+			this.element = element;
+		}
+
+		@Override
+		void write(final Collection<E> value, final JsonGenerator generator) throws IOException {
+			if (splits(value, generator)) {
+				((JsonParallelGenerator) generator).writeChunks(items(value), value.size(), false,
+						this, FieldMask.ALL);
+				return;
+			} else if (value instanceof IntArrayList) {
+				writeInts((IntArrayList) value, 0, value.size(), generator);
+				return;
+			} else if (value instanceof LongArrayList) {
+				writeLongs((LongArrayList) value, 0, value.size(), generator);
+				return;
+			} else if (value instanceof DoubleArrayList) {
+				writeDoubles((DoubleArrayList) value, 0, value.size(), generator);
+				return;
+			}
+
+			generator.writeStartArray();
+			for (E e : value) {
+				element.writeNullable(e, generator);
+			}
+			generator.writeEndArray();
+		}
+
+		@Override
+		void write(final Collection<E> value, final JsonGenerator generator,
+				final FieldMask mask) throws IOException {
+			if (splits(value, generator)) {
+				((JsonParallelGenerator) generator).writeChunks(items(value), value.size(), false,
+						this, mask);
+				return;
+			}
+
+			generator.writeStartArray();
+			for (E e : value) {
+				element.writeNullable(e, generator, mask);
+			}
+			generator.writeEndArray();
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public void writeChunk(final Object items, final int from, final int to,
+				final JsonGenerator generator, final FieldMask mask) throws IOException {
+			if (items instanceof IntArrayList) {
+				writeInts((IntArrayList) items, from, to, generator);
+				return;
+			} else if (items instanceof LongArrayList) {
+				writeLongs((LongArrayList) items, from, to, generator);
+				return;
+			} else if (items instanceof DoubleArrayList) {
+				writeDoubles((DoubleArrayList) items, from, to, generator);
+				return;
+			}
+
+			Object[] array = (Object[]) items;
+			generator.writeStartArray();
+			for (int i = from; i < to; i++) {
+				element.writeNullable((E) array[i], generator, mask);
+			}
+			generator.writeEndArray();
+		}
+
+		private static boolean splits(final Collection<?> value, final JsonGenerator generator) {
+			return generator instanceof JsonParallelGenerator
+					&& ((JsonParallelGenerator) generator).splits(value.size());
+		}
+
+		/** Returns primitive lists as they are to avoid boxing, other collections as arrays. */
+		private static Object items(final Collection<?> value) {
+			if (value instanceof IntArrayList || value instanceof LongArrayList
+					|| value instanceof DoubleArrayList) {
+				return value;
+			}
+			return value.toArray();
+		}
+	}
+
+	private static void writeInts(final IntArrayList list, final int from, final int to,
+			final JsonGenerator generator) throws IOException {
+		generator.writeStartArray();
+		for (int i = from; i < to; i++) {
+			generator.writeNumber(list.getInt(i));
+		}
+		generator.writeEndArray();
+	}
+
+	private static void writeLongs(final LongArrayList list, final int from, final int to,
+			final JsonGenerator generator) throws IOException {
+		generator.writeStartArray();
+		for (int i = from; i < to; i++) {
+			generator.writeNumber(list.getLong(i));
+		}
+		generator.writeEndArray();
+	}
+
+	private static void writeDoubles(final DoubleArrayList list, final int from, final int to,
+			final JsonGenerator generator) throws IOException {
+		generator.writeStartArray();
+		for (int i = from; i < to; i++) {
+			generator.writeNumber(list.getDouble(i));
+		}
+		generator.writeEndArray();
+	}
+
+	private static class MapWriter<K, V> extends JsonWriter<Map<K, V>>
+			implements JsonParallelGenerator.ChunkWriter {
+		private final DataTypeDescriptor<K> key;
+		private final JsonWriter<V> value;
+
+		private MapWriter(final DataTypeDescriptor<K> key, final JsonWriter<V> value) {
+			this.key = key;
+			this.value = value;
+		}
+
+		@Override
+		void write(final Map<K, V> map, final JsonGenerator generator) throws IOException {
+			write(map, generator, FieldMask.ALL);
+		}
+
+		@Override
+		void write(final Map<K, V> map, final JsonGenerator generator, final FieldMask mask)
+				throws IOException {
+			if (generator instanceof JsonParallelGenerator
+					&& ((JsonParallelGenerator) generator).splits(map.size())) {
+				((JsonParallelGenerator) generator).writeChunks(map.entrySet().toArray(),
+						map.size(), true, this, mask);
+				return;
+			}
+
+			generator.writeStartObject();
+			for (Map.Entry<K, V> entry : map.entrySet()) {
+				writeEntry(entry, generator, mask);
+			}
+			generator.writeEndObject();
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public void writeChunk(final Object items, final int from, final int to,
+				final JsonGenerator generator, final FieldMask mask) throws IOException {
+			Object[] array = (Object[]) items;
+			generator.writeStartObject();
+			for (int i = from; i < to; i++) {
+				writeEntry((Map.Entry<K, V>) array[i], generator, mask);
+			}
+			generator.writeEndObject();
+		}
+
+		private void writeEntry(final Map.Entry<K, V> entry, final JsonGenerator generator,
+				final FieldMask mask) throws IOException {
+			K k = entry.getKey();
+			if (k == null) {
+				throw new JsonFormatException("Null map key");
+			}
+
+			generator.writeFieldName(JsonObjectFormat.getInstance().writeMapKey(k, key));
+			value.writeNullable(entry.getValue(), generator, mask);
+		}
+	}
+
+	static class MessageWriter<M extends Message> extends JsonWriter<M> {
+		private final MessageDescriptor<M> descriptor;
+		private volatile FieldWriter<M, ?>[] fields;
+		private volatile JsonCodecs.Holder codecs;
+
+		private MessageWriter(final MessageDescriptor<M> descriptor) {
+			this.descriptor = descriptor;
+		}
+
+		@Override
+		void write(final M message, final JsonGenerator generator) throws IOException {
+			// Mind polymorphic messages.
+			@SuppressWarnings("unchecked")
+			MessageDescriptor<M> polymorphic = (MessageDescriptor<M>) message.descriptor();
+			MessageWriter<M> writer = polymorphic == descriptor ? this : message(polymorphic);
+
+			writer.writeFields(message, generator);
+		}
+
+		@Override
+		void write(final M message, final JsonGenerator generator, final FieldMask mask)
+				throws IOException {
+			@SuppressWarnings("unchecked")
+			MessageDescriptor<M> polymorphic = (MessageDescriptor<M>) message.descriptor();
+			MessageWriter<M> writer = polymorphic == descriptor ? this : message(polymorphic);
+
+			writer.writeFields(message, generator, mask);
+		}
+
+		private void writeFields(final M message, final JsonGenerator generator)
+				throws IOException {
+			JsonCodecs.Holder codecs = this.codecs;
+			if (codecs == null) {
+				this.codecs = codecs = JsonCodecs.holder(descriptor);
+			}
+
+			@SuppressWarnings("unchecked")
+			JsonMessageCodec<M> codec = (JsonMessageCodec<M>) codecs.get(descriptor);
+			if (codec != null && !hasRawFields(message)) {
+				generator.writeStartObject();
+				codec.writeFields(message, generator);
+				generator.writeEndObject();
+				return;
+			}
+
+			writeGeneric(message, generator);
+		}
+
+		/** Writes a message with the field writers, does not use a codec. */
+		void writeGeneric(final M message, final JsonGenerator generator) throws IOException {
+			FieldWriter<M, ?>[] fields = fields();
+
+			generator.writeStartObject();
+			for (FieldWriter<M, ?> field : fields) {
+				field.write(message, generator);
+			}
+
+			JsonUnknownFields unknown = message instanceof JsonLazyMessage
+					? ((JsonLazyMessage) message).unknownFields() : null;
+			if (unknown != null) {
+				// Pass undeclared fields through.
+				unknown.write(generator);
+			}
+			generator.writeEndObject();
+		}
+
+		private void writeFields(final M message, final JsonGenerator generator,
+				final FieldMask mask) throws IOException {
+			FieldWriter<M, ?>[] fields = fields();
+
+			generator.writeStartObject();
+			for (FieldWriter<M, ?> field : fields) {
+				field.write(message, generator, mask);
+			}
+			generator.writeEndObject();
+		}
+
+		/** Returns whether a message has lazy or unknown raw fields which codecs do not write. */
+		private static boolean hasRawFields(final Message message) {
+			if (!(message instanceof JsonLazyMessage)) {
+				return false;
+			}
+
+			JsonLazyMessage lazy = (JsonLazyMessage) message;
+			return lazy.lazyFields() != null || lazy.unknownFields() != null;
+		}
+
+		private FieldWriter<M, ?>[] fields() {
+			FieldWriter<M, ?>[] fields = this.fields;
+			if (fields == null) {
+				this.fields = fields = compileFields();
+			}
+			return fields;
+		}
+
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		private FieldWriter<M, ?>[] compileFields() {
+			List<FieldDescriptor<? super M, ?>> declared = descriptor.getFields();
+			FieldWriter<M, ?>[] result = new FieldWriter[declared.size()];
+
+			for (int i = 0; i < result.length; i++) {
+				FieldDescriptor<M, Object> field = (FieldDescriptor<M, Object>) declared.get(i);
+				result[i] = new FieldWriter<M, Object>(field);
+			}
+			return result;
+		}
+	}
+
+	private static class FieldWriter<M, V> {
+		private final SerializedString name;
+		private final FieldDescriptor<M, V> field;
+		private final JsonWriter<V> writer;
+		private final boolean lazy;
+		private final boolean enumType;
+
+		private FieldWriter(final FieldDescriptor<M, V> field) {
+			this.name = new SerializedString(field.getName());
+			this.field = field;
+			this.writer = of(field.getType());
+
+			TypeEnum type = field.getType().getType();
+			this.lazy = type == TypeEnum.MESSAGE || type == TypeEnum.LIST
+					|| type == TypeEnum.SET || type == TypeEnum.MAP;
+			this.enumType = type == TypeEnum.ENUM;
+		}
+
+		void write(final M message, final JsonGenerator generator) throws IOException {
+			if (lazy && message instanceof JsonLazyMessage && writeLazy(message, generator)) {
+				return;
+			}
+
+			V value = field.get(message);
+			if (value == null) {
+				// Skip null fields, but keep unrecognized enum values.
+				if (enumType && message instanceof JsonLazyMessage) {
+					writeUnrecognized(message, generator);
+				}
+				return;
+			}
+
+			generator.writeFieldName(name);
+			writer.write(value, generator);
+		}
+
+		void write(final M message, final JsonGenerator generator, final FieldMask mask)
+				throws IOException {
+			FieldMask submask = field.isDiscriminator() ? FieldMask.ALL : mask.get(field.getName());
+			if (submask == null) {
+				// Skip masked fields.
+				return;
+			} else if (submask.isAll()) {
+				write(message, generator);
+				return;
+			}
+
+			V value = field.get(message);
+			if (value == null) {
+				return;
+			}
+
+			generator.writeFieldName(name);
+			writer.write(value, generator, submask);
+		}
+
+		/** Writes an unrecognized raw value of a null field verbatim if present. */
+		private void writeUnrecognized(final M message, final JsonGenerator generator)
+				throws IOException {
+			JsonUnknownFields unknown = ((JsonLazyMessage) message).unknownFields();
+			if (unknown == null || !unknown.hasValue(field.getName())) {
+				return;
+			}
+
+			generator.writeFieldName(name);
+			unknown.writeValue(field.getName(), generator);
+		}
+
+		/** Writes an untouched raw field verbatim, returns false if absent. */
+		private boolean writeLazy(final M message, final JsonGenerator generator)
+				throws IOException {
+			JsonLazyFields fields = ((JsonLazyMessage) message).lazyFields();
+			if (fields == null || !fields.contains(field.getName())) {
+				return false;
+			}
+
+			generator.writeFieldName(name);
+			return fields.write(field.getName(), generator);
+		}
+	}
+}
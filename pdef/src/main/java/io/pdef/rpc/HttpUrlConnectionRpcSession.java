@@ -27,6 +27,7 @@ import java.net.URL;
 import java.net.URLEncoder;
 import java.nio.charset.Charset;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
 
 public class HttpUrlConnectionRpcSession implements RpcSession {
 	public static final String GET = "GET";
@@ -34,6 +35,10 @@ public class HttpUrlConnectionRpcSession implements RpcSession {
 	public static final String UTF8_NAME = "UTF-8";
 	public static final String CONTENT_TYPE_HEADER = "Content-Type";
 	public static final String CONTENT_LENGTH_HEADER = "Content-Length";
+	public static final String CONTENT_ENCODING_HEADER = "Content-Encoding";
+	public static final String ACCEPT_HEADER = "Accept";
+	public static final String ACCEPT_ENCODING_HEADER = "Accept-Encoding";
+	public static final String GZIP = "gzip";
 	public static final String APPLICATION_X_WWW_FORM_URLENCODED =
 			"application/x-www-form-urlencoded;charset=utf-8";
 
@@ -42,11 +47,34 @@ public class HttpUrlConnectionRpcSession implements RpcSession {
 	public static final Charset UTF8 = Charset.forName(UTF8_NAME);
 
 	private final String url;
+	private final WireFormat format;
+	private final boolean gzip;
 
 	public HttpUrlConnectionRpcSession(final String url) {
+		this(url, WireFormat.json());
+	}
+
+	/**
+	 * Creates a session which accepts results in a format, i.e. {@link WireFormat#binary()}.
+	 * Servers which do not support the format respond with JSON, it is always accepted.
+	 */
+	public HttpUrlConnectionRpcSession(final String url, final WireFormat format) {
+		this(url, format, false);
+	}
+
+	/** Creates a session which also accepts gzip-compressed results when {@code gzip} is set. */
+	public HttpUrlConnectionRpcSession(final String url, final WireFormat format,
+			final boolean gzip) {
 		if (url == null) throw new NullPointerException("url");
+		if (format == null) throw new NullPointerException("format");
 
 		this.url = url;
+		this.format = format;
+		this.gzip = gzip;
+	}
+
+	public WireFormat getFormat() {
+		return format;
 	}
 
 	@Override
@@ -113,9 +141,22 @@ public class HttpUrlConnectionRpcSession implements RpcSession {
 		} else {
 			connection.setRequestMethod(GET);
 		}
+
+		connection.setRequestProperty(ACCEPT_HEADER, getAccept());
+		if (gzip) {
+			connection.setRequestProperty(ACCEPT_ENCODING_HEADER, GZIP);
+		}
 		return connection;
 	}
 
+	/** Returns an accept header, JSON is accepted with a lower quality as a fallback. */
+	protected String getAccept() {
+		if (format.matches(WireFormat.JSON_MEDIA_TYPE)) {
+			return format.getMediaType();
+		}
+		return format.getMediaType() + ", " + WireFormat.JSON_MEDIA_TYPE + ";q=0.5";
+	}
+
 	/** Sets the connection content-type and content-length and sends the post data. */
 	protected void sendPostData(final HttpURLConnection connection, final RpcRequest request)
 			throws IOException {
@@ -155,11 +196,13 @@ public class HttpUrlConnectionRpcSession implements RpcSession {
 
 	protected <T> T readResult(final HttpURLConnection connection,
 			final DataTypeDescriptor<T> resultd) throws IOException {
-		InputStream stream = new BufferedInputStream(connection.getInputStream());
+		InputStream stream = new BufferedInputStream(decode(connection,
+				connection.getInputStream()));
 
+		WireFormat format = getResponseFormat(connection);
 		RpcResult<T, Void> result = new RpcResult<T, Void>(resultd, Descriptors.void0);
-		result.mergeJson(stream);
-		return result.getData();
+		result = format.read(stream, result.descriptor());
+		return result == null ? null : result.getData();
 	}
 
 	protected <E> E readApplicationException(final HttpURLConnection connection,
@@ -174,8 +217,12 @@ public class HttpUrlConnectionRpcSession implements RpcSession {
 				throw new RpcException(status, "Unsupported application exception");
 			}
 
+			WireFormat format = getResponseFormat(connection);
 			RpcResult<Void, E> result = new RpcResult<Void, E>(Descriptors.void0, errord);
-			result.mergeJson(stream);
+			result = format.read(decode(connection, stream), result.descriptor());
+			if (result == null || result.getError() == null) {
+				throw new RpcException(status, "The server returned no application exception");
+			}
 			return result.getError();
 		} finally {
 			closeLogExc(stream);
@@ -188,7 +235,8 @@ public class HttpUrlConnectionRpcSession implements RpcSession {
 		InputStream input = connection.getErrorStream();
 
 		try {
-			String message = input == null ? "No error description" : readString(connection, input);
+			String message = input == null ? "No error description"
+			                               : readString(connection, decode(connection, input));
 			if (message.length() > MAX_RPC_EXCEPTION_MESSAGE_LEN) {
 				message = message.substring(0, MAX_RPC_EXCEPTION_MESSAGE_LEN) + "...";
 			}
@@ -201,6 +249,22 @@ public class HttpUrlConnectionRpcSession implements RpcSession {
 		}
 	}
 
+	/** Returns a format by the response content type, JSON by default. */
+	protected WireFormat getResponseFormat(final HttpURLConnection connection) {
+		String contentType = connection.getHeaderField(CONTENT_TYPE_HEADER);
+		return format.matches(contentType) ? format : WireFormat.json();
+	}
+
+	/** Wraps a response stream into a gzip stream if the response is compressed. */
+	protected InputStream decode(final HttpURLConnection connection, final InputStream input)
+			throws IOException {
+		String encoding = connection.getHeaderField(CONTENT_ENCODING_HEADER);
+		if (encoding != null && encoding.trim().equalsIgnoreCase(GZIP)) {
+			return new GZIPInputStream(input);
+		}
+		return input;
+	}
+
 	/** Reads a string from an input stream, gets the charset from the content-type header.*/
 	protected String readString(final HttpURLConnection connection, final InputStream input)
 			throws IOException {
@@ -22,6 +22,7 @@ import io.pdef.descriptors.ArgumentDescriptor;
 import io.pdef.descriptors.DataTypeDescriptor;
 import io.pdef.descriptors.InterfaceDescriptor;
 import io.pdef.descriptors.MethodDescriptor;
+import io.pdef.json.JsonDatetimes;
 import io.pdef.json.JsonFormat;
 
 import java.io.UnsupportedEncodingException;
@@ -101,8 +102,12 @@ public class RpcProtocol {
 	// VisibleForTesting
 	/** Serializes an argument to JSON, strips the quotes. */
 	<V> String toJson(final DataTypeDescriptor<V> descriptor, final V arg) {
-		String s = format.write(arg, descriptor, false);
 		TypeEnum type = descriptor.getType();
+		if (type == TypeEnum.DATETIME && arg != null) {
+			return JsonDatetimes.format((Date) arg);
+		}
+
+		String s = format.write(arg, descriptor, false);
 		if (type == TypeEnum.STRING || type == TypeEnum.ENUM || type == TypeEnum.DATETIME) {
 			// Remove the quotes.
 			s = s.substring(1, s.length() - 1);
@@ -17,18 +17,25 @@
 package io.pdef.rpc;
 
 import io.pdef.DynamicMessage;
-import io.pdef.Message;
 import io.pdef.Provider;
 import io.pdef.descriptors.DataTypeDescriptor;
 import io.pdef.descriptors.Descriptors;
+import io.pdef.descriptors.FieldAccessor;
+import io.pdef.descriptors.FieldDescriptor;
 import io.pdef.descriptors.MessageDescriptor;
 
 import javax.annotation.Nullable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /** Generic RpcResult. */
 public class RpcResult<T, E> extends DynamicMessage {
+	private static final ConcurrentMap<Key, MessageDescriptor<?>> DESCRIPTORS =
+			new ConcurrentHashMap<Key, MessageDescriptor<?>>();
+
 	private final DataTypeDescriptor<T> datad;
 	private final DataTypeDescriptor<E> errord;
+	private transient MessageDescriptor<RpcResult<T, E>> descriptor;
 	private T data;
 	private E error;
 	private boolean success;
@@ -82,10 +89,37 @@ public class RpcResult<T, E> extends DynamicMessage {
 		return this;
 	}
 
+	/**
+	 * Returns a descriptor shared by all results with the same data and error descriptors,
+	 * so its codecs and writer plans are built once. Descriptors are cached statically,
+	 * they are expected to be long-lived, i.e. generated or method result descriptors.
+	 */
 	@Override
-	public MessageDescriptor<? extends Message> descriptor() {
+	public MessageDescriptor<RpcResult<T, E>> descriptor() {
+		if (descriptor != null) {
+			return descriptor;
+		}
+
+		Key key = new Key(getClass(), datad, errord);
+		@SuppressWarnings("unchecked")
+		MessageDescriptor<RpcResult<T, E>> cached =
+				(MessageDescriptor<RpcResult<T, E>>) DESCRIPTORS.get(key);
+		if (cached == null) {
+			cached = buildDescriptor(getClass(), datad, errord);
+			@SuppressWarnings("unchecked")
+			MessageDescriptor<RpcResult<T, E>> previous =
+					(MessageDescriptor<RpcResult<T, E>>) DESCRIPTORS.putIfAbsent(key, cached);
+			cached = previous != null ? previous : cached;
+		}
+
+		return descriptor = cached;
+	}
+
+	/** Builds a descriptor in a static context, so it does not reference a result. */
+	private static <T, E> MessageDescriptor<RpcResult<T, E>> buildDescriptor(final Class<?> cls,
+			final DataTypeDescriptor<T> datad, final DataTypeDescriptor<E> errord) {
 		@SuppressWarnings("unchecked")
-		Class<RpcResult<T, E>> messageClass = (Class<RpcResult<T, E>>) getClass();
+		Class<RpcResult<T, E>> messageClass = (Class<RpcResult<T, E>>) cls;
 
 		return MessageDescriptor.<RpcResult<T, E>>builder()
 				.setJavaClass(messageClass)
@@ -95,8 +129,67 @@ public class RpcResult<T, E> extends DynamicMessage {
 						return new RpcResult<T, E>(datad, errord);
 					}
 				})
-				.addField("data", datad, messageClass)
-				.addField("error", errord, messageClass)
+				.addField(FieldDescriptor.<RpcResult<T, E>, T>builder()
+						.setName("data")
+						.setType(datad)
+						.setAccessor(new FieldAccessor<RpcResult<T, E>, T>() {
+							@Override
+							public T get(final RpcResult<T, E> message) {
+								return message.data;
+							}
+
+							@Override
+							public void set(final RpcResult<T, E> message, final T value) {
+								message.data = value;
+							}
+						})
+						.build())
+				.addField(FieldDescriptor.<RpcResult<T, E>, E>builder()
+						.setName("error")
+						.setType(errord)
+						.setAccessor(new FieldAccessor<RpcResult<T, E>, E>() {
+							@Override
+							public E get(final RpcResult<T, E> message) {
+								return message.error;
+							}
+
+							@Override
+							public void set(final RpcResult<T, E> message, final E value) {
+								message.error = value;
+							}
+						})
+						.build())
 				.build();
 	}
+
+	/** Identifies a result descriptor by a result class and data and error descriptors. */
+	private static class Key {
+		private final Class<?> cls;
+		private final DataTypeDescriptor<?> datad;
+		private final DataTypeDescriptor<?> errord;
+
+		private Key(final Class<?> cls, final DataTypeDescriptor<?> datad,
+				final DataTypeDescriptor<?> errord) {
+			this.cls = cls;
+			this.datad = datad;
+			this.errord = errord;
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			if (this == o) return true;
+			if (!(o instanceof Key)) return false;
+
+			Key key = (Key) o;
+			return cls == key.cls && datad == key.datad && errord == key.errord;
+		}
+
+		@Override
+		public int hashCode() {
+			int result = cls.hashCode();
+			result = 31 * result + System.identityHashCode(datad);
+			result = 31 * result + System.identityHashCode(errord);
+			return result;
+		}
+	}
 }
@@ -0,0 +1,224 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef.rpc;
+
+import io.pdef.binary.BinaryFormat;
+import io.pdef.descriptors.DataTypeDescriptor;
+import io.pdef.json.JsonFormat;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * WireFormat serializes rpc results in HTTP bodies, formats are negotiated via
+ * the {@code Accept} and {@code Content-Type} headers.
+ *
+ * JSON is the default, it is used when a client does not send an accept header
+ * or accepts no other supported format, so plain JSON clients work unchanged.
+ * Rpc arguments are always sent as url-encoded JSON strings.
+ */
+public abstract class WireFormat {
+	public static final String JSON_MEDIA_TYPE = "application/json";
+	public static final String BINARY_MEDIA_TYPE = "application/x-pdef-binary";
+
+	private static final WireFormat JSON = json(JsonFormat.instance(), true);
+	private static final WireFormat BINARY = new Binary(BinaryFormat.instance());
+
+	private final String mediaType;
+	private final String contentType;
+
+	protected WireFormat(final String mediaType, final String contentType) {
+		if (mediaType == null) throw new NullPointerException("mediaType");
+		if (contentType == null) throw new NullPointerException("contentType");
+
+		this.mediaType = mediaType;
+		this.contentType = contentType;
+	}
+
+	/** Returns the default JSON format, it writes indented JSON. */
+	public static WireFormat json() {
+		return JSON;
+	}
+
+	/** Returns a JSON format which uses a custom json format, i.e. a utf8 one. */
+	public static WireFormat json(final JsonFormat format, final boolean indent) {
+		return new Json(format, indent);
+	}
+
+	/** Returns the compact binary format, see {@link BinaryFormat}. */
+	public static WireFormat binary() {
+		return BINARY;
+	}
+
+	/** Returns a media type without parameters, i.e. {@code application/json}. */
+	public String getMediaType() {
+		return mediaType;
+	}
+
+	/** Returns a response content type, i.e. {@code application/json; charset=utf-8}. */
+	public String getContentType() {
+		return contentType;
+	}
+
+	/** Returns whether a content type or an accept header media range has this media type. */
+	public boolean matches(@Nullable final String contentType) {
+		if (contentType == null) {
+			return false;
+		}
+
+		int end = contentType.indexOf(';');
+		String type = (end == -1 ? contentType : contentType.substring(0, end)).trim();
+		return type.equalsIgnoreCase(mediaType);
+	}
+
+	/** Writes an object to an output stream, does not close the stream. */
+	public abstract <T> void write(OutputStream stream, T object, DataTypeDescriptor<T> descriptor)
+			throws IOException;
+
+	/** Reads an object from an input stream, does not close the stream. */
+	public abstract <T> T read(InputStream stream, DataTypeDescriptor<T> descriptor)
+			throws IOException;
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "{" + mediaType + "}";
+	}
+
+	/**
+	 * Selects a format by an accept header, returns the first format when the header is absent
+	 * or matches no formats. Media ranges are tried in the order of their quality values,
+	 * exact media types take precedence over {@code application/*} and then {@code *}{@code /*}
+	 * ranges with the same quality, wildcards match the first format.
+	 */
+	public static WireFormat select(final List<WireFormat> formats, @Nullable final String accept) {
+		if (formats.isEmpty()) throw new IllegalArgumentException("No formats");
+		WireFormat first = formats.get(0);
+		if (accept == null) {
+			return first;
+		}
+
+		WireFormat result = first;
+		float best = 0;
+		int bestSpecificity = -1;
+		for (String range : accept.split(",")) {
+			float quality = quality(range);
+			int specificity = specificity(range);
+			if (quality < best || quality == 0
+					|| (quality == best && specificity <= bestSpecificity)) {
+				continue;
+			}
+
+			WireFormat format = find(formats, range);
+			if (format == null && specificity < 2) {
+				format = first;
+			}
+
+			if (format != null) {
+				result = format;
+				best = quality;
+				bestSpecificity = specificity;
+			}
+		}
+
+		return result;
+	}
+
+	/** Returns a format by a content type or null. */
+	@Nullable
+	public static WireFormat find(final List<WireFormat> formats,
+			@Nullable final String contentType) {
+		for (WireFormat format : formats) {
+			if (format.matches(contentType)) {
+				return format;
+			}
+		}
+		return null;
+	}
+
+	/** Returns 0 for {@code *}{@code /*}, 1 for {@code application/*}, 2 for other ranges. */
+	private static int specificity(final String range) {
+		int end = range.indexOf(';');
+		String type = (end == -1 ? range : range.substring(0, end)).trim();
+		if (type.equals("*/*")) {
+			return 0;
+		} else if (type.equals("application/*")) {
+			return 1;
+		}
+		return 2;
+	}
+
+	/** Returns the q parameter of a media range, 1 by default, 0 if malformed. */
+	private static float quality(final String range) {
+		for (String param : range.replace(" ", "").split(";")) {
+			if (param.startsWith("q=")) {
+				try {
+					return Float.parseFloat(param.substring(2));
+				} catch (NumberFormatException e) {
+					return 0;
+				}
+			}
+		}
+		return 1;
+	}
+
+	private static class Json extends WireFormat {
+		private final JsonFormat format;
+		private final boolean indent;
+
+		private Json(final JsonFormat format, final boolean indent) {
+			super(JSON_MEDIA_TYPE, JSON_MEDIA_TYPE + "; charset=utf-8");
+			if (format == null) throw new NullPointerException("format");
+
+			this.format = format;
+			this.indent = indent;
+		}
+
+		@Override
+		public <T> void write(final OutputStream stream, final T object,
+				final DataTypeDescriptor<T> descriptor) {
+			format.write(stream, object, descriptor, indent);
+		}
+
+		@Override
+		public <T> T read(final InputStream stream, final DataTypeDescriptor<T> descriptor) {
+			return format.read(stream, descriptor);
+		}
+	}
+
+	private static class Binary extends WireFormat {
+		private final BinaryFormat format;
+
+		private Binary(final BinaryFormat format) {
+			super(BINARY_MEDIA_TYPE, BINARY_MEDIA_TYPE);
+			this.format = format;
+		}
+
+		@Override
+		public <T> void write(final OutputStream stream, final T object,
+				final DataTypeDescriptor<T> descriptor) {
+			format.write(stream, object, descriptor);
+		}
+
+		@Override
+		public <T> T read(final InputStream stream, final DataTypeDescriptor<T> descriptor) {
+			return format.read(stream, descriptor);
+		}
+	}
+}
@@ -56,6 +56,49 @@ public class AbstractMessageTest {
 		assertEquals(expected, map);
 	}
 
+	@Test
+	public void testToMapView() throws Exception {
+		PdefTestComplexMessage message = createComplexMessage()
+				.setMessage0(new PdefTestMessage().setInt0(16));
+		Map<String, Object> view = message.toMapView();
+
+		assertEquals(message.toMap(), view);
+		assertEquals("three", view.get("enum0"));
+		assertSame(view.get("message0"), view.get("message0"));
+		assertEquals(16, ((Map<?, ?>) view.get("message0")).get("int0"));
+		assertFalse(view.containsKey("unknown"));
+	}
+
+	@Test
+	public void testToMapView_live() throws Exception {
+		PdefTestMessage message = new PdefTestMessage().setInt0(1);
+		Map<String, Object> view = message.toMapView();
+		assertEquals(ImmutableMap.<String, Object>of("int0", 1), view);
+
+		message.setString0("hello").clearInt0();
+		assertEquals(ImmutableMap.<String, Object>of("string0", "hello"), view);
+	}
+
+	@Test
+	public void testToMapView_liveCollections() throws Exception {
+		PdefTestComplexMessage message = new PdefTestComplexMessage();
+		message.getList0().add(1);
+		message.getMap0().put(1, 1.5f);
+		Map<String, Object> view = message.toMapView();
+		assertEquals(ImmutableList.of(1), view.get("list0"));
+
+		message.getList0().add(2);
+		message.getMap0().put(2, 2.5f);
+		assertEquals(ImmutableList.of(1, 2), view.get("list0"));
+		assertEquals(ImmutableMap.of("1", 1.5f, "2", 2.5f), view.get("map0"));
+		assertEquals(message.toMap(), view);
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testToMapView_readOnly() throws Exception {
+		new PdefTestMessage().toMapView().put("int0", 1);
+	}
+
 	@Test
 	public void testFromMap() throws Exception {
 		Map<String, Object> map = createComplexMessageMap();
@@ -19,6 +19,9 @@ package io.pdef;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import io.pdef.collections.IntArrayList;
+import io.pdef.collections.IntHashMap;
+import io.pdef.collections.IntHashSet;
 import io.pdef.test.messages.PdefTestMessage;
 import static org.junit.Assert.*;
 import org.junit.Test;
@@ -70,6 +73,26 @@ public class DataTypesTest {
 		assertNotSame(list, copy);
 	}
 
+	@Test
+	public void testCopy_primitiveCollections() throws Exception {
+		IntArrayList list = new IntArrayList(ImmutableList.of(1, 2));
+		IntHashSet set = new IntHashSet(ImmutableSet.of(1, 2));
+		IntHashMap<PdefTestMessage> map = new IntHashMap<PdefTestMessage>();
+		map.put(1, new PdefTestMessage().setInt0(1));
+
+		List<Integer> listCopy = DataTypes.copy(list);
+		Set<Integer> setCopy = DataTypes.copy(set);
+		Map<Integer, PdefTestMessage> mapCopy = DataTypes.copy(map);
+
+		assertTrue(listCopy instanceof IntArrayList);
+		assertTrue(setCopy instanceof IntHashSet);
+		assertTrue(mapCopy instanceof IntHashMap);
+		assertEquals(list, listCopy);
+		assertEquals(set, setCopy);
+		assertEquals(map, mapCopy);
+		assertNotSame(map.get(1), mapCopy.get(1));
+	}
+
 	@Test
 	public void testCopy_map() throws Exception {
 		PdefTestMessage message0 = new PdefTestMessage();
@@ -0,0 +1,93 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef;
+
+import io.pdef.test.inheritance.PdefMultiLevelSubtype;
+import io.pdef.test.messages.PdefTestComplexMessage;
+import io.pdef.test.messages.PdefTestMessage;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class FieldMaskTest {
+	@Test
+	public void testOf() throws Exception {
+		FieldMask mask = FieldMask.of(PdefTestComplexMessage.DESCRIPTOR,
+				"int0", "message0.string0", "message0.int0");
+
+		assertFalse(mask.isAll());
+		assertTrue(mask.includes("int0"));
+		assertFalse(mask.includes("string0"));
+		assertTrue(mask.get("int0").isAll());
+		assertNull(mask.get("list0"));
+
+		FieldMask message0 = mask.get("message0");
+		assertTrue(message0.includes("string0"));
+		assertTrue(message0.includes("int0"));
+		assertFalse(message0.includes("bool0"));
+	}
+
+	@Test
+	public void testOf_wholeFieldWins() throws Exception {
+		FieldMask mask = FieldMask.of(PdefTestComplexMessage.DESCRIPTOR,
+				"message0", "message0.int0");
+
+		assertTrue(mask.get("message0").isAll());
+	}
+
+	@Test
+	public void testOf_subtypeField() throws Exception {
+		FieldMask mask = FieldMask.of(PdefTestComplexMessage.DESCRIPTOR, "polymorphic.mfield");
+
+		assertTrue(mask.get("polymorphic").includes("mfield"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testOf_unknownField() throws Exception {
+		FieldMask.of(PdefTestComplexMessage.DESCRIPTOR, "message0.unknown");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testOf_notMessage() throws Exception {
+		FieldMask.of(PdefTestComplexMessage.DESCRIPTOR, "int0.value");
+	}
+
+	@Test
+	public void testAll() throws Exception {
+		assertTrue(FieldMask.ALL.isAll());
+		assertTrue(FieldMask.ALL.includes("any"));
+		assertSame(FieldMask.ALL, FieldMask.ALL.get("any"));
+	}
+
+	@Test
+	public void testRetain() throws Exception {
+		PdefTestComplexMessage message = new PdefTestComplexMessage()
+				.setInt0(1)
+				.setString0("hello")
+				.setMessage0(new PdefTestMessage().setInt0(2).setBool0(true))
+				.setPolymorphic(new PdefMultiLevelSubtype().setField("field").setMfield("mfield"));
+
+		FieldMask mask = FieldMask.of(PdefTestComplexMessage.DESCRIPTOR,
+				"int0", "message0.bool0", "polymorphic.mfield");
+		assertSame(message, mask.retain(message));
+
+		PdefTestComplexMessage expected = new PdefTestComplexMessage()
+				.setInt0(1)
+				.setMessage0(new PdefTestMessage().setBool0(true))
+				.setPolymorphic(new PdefMultiLevelSubtype().setMfield("mfield"));
+		assertEquals(expected, message);
+	}
+}
@@ -0,0 +1,370 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef.binary;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import io.pdef.collections.DoubleArrayList;
+import io.pdef.collections.IntArrayList;
+import io.pdef.collections.LongArrayList;
+import io.pdef.descriptors.DataTypeDescriptor;
+import io.pdef.descriptors.Descriptors;
+import io.pdef.json.JsonFormat;
+import io.pdef.test.inheritance.PdefBase;
+import io.pdef.test.inheritance.PdefMultiLevelSubtype;
+import io.pdef.test.inheritance.PdefSubtype;
+import io.pdef.test.inheritance.PdefSubtype2;
+import io.pdef.test.messages.PdefTestComplexMessage;
+import io.pdef.test.messages.PdefTestEnum;
+import io.pdef.test.messages.PdefTestMessage;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class BinaryFormatTest {
+	private BinaryFormat format = BinaryFormat.instance();
+
+	private <T> void test(final DataTypeDescriptor<T> descriptor, final T parsed,
+			final int... serialized) {
+		byte[] bytes = format.write(parsed, descriptor);
+		if (serialized.length > 0) {
+			byte[] expected = new byte[serialized.length];
+			for (int i = 0; i < serialized.length; i++) {
+				expected[i] = (byte) serialized[i];
+			}
+			assertArrayEquals(expected, bytes);
+		}
+		assertEquals(parsed, format.read(bytes, descriptor));
+
+		// Nulls.
+		assertEquals(0, format.write(null, descriptor).length);
+		assertNull(format.read(new byte[0], descriptor));
+	}
+
+	@Test
+	public void testBoolean() throws Exception {
+		test(Descriptors.bool, Boolean.TRUE, 1);
+		test(Descriptors.bool, Boolean.FALSE, 0);
+	}
+
+	@Test
+	public void testInt16() throws Exception {
+		test(Descriptors.int16, (short) -16, 31);
+		test(Descriptors.int16, Short.MIN_VALUE);
+	}
+
+	@Test
+	public void testInt32() throws Exception {
+		test(Descriptors.int32, -1, 1);
+		test(Descriptors.int32, 150, 0xac, 0x02);
+		test(Descriptors.int32, Integer.MIN_VALUE);
+		test(Descriptors.int32, Integer.MAX_VALUE);
+	}
+
+	@Test
+	public void testInt64() throws Exception {
+		test(Descriptors.int64, Long.MIN_VALUE);
+		test(Descriptors.int64, Long.MAX_VALUE);
+	}
+
+	@Test
+	public void testFloat() throws Exception {
+		test(Descriptors.float0, -1.5f, 0, 0, 0xc0, 0xbf);
+	}
+
+	@Test
+	public void testDouble() throws Exception {
+		test(Descriptors.double0, -2.5, 0, 0, 0, 0, 0, 0, 0x04, 0xc0);
+	}
+
+	@Test
+	public void testString() throws Exception {
+		test(Descriptors.string, "hello", 5, 'h', 'e', 'l', 'l', 'o');
+		test(Descriptors.string, "привет \uD83D\uDE00");
+		test(Descriptors.string, "");
+	}
+
+	@Test
+	public void testString_unpairedSurrogate() throws Exception {
+		byte[] bytes = format.write("a\uD83Db", Descriptors.string);
+		assertEquals("a?b", format.read(bytes, Descriptors.string));
+	}
+
+	@Test
+	public void testDatetime() throws Exception {
+		test(Descriptors.datetime, new Date(0), 0);
+		test(Descriptors.datetime, new Date(1389812345678L));
+	}
+
+	@Test
+	public void testEnum() throws Exception {
+		test(PdefTestEnum.DESCRIPTOR, PdefTestEnum.THREE, 2);
+	}
+
+	@Test
+	public void testEnum_unknownOrdinal() throws Exception {
+		assertNull(format.read(new byte[] {10}, PdefTestEnum.DESCRIPTOR));
+	}
+
+	@Test
+	public void testVoid() throws Exception {
+		assertEquals(0, format.write(null, Descriptors.void0).length);
+		assertNull(format.read(new byte[0], Descriptors.void0));
+	}
+
+	@Test
+	public void testList() throws Exception {
+		test(Descriptors.list(Descriptors.string), ImmutableList.of("a", "b"),
+				5, 2, 1, 'a', 1, 'b');
+		test(Descriptors.list(Descriptors.int32),
+				new IntArrayList(Arrays.asList(1, -1, 1000)));
+		test(Descriptors.list(Descriptors.int64),
+				new LongArrayList(Arrays.asList(Long.MAX_VALUE, -1L)));
+		test(Descriptors.list(Descriptors.double0),
+				new DoubleArrayList(Arrays.asList(1.5, -2.5)));
+		test(Descriptors.list(Descriptors.list(Descriptors.bool)),
+				ImmutableList.<List<Boolean>>of(ImmutableList.of(true),
+						ImmutableList.<Boolean>of()));
+	}
+
+	@Test
+	public void testSet() throws Exception {
+		test(Descriptors.set(Descriptors.int32), ImmutableSet.of(1, 2), 3, 2, 2, 4);
+		test(Descriptors.set(PdefTestEnum.DESCRIPTOR),
+				ImmutableSet.of(PdefTestEnum.ONE, PdefTestEnum.THREE));
+	}
+
+	@Test
+	public void testMap() throws Exception {
+		test(Descriptors.map(Descriptors.int32, Descriptors.float0),
+				ImmutableMap.of(1, 1.5f, -2, 2.5f));
+		test(Descriptors.map(Descriptors.string, PdefTestMessage.DESCRIPTOR),
+				ImmutableMap.of("a", new PdefTestMessage().setInt0(1)));
+	}
+
+	@Test
+	public void testCollections_unknownEnumValues() throws Exception {
+		// Unknown values are dropped, the rest is passed through.
+		DataTypeDescriptor<List<PdefTestEnum>> list = Descriptors.list(PdefTestEnum.DESCRIPTOR);
+		List<PdefTestEnum> list0 = format.read(new byte[] {4, 3, 0, 5, 2}, list);
+		assertEquals(ImmutableList.of(PdefTestEnum.ONE, PdefTestEnum.THREE), list0);
+		assertEquals(list0, format.read(format.write(list0, list), list));
+
+		DataTypeDescriptor<Set<PdefTestEnum>> set = Descriptors.set(PdefTestEnum.DESCRIPTOR);
+		Set<PdefTestEnum> set0 = format.read(new byte[] {3, 2, 0, 5}, set);
+		assertEquals(ImmutableSet.of(PdefTestEnum.ONE), set0);
+		assertEquals(set0, format.read(format.write(set0, set), set));
+
+		DataTypeDescriptor<Map<PdefTestEnum, Integer>> map = Descriptors.map(
+				PdefTestEnum.DESCRIPTOR, Descriptors.int32);
+		Map<PdefTestEnum, Integer> map0 = format.read(new byte[] {5, 2, 0, 2, 5, 4}, map);
+		assertEquals(ImmutableMap.of(PdefTestEnum.ONE, 1), map0);
+		assertEquals(map0, format.read(format.write(map0, map), map));
+	}
+
+	@Test(expected = BinaryFormatException.class)
+	public void testList_nullElement() throws Exception {
+		format.write(Arrays.asList(1, null), Descriptors.list(Descriptors.int32));
+	}
+
+	@Test
+	public void testMessage() throws Exception {
+		test(PdefTestMessage.DESCRIPTOR, new PdefTestMessage().setString0("a").setInt0(1),
+				5, 3, 1, 'a', 64, 2);
+		test(PdefTestComplexMessage.DESCRIPTOR, createComplexMessage());
+		test(PdefTestMessage.DESCRIPTOR, new PdefTestMessage(), 0);
+	}
+
+	@Test
+	public void testMessage_longValues() throws Exception {
+		char[] chars = new char[300];
+		Arrays.fill(chars, 'x');
+		String s = new String(chars);
+
+		PdefTestComplexMessage message = createComplexMessage()
+				.setString0(s)
+				.setMessage0(new PdefTestMessage().setString0(s));
+		test(PdefTestComplexMessage.DESCRIPTOR, message);
+	}
+
+	@Test
+	public void testPolymorphicMessage() throws Exception {
+		PdefBase base = new PdefBase().setField("field");
+		PdefSubtype subtype = new PdefSubtype().setField("field").setSubfield("subfield");
+		PdefSubtype2 subtype2 = new PdefSubtype2().setField("field").setSubfield2("subfield2");
+		PdefMultiLevelSubtype msubtype = new PdefMultiLevelSubtype()
+				.setField("field")
+				.setSubfield("subfield")
+				.setMfield("mfield");
+
+		test(PdefBase.DESCRIPTOR, base);
+		test(PdefBase.DESCRIPTOR, subtype);
+		test(PdefBase.DESCRIPTOR, subtype2);
+		test(PdefBase.DESCRIPTOR, msubtype);
+		test(PdefSubtype.DESCRIPTOR, msubtype);
+	}
+
+	@Test
+	public void testPolymorphicMessage_tags() throws Exception {
+		// Subtype fields are numbered independently of base fields.
+		test(PdefBase.DESCRIPTOR, new PdefSubtype().setSubfield("a"), 5, 0, 0, 7, 1, 'a');
+	}
+
+	@Test
+	public void testPolymorphicMessage_appendedBaseField() throws Exception {
+		// An unknown third base field goes before the subtype field.
+		byte[] bytes = {8, 0, 0, 67, 1, 'x', 7, 1, 'a'};
+
+		PdefSubtype expected = new PdefSubtype().setSubfield("a");
+		assertEquals(expected, format.read(bytes, PdefBase.DESCRIPTOR));
+	}
+
+	@Test
+	public void testMessage_skipUnknownFields() throws Exception {
+		PdefTestComplexMessage message = createComplexMessage();
+		byte[] bytes = format.write(message, PdefTestComplexMessage.DESCRIPTOR);
+
+		PdefTestMessage expected = new PdefTestMessage()
+				.setString0("hello")
+				.setBool0(true)
+				.setInt0(32);
+		assertEquals(expected, format.read(bytes, PdefTestMessage.DESCRIPTOR));
+	}
+
+	@Test
+	public void testMessage_smallerThanJson() throws Exception {
+		PdefTestComplexMessage message = createComplexMessage();
+		byte[] binary = format.write(message, PdefTestComplexMessage.DESCRIPTOR);
+		byte[] json = JsonFormat.instance()
+				.write(message, PdefTestComplexMessage.DESCRIPTOR, false)
+				.getBytes("UTF-8");
+
+		assertTrue(binary.length * 2 < json.length);
+	}
+
+	@Test(expected = BinaryFormatException.class)
+	public void testRead_truncated() throws Exception {
+		byte[] bytes = format.write(createComplexMessage(), PdefTestComplexMessage.DESCRIPTOR);
+		format.read(Arrays.copyOf(bytes, bytes.length - 1), PdefTestComplexMessage.DESCRIPTOR);
+	}
+
+	@Test(expected = BinaryFormatException.class)
+	public void testRead_trailingData() throws Exception {
+		format.read(new byte[] {1, 2}, Descriptors.int32);
+	}
+
+	@Test(expected = BinaryFormatException.class)
+	public void testRead_wrongWireType() throws Exception {
+		// string0 ordinal with the varint wire type.
+		format.read(new byte[] {2, 0, 1}, PdefTestMessage.DESCRIPTOR);
+	}
+
+	@Test
+	public void testStream() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		format.write(out, createComplexMessage(), PdefTestComplexMessage.DESCRIPTOR);
+		format.write(out, new PdefTestComplexMessage().setInt0(1),
+				PdefTestComplexMessage.DESCRIPTOR);
+
+		ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+		assertEquals(createComplexMessage(), format.read(in, PdefTestComplexMessage.DESCRIPTOR));
+		assertEquals(new PdefTestComplexMessage().setInt0(1),
+				format.read(in, PdefTestComplexMessage.DESCRIPTOR));
+		assertNull(format.read(in, PdefTestComplexMessage.DESCRIPTOR));
+	}
+
+	@Test
+	public void testStream_primitives() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		format.write(out, Long.MIN_VALUE, Descriptors.int64);
+		format.write(out, 1.5f, Descriptors.float0);
+		format.write(out, "hello", Descriptors.string);
+
+		ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+		assertEquals(Long.MIN_VALUE, (long) format.read(in, Descriptors.int64));
+		assertEquals(1.5f, format.read(in, Descriptors.float0), 0f);
+		assertEquals("hello", format.read(in, Descriptors.string));
+		assertEquals(-1, in.read());
+	}
+
+	@Test(expected = BinaryFormatException.class)
+	public void testStream_truncated() throws Exception {
+		byte[] bytes = format.write(createComplexMessage(), PdefTestComplexMessage.DESCRIPTOR);
+		format.read(new ByteArrayInputStream(bytes, 0, bytes.length - 1),
+				PdefTestComplexMessage.DESCRIPTOR);
+	}
+
+	@Test
+	public void testByteBuffer() throws Exception {
+		for (ByteBuffer buffer : Arrays.asList(ByteBuffer.allocate(1024),
+				ByteBuffer.allocateDirect(1024))) {
+			format.write(buffer, createComplexMessage(), PdefTestComplexMessage.DESCRIPTOR);
+			format.write(buffer, "hello", Descriptors.string);
+			buffer.flip();
+
+			assertEquals(createComplexMessage(),
+					format.read(buffer, PdefTestComplexMessage.DESCRIPTOR));
+			assertEquals("hello", format.read(buffer, Descriptors.string));
+			assertFalse(buffer.hasRemaining());
+		}
+	}
+
+	@Test
+	public void testByteBuffer_overflow() throws Exception {
+		ByteBuffer buffer = ByteBuffer.allocate(8);
+		buffer.position(2);
+		try {
+			format.write(buffer, createComplexMessage(), PdefTestComplexMessage.DESCRIPTOR);
+			fail();
+		} catch (BinaryFormatException e) {
+			assertEquals(2, buffer.position());
+		}
+	}
+
+	private PdefTestComplexMessage createComplexMessage() {
+		return new PdefTestComplexMessage()
+				.setEnum0(PdefTestEnum.THREE)
+				.setBool0(true)
+				.setShort0((short) 16)
+				.setInt0(32)
+				.setLong0(64L)
+				.setFloat0(1.5f)
+				.setDouble0(2.5d)
+				.setString0("hello")
+				.setDatetime0(new Date(0))
+				.setList0(ImmutableList.of(1, 2))
+				.setSet0(ImmutableSet.of(1, 2))
+				.setMap0(ImmutableMap.<Integer, Float>of(1, 1.5f))
+				.setMessage0(new PdefTestMessage()
+						.setBool0(true)
+						.setInt0(16)
+						.setString0("hello"))
+				.setPolymorphic(new PdefMultiLevelSubtype()
+						.setField("field")
+						.setSubfield("subfield")
+						.setMfield("mfield"));
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.pdef.collections;
+
+import com.google.common.collect.ImmutableList;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+public class IntArrayListTest {
+	@Test
+	public void testAddGet() throws Exception {
+		IntArrayList list = new IntArrayList();
+		for (int i = 0; i < 100; i++) {
+			list.addInt(i);
+		}
+
+		assertEquals(100, list.size());
+		assertEquals(42, list.getInt(42));
+		assertEquals(Integer.valueOf(99), list.get(99));
+	}
+
+	@Test
+	public void testInsertRemove() throws Exception {
+		IntArrayList list = new IntArrayList(ImmutableList.of(1, 3));
+		list.add(1, 2);
+		assertEquals(ImmutableList.of(1, 2, 3), list);
+
+		assertEquals(Integer.valueOf(1), list.remove(0));
+		assertTrue(list.remove(Integer.valueOf(3)));
+		assertEquals(ImmutableList.of(2), list);
+	}
+
+	@Test
+	public void testIteratorRemove() throws Exception {
+		IntArrayList list = new IntArrayList(ImmutableList.of(1, 2, 3));
+		Iterator<Integer> iterator = list.iterator();
+		iterator.next();
+		iterator.remove();
+
+		assertArrayEquals(new int[]{2, 3}, list.toIntArray());
+	}
+
+	@Test
+	public void testEqualsHashCode() throws Exception {
+		List<Integer> expected = new ArrayList<Integer>(ImmutableList.of(1, -2, 3));
+		IntArrayList list = new IntArrayList(expected);
+
+		assertEquals(expected, list);
+		assertEquals(list, expected);
+		assertEquals(new IntArrayList(list), list);
+		assertEquals(expected.hashCode(), list.hashCode());
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testAdd_null() throws Exception {
+		new IntArrayList().add(null);
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testGet_outOfBounds() throws Exception {
+		new IntArrayList(10).getInt(0);
+	}
+
+	@Test
+	public void testLongAndDoubleLists() throws Exception {
+		List<Long> longs = ImmutableList.of(1L, Long.MAX_VALUE);
+		List<Double> doubles = ImmutableList.of(1.5, Double.NaN);
+
+		assertEquals(longs, new LongArrayList(longs));
+		assertEquals(longs.hashCode(), new LongArrayList(longs).hashCode());
+		assertEquals(doubles, new DoubleArrayList(doubles));
+		assertEquals(doubles.hashCode(), new DoubleArrayList(doubles).hashCode());
+
+		LongArrayList longList = new LongArrayList(longs);
+		longList.add(0, -1L);
+		assertEquals(Long.valueOf(1L), longList.remove(1));
+		assertEquals(ImmutableList.of(-1L, Long.MAX_VALUE), longList);
+
+		DoubleArrayList doubleList = new DoubleArrayList();
+		doubleList.add(2.5);
+		doubleList.add(0, 1.5);
+		assertTrue(doubleList.contains(2.5));
+		assertArrayEquals(new double[]{1.5, 2.5}, doubleList.toDoubleArray(), 0.0);
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testInsert_null() throws Exception {
+		new LongArrayList().add(0, null);
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.pdef.collections;
+
+import com.google.common.collect.ImmutableMap;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+public class IntHashMapTest {
+	@Test
+	public void testPutGetRemove() throws Exception {
+		IntHashMap<String> map = new IntHashMap<String>();
+		for (int i = 0; i < 1000; i++) {
+			assertNull(map.put(i, String.valueOf(i)));
+		}
+
+		assertEquals(1000, map.size());
+		assertEquals("42", map.get(42));
+		assertEquals("42", map.get(Integer.valueOf(42)));
+		assertEquals("42", map.put(42, "forty two"));
+		assertEquals("forty two", map.remove(42));
+		assertFalse(map.containsKey(42));
+		assertNull(map.get("1"));
+	}
+
+	@Test
+	public void testNullValues() throws Exception {
+		IntHashMap<String> map = new IntHashMap<String>();
+		map.put(1, null);
+
+		assertTrue(map.containsKey(1));
+		assertNull(map.get(1));
+	}
+
+	@Test
+	public void testEqualsHashCode() throws Exception {
+		Map<Integer, String> expected = new HashMap<Integer, String>(
+				ImmutableMap.of(1, "a", -2, "b"));
+		IntHashMap<String> map = new IntHashMap<String>(expected);
+
+		assertEquals(expected, map);
+		assertEquals(map, expected);
+		assertEquals(expected.hashCode(), map.hashCode());
+	}
+
+	@Test
+	public void testEntries() throws Exception {
+		IntHashMap<String> map = new IntHashMap<String>(ImmutableMap.of(1, "a", 2, "b"));
+		Iterator<Map.Entry<Integer, String>> iterator = map.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<Integer, String> entry = iterator.next();
+			if (entry.getKey() == 1) {
+				iterator.remove();
+			} else {
+				entry.setValue("c");
+			}
+		}
+
+		assertEquals(ImmutableMap.of(2, "c"), map);
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testPut_nullKey() throws Exception {
+		new IntHashMap<String>().put(null, "a");
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.pdef.collections;
+
+import com.google.common.collect.ImmutableSet;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+public class IntHashSetTest {
+	@Test
+	public void testAddContainsRemove() throws Exception {
+		IntHashSet set = new IntHashSet();
+		for (int i = -500; i < 500; i++) {
+			assertTrue(set.addInt(i));
+		}
+		assertFalse(set.addInt(0));
+		assertEquals(1000, set.size());
+
+		for (int i = -500; i < 500; i += 2) {
+			assertTrue(set.removeInt(i));
+		}
+		assertEquals(500, set.size());
+		assertFalse(set.containsInt(-500));
+		assertTrue(set.containsInt(-499));
+		assertTrue(set.contains(499));
+		assertFalse(set.contains("499"));
+	}
+
+	@Test
+	public void testEqualsHashCode() throws Exception {
+		Set<Integer> expected = new HashSet<Integer>(ImmutableSet.of(1, 2, -3));
+		IntHashSet set = new IntHashSet(expected);
+
+		assertEquals(expected, set);
+		assertEquals(set, expected);
+		assertEquals(expected.hashCode(), set.hashCode());
+	}
+
+	@Test
+	public void testIteratorRemove() throws Exception {
+		IntHashSet set = new IntHashSet(ImmutableSet.of(1, 2, 3));
+		Iterator<Integer> iterator = set.iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next() != 2) {
+				iterator.remove();
+			}
+		}
+
+		assertEquals(ImmutableSet.of(2), set);
+	}
+
+	@Test
+	public void testRemovedSlotsAreReused() throws Exception {
+		IntHashSet set = new IntHashSet();
+		for (int i = 0; i < 10000; i++) {
+			set.addInt(i);
+			set.removeInt(i);
+		}
+
+		assertTrue(set.isEmpty());
+		assertEquals(0, set.toIntArray().length);
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testAdd_null() throws Exception {
+		new IntHashSet().add(null);
+	}
+}
@@ -19,6 +19,7 @@ package io.pdef.descriptors;
 import com.google.common.collect.ImmutableList;
 import io.pdef.test.messages.PdefTestEnum;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import org.junit.Test;
 
 import java.util.List;
@@ -30,4 +31,32 @@ public class EnumDescriptorTest {
 		assertEquals(ImmutableList.<PdefTestEnum>of(
 				PdefTestEnum.ONE, PdefTestEnum.TWO, PdefTestEnum.THREE), values);
 	}
+
+	@Test
+	public void testGetName() throws Exception {
+		assertEquals("one", PdefTestEnum.DESCRIPTOR.getName(PdefTestEnum.ONE));
+		assertEquals("three", PdefTestEnum.DESCRIPTOR.getName(PdefTestEnum.THREE));
+	}
+
+	@Test
+	public void testGetValue() throws Exception {
+		EnumDescriptor<PdefTestEnum> descriptor = PdefTestEnum.DESCRIPTOR;
+
+		assertEquals(PdefTestEnum.ONE, descriptor.getValue("one"));
+		assertEquals(PdefTestEnum.TWO, descriptor.getValue("TWO"));
+		assertEquals(PdefTestEnum.THREE, descriptor.getValue("Three"));
+		assertNull(descriptor.getValue("four"));
+		assertNull(descriptor.getValue("on"));
+		assertNull(descriptor.getValue(""));
+		assertNull(descriptor.getValue((String) null));
+	}
+
+	@Test
+	public void testGetValue_charBuffer() throws Exception {
+		EnumDescriptor<PdefTestEnum> descriptor = PdefTestEnum.DESCRIPTOR;
+		char[] buffer = "[\"tWo\",\"four\"]".toCharArray();
+
+		assertEquals(PdefTestEnum.TWO, descriptor.getValue(buffer, 2, 3));
+		assertNull(descriptor.getValue(buffer, 8, 4));
+	}
 }
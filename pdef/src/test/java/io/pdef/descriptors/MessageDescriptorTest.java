@@ -88,4 +88,15 @@ public class MessageDescriptorTest {
 		assertEquals(msubtype, base.getSubtype(PdefPolymorphicType.MULTILEVEL_SUBTYPE));
 		assertEquals(msubtype, subtype.getSubtype(PdefPolymorphicType.MULTILEVEL_SUBTYPE));
 	}
+
+	@Test
+	public void testCodecs() throws Exception {
+		MessageDescriptor<PdefTestMessage> descriptor = PdefTestMessage.DESCRIPTOR;
+		assertNull(descriptor.getCodec(StringBuilder.class));
+
+		StringBuilder codec = new StringBuilder();
+		assertSame(codec, descriptor.putCodec(StringBuilder.class, codec));
+		assertSame(codec, descriptor.putCodec(StringBuilder.class, new StringBuilder()));
+		assertSame(codec, descriptor.getCodec(StringBuilder.class));
+	}
 }
@@ -0,0 +1,99 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef.json;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class JsonArrayScannerTest {
+	@Test
+	public void testScan() throws Exception {
+		String s = " [1, \"a,]\\\"\", {\"b\": [2, 3]} ,null] ";
+		int[] bounds = scan(s);
+
+		assertEquals(8, bounds.length);
+		assertEquals("1", slice(s, bounds, 0));
+		assertEquals("\"a,]\\\"\"", slice(s, bounds, 1));
+		assertEquals("{\"b\": [2, 3]}", slice(s, bounds, 2));
+		assertEquals("null", slice(s, bounds, 3));
+	}
+
+	@Test
+	public void testScan_empty() throws Exception {
+		assertEquals(0, scan("[ ]").length);
+	}
+
+	@Test(expected = JsonFormatException.class)
+	public void testScan_notArray() throws Exception {
+		scan("{}");
+	}
+
+	@Test(expected = JsonFormatException.class)
+	public void testScan_emptyElement() throws Exception {
+		scan("[1,,2]");
+	}
+
+	@Test(expected = JsonFormatException.class)
+	public void testScan_trailingComma() throws Exception {
+		scan("[1,]");
+	}
+
+	@Test(expected = JsonFormatException.class)
+	public void testScan_unexpectedEnd() throws Exception {
+		scan("[1, {\"a\": 2]");
+	}
+
+	@Test(expected = JsonFormatException.class)
+	public void testScan_trailingData() throws Exception {
+		scan("[1] 2");
+	}
+
+	@Test
+	public void testScan_comments() throws Exception {
+		String s = "/* a */ [1 /* ] */, // ,\n {\"b\": /* } */ 2}, \"/*\"] // end";
+		int[] bounds = scan(s);
+
+		assertEquals(6, bounds.length);
+		assertEquals("1", slice(s, bounds, 0));
+		assertEquals("{\"b\": /* } */ 2}", slice(s, bounds, 1));
+		assertEquals("\"/*\"", slice(s, bounds, 2));
+	}
+
+	@Test
+	public void testScan_commentsNotAllowed() throws Exception {
+		String s = "[1 /* c */, 2]";
+		byte[] bytes = s.getBytes("UTF-8");
+		int[] bounds = JsonArrayScanner.scan(bytes, 0, bytes.length, false);
+
+		assertEquals("1 /* c */", slice(s, bounds, 0));
+		assertEquals("2", slice(s, bounds, 1));
+	}
+
+	@Test(expected = JsonFormatException.class)
+	public void testScan_unterminatedComment() throws Exception {
+		scan("[1, 2 /* ]");
+	}
+
+	private int[] scan(final String s) throws Exception {
+		byte[] bytes = s.getBytes("UTF-8");
+		return JsonArrayScanner.scan(bytes, 0, bytes.length, true);
+	}
+
+	private String slice(final String s, final int[] bounds, final int i) {
+		return s.substring(bounds[i * 2], bounds[i * 2 + 1]);
+	}
+}
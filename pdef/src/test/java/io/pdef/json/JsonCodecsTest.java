@@ -0,0 +1,429 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef.json;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.google.common.collect.ImmutableList;
+import io.pdef.DynamicMessage;
+import io.pdef.Message;
+import io.pdef.Provider;
+import io.pdef.descriptors.DataTypeDescriptor;
+import io.pdef.descriptors.Descriptors;
+import io.pdef.descriptors.FieldDescriptor;
+import io.pdef.descriptors.MessageDescriptor;
+import io.pdef.test.inheritance.PdefMultiLevelSubtype;
+import io.pdef.test.messages.PdefTestComplexMessage;
+import io.pdef.test.messages.PdefTestEnum;
+import io.pdef.test.messages.PdefTestMessage;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+public class JsonCodecsTest {
+	private JsonFormat format = JsonFormat.instance();
+
+	@After
+	public void tearDown() throws Exception {
+		JsonCodecs.install(PdefTestMessage.DESCRIPTOR,
+				new PdefTestMessage.JsonCodec<PdefTestMessage>());
+	}
+
+	@Test
+	public void testGenerated() throws Exception {
+		assertTrue(JsonCodecs.get(PdefTestComplexMessage.DESCRIPTOR)
+				instanceof PdefTestComplexMessage.JsonCodec);
+		assertTrue(JsonCodecs.get(PdefMultiLevelSubtype.DESCRIPTOR)
+				instanceof PdefMultiLevelSubtype.JsonCodec);
+
+		PdefTestComplexMessage message = new PdefTestComplexMessage()
+				.setString0("hello")
+				.setBool0(true)
+				.setInt0(32)
+				.setShort0((short) 16)
+				.setLong0(64L)
+				.setFloat0(1.5f)
+				.setDouble0(2.5d)
+				.setDatetime0(new Date(0))
+				.setList0(Arrays.asList(1, 2))
+				.setSet0(Collections.singleton(1))
+				.setMap0(Collections.singletonMap(1, 1.5f))
+				.setEnum0(PdefTestEnum.THREE)
+				.setMessage0(new PdefTestMessage().setInt0(16))
+				.setPolymorphic(new PdefMultiLevelSubtype().setField("field").setMfield("mfield"));
+		JsonCodecs.verify(PdefTestComplexMessage.DESCRIPTOR,
+				new PdefTestComplexMessage.JsonCodec<PdefTestComplexMessage>(), message);
+
+		String json = format.write(message, PdefTestComplexMessage.DESCRIPTOR, false);
+		assertEquals(message, format.read(json, PdefTestComplexMessage.DESCRIPTOR));
+		assertEquals(message, format.read(json.replace("32", "\"32\"").replace("2.5", "\"2.5\""),
+				PdefTestComplexMessage.DESCRIPTOR));
+	}
+
+	@Test
+	public void testInstall() throws Exception {
+		PdefTestComplexMessage message = new PdefTestComplexMessage()
+				.setInt0(1)
+				.setMessage0(new PdefTestMessage().setString0("hello").setInt0(2));
+		String expected = format.write(message, PdefTestComplexMessage.DESCRIPTOR, false);
+
+		TestCodec codec = new TestCodec();
+		JsonCodecs.install(PdefTestMessage.DESCRIPTOR, codec);
+		assertSame(codec, JsonCodecs.get(PdefTestMessage.DESCRIPTOR));
+
+		assertEquals(expected, format.write(message, PdefTestComplexMessage.DESCRIPTOR, false));
+		assertEquals(message, format.read("{\"int0\":1,\"message0\":{\"string0\":\"hello\","
+				+ "\"unknown\":[1],\"int0\":2,\"bool0\":null}}",
+				PdefTestComplexMessage.DESCRIPTOR));
+		assertEquals(1, codec.writes);
+		assertEquals(3, codec.reads); // Unknown fields are skipped before codecs.
+	}
+
+	@Test
+	public void testVerify() throws Exception {
+		JsonCodecs.verify(PdefTestMessage.DESCRIPTOR, new TestCodec(),
+				new PdefTestMessage().setString0("a").setBool0(true).setInt0(1));
+	}
+
+	@Test(expected = JsonFormatException.class)
+	public void testVerify_mismatch() throws Exception {
+		JsonCodecs.verify(PdefTestMessage.DESCRIPTOR, new BrokenCodec(), new PdefTestMessage());
+	}
+
+	@Test
+	public void testCompile() throws Exception {
+		JsonCodecCompiler compiler = new TestCompiler(new TestCodec());
+		assertTrue(JsonCodecs.compile(PdefTestMessage.DESCRIPTOR,
+				Collections.singletonList(compiler)) instanceof TestCodec);
+		assertNull(JsonCodecs.compile(PdefTestComplexMessage.DESCRIPTOR,
+				Collections.singletonList(compiler)));
+	}
+
+	@Test
+	public void testCompile_populatedSample() throws Exception {
+		// The codec passes on a new message, but loses bool0 and int0.
+		JsonCodecCompiler compiler = new TestCompiler(new PartialCodec());
+		JsonCodecs.verify(PdefTestMessage.DESCRIPTOR, new PartialCodec(), new PdefTestMessage());
+		assertNull(JsonCodecs.compile(PdefTestMessage.DESCRIPTOR,
+				Collections.singletonList(compiler)));
+	}
+
+	@Test
+	public void testSample() throws Exception {
+		PdefTestComplexMessage sample = JsonCodecs.sample(PdefTestComplexMessage.DESCRIPTOR, 0);
+		for (FieldDescriptor<? super PdefTestComplexMessage, ?> field
+				: PdefTestComplexMessage.DESCRIPTOR.getFields()) {
+			assertNotNull(field.getName(), field.get(sample));
+		}
+		assertEquals(ImmutableList.of(-32), sample.getList0());
+		assertTrue(sample.getMessage0().hasInt0());
+
+		JsonCodecs.verify(PdefTestComplexMessage.DESCRIPTOR,
+				new PdefTestComplexMessage.JsonCodec<PdefTestComplexMessage>(), sample);
+	}
+
+	@Test(expected = JsonFormatException.class)
+	public void testVerify_readMismatch() throws Exception {
+		JsonCodecs.verify(PdefTestMessage.DESCRIPTOR, new PartialCodec() {
+			@Override
+			public void writeFields(final PdefTestMessage message,
+					final JsonGenerator generator) throws IOException {
+				new TestCodec().writeFields(message, generator);
+			}
+		}, new PdefTestMessage().setInt0(1));
+	}
+
+	@Test
+	public void testCompile_fallback() throws Exception {
+		JsonCodecCompiler broken = new TestCompiler(new BrokenCodec());
+		JsonCodecCompiler failing = new JsonCodecCompiler() {
+			@Override
+			public <M extends Message> JsonMessageCodec<M> compile(
+					final MessageDescriptor<M> descriptor) {
+				throw new UnsupportedOperationException();
+			}
+		};
+
+		assertNull(JsonCodecs.compile(PdefTestMessage.DESCRIPTOR,
+				Arrays.asList(failing, broken)));
+		assertTrue(JsonCodecs.compile(PdefTestMessage.DESCRIPTOR,
+				Arrays.asList(failing, broken, new TestCompiler(new TestCodec())))
+				instanceof TestCodec);
+	}
+
+	@Test
+	public void testSourceCompiler() throws Exception {
+		JsonMessageCodec<RuntimeMessage> codec = new JsonSourceCodecCompiler()
+				.compile(RuntimeMessage.DESCRIPTOR);
+		assertNotNull(codec);
+
+		RuntimeMessage message = new RuntimeMessage();
+		message.setName("hello");
+		message.setFlag(true);
+		message.setSmall((short) 3);
+		message.setCount(5);
+		message.setSize(7L);
+		message.setWeight(1.5f);
+		message.setRatio(0.5d);
+		message.setItems(Arrays.asList(1, 2));
+		message.setState(PdefTestEnum.TWO);
+		message.setChild(new RuntimeMessage());
+		message.getChild().setName("child");
+		JsonCodecs.verify(RuntimeMessage.DESCRIPTOR, codec, message);
+		JsonCodecs.verify(RuntimeMessage.DESCRIPTOR, codec,
+				JsonCodecs.sample(RuntimeMessage.DESCRIPTOR, 0));
+
+		// The default compiler is used for descriptors without generated codecs.
+		JsonMessageCodec<RuntimeMessage> installed = JsonCodecs.get(RuntimeMessage.DESCRIPTOR);
+		assertNotNull(installed);
+		assertNotSame(JsonCodecs.class.getClassLoader(), installed.getClass().getClassLoader());
+
+		String json = format.write(message, RuntimeMessage.DESCRIPTOR, false);
+		assertEquals(message, format.read(json, RuntimeMessage.DESCRIPTOR));
+		assertEquals(message, format.read(json.replace("\"count\":5", "\"count\":\"5\""),
+				RuntimeMessage.DESCRIPTOR));
+	}
+
+	private static class TestCodec extends JsonMessageCodec<PdefTestMessage> {
+		private int writes;
+		private int reads;
+
+		@Override
+		public void writeFields(final PdefTestMessage message, final JsonGenerator generator)
+				throws IOException {
+			writes++;
+			if (message.hasString0()) {
+				generator.writeStringField("string0", message.getString0());
+			}
+			if (message.hasBool0()) {
+				generator.writeBooleanField("bool0", message.getBool0());
+			}
+			if (message.hasInt0()) {
+				generator.writeNumberField("int0", message.getInt0());
+			}
+		}
+
+		@Override
+		public boolean readField(final PdefTestMessage message, final int index,
+				final JsonParser parser) throws IOException {
+			reads++;
+			switch (index) {
+				case 0:
+					message.setString0(readValue(parser, Descriptors.string));
+					return true;
+				case 1:
+					Boolean value = readValue(parser, Descriptors.bool);
+					if (value == null) {
+						message.clearBool0();
+					} else {
+						message.setBool0(value);
+					}
+					return true;
+				case 2:
+					message.setInt0(readValue(parser, Descriptors.int32));
+					return true;
+				default:
+					return false;
+			}
+		}
+	}
+
+	private static class BrokenCodec extends JsonMessageCodec<PdefTestMessage> {
+		@Override
+		public void writeFields(final PdefTestMessage message, final JsonGenerator generator)
+				throws IOException {
+			generator.writeNumberField("int0", message.getInt0());
+		}
+
+		@Override
+		public boolean readField(final PdefTestMessage message, final int index,
+				final JsonParser parser) throws IOException {
+			return false;
+		}
+	}
+
+	private static class PartialCodec extends JsonMessageCodec<PdefTestMessage> {
+		@Override
+		public void writeFields(final PdefTestMessage message, final JsonGenerator generator)
+				throws IOException {
+			if (message.hasString0()) {
+				generator.writeStringField("string0", message.getString0());
+			}
+		}
+
+		@Override
+		public boolean readField(final PdefTestMessage message, final int index,
+				final JsonParser parser) throws IOException {
+			if (index == 0) {
+				message.setString0(readValue(parser, Descriptors.string));
+			} else {
+				parser.skipChildren();
+			}
+			return true;
+		}
+	}
+
+	private static class TestCompiler implements JsonCodecCompiler {
+		private final JsonMessageCodec<PdefTestMessage> codec;
+
+		private TestCompiler(final JsonMessageCodec<PdefTestMessage> codec) {
+			this.codec = codec;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public <M extends Message> JsonMessageCodec<M> compile(
+				final MessageDescriptor<M> descriptor) {
+			return descriptor == PdefTestMessage.DESCRIPTOR ? (JsonMessageCodec<M>) codec : null;
+		}
+	}
+
+	public static class RuntimeMessage extends DynamicMessage {
+		public static final MessageDescriptor<RuntimeMessage> DESCRIPTOR =
+				MessageDescriptor.<RuntimeMessage>builder()
+						.setJavaClass(RuntimeMessage.class)
+						.setProvider(new Provider<RuntimeMessage>() {
+							@Override
+							public RuntimeMessage get() {
+								return new RuntimeMessage();
+							}
+						})
+						.addField("name", Descriptors.string, RuntimeMessage.class)
+						.addField("flag", Descriptors.bool, RuntimeMessage.class)
+						.addField("small", Descriptors.int16, RuntimeMessage.class)
+						.addField("count", Descriptors.int32, RuntimeMessage.class)
+						.addField("size", Descriptors.int64, RuntimeMessage.class)
+						.addField("weight", Descriptors.float0, RuntimeMessage.class)
+						.addField("ratio", Descriptors.double0, RuntimeMessage.class)
+						.addField("items", Descriptors.list(Descriptors.int32),
+								RuntimeMessage.class)
+						.addField("state", PdefTestEnum.DESCRIPTOR, RuntimeMessage.class)
+						.addField(FieldDescriptor.<RuntimeMessage, RuntimeMessage>builder()
+								.setName("child")
+								.setType(new Provider<DataTypeDescriptor<RuntimeMessage>>() {
+									@Override
+									public DataTypeDescriptor<RuntimeMessage> get() {
+										return RuntimeMessage.DESCRIPTOR;
+									}
+								})
+								.setReflectionAccessor(RuntimeMessage.class)
+								.build())
+						.build();
+
+		private String name;
+		private Boolean flag;
+		private Short small;
+		private Integer count;
+		private Long size;
+		private Float weight;
+		private Double ratio;
+		private List<Integer> items;
+		private PdefTestEnum state;
+		private RuntimeMessage child;
+
+		@Override
+		public MessageDescriptor<RuntimeMessage> descriptor() {
+			return DESCRIPTOR;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public void setName(final String name) {
+			this.name = name;
+		}
+
+		public Boolean getFlag() {
+			return flag;
+		}
+
+		public void setFlag(final Boolean flag) {
+			this.flag = flag;
+		}
+
+		public Short getSmall() {
+			return small;
+		}
+
+		public void setSmall(final Short small) {
+			this.small = small;
+		}
+
+		public Integer getCount() {
+			return count;
+		}
+
+		public void setCount(final Integer count) {
+			this.count = count;
+		}
+
+		public Long getSize() {
+			return size;
+		}
+
+		public void setSize(final Long size) {
+			this.size = size;
+		}
+
+		public Float getWeight() {
+			return weight;
+		}
+
+		public void setWeight(final Float weight) {
+			this.weight = weight;
+		}
+
+		public Double getRatio() {
+			return ratio;
+		}
+
+		public void setRatio(final Double ratio) {
+			this.ratio = ratio;
+		}
+
+		public List<Integer> getItems() {
+			return items;
+		}
+
+		public void setItems(final List<Integer> items) {
+			this.items = items;
+		}
+
+		public PdefTestEnum getState() {
+			return state;
+		}
+
+		public void setState(final PdefTestEnum state) {
+			this.state = state;
+		}
+
+		public RuntimeMessage getChild() {
+			return child;
+		}
+
+		public void setChild(final RuntimeMessage child) {
+			this.child = child;
+		}
+	}
+}
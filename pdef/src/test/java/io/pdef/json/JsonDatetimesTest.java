@@ -0,0 +1,113 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef.json;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
+
+public class JsonDatetimesTest {
+	@Test
+	public void testFormat() throws Exception {
+		assertEquals("1970-01-01T00:00:00Z", JsonDatetimes.format(new Date(0)));
+		assertEquals("2013-12-19T10:30:59Z", JsonDatetimes.format(new Date(1387449059000L)));
+		assertEquals("2000-02-29T23:59:59Z", JsonDatetimes.format(new Date(951868799999L)));
+	}
+
+	@Test
+	public void testFormat_beforeEpoch() throws Exception {
+		assertEquals("1969-12-31T23:59:59Z", JsonDatetimes.format(new Date(-1)));
+		assertEquals("0001-01-01T00:00:00Z", JsonDatetimes.format(new Date(-62135596800000L)));
+	}
+
+	@Test
+	public void testParse() throws Exception {
+		assertEquals(new Date(0), JsonDatetimes.parse("1970-01-01T00:00:00Z"));
+		assertEquals(new Date(1387449059000L), JsonDatetimes.parse("2013-12-19T10:30:59Z"));
+		assertEquals(new Date(-62135596800000L), JsonDatetimes.parse("0001-01-01T00:00:00Z"));
+	}
+
+	@Test
+	public void testParse_charBuffer() throws Exception {
+		char[] buffer = "\"2013-12-19T10:30:59Z\"".toCharArray();
+		Date date = JsonDatetimes.parse(buffer, 1, JsonDatetimes.LENGTH);
+
+		assertEquals(new Date(1387449059000L), date);
+	}
+
+	@Test
+	public void testParse_malformed() throws Exception {
+		String[] strings = {
+				"",
+				"2013-12-19",
+				"2013-12-19T10:30:59",
+				"2013-12-19 10:30:59Z",
+				"2013-12-19T10:30:59.000Z",
+				"2013-13-19T10:30:59Z",
+				"2013-02-29T10:30:59Z",
+				"2013-12-19T24:30:59Z",
+				"2013-12-19T10:60:59Z",
+				"2013-12-19T10:30:60Z",
+				"2013-1a-19T10:30:59Z",
+				"-013-12-19T10:30:59Z"
+		};
+
+		for (String s : strings) {
+			try {
+				JsonDatetimes.parse(s);
+				fail("Expected a parse failure, " + s);
+			} catch (JsonFormatException e) {
+				// Expected.
+			}
+		}
+	}
+
+	@Test
+	public void testGregorianCutover() throws Exception {
+		long cutover = -12219292800000L; // 1582-10-15T00:00:00Z
+		long day = 24 * 60 * 60 * 1000L;
+		assertEquals("1582-10-15T00:00:00Z", JsonDatetimes.format(new Date(cutover)));
+		assertEquals("1582-10-14T00:00:00Z", JsonDatetimes.format(new Date(cutover - day)));
+		assertEquals(new Date(cutover - 10 * day), JsonDatetimes.parse("1582-10-05T00:00:00Z"));
+
+		// SimpleDateFormat switches to the Julian calendar before the cutover.
+		DateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+		assertEquals("1582-10-04T00:00:00Z", format.format(new Date(cutover - day)));
+	}
+
+	@Test
+	public void testSimpleDateFormatCompatibility() throws Exception {
+		DateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+		Random random = new Random(0);
+		long max = 253402300799000L; // 9999-12-31T23:59:59Z
+		for (int i = 0; i < 10000; i++) {
+			long millis = (long) (random.nextDouble() * max) / 1000 * 1000;
+			Date date = new Date(millis);
+			String s = format.format(date);
+			assertEquals(s, JsonDatetimes.format(date));
+			assertEquals(date, JsonDatetimes.parse(s));
+		}
+	}
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef.json;
+
+import io.pdef.descriptors.FieldDescriptor;
+import io.pdef.test.messages.PdefTestComplexMessage;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class JsonFieldTableTest {
+	@Test
+	public void testGet() throws Exception {
+		JsonFieldTable<PdefTestComplexMessage> table = JsonFieldTable.of(
+				PdefTestComplexMessage.DESCRIPTOR);
+
+		for (FieldDescriptor<?, ?> field : PdefTestComplexMessage.DESCRIPTOR.getFields()) {
+			assertSame(field, table.get(field.getName()));
+			assertSame(field, table.get(new String(field.getName())));
+		}
+
+		assertNull(table.get("unknown"));
+		assertNull(table.get(""));
+	}
+
+	@Test
+	public void testOf_cached() throws Exception {
+		assertSame(JsonFieldTable.of(PdefTestComplexMessage.DESCRIPTOR),
+				JsonFieldTable.of(PdefTestComplexMessage.DESCRIPTOR));
+	}
+}
@@ -19,8 +19,12 @@ package io.pdef.json;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import io.pdef.FieldMask;
+import io.pdef.collections.*;
 import io.pdef.descriptors.DataTypeDescriptor;
 import io.pdef.descriptors.Descriptors;
+import io.pdef.descriptors.SetDescriptor;
 import io.pdef.test.inheritance.PdefBase;
 import io.pdef.test.inheritance.PdefMultiLevelSubtype;
 import io.pdef.test.inheritance.PdefSubtype;
@@ -28,14 +32,27 @@ import io.pdef.test.inheritance.PdefSubtype2;
 import io.pdef.test.messages.PdefTestComplexMessage;
 import io.pdef.test.messages.PdefTestEnum;
 import io.pdef.test.messages.PdefTestMessage;
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertNull;
+import static org.junit.Assert.*;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
 
 public class JsonFormatTest {
-	private JsonFormat format = JsonFormat.instance();
+	protected JsonFormat format = JsonFormat.instance();
 
 	private <T> void test(final DataTypeDescriptor<T> descriptor, final T parsed,
 			final String serialized) {
@@ -69,6 +86,18 @@ public class JsonFormatTest {
 		test(Descriptors.int64, Long.MIN_VALUE, String.valueOf(Long.MIN_VALUE));
 	}
 
+	@Test
+	public void testNumberConversions() throws Exception {
+		assertEquals(1, (int) format.read("1.5", Descriptors.int32));
+		assertEquals(2.0f, format.read("2", Descriptors.float0), 0.0f);
+		assertEquals(3L, (long) format.read("\"3\"", Descriptors.int64));
+	}
+
+	@Test(expected = JsonFormatException.class)
+	public void testInt16_outOfRange() throws Exception {
+		format.read("70000", Descriptors.int16);
+	}
+
 	@Test
 	public void testFloat() throws Exception {
 		test(Descriptors.float0, -1.5f, "-1.5");
@@ -125,6 +154,450 @@ public class JsonFormatTest {
 						+ "\"mfield\":\"mfield\"}");
 	}
 
+	@Test
+	public void testPolymorphicMessage_discriminatorNotFirst() throws Exception {
+		PdefMultiLevelSubtype expected = new PdefMultiLevelSubtype()
+				.setField("field")
+				.setSubfield("subfield")
+				.setMfield("mfield");
+
+		PdefBase result = format.read("{\"field\":\"field\",\"subfield\":\"subfield\","
+				+ "\"type\":\"multilevel_subtype\",\"mfield\":\"mfield\"}", PdefBase.DESCRIPTOR);
+		assertEquals(expected, result);
+	}
+
+	@Test
+	public void testMessage_skipUnknownFields() throws Exception {
+		PdefTestMessage expected = new PdefTestMessage().setString0("hello").setInt0(1);
+
+		PdefTestMessage result = format.read("{\"unknown\":{\"a\":[1,{\"b\":null}]},"
+				+ "\"string0\":\"hello\",\"unknown2\":[],\"int0\":1}", PdefTestMessage.DESCRIPTOR);
+		assertEquals(expected, result);
+	}
+
+	@Test
+	public void testReadPreserving() throws Exception {
+		PdefTestMessage message = format.readPreserving("{\"unknown\": {\"a\": [1, {\"b\": null}]},"
+				+ "\"string0\":\"hello\",\"unknown2\":[],\"int0\":1}", PdefTestMessage.DESCRIPTOR);
+
+		assertEquals(new PdefTestMessage().setString0("hello").setInt0(1), message);
+		assertEquals("[]", message.unknownFields().get("unknown2"));
+		assertEquals("{\"string0\":\"hello\",\"int0\":1,\"unknown\":{\"a\":[1,{\"b\":null}]},"
+				+ "\"unknown2\":[]}", format.write(message, PdefTestMessage.DESCRIPTOR, false));
+		assertEquals(format.write(message, PdefTestMessage.DESCRIPTOR, false),
+				format.write(message.copy(), PdefTestMessage.DESCRIPTOR, false));
+	}
+
+	@Test
+	public void testReadPreserving_nestedAndPolymorphic() throws Exception {
+		String s = "{\"message0\":{\"int0\":1,\"extra\":\"a\"},"
+				+ "\"polymorphic\":{\"field\":\"field\",\"extra\":1.5,\"type\":\"subtype\"}}";
+		PdefTestComplexMessage message = format.readPreserving(s,
+				PdefTestComplexMessage.DESCRIPTOR);
+
+		assertEquals("\"a\"", message.getMessage0().unknownFields().get("extra"));
+		assertEquals("1.5", ((PdefSubtype) message.getPolymorphic()).unknownFields()
+				.get("extra"));
+		assertEquals("{\"message0\":{\"int0\":1,\"extra\":\"a\"},\"polymorphic\":"
+				+ "{\"type\":\"subtype\",\"field\":\"field\",\"extra\":1.5}}",
+				format.write(message, PdefTestComplexMessage.DESCRIPTOR, false));
+		assertNull(format.read(s, PdefTestComplexMessage.DESCRIPTOR).getMessage0()
+				.unknownFields());
+	}
+
+	@Test
+	public void testReadPreserving_unknownDiscriminator() throws Exception {
+		String s = "{\"type\":\"future_subtype\",\"field\":\"a\",\"future\":1}";
+		PdefBase message = format.readPreserving(s, PdefBase.DESCRIPTOR);
+
+		assertEquals(PdefBase.class, message.getClass());
+		assertNull(message.getType());
+		assertEquals("\"future_subtype\"", message.unknownFields().getValue("type"));
+		assertEquals(s, format.write(message, PdefBase.DESCRIPTOR, false));
+		assertEquals(s, format.write(message.copy(), PdefBase.DESCRIPTOR, false));
+
+		// The discriminator is not the first field.
+		message = format.readPreserving("{\"field\":\"a\",\"future\":1,"
+				+ "\"type\":\"future_subtype\"}", PdefBase.DESCRIPTOR);
+		assertEquals(s, format.write(message, PdefBase.DESCRIPTOR, false));
+	}
+
+	@Test
+	public void testReadPreserving_unknownEnum() throws Exception {
+		PdefTestComplexMessage message = format.readPreserving("{\"enum0\":\"four\"}",
+				PdefTestComplexMessage.DESCRIPTOR);
+
+		assertNull(message.getEnum0());
+		assertEquals("{\"enum0\":\"four\"}",
+				format.write(message, PdefTestComplexMessage.DESCRIPTOR, false));
+		assertEquals("{\"enum0\":\"one\"}", format.write(message.setEnum0(PdefTestEnum.ONE),
+				PdefTestComplexMessage.DESCRIPTOR, false));
+	}
+
+	@Test
+	public void testStringPool() throws Exception {
+		JsonFormat pooled = format.withStringPool(JsonStringPool.create(64));
+		String s = "[{\"string0\":\"active\"},{\"string0\":\"active\"}]";
+		DataTypeDescriptor<List<PdefTestMessage>> listd = Descriptors.list(
+				PdefTestMessage.DESCRIPTOR);
+
+		List<PdefTestMessage> list = pooled.read(s, listd);
+		assertSame(list.get(0).getString0(), list.get(1).getString0());
+		assertEquals(format.read(s, listd), list);
+
+		Map<String, String> map = pooled.read("{\"a\":\"x\",\"b\":\"x\"}",
+				Descriptors.map(Descriptors.string, Descriptors.string));
+		assertSame(map.get("a"), map.get("b"));
+	}
+
+	@Test
+	public void testCollections() throws Exception {
+		test(Descriptors.list(PdefTestMessage.DESCRIPTOR),
+				ImmutableList.of(new PdefTestMessage().setInt0(1), new PdefTestMessage()),
+				"[{\"int0\":1},{}]");
+		test(Descriptors.map(Descriptors.string, Descriptors.list(Descriptors.int32)),
+				ImmutableMap.<String, List<Integer>>of("a", ImmutableList.of(1, 2)),
+				"{\"a\":[1,2]}");
+	}
+
+	@Test
+	public void testWriteByteBuffer() throws Exception {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(64);
+		buffer.put((byte) ' ');
+		format.write(buffer, new PdefTestMessage().setInt0(1), PdefTestMessage.DESCRIPTOR, false);
+
+		assertEquals(" {\"int0\":1}", string(buffer));
+	}
+
+	@Test
+	public void testWriteByteBuffer_overflow() throws Exception {
+		ByteBuffer buffer = ByteBuffer.allocate(4);
+		buffer.put((byte) ' ');
+		try {
+			format.write(buffer, new PdefTestMessage().setInt0(1), PdefTestMessage.DESCRIPTOR,
+					false);
+			fail();
+		} catch (JsonFormatException e) {
+			assertTrue(e.getCause() instanceof BufferOverflowException);
+		}
+		assertEquals(1, buffer.position());
+	}
+
+	@Test
+	public void testAppend() throws Exception {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(2);
+		buffer.put((byte) ' ');
+
+		ByteBuffer result = format.append(buffer, createComplexMessage(),
+				PdefTestComplexMessage.DESCRIPTOR, false);
+		assertTrue(result.isDirect());
+		assertEquals(" " + format.write(createComplexMessage(), PdefTestComplexMessage.DESCRIPTOR,
+				false), string(result));
+	}
+
+	@Test
+	public void testWriteChannel() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		format.write(Channels.newChannel(out), ImmutableList.of(1, 2),
+				Descriptors.list(Descriptors.int32), false);
+
+		assertEquals("[1,2]", out.toString("UTF-8"));
+	}
+
+	@Test
+	public void testReadByteBuffer() throws Exception {
+		PdefTestComplexMessage expected = createComplexMessage();
+		byte[] bytes = (" " + MESSAGE_JSON).getBytes("UTF-8");
+
+		ByteBuffer heap = ByteBuffer.wrap(bytes);
+		heap.get();
+		assertEquals(expected, format.read(heap.slice(), PdefTestComplexMessage.DESCRIPTOR));
+		assertEquals(expected, format.read(heap, PdefTestComplexMessage.DESCRIPTOR));
+		assertFalse(heap.hasRemaining());
+
+		ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+		direct.put(bytes).flip();
+		assertEquals(expected, format.read(direct, PdefTestComplexMessage.DESCRIPTOR));
+		assertFalse(direct.hasRemaining());
+	}
+
+	@Test
+	public void testReadIteratorByteBuffer() throws Exception {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(16);
+		buffer.put("[1, 2]".getBytes("UTF-8")).flip();
+
+		JsonIterator<Integer> iterator = format.readIterator(buffer, Descriptors.int32);
+		assertEquals(1, (int) iterator.next());
+		assertEquals(2, (int) iterator.next());
+		assertFalse(iterator.hasNext());
+	}
+
+	@Test
+	public void testWriteParallel() throws Exception {
+		List<PdefTestComplexMessage> list = new ArrayList<PdefTestComplexMessage>();
+		Map<String, Integer> map = new LinkedHashMap<String, Integer>();
+		for (int i = 0; i < 1000; i++) {
+			list.add(createComplexMessage().setInt0(i));
+			map.put(String.valueOf(i), i);
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			DataTypeDescriptor<List<PdefTestComplexMessage>> listd =
+					Descriptors.list(PdefTestComplexMessage.DESCRIPTOR);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			format.write(out, list, listd, executor, 64);
+			assertEquals(format.write(list, listd, false), out.toString("UTF-8"));
+
+			DataTypeDescriptor<Map<String, Integer>> mapd =
+					Descriptors.map(Descriptors.string, Descriptors.int32);
+			out = new ByteArrayOutputStream();
+			format.write(out, map, mapd, executor, 100);
+			assertEquals(format.write(map, mapd, false), out.toString("UTF-8"));
+
+			PdefTestComplexMessage message = createComplexMessage()
+					.setList0(new ArrayList<Integer>(map.values()));
+			out = new ByteArrayOutputStream();
+			format.write(out, message, PdefTestComplexMessage.DESCRIPTOR, executor, 100);
+			assertEquals(format.write(message, PdefTestComplexMessage.DESCRIPTOR, false),
+					out.toString("UTF-8"));
+
+			out = new ByteArrayOutputStream();
+			format.write(out, ImmutableList.of("a"), Descriptors.list(Descriptors.string),
+					executor, 100);
+			assertEquals("[\"a\"]", out.toString("UTF-8"));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testWriteParallel_primitiveLists() throws Exception {
+		IntArrayList ints = new IntArrayList();
+		LongArrayList longs = new LongArrayList();
+		DoubleArrayList doubles = new DoubleArrayList();
+		for (int i = 0; i < 1000; i++) {
+			ints.addInt(i);
+			longs.addLong(-i);
+			doubles.addDouble(i + 0.5);
+		}
+
+		ThreadPoolExecutor executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(4);
+		try {
+			assertWriteParallel(ints, Descriptors.list(Descriptors.int32), executor);
+			assertWriteParallel(longs, Descriptors.list(Descriptors.int64), executor);
+			assertWriteParallel(doubles, Descriptors.list(Descriptors.double0), executor);
+			assertEquals(30, executor.getTaskCount());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private <T> void assertWriteParallel(final T object, final DataTypeDescriptor<T> descriptor,
+			final ExecutorService executor) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		format.write(out, object, descriptor, executor, 100);
+		assertEquals(format.write(object, descriptor, false), out.toString("UTF-8"));
+	}
+
+	@Test
+	public void testReadArray() throws Exception {
+		List<PdefTestComplexMessage> expected = new ArrayList<PdefTestComplexMessage>();
+		for (int i = 0; i < 1000; i++) {
+			expected.add(i % 10 == 0 ? null : createComplexMessage().setInt0(i));
+		}
+
+		DataTypeDescriptor<List<PdefTestComplexMessage>> listd =
+				Descriptors.list(PdefTestComplexMessage.DESCRIPTOR);
+		byte[] bytes = format.write(expected, listd, true).getBytes("UTF-8");
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			assertEquals(expected, format.readArray(bytes, PdefTestComplexMessage.DESCRIPTOR,
+					executor, 64));
+			assertEquals(ImmutableList.of(1, 2), format.readArray("[1, 2]".getBytes("UTF-8"),
+					Descriptors.int32, executor, 64));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testReadArray_comments() throws Exception {
+		String json = "[1, /* c, ] */ 2 // x, ]\n, /* c */ 3 /* c */] // end";
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			assertEquals(ImmutableList.of(1, 2, 3), format.readArray(json.getBytes("UTF-8"),
+					Descriptors.int32, executor, 1));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test(expected = JsonFormatException.class)
+	public void testReadArray_malformedElement() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			format.readArray("[1, 2, {}, 4]".getBytes("UTF-8"), Descriptors.int32, executor, 1);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testReadArray_dataAfterElement() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			for (String json : ImmutableList.of("[1 2, 3]", "[1, 2 3]", "[\"a\" \"b\"]")) {
+				try {
+					format.readArray(json.getBytes("UTF-8"), Descriptors.string, executor, 1);
+					fail(json);
+				} catch (JsonFormatException e) {
+					// Expected.
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private String string(final ByteBuffer buffer) throws Exception {
+		buffer.flip();
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		return new String(bytes, "UTF-8");
+	}
+
+	@Test
+	public void testPrimitiveCollections() throws Exception {
+		PdefTestComplexMessage message = format.read(MESSAGE_JSON,
+				PdefTestComplexMessage.DESCRIPTOR);
+
+		assertTrue(message.getList0() instanceof IntArrayList);
+		assertTrue(message.getSet0() instanceof IntHashSet);
+		assertTrue(message.getMap0() instanceof IntHashMap);
+		assertEquals(createComplexMessage(), message);
+		assertEquals(message, format.read(format.write(message, PdefTestComplexMessage.DESCRIPTOR,
+				false), PdefTestComplexMessage.DESCRIPTOR));
+
+		test(Descriptors.list(Descriptors.int64), new LongArrayList(ImmutableList.of(1L, 2L)),
+				"[1,2]");
+		test(Descriptors.list(Descriptors.double0), new DoubleArrayList(ImmutableList.of(1.5)),
+				"[1.5]");
+		assertEquals(EnumSet.of(PdefTestEnum.ONE), format.read("[\"one\"]",
+				Descriptors.set(PdefTestEnum.DESCRIPTOR)));
+	}
+
+	@Test
+	public void testPrimitiveCollections_nullElement() throws Exception {
+		// Primitive collections are replaced with boxed ones to keep nulls.
+		assertEquals(Arrays.asList(1, null, 2), format.read("[1, null, 2]",
+				Descriptors.list(Descriptors.int32)));
+		assertEquals(Arrays.asList(null, 1L), format.read("[null, 1]",
+				Descriptors.list(Descriptors.int64)));
+		assertEquals(Arrays.asList(1.5, null), format.read("[1.5, null]",
+				Descriptors.list(Descriptors.double0)));
+		assertEquals(Sets.newHashSet(1, null), format.read("[1, null]",
+				Descriptors.set(Descriptors.int32)));
+	}
+
+	@Test
+	public void testPrimitiveCollections_unknownEnumValue() throws Exception {
+		SetDescriptor<PdefTestEnum> descriptor = Descriptors.set(PdefTestEnum.DESCRIPTOR);
+		Set<PdefTestEnum> set = format.read("[\"one\", \"unknown\"]", descriptor);
+		assertEquals(Sets.newHashSet(PdefTestEnum.ONE, null), set);
+		assertEquals(set, format.read(format.write(set, descriptor, false), descriptor));
+	}
+
+	@Test
+	public void testReadLazy() throws Exception {
+		PdefTestComplexMessage expected = createComplexMessage();
+		PdefTestComplexMessage message = format.readLazy(MESSAGE_JSON.getBytes("UTF-8"),
+				PdefTestComplexMessage.DESCRIPTOR);
+
+		JsonLazyFields fields = message.lazyFields();
+		assertTrue(fields.contains("message0"));
+		assertTrue(fields.contains("list0"));
+		assertTrue(message.hasMessage0());
+
+		assertEquals(expected.getMessage0(), message.getMessage0());
+		assertFalse(fields.contains("message0"));
+		assertEquals(expected, message);
+	}
+
+	@Test
+	public void testReadLazy_writeVerbatim() throws Exception {
+		String s = "{\"string0\":\"hello\",\"message0\":{ \"int0\" : 1 },\"list0\":[1, 2]}";
+		PdefTestComplexMessage message = format.readLazy(s.getBytes("UTF-8"),
+				PdefTestComplexMessage.DESCRIPTOR);
+
+		message.setString0("world");
+		assertEquals("{\"string0\":\"world\",\"list0\":[1, 2],\"message0\":{ \"int0\" : 1 }}",
+				format.write(message, PdefTestComplexMessage.DESCRIPTOR, false));
+	}
+
+	@Test
+	public void testReadLazy_clearAndCopy() throws Exception {
+		String s = "{\"message0\":{\"int0\":1},\"list0\":[1,2]}";
+		PdefTestComplexMessage message = format.readLazy(s.getBytes("UTF-8"),
+				PdefTestComplexMessage.DESCRIPTOR);
+
+		PdefTestComplexMessage copy = message.copy();
+		message.clearMessage0();
+
+		assertFalse(message.hasMessage0());
+		assertEquals("{\"list0\":[1,2]}",
+				format.write(message, PdefTestComplexMessage.DESCRIPTOR, false));
+		assertEquals(new PdefTestMessage().setInt0(1), copy.getMessage0());
+		assertEquals(ImmutableList.of(1, 2), copy.getList0());
+	}
+
+	@Test
+	public void testReadLazy_mismatchedBrackets() throws Exception {
+		String[] inputs = {"{\"list0\":{}}", "{\"set0\":{}}", "{\"map0\":[]}",
+				"{\"message0\":[]}"};
+		for (String s : inputs) {
+			try {
+				format.readLazy(s.getBytes("UTF-8"), PdefTestComplexMessage.DESCRIPTOR);
+				fail("Expected an exception for " + s);
+			} catch (JsonFormatException e) {
+				// Expected, the same as for eager reads.
+			}
+		}
+	}
+
+	@Test
+	public void testReadMask() throws Exception {
+		FieldMask mask = FieldMask.of(PdefTestComplexMessage.DESCRIPTOR,
+				"string0", "message0.int0", "polymorphic.subfield");
+		PdefTestComplexMessage message = format.read(MESSAGE_JSON,
+				PdefTestComplexMessage.DESCRIPTOR, mask);
+
+		PdefTestComplexMessage expected = new PdefTestComplexMessage()
+				.setString0("hello")
+				.setMessage0(new PdefTestMessage().setInt0(16))
+				.setPolymorphic(new PdefMultiLevelSubtype().setSubfield("subfield"));
+		assertEquals(expected, message);
+	}
+
+	@Test
+	public void testWriteMask() throws Exception {
+		FieldMask mask = FieldMask.of(PdefTestComplexMessage.DESCRIPTOR,
+				"int0", "message0.string0", "polymorphic.mfield");
+		String s = format.write(createComplexMessage(), PdefTestComplexMessage.DESCRIPTOR, mask,
+				false);
+
+		assertEquals("{\"int0\":32,\"message0\":{\"string0\":\"hello\"},"
+				+ "\"polymorphic\":{\"type\":\"multilevel_subtype\",\"mfield\":\"mfield\"}}", s);
+	}
+
+	@Test
+	public void testWriteMask_all() throws Exception {
+		PdefTestComplexMessage message = createComplexMessage();
+		assertEquals(format.write(message, PdefTestComplexMessage.DESCRIPTOR, false),
+				format.write(message, PdefTestComplexMessage.DESCRIPTOR, FieldMask.ALL, false));
+	}
+
 	private PdefTestComplexMessage createComplexMessage() {
 		return new PdefTestComplexMessage()
 				.setEnum0(PdefTestEnum.THREE)
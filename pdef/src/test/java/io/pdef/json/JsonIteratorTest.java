@@ -0,0 +1,155 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef.json;
+
+import io.pdef.descriptors.Descriptors;
+import io.pdef.test.messages.PdefTestMessage;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class JsonIteratorTest {
+	private JsonFormat format = JsonFormat.instance();
+
+	@Test
+	public void testIterate() throws Exception {
+		String s = "[{\"string0\": \"hello\"}, null, {\"int0\": 123}]";
+		JsonIterator<PdefTestMessage> iterator = format.readIterator(
+				new ByteArrayInputStream(s.getBytes("UTF-8")), PdefTestMessage.DESCRIPTOR);
+
+		assertTrue(iterator.hasNext());
+		assertEquals(new PdefTestMessage().setString0("hello"), iterator.next());
+		assertTrue(iterator.hasNext());
+		assertNull(iterator.next());
+		assertEquals(new PdefTestMessage().setInt0(123), iterator.next());
+		assertFalse(iterator.hasNext());
+	}
+
+	@Test
+	public void testIterate_empty() throws Exception {
+		JsonIterator<Integer> iterator = format.readIterator(new StringReader("[]"),
+				Descriptors.int32);
+
+		assertFalse(iterator.hasNext());
+		try {
+			iterator.next();
+			fail();
+		} catch (NoSuchElementException e) {
+			// Expected.
+		}
+	}
+
+	@Test(expected = JsonFormatException.class)
+	public void testIterate_notArray() throws Exception {
+		JsonIterator<Integer> iterator = format.readIterator(new StringReader("{}"),
+				Descriptors.int32);
+		iterator.hasNext();
+	}
+
+	@Test(expected = JsonFormatException.class)
+	public void testIterate_unexpectedEnd() throws Exception {
+		JsonIterator<Integer> iterator = format.readIterator(new StringReader("[1, 2"),
+				Descriptors.int32);
+		while (iterator.hasNext()) {
+			iterator.next();
+		}
+	}
+
+	@Test
+	public void testClose() throws Exception {
+		JsonIterator<Integer> iterator = format.readIterator(new StringReader("[1, 2, 3]"),
+				Descriptors.int32);
+
+		assertEquals(1, (int) iterator.next());
+		iterator.close();
+		iterator.close();
+		assertFalse(iterator.hasNext());
+	}
+
+	@Test
+	public void testReadLines() throws Exception {
+		String s = "{\"string0\": \"hello\"}\n\nnull\n{\"int0\": 123}\n";
+		JsonIterator<PdefTestMessage> iterator = format.readLines(stream(s),
+				PdefTestMessage.DESCRIPTOR);
+
+		assertEquals(new PdefTestMessage().setString0("hello"), iterator.next());
+		assertNull(iterator.next());
+		assertEquals(new PdefTestMessage().setInt0(123), iterator.next());
+		assertFalse(iterator.hasNext());
+	}
+
+	@Test
+	public void testReadLines_channel() throws Exception {
+		JsonIterator<Integer> iterator = format.readLines(
+				Channels.newChannel(stream("1\n2\n")), Descriptors.int32);
+
+		assertEquals(1, (int) iterator.next());
+		assertEquals(2, (int) iterator.next());
+		assertFalse(iterator.hasNext());
+	}
+
+	@Test
+	public void testReadLines_parallel() throws Exception {
+		StringBuilder s = new StringBuilder();
+		List<Integer> expected = new ArrayList<Integer>();
+		for (int i = 0; i < 1000; i++) {
+			s.append(i).append('\n');
+			expected.add(i);
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			JsonIterator<Integer> iterator = format.readLines(stream(s.toString()),
+					Descriptors.int32, executor, 16);
+
+			List<Integer> result = new ArrayList<Integer>();
+			while (iterator.hasNext()) {
+				result.add(iterator.next());
+			}
+			assertEquals(expected, result);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test(expected = JsonFormatException.class)
+	public void testReadLines_parallelMalformed() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			JsonIterator<Integer> iterator = format.readLines(stream("1\n{\n3\n"),
+					Descriptors.int32, executor, 2);
+			while (iterator.hasNext()) {
+				iterator.next();
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private InputStream stream(final String s) throws Exception {
+		return new ByteArrayInputStream(s.getBytes("UTF-8"));
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef.json;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import io.pdef.descriptors.Descriptors;
+import io.pdef.test.messages.PdefTestEnum;
+import io.pdef.test.messages.PdefTestMessage;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.*;
+
+public class JsonMessageMapTest {
+	@Test
+	public void testConvert_listView() throws Exception {
+		List<PdefTestEnum> list = new ArrayList<PdefTestEnum>();
+		list.add(PdefTestEnum.ONE);
+		Object view = JsonMessageMap.convert(list, Descriptors.list(PdefTestEnum.DESCRIPTOR));
+		assertEquals(ImmutableList.of("one"), view);
+
+		list.add(PdefTestEnum.TWO);
+		assertEquals(ImmutableList.of("one", "two"), view);
+	}
+
+	@Test
+	public void testConvert_setView() throws Exception {
+		Set<PdefTestEnum> set = EnumSet.of(PdefTestEnum.ONE);
+		Object view = JsonMessageMap.convert(set, Descriptors.set(PdefTestEnum.DESCRIPTOR));
+		assertEquals(ImmutableSet.of("one"), view);
+
+		set.add(PdefTestEnum.THREE);
+		assertEquals(ImmutableSet.of("one", "three"), view);
+	}
+
+	@Test
+	public void testConvert_mapView() throws Exception {
+		Map<Integer, PdefTestMessage> map = new HashMap<Integer, PdefTestMessage>();
+		PdefTestMessage message = new PdefTestMessage().setInt0(1);
+		map.put(1, message);
+		Object view = JsonMessageMap.convert(map,
+				Descriptors.map(Descriptors.int32, PdefTestMessage.DESCRIPTOR));
+
+		message.setInt0(2);
+		assertEquals(ImmutableMap.of("1", ImmutableMap.of("int0", 2)), view);
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testConvert_readOnly() throws Exception {
+		List<Integer> list = new ArrayList<Integer>();
+		@SuppressWarnings("unchecked")
+		List<Object> view = (List<Object>) JsonMessageMap.convert(list,
+				Descriptors.list(Descriptors.int32));
+		view.add(1);
+	}
+}
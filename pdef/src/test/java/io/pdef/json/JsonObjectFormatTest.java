@@ -36,22 +36,34 @@ import java.util.Set;
 public class JsonObjectFormatTest {
 	private JsonObjectFormat format = JsonObjectFormat.getInstance();
 
+	/** Writes an object, overridden to run the tests against other formats. */
+	protected <T> Object write(final T object, final DataTypeDescriptor<T> descriptor)
+			throws Exception {
+		return format.write(object, descriptor);
+	}
+
+	/** Reads an object, overridden to run the tests against other formats. */
+	protected <T> T read(final Object object, final DataTypeDescriptor<T> descriptor)
+			throws Exception {
+		return format.read(object, descriptor);
+	}
+
 	private <T> void testPrimitive(final DataTypeDescriptor<T> descriptor, final T object,
 			final String s) throws Exception {
-		assertNull(format.read(null, descriptor));
-		assertEquals(object, format.read(s, descriptor));
-		assertEquals(object, format.read(object, descriptor));
+		assertNull(read(null, descriptor));
+		assertEquals(object, read(s, descriptor));
+		assertEquals(object, read(object, descriptor));
 
-		assertNull(format.write(null, descriptor));
-		assertEquals(object, format.write(object, descriptor));
+		assertNull(write(null, descriptor));
+		assertEquals(object, write(object, descriptor));
 	}
 
 	@Test
 	public void testBool() throws Exception {
 		testPrimitive(Descriptors.bool, true, "TRUE");
 		testPrimitive(Descriptors.bool, false, "False");
-		assertTrue(format.read(1, Descriptors.bool));
-		assertFalse(format.read(0, Descriptors.bool));
+		assertTrue(read(1, Descriptors.bool));
+		assertFalse(read(0, Descriptors.bool));
 	}
 
 	@Test
@@ -94,15 +106,15 @@ public class JsonObjectFormatTest {
 		EnumDescriptor<PdefTestEnum> descriptor = PdefTestEnum.DESCRIPTOR;
 
 		testValue(descriptor, PdefTestEnum.TWO, "two");
-		assertEquals(PdefTestEnum.TWO, format.read("two", descriptor));
+		assertEquals(PdefTestEnum.TWO, read("two", descriptor));
 	}
 
 	private <T> void testValue(final DataTypeDescriptor<T> descriptor, final T object,
 			final Object serialized) throws Exception {
-		assertEquals(object, format.read(serialized, descriptor));
-		assertNull(format.read(null, descriptor));
-		assertNull(format.write(null, descriptor));
-		assertEquals(serialized, format.write(object, descriptor));
+		assertEquals(object, read(serialized, descriptor));
+		assertNull(read(null, descriptor));
+		assertNull(write(null, descriptor));
+		assertEquals(serialized, write(object, descriptor));
 	}
 
 	@Test
@@ -166,6 +178,14 @@ public class JsonObjectFormatTest {
 		testValue(PdefBase.DESCRIPTOR, parsed, serialized);
 	}
 
+	@Test
+	public void testPrimitiveCollections_nullElement() throws Exception {
+		assertEquals(Lists.newArrayList(1, null), read(Lists.newArrayList(1, null),
+				Descriptors.list(Descriptors.int32)));
+		assertEquals(Sets.newHashSet(PdefTestEnum.ONE, null), read(
+				Lists.newArrayList("one", "unknown"), Descriptors.set(PdefTestEnum.DESCRIPTOR)));
+	}
+
 	private PdefTestMessage fixtureMessage() {
 		return new PdefTestMessage()
 				.setBool0(true)
@@ -0,0 +1,86 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef.json;
+
+import io.pdef.descriptors.Descriptors;
+import io.pdef.test.messages.PdefTestMessage;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+public class JsonPushReaderTest {
+	private JsonFormat format = JsonFormat.instance();
+
+	@Test
+	public void testFeed() throws Exception {
+		byte[] bytes = "{\"string0\":\"a}\\\"[\",\"int0\":1} \n".getBytes("UTF-8");
+		JsonPushReader<PdefTestMessage> reader = format.readIncremental(
+				PdefTestMessage.DESCRIPTOR);
+
+		for (int i = 0; i < bytes.length; i++) {
+			boolean done = reader.feed(bytes, i, 1);
+			assertEquals(i >= bytes.length - 3, done);
+		}
+
+		assertEquals(new PdefTestMessage().setString0("a}\"[").setInt0(1), reader.getValue());
+		assertSame(reader.getValue(), reader.finish());
+	}
+
+	@Test
+	public void testFeed_byteBuffer() throws Exception {
+		JsonPushReader<String> reader = JsonFormat.utf8().readIncremental(Descriptors.string);
+		ByteBuffer buffer = ByteBuffer.wrap(" \"привет\"".getBytes("UTF-8"));
+
+		assertTrue(reader.feed(buffer));
+		assertFalse(buffer.hasRemaining());
+		assertEquals("привет", reader.getValue());
+	}
+
+	@Test
+	public void testFinish_scalar() throws Exception {
+		JsonPushReader<Integer> reader = format.readIncremental(Descriptors.int32);
+		assertFalse(reader.feed("12".getBytes("UTF-8")));
+		assertFalse(reader.feed("3".getBytes("UTF-8")));
+
+		assertEquals(123, (int) reader.finish());
+	}
+
+	@Test
+	public void testFinish_empty() throws Exception {
+		assertNull(format.readIncremental(Descriptors.int32).finish());
+	}
+
+	@Test(expected = JsonFormatException.class)
+	public void testFinish_incomplete() throws Exception {
+		JsonPushReader<PdefTestMessage> reader = format.readIncremental(
+				PdefTestMessage.DESCRIPTOR);
+		reader.feed("{\"int0\":".getBytes("UTF-8"));
+		reader.finish();
+	}
+
+	@Test(expected = JsonFormatException.class)
+	public void testFeed_trailingData() throws Exception {
+		format.readIncremental(Descriptors.list(Descriptors.int32))
+				.feed("[1] [2]".getBytes("UTF-8"));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testGetValue_incomplete() throws Exception {
+		format.readIncremental(Descriptors.string).getValue();
+	}
+}
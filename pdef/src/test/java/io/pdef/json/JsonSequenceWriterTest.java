@@ -0,0 +1,75 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef.json;
+
+import io.pdef.descriptors.Descriptors;
+import io.pdef.test.messages.PdefTestMessage;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+public class JsonSequenceWriterTest {
+	private JsonFormat format = JsonFormat.instance();
+
+	@Test
+	public void testWrite() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		JsonSequenceWriter<PdefTestMessage> writer = format.writeSequence(out,
+				PdefTestMessage.DESCRIPTOR, false);
+
+		writer.write(new PdefTestMessage().setString0("hello"));
+		writer.write(null);
+		writer.flush();
+		assertEquals("[{\"string0\":\"hello\"},null", out.toString("UTF-8"));
+
+		writer.write(new PdefTestMessage().setInt0(123));
+		writer.close();
+		assertEquals("[{\"string0\":\"hello\"},null,{\"int0\":123}]", out.toString("UTF-8"));
+	}
+
+	@Test
+	public void testWrite_empty() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		format.writeSequence(out, Descriptors.int32, false).close();
+
+		assertEquals("[]", out.toString("UTF-8"));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testWrite_closed() throws Exception {
+		JsonSequenceWriter<Integer> writer = format.writeSequence(new ByteArrayOutputStream(),
+				Descriptors.int32, false);
+		writer.close();
+		writer.write(1);
+	}
+
+	@Test
+	public void testWriteLines() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		JsonSequenceWriter<PdefTestMessage> writer = format.writeLines(out,
+				PdefTestMessage.DESCRIPTOR);
+
+		writer.write(new PdefTestMessage().setString0("hello"));
+		writer.write(null);
+		writer.write(new PdefTestMessage().setInt0(123));
+		writer.close();
+
+		assertEquals("{\"string0\":\"hello\"}\nnull\n{\"int0\":123}\n",
+				out.toString("UTF-8"));
+	}
+}
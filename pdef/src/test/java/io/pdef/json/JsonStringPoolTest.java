@@ -0,0 +1,58 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef.json;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class JsonStringPoolTest {
+	@Test
+	public void testGet() throws Exception {
+		JsonStringPool pool = JsonStringPool.create(16);
+		char[] buffer = "xhelloxhello".toCharArray();
+
+		String s = pool.get(buffer, 1, 5);
+		assertEquals("hello", s);
+		assertSame(s, pool.get(buffer, 7, 5));
+		assertEquals("", pool.get(buffer, 0, 0));
+	}
+
+	@Test
+	public void testGet_collision() throws Exception {
+		JsonStringPool pool = JsonStringPool.create(1);
+
+		String a = pool.get("a".toCharArray(), 0, 1);
+		String b = pool.get("b".toCharArray(), 0, 1);
+		assertEquals("b", b);
+		assertEquals("a", pool.get("a".toCharArray(), 0, 1));
+		assertNotSame(a, b);
+	}
+
+	@Test
+	public void testGet_maxLength() throws Exception {
+		JsonStringPool pool = JsonStringPool.create(16, 3);
+		char[] buffer = "long".toCharArray();
+
+		assertNotSame(pool.get(buffer, 0, 4), pool.get(buffer, 0, 4));
+		assertSame(pool.get(buffer, 0, 3), pool.get(buffer, 0, 3));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCreate_badCapacity() throws Exception {
+		JsonStringPool.create(0);
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef.json;
+
+import com.google.common.collect.ImmutableList;
+import io.pdef.descriptors.Descriptors;
+import io.pdef.descriptors.ListDescriptor;
+import io.pdef.test.messages.PdefTestComplexMessage;
+import io.pdef.test.messages.PdefTestMessage;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+/** Runs the JSON format tests against the UTF-8 codec. */
+public class JsonUtf8FormatTest extends JsonFormatTest {
+	private final JsonFormat jackson = JsonFormat.instance();
+
+	public JsonUtf8FormatTest() {
+		format = JsonFormat.utf8();
+	}
+
+	@Test
+	public void testString_escapes() throws Exception {
+		String s = "a\"b\\c/d\b\f\n\r\t\u0001\u001f\u007f é € \ud83d\ude00";
+		String json = jackson.write(s, Descriptors.string, false);
+
+		assertEquals(json, format.write(s, Descriptors.string, false));
+		assertEquals(s, format.read(json, Descriptors.string));
+		assertEquals("\u00e9/", format.read("\"\\u00E9\\/\"", Descriptors.string));
+	}
+
+	@Test(expected = JsonFormatException.class)
+	public void testString_brokenSurrogate() throws Exception {
+		format.write("\ud83d", Descriptors.string, false);
+	}
+
+	@Test
+	public void testNumbers() throws Exception {
+		assertEquals(Integer.MIN_VALUE, (int) format.read("-2147483648", Descriptors.int32));
+		assertEquals(Long.MIN_VALUE, (long) format.read("-9223372036854775808",
+				Descriptors.int64));
+		assertEquals(Long.MAX_VALUE, (long) format.read("9223372036854775807",
+				Descriptors.int64));
+		assertEquals(-1.5e-3, format.read("-1.5e-3", Descriptors.double0), 0.0);
+
+		List<Long> longs = ImmutableList.of(0L, -1L, Long.MIN_VALUE, Long.MAX_VALUE,
+				1234567890123L);
+		String json = jackson.write(longs, Descriptors.list(Descriptors.int64), false);
+		assertEquals(json, format.write(longs, Descriptors.list(Descriptors.int64), false));
+	}
+
+	@Test(expected = JsonFormatException.class)
+	public void testInt64_outOfRange() throws Exception {
+		format.read("9223372036854775808", Descriptors.int64);
+	}
+
+	@Test
+	public void testMessage_commentsAndWhitespace() throws Exception {
+		PdefTestMessage message = format.read("/* c */ {\n\t\"int0\" : 1 , // c\n"
+				+ "\"\\u0073tring0\": \"a\" }", PdefTestMessage.DESCRIPTOR);
+		assertEquals(new PdefTestMessage().setInt0(1).setString0("a"), message);
+	}
+
+	@Test
+	public void testEmptyContainers() throws Exception {
+		PdefTestComplexMessage message = format.read("{\"list0\": [], \"map0\": {}, "
+				+ "\"message0\": {}, \"string0\": \"x\"}", PdefTestComplexMessage.DESCRIPTOR);
+		assertEquals("x", message.getString0());
+		assertTrue(message.getList0().isEmpty());
+		assertTrue(message.getMap0().isEmpty());
+		assertEquals(new PdefTestMessage(), message.getMessage0());
+
+		ListDescriptor<List<Integer>> descriptor = Descriptors.list(
+				Descriptors.list(Descriptors.int32));
+		List<List<Integer>> lists = format.read("[[], [1], [], []]", descriptor);
+		assertEquals(jackson.read("[[], [1], [], []]", descriptor), lists);
+	}
+
+	@Test(expected = JsonFormatException.class)
+	public void testEmptyContainers_malformed() throws Exception {
+		format.read("[[] [1]]", Descriptors.list(Descriptors.list(Descriptors.int32)));
+	}
+
+	@Test(expected = JsonFormatException.class)
+	public void testMessage_malformed() throws Exception {
+		format.read("{\"int0\":1 \"bool0\":true}", PdefTestMessage.DESCRIPTOR);
+	}
+
+	@Test
+	public void testStreams() throws Exception {
+		PdefTestComplexMessage message = format.read(jackson.write(new PdefTestComplexMessage()
+				.setString0("привет").setInt0(1), PdefTestComplexMessage.DESCRIPTOR, false),
+				PdefTestComplexMessage.DESCRIPTOR);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		format.write(out, message, PdefTestComplexMessage.DESCRIPTOR, false);
+		assertEquals(jackson.write(message, PdefTestComplexMessage.DESCRIPTOR, false),
+				out.toString("UTF-8"));
+		assertEquals(message, format.read(new ByteArrayInputStream(out.toByteArray()),
+				PdefTestComplexMessage.DESCRIPTOR));
+	}
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef.json;
+
+import io.pdef.descriptors.DataTypeDescriptor;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Runs the object format tests against the UTF-8 codec, every written and read value
+ * is also written by the codec, compared with the Jackson output and read back.
+ */
+public class JsonUtf8ObjectFormatTest extends JsonObjectFormatTest {
+	private final JsonFormat jackson = JsonFormat.instance();
+	private final JsonFormat utf8 = JsonFormat.utf8();
+
+	@Override
+	protected <T> Object write(final T object, final DataTypeDescriptor<T> descriptor)
+			throws Exception {
+		assertText(object, descriptor);
+		return super.write(object, descriptor);
+	}
+
+	@Override
+	protected <T> T read(final Object object, final DataTypeDescriptor<T> descriptor)
+			throws Exception {
+		T result = super.read(object, descriptor);
+		assertText(result, descriptor);
+		return result;
+	}
+
+	private <T> void assertText(final T object, final DataTypeDescriptor<T> descriptor) {
+		String json = utf8.write(object, descriptor, false);
+		assertEquals(jackson.write(object, descriptor, false), json);
+		assertEquals(object, utf8.read(json, descriptor));
+		assertEquals(object, jackson.read(json, descriptor));
+	}
+}
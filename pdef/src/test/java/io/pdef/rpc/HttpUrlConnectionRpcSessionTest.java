@@ -26,11 +26,13 @@ import org.junit.Test;
 import static org.mockito.Mockito.*;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.nio.charset.Charset;
+import java.util.zip.GZIPOutputStream;
 
 public class HttpUrlConnectionRpcSessionTest {
 	HttpUrlConnectionRpcSession session = new HttpUrlConnectionRpcSession("http://localhost");
@@ -79,6 +81,54 @@ public class HttpUrlConnectionRpcSessionTest {
 		assertEquals("Привет", result);
 	}
 
+	@Test
+	public void testHandleResponse_readBinaryResult() throws Exception {
+		RpcResult<String, Void> result = new RpcResult<String, Void>(Descriptors.string)
+				.setData("Привет");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		WireFormat.binary().write(out, result, result.descriptor());
+
+		HttpURLConnection connection = mock(HttpURLConnection.class);
+		when(connection.getResponseCode()).thenReturn(HttpURLConnection.HTTP_OK);
+		when(connection.getHeaderField(CONTENT_TYPE_HEADER))
+				.thenReturn(WireFormat.BINARY_MEDIA_TYPE);
+		when(connection.getInputStream()).thenReturn(new ByteArrayInputStream(out.toByteArray()));
+
+		session = new HttpUrlConnectionRpcSession("http://localhost", WireFormat.binary());
+		String s = session.handleResponse(connection, Descriptors.string, null);
+		assertEquals("Привет", s);
+	}
+
+	@Test
+	public void testHandleResponse_readJsonFallback() throws Exception {
+		InputStream input = new ByteArrayInputStream("{\"data\": \"Привет\"}".getBytes(UTF8));
+
+		HttpURLConnection connection = mock(HttpURLConnection.class);
+		when(connection.getResponseCode()).thenReturn(HttpURLConnection.HTTP_OK);
+		when(connection.getHeaderField(CONTENT_TYPE_HEADER)).thenReturn("application/json");
+		when(connection.getInputStream()).thenReturn(input);
+
+		session = new HttpUrlConnectionRpcSession("http://localhost", WireFormat.binary());
+		String result = session.handleResponse(connection, Descriptors.string, null);
+		assertEquals("Привет", result);
+	}
+
+	@Test
+	public void testHandleResponse_readGzipResult() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GZIPOutputStream gzip = new GZIPOutputStream(out);
+		gzip.write("{\"data\": \"Привет\"}".getBytes(UTF8));
+		gzip.close();
+
+		HttpURLConnection connection = mock(HttpURLConnection.class);
+		when(connection.getResponseCode()).thenReturn(HttpURLConnection.HTTP_OK);
+		when(connection.getHeaderField(CONTENT_ENCODING_HEADER)).thenReturn(GZIP);
+		when(connection.getInputStream()).thenReturn(new ByteArrayInputStream(out.toByteArray()));
+
+		String result = session.handleResponse(connection, Descriptors.string, null);
+		assertEquals("Привет", result);
+	}
+
 	@Test
 	public void testHandleResponse_readApplicationException() throws Exception {
 		PdefTestException e = new PdefTestException().setText("Привет");
@@ -97,6 +147,14 @@ public class HttpUrlConnectionRpcSessionTest {
 		}
 	}
 
+	@Test
+	public void testGetAccept() throws Exception {
+		assertEquals("application/json", session.getAccept());
+
+		session = new HttpUrlConnectionRpcSession("http://localhost", WireFormat.binary());
+		assertEquals("application/x-pdef-binary, application/json;q=0.5", session.getAccept());
+	}
+
 	@Test(expected = RpcException.class)
 	public void testReadError() throws Exception {
 		HttpURLConnection connection = mock(HttpURLConnection.class);
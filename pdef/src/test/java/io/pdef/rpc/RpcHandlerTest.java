@@ -65,6 +65,17 @@ public class RpcHandlerTest {
 		assertEquals(PdefTestException.DESCRIPTOR, result.getErrorDescriptor());
 	}
 
+	@Test
+	public void testHandle_sharedDescriptor() throws Exception {
+		when(service.method(1, 2)).thenReturn(3);
+
+		RpcResult<?, ?> result0 = handler.handle(getRequest());
+		RpcResult<?, ?> result1 = handler.handle(getRequest());
+		assertSame(result0.descriptor(), result1.descriptor());
+		assertNotSame(result0.descriptor(),
+				new RpcResult<Integer, Void>(Descriptors.int32).descriptor());
+	}
+
 	@Test(expected = IllegalArgumentException.class)
 	public void testHandle_unexpectedException() throws Exception {
 		when(service.method(1, 2)).thenThrow(new IllegalArgumentException());
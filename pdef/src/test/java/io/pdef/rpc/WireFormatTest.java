@@ -0,0 +1,118 @@
+/*
+ * Copyright: 2013 Pdef <http://pdef.io/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.pdef.rpc;
+
+import io.pdef.descriptors.Descriptors;
+import io.pdef.test.interfaces.PdefTestException;
+import io.pdef.test.messages.PdefTestMessage;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+public class WireFormatTest {
+	List<WireFormat> formats = Arrays.asList(WireFormat.json(), WireFormat.binary());
+
+	@Test
+	public void testMatches() throws Exception {
+		assertTrue(WireFormat.json().matches("application/json"));
+		assertTrue(WireFormat.json().matches("Application/JSON; charset=utf-8"));
+		assertTrue(WireFormat.binary().matches(" application/x-pdef-binary ;q=0.5"));
+		assertFalse(WireFormat.json().matches("application/x-pdef-binary"));
+		assertFalse(WireFormat.json().matches(null));
+	}
+
+	@Test
+	public void testSelect() throws Exception {
+		assertSame(WireFormat.json(), WireFormat.select(formats, null));
+		assertSame(WireFormat.json(), WireFormat.select(formats, "*/*"));
+		assertSame(WireFormat.json(), WireFormat.select(formats, "text/html"));
+		assertSame(WireFormat.json(), WireFormat.select(formats, "application/json"));
+		assertSame(WireFormat.binary(), WireFormat.select(formats, "application/x-pdef-binary"));
+		assertSame(WireFormat.binary(), WireFormat.select(formats,
+				"application/x-pdef-binary, application/json;q=0.5"));
+	}
+
+	@Test
+	public void testSelect_quality() throws Exception {
+		assertSame(WireFormat.binary(), WireFormat.select(formats,
+				"application/json;q=0.5, application/x-pdef-binary"));
+		assertSame(WireFormat.json(), WireFormat.select(formats,
+				"application/x-pdef-binary;q=0, */*;q=0.1"));
+		assertSame(WireFormat.json(), WireFormat.select(formats,
+				"application/x-pdef-binary;q=bad"));
+	}
+
+	@Test
+	public void testSelect_specificity() throws Exception {
+		assertSame(WireFormat.binary(), WireFormat.select(formats,
+				"*/*, application/x-pdef-binary"));
+		assertSame(WireFormat.binary(), WireFormat.select(formats,
+				"application/*, application/x-pdef-binary"));
+		assertSame(WireFormat.json(), WireFormat.select(formats,
+				"*/*, application/*"));
+		assertSame(WireFormat.json(), WireFormat.select(formats,
+				"*/*, application/x-pdef-binary;q=0.5"));
+		assertSame(WireFormat.binary(), WireFormat.select(formats,
+				"text/html, application/x-pdef-binary;q=0.5"));
+	}
+
+	@Test
+	public void testSelect_unsupported() throws Exception {
+		List<WireFormat> json = Arrays.asList(WireFormat.json());
+		assertSame(WireFormat.json(), WireFormat.select(json, "application/x-pdef-binary"));
+	}
+
+	@Test
+	public void testJson() throws Exception {
+		RpcResult<String, Void> result = new RpcResult<String, Void>(Descriptors.string)
+				.setData("Привет");
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		WireFormat.json().write(out, result, result.descriptor());
+		assertEquals(result.toJson(true), out.toString("UTF-8"));
+
+		RpcResult<String, Void> read = WireFormat.json().read(
+				new ByteArrayInputStream(out.toByteArray()), result.descriptor());
+		assertEquals("Привет", read.getData());
+	}
+
+	@Test
+	public void testBinary() throws Exception {
+		PdefTestMessage message = new PdefTestMessage()
+				.setString0("Привет")
+				.setInt0(-123);
+		PdefTestException exc = new PdefTestException().setText("Error");
+		RpcResult<PdefTestMessage, PdefTestException> result =
+				new RpcResult<PdefTestMessage, PdefTestException>(PdefTestMessage.DESCRIPTOR,
+						PdefTestException.DESCRIPTOR)
+						.setData(message)
+						.setError(exc);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		WireFormat.binary().write(out, result, result.descriptor());
+		assertTrue(out.size() < result.toJson(false).length());
+
+		RpcResult<PdefTestMessage, PdefTestException> read = WireFormat.binary().read(
+				new ByteArrayInputStream(out.toByteArray()), result.descriptor());
+		assertEquals(message, read.getData());
+		assertEquals(exc, read.getError());
+	}
+}